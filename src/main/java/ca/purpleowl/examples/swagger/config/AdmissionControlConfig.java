@@ -0,0 +1,39 @@
+package ca.purpleowl.examples.swagger.config;
+
+import ca.purpleowl.examples.swagger.rest.admission.AdmissionControlFilter;
+import ca.purpleowl.examples.swagger.rest.admission.AdmissionControlProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+/**
+ * Puts the AdmissionControlFilter in front of the API endpoints.  Swagger, the actuator and anything else we serve
+ * are deliberately left out; we only care about protecting the database.
+ */
+@Configuration
+@EnableConfigurationProperties(AdmissionControlProperties.class)
+public class AdmissionControlConfig {
+
+    /**
+     * A bean of its own so that the BatchDispatcher can charge batches for the requests inside them.
+     */
+    @Bean
+    public AdmissionControlFilter admissionControlFilter(AdmissionControlProperties properties,
+                                                         MeterRegistry meterRegistry) {
+        return new AdmissionControlFilter(properties, meterRegistry);
+    }
+
+    @Bean
+    public FilterRegistrationBean<AdmissionControlFilter> admissionControlFilterRegistration(
+            AdmissionControlFilter admissionControlFilter) {
+        FilterRegistrationBean<AdmissionControlFilter> registration = new FilterRegistrationBean<>(admissionControlFilter);
+        //A batch only takes one token here; the BatchDispatcher takes the rest once it knows how many requests it has.
+        registration.addUrlPatterns("/programmer/*", "/team/*", "/batch");
+        //Straight after the ClientIdentityFilter (if there is one), and before anything else has done any work.
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 1);
+        return registration;
+    }
+}
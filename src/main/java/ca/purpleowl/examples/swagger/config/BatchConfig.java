@@ -0,0 +1,28 @@
+package ca.purpleowl.examples.swagger.config;
+
+import ca.purpleowl.examples.swagger.jpa.datasource.ShardRouter;
+import ca.purpleowl.examples.swagger.rest.admission.AdmissionControlFilter;
+import ca.purpleowl.examples.swagger.rest.batch.BatchDispatcher;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.web.servlet.DispatcherServlet;
+
+/**
+ * The /batch endpoint hands its requests straight back to the DispatcherServlet.  It's looked up lazily, as it's
+ * busy dispatching to us when we need it.
+ */
+@Configuration
+public class BatchConfig {
+
+    @Bean
+    public BatchDispatcher batchDispatcher(ObjectProvider<DispatcherServlet> dispatcherServlet,
+                                           PlatformTransactionManager transactionManager,
+                                           ObjectMapper objectMapper,
+                                           ShardRouter shardRouter,
+                                           AdmissionControlFilter admissionControl) {
+        return new BatchDispatcher(dispatcherServlet, transactionManager, objectMapper, shardRouter, admissionControl);
+    }
+}
@@ -0,0 +1,59 @@
+package ca.purpleowl.examples.swagger.config;
+
+import ca.purpleowl.examples.swagger.jpa.changes.ChangeSequenceAllocator;
+import ca.purpleowl.examples.swagger.jpa.changes.ChangeSequenceBlocks;
+import ca.purpleowl.examples.swagger.jpa.changes.CommittedChangeSequences;
+import ca.purpleowl.examples.swagger.jpa.datasource.ShardRouter;
+import ca.purpleowl.examples.swagger.jpa.datasource.ShardedDataSources;
+import ca.purpleowl.examples.swagger.jpa.repository.ProgrammerRepository;
+import ca.purpleowl.examples.swagger.jpa.repository.TeamRepository;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+
+@Configuration
+public class ChangeTrackingConfig {
+
+    /**
+     * With more than one shard, every shard's changes are numbered from shard 0's sequence, so that they can all be
+     * compared with each other.  That's a connection of shard 0's own, whichever shard the transaction is on.
+     */
+    @Bean
+    public ChangeSequenceBlocks changeSequenceBlocks(DataSource dataSource,
+                                                     ObjectProvider<ShardedDataSources> shardedDataSources) {
+        ShardedDataSources sharded = shardedDataSources.getIfAvailable();
+
+        return new ChangeSequenceBlocks(sharded == null ? dataSource : sharded.getShards().get(0));
+    }
+
+    @Bean
+    public ChangeSequenceAllocator changeSequenceAllocator(ChangeSequenceBlocks changeSequenceBlocks) {
+        return new ChangeSequenceAllocator(changeSequenceBlocks);
+    }
+
+    @Bean
+    public CommittedChangeSequences committedChangeSequences(ObjectProvider<ProgrammerRepository> programmerRepository,
+                                                             ObjectProvider<TeamRepository> teamRepository,
+                                                             ObjectProvider<ShardRouter> shardRouter) {
+        return new CommittedChangeSequences(programmerRepository, teamRepository, shardRouter);
+    }
+
+    /**
+     * Once everything is up (the schema in particular), carry on numbering changes from wherever the database left off,
+     * moving the change_sequences sequence past it first if it has to.
+     */
+    @Bean
+    public SmartInitializingSingleton changeSequenceSeeder(ChangeSequenceAllocator changeSequenceAllocator,
+                                                           ChangeSequenceBlocks changeSequenceBlocks,
+                                                           CommittedChangeSequences committedChangeSequences) {
+        return () -> {
+            long highest = committedChangeSequences.findHighest();
+
+            changeSequenceBlocks.prepare(highest);
+            changeSequenceAllocator.seed(highest);
+        };
+    }
+}
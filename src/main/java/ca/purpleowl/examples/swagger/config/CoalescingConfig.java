@@ -0,0 +1,23 @@
+package ca.purpleowl.examples.swagger.config;
+
+import ca.purpleowl.examples.swagger.jpa.datasource.ReadYourWritesTracker;
+import ca.purpleowl.examples.swagger.service.coalescing.CoalescingAspect;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Request coalescing for @Coalesced service methods.  On unless purpleowl.coalescing.enabled is set to false.
+ */
+@Configuration
+@ConditionalOnProperty(name = "purpleowl.coalescing.enabled", havingValue = "true", matchIfMissing = true)
+public class CoalescingConfig {
+
+    @Bean
+    public CoalescingAspect coalescingAspect(MeterRegistry meterRegistry,
+                                             ObjectProvider<ReadYourWritesTracker> readYourWritesTracker) {
+        return new CoalescingAspect(meterRegistry, readYourWritesTracker);
+    }
+}
@@ -0,0 +1,85 @@
+package ca.purpleowl.examples.swagger.config;
+
+import ca.purpleowl.examples.swagger.rest.compression.CompressionFilter;
+import ca.purpleowl.examples.swagger.rest.compression.CompressionProperties;
+import ca.purpleowl.examples.swagger.rest.compression.GzipCompressor;
+import ca.purpleowl.examples.swagger.rest.compression.PrecompressedResourceResolver;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Gzipped API responses, and a gzipped, properly cached Swagger UI.
+ *
+ * Everything swagger-ui.html pulls in is asked for with the Springfox version on the end (?v=2.9.2), so a browser can
+ * hang on to those for as long as it likes; upgrading Springfox changes the URLs.  The page itself isn't versioned, so
+ * browsers have to check back for it, which costs a 304 at most.
+ */
+@Configuration
+@EnableConfigurationProperties(CompressionProperties.class)
+public class CompressionConfig {
+    private static final String SWAGGER_UI_ASSETS = "/webjars/springfox-swagger-ui/**";
+    //CacheControl can't say "immutable" yet.
+    private static final String IMMUTABLE = "public, max-age=31536000, immutable";
+
+    @Bean
+    public GzipCompressor gzipCompressor(CompressionProperties properties) {
+        return new GzipCompressor(properties);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "purpleowl.compression.enabled", havingValue = "true", matchIfMissing = true)
+    public FilterRegistrationBean<CompressionFilter> compressionFilter(GzipCompressor gzipCompressor,
+                                                                       CompressionProperties properties) {
+        FilterRegistrationBean<CompressionFilter> registration =
+                new FilterRegistrationBean<>(new CompressionFilter(gzipCompressor, properties));
+        //Not /events; that one streams.
+        registration.addUrlPatterns("/programmer/*", "/team/*", "/batch");
+        //After admission control, so that we don't hold on to responses for requests we're about to turn away.
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 2);
+        return registration;
+    }
+
+    @Bean
+    public WebMvcConfigurer swaggerUiResources(GzipCompressor gzipCompressor) {
+        PrecompressedResourceResolver precompressed = new PrecompressedResourceResolver(gzipCompressor);
+
+        return new WebMvcConfigurer() {
+            @Override
+            public void addResourceHandlers(ResourceHandlerRegistry registry) {
+                registry.addResourceHandler("/swagger-ui.html")
+                        .addResourceLocations("classpath:/META-INF/resources/")
+                        .setCacheControl(CacheControl.noCache())
+                        .resourceChain(true)
+                        .addResolver(precompressed);
+                registry.addResourceHandler(SWAGGER_UI_ASSETS)
+                        .addResourceLocations("classpath:/META-INF/resources/webjars/springfox-swagger-ui/")
+                        .resourceChain(true)
+                        .addResolver(precompressed);
+            }
+
+            @Override
+            public void addInterceptors(InterceptorRegistry registry) {
+                registry.addInterceptor(new HandlerInterceptor() {
+                    @Override
+                    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+                        response.setHeader(HttpHeaders.CACHE_CONTROL, IMMUTABLE);
+                        return true;
+                    }
+                }).addPathPatterns(SWAGGER_UI_ASSETS);
+            }
+        };
+    }
+}
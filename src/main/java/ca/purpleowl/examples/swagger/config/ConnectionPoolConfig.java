@@ -0,0 +1,91 @@
+package ca.purpleowl.examples.swagger.config;
+
+import ca.purpleowl.examples.swagger.jpa.datasource.ReplicatedDataSources;
+import ca.purpleowl.examples.swagger.jpa.datasource.ShardedDataSources;
+import ca.purpleowl.examples.swagger.jpa.pool.AdaptivePoolSizer;
+import ca.purpleowl.examples.swagger.jpa.pool.PoolSizingProperties;
+import ca.purpleowl.examples.swagger.jpa.pool.PoolUsageMetricsTrackerFactory;
+import ca.purpleowl.examples.swagger.jpa.pool.ServiceOperationAspect;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Connection pool instrumentation, and optionally the AdaptivePoolSizer.
+ *
+ * Our PoolUsageMetricsTrackerFactory has to be attached to the pool before Spring Boot gets a chance to attach its
+ * own (it only does so if the pool doesn't have one already), hence the BeanPostProcessor.  When routing to replicas
+ * or shards the pools aren't beans, so DataSourceRoutingConfig and ShardingConfig attach the factory themselves.
+ */
+@Configuration
+@EnableConfigurationProperties(PoolSizingProperties.class)
+public class ConnectionPoolConfig {
+
+    @Bean
+    public PoolUsageMetricsTrackerFactory poolUsageMetricsTrackerFactory(ObjectProvider<MeterRegistry> meterRegistry) {
+        return new PoolUsageMetricsTrackerFactory(meterRegistry);
+    }
+
+    @Bean
+    public static BeanPostProcessor poolUsageMetricsPostProcessor(ObjectProvider<PoolUsageMetricsTrackerFactory> factory) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if(bean instanceof HikariDataSource) {
+                    HikariDataSource dataSource = (HikariDataSource) bean;
+
+                    if(dataSource.getMetricRegistry() == null && dataSource.getMetricsTrackerFactory() == null) {
+                        dataSource.setMetricsTrackerFactory(factory.getObject());
+                    }
+                }
+
+                return bean;
+            }
+        };
+    }
+
+    @Bean
+    public ServiceOperationAspect serviceOperationAspect() {
+        return new ServiceOperationAspect();
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "purpleowl.datasource.pool-sizing.enabled", havingValue = "true")
+    public AdaptivePoolSizer adaptivePoolSizer(ObjectProvider<ReplicatedDataSources> replicatedDataSources,
+                                               ObjectProvider<ShardedDataSources> shardedDataSources,
+                                               DataSource dataSource,
+                                               PoolUsageMetricsTrackerFactory usage,
+                                               PoolSizingProperties properties) throws SQLException {
+        List<DataSource> candidates = new ArrayList<>();
+        ReplicatedDataSources replicated = replicatedDataSources.getIfAvailable();
+        ShardedDataSources sharded = shardedDataSources.getIfAvailable();
+
+        if(replicated != null) {
+            candidates.add(replicated.getPrimary());
+            candidates.addAll(replicated.getReplicas());
+        } else if(sharded != null) {
+            candidates.addAll(sharded.getShards());
+        } else {
+            candidates.add(dataSource);
+        }
+
+        List<HikariDataSource> pools = new ArrayList<>();
+        for(DataSource candidate : candidates) {
+            if(candidate.isWrapperFor(HikariDataSource.class)) {
+                pools.add(candidate.unwrap(HikariDataSource.class));
+            }
+        }
+
+        return new AdaptivePoolSizer(pools, usage, properties);
+    }
+}
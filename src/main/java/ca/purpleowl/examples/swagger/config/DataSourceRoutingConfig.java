@@ -0,0 +1,111 @@
+package ca.purpleowl.examples.swagger.config;
+
+import ca.purpleowl.examples.swagger.jpa.datasource.DataSourceRoutingProperties;
+import ca.purpleowl.examples.swagger.jpa.datasource.H2ReplicationStandIn;
+import ca.purpleowl.examples.swagger.jpa.datasource.ReadWriteRoutingDataSource;
+import ca.purpleowl.examples.swagger.jpa.datasource.ReadYourWritesTracker;
+import ca.purpleowl.examples.swagger.jpa.datasource.ReplicatedDataSources;
+import ca.purpleowl.examples.swagger.jpa.pool.PoolUsageMetricsTrackerFactory;
+import ca.purpleowl.examples.swagger.rest.filter.ClientIdentityFilter;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.Ordered;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Replaces the auto-configured DataSource with one that sends read-only transactions to replicas.  Only kicks in
+ * when purpleowl.datasource.routing.enabled is set; see application-replica.yml for a local setup using two H2
+ * databases.
+ */
+@Configuration
+@ConditionalOnProperty(name = "purpleowl.datasource.routing.enabled", havingValue = "true")
+@EnableConfigurationProperties(DataSourceRoutingProperties.class)
+public class DataSourceRoutingConfig {
+
+    /**
+     * The primary is configured exactly as the regular DataSource would be, through spring.datasource (including any
+     * spring.datasource.hikari settings).  Replicas come from purpleowl.datasource.routing.replicas.
+     *
+     * None of these pools are beans, so they're named and instrumented here rather than by ConnectionPoolConfig.
+     */
+    @Bean
+    public ReplicatedDataSources replicatedDataSources(DataSourceProperties dataSourceProperties,
+                                                       DataSourceRoutingProperties properties,
+                                                       Environment environment,
+                                                       PoolUsageMetricsTrackerFactory poolUsageMetricsTrackerFactory) {
+        HikariDataSource primary = dataSourceProperties.initializeDataSourceBuilder()
+                                                       .type(HikariDataSource.class)
+                                                       .build();
+        Binder.get(environment).bind("spring.datasource.hikari", Bindable.ofInstance(primary));
+        primary.setPoolName("primary");
+        primary.setMetricsTrackerFactory(poolUsageMetricsTrackerFactory);
+
+        List<DataSource> replicas = new ArrayList<>();
+        for(DataSourceRoutingProperties.Replica replica : properties.getReplicas()) {
+            HikariDataSource pool = DataSourceBuilder.create()
+                                                     .type(HikariDataSource.class)
+                                                     .driverClassName(replica.getDriverClassName())
+                                                     .url(replica.getUrl())
+                                                     .username(replica.getUsername())
+                                                     .password(replica.getPassword())
+                                                     .build();
+            pool.setPoolName("replica-" + replicas.size());
+            pool.setMetricsTrackerFactory(poolUsageMetricsTrackerFactory);
+            replicas.add(pool);
+        }
+
+        return new ReplicatedDataSources(primary, replicas);
+    }
+
+    @Bean
+    public ReadYourWritesTracker readYourWritesTracker(DataSourceRoutingProperties properties) {
+        return new ReadYourWritesTracker(properties.getStickyWindow());
+    }
+
+    /**
+     * This is the DataSource everything else (JPA in particular) sees.  The lazy proxy holds off on fetching a real
+     * connection until the first statement, by which point the transaction has been flagged as read-only or not.
+     */
+    @Bean
+    @Primary
+    public DataSource dataSource(ReplicatedDataSources replicatedDataSources,
+                                 ReadYourWritesTracker readYourWritesTracker) {
+        ReadWriteRoutingDataSource routingDataSource =
+                new ReadWriteRoutingDataSource(replicatedDataSources.getPrimary(),
+                                               replicatedDataSources.getReplicas(),
+                                               readYourWritesTracker);
+        routingDataSource.afterPropertiesSet();
+
+        return new LazyConnectionDataSourceProxy(routingDataSource);
+    }
+
+    @Bean
+    public FilterRegistrationBean<ClientIdentityFilter> clientIdentityFilter() {
+        FilterRegistrationBean<ClientIdentityFilter> registration = new FilterRegistrationBean<>(new ClientIdentityFilter());
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        return registration;
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "purpleowl.datasource.routing.replication-stand-in.enabled", havingValue = "true")
+    public H2ReplicationStandIn h2ReplicationStandIn(ReplicatedDataSources replicatedDataSources,
+                                                     DataSourceRoutingProperties properties) {
+        return new H2ReplicationStandIn(replicatedDataSources.getPrimary(),
+                                        replicatedDataSources.getReplicas(),
+                                        properties.getReplicationStandIn().getLag());
+    }
+}
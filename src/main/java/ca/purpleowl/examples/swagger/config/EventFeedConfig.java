@@ -0,0 +1,22 @@
+package ca.purpleowl.examples.swagger.config;
+
+import ca.purpleowl.examples.swagger.rest.events.ChangeFeed;
+import ca.purpleowl.examples.swagger.rest.events.EventFeedProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableConfigurationProperties(EventFeedProperties.class)
+public class EventFeedConfig {
+
+    /**
+     * The feed runs its own dispatcher threads.  Exposing them as an Executor bean would stop Spring Boot from setting
+     * up the default task executor, which Spring MVC's async support (SSE included) relies on.
+     */
+    @Bean
+    public ChangeFeed changeFeed(EventFeedProperties properties, MeterRegistry meterRegistry) {
+        return new ChangeFeed(properties, meterRegistry);
+    }
+}
@@ -0,0 +1,39 @@
+package ca.purpleowl.examples.swagger.config;
+
+import ca.purpleowl.examples.swagger.jpa.changes.ChangeSequenceAllocator;
+import ca.purpleowl.examples.swagger.jpa.changes.CommittedChangeSequences;
+import ca.purpleowl.examples.swagger.service.ProgrammerService;
+import ca.purpleowl.examples.swagger.service.TeamService;
+import ca.purpleowl.examples.swagger.service.readmodel.ReadModel;
+import ca.purpleowl.examples.swagger.service.readmodel.ReadModelProperties;
+import ca.purpleowl.examples.swagger.service.readmodel.ReadModelSnapshot;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Paths;
+
+/**
+ * The in-memory read model behind the GET endpoints.  Only there when purpleowl.read-model.enabled is set.
+ */
+@Configuration
+@ConditionalOnProperty(name = "purpleowl.read-model.enabled", havingValue = "true")
+@EnableConfigurationProperties(ReadModelProperties.class)
+public class ReadModelConfig {
+
+    @Bean
+    public ReadModel readModel(TeamService teamService,
+                               ProgrammerService programmerService,
+                               ChangeSequenceAllocator changeSequenceAllocator,
+                               CommittedChangeSequences committedChangeSequences,
+                               ReadModelProperties properties,
+                               MeterRegistry meterRegistry) {
+        ReadModelSnapshot snapshot = properties.getSnapshot().isEnabled()
+                ? new ReadModelSnapshot(Paths.get(properties.getSnapshot().getPath()))
+                : null;
+        return new ReadModel(teamService, programmerService, changeSequenceAllocator, committedChangeSequences, snapshot,
+                             properties, meterRegistry);
+    }
+}
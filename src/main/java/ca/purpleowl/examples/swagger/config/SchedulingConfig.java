@@ -0,0 +1,13 @@
+package ca.purpleowl.examples.swagger.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Background housekeeping (replication stand-ins, pool tuning and the like) is driven by Scheduled methods, which need
+ * this switched on somewhere.  Here seemed as good a place as any.
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
@@ -0,0 +1,107 @@
+package ca.purpleowl.examples.swagger.config;
+
+import ca.purpleowl.examples.swagger.jpa.datasource.ShardRouter;
+import ca.purpleowl.examples.swagger.jpa.datasource.ShardRoutingDataSource;
+import ca.purpleowl.examples.swagger.jpa.datasource.ShardSchemaCopier;
+import ca.purpleowl.examples.swagger.jpa.datasource.ShardedDataSources;
+import ca.purpleowl.examples.swagger.jpa.datasource.ShardingProperties;
+import ca.purpleowl.examples.swagger.jpa.entity.AbstractEntity;
+import ca.purpleowl.examples.swagger.jpa.pool.PoolUsageMetricsTrackerFactory;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Spreads Teams and their Programmers over several databases when purpleowl.datasource.sharding.enabled is set; see
+ * application-sharded.yml for a local setup using three H2 databases, and ShardRouter for how things are placed.
+ *
+ * The ShardRouter is always there, since the services go through it either way.  Without sharding it has a single
+ * shard and simply runs everything it's given as is.
+ */
+@Configuration
+@EnableConfigurationProperties(ShardingProperties.class)
+public class ShardingConfig {
+    private static final String ENABLED = "purpleowl.datasource.sharding.enabled";
+
+    @Bean
+    public ShardRouter shardRouter(ShardingProperties properties, PlatformTransactionManager transactionManager) {
+        int shards = properties.isEnabled() ? 1 + properties.getShards().size() : 1;
+        return new ShardRouter(shards, AbstractEntity.ID_BLOCK_SIZE, properties.getScatterThreads(), transactionManager);
+    }
+
+    /**
+     * Shard 0 is configured exactly as the regular DataSource would be, through spring.datasource (including any
+     * spring.datasource.hikari settings).  The rest come from purpleowl.datasource.sharding.shards.  As in
+     * DataSourceRoutingConfig, none of these pools are beans, so they're named and instrumented here.
+     */
+    @Bean
+    @ConditionalOnProperty(name = ENABLED, havingValue = "true")
+    public ShardedDataSources shardedDataSources(DataSourceProperties dataSourceProperties,
+                                                 ShardingProperties properties,
+                                                 Environment environment,
+                                                 PoolUsageMetricsTrackerFactory poolUsageMetricsTrackerFactory) {
+        if(Binder.get(environment).bind("purpleowl.datasource.routing.enabled", Boolean.class).orElse(false)) {
+            throw new IllegalStateException("sharding and read/write routing can't be switched on together");
+        }
+
+        List<DataSource> shards = new ArrayList<>();
+
+        HikariDataSource first = dataSourceProperties.initializeDataSourceBuilder()
+                                                     .type(HikariDataSource.class)
+                                                     .build();
+        Binder.get(environment).bind("spring.datasource.hikari", Bindable.ofInstance(first));
+        shards.add(first);
+
+        for(ShardingProperties.Shard shard : properties.getShards()) {
+            shards.add(DataSourceBuilder.create()
+                                        .type(HikariDataSource.class)
+                                        .driverClassName(shard.getDriverClassName())
+                                        .url(shard.getUrl())
+                                        .username(shard.getUsername())
+                                        .password(shard.getPassword())
+                                        .build());
+        }
+
+        for(int i = 0; i < shards.size(); i++) {
+            HikariDataSource pool = (HikariDataSource) shards.get(i);
+            pool.setPoolName("shard-" + i);
+            pool.setMetricsTrackerFactory(poolUsageMetricsTrackerFactory);
+        }
+
+        return new ShardedDataSources(shards);
+    }
+
+    /**
+     * This is the DataSource everything else (JPA in particular) sees; see ShardRoutingDataSource for the lazy proxy.
+     */
+    @Bean
+    @Primary
+    @ConditionalOnProperty(name = ENABLED, havingValue = "true")
+    public DataSource dataSource(ShardedDataSources shardedDataSources) {
+        ShardRoutingDataSource routingDataSource = new ShardRoutingDataSource(shardedDataSources.getShards());
+        routingDataSource.afterPropertiesSet();
+
+        return new LazyConnectionDataSourceProxy(routingDataSource);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = ENABLED, havingValue = "true")
+    public static ShardSchemaCopier shardSchemaCopier(ObjectProvider<ShardedDataSources> shardedDataSources) {
+        return new ShardSchemaCopier(shardedDataSources, AbstractEntity.ID_BLOCK_SIZE);
+    }
+}
@@ -0,0 +1,54 @@
+package ca.purpleowl.examples.swagger.config;
+
+import ca.purpleowl.examples.swagger.rest.server.KeepAliveLimitHandler;
+import ca.purpleowl.examples.swagger.rest.server.UndertowTuningProperties;
+import io.undertow.UndertowOptions;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.web.embedded.undertow.UndertowServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Applies the purpleowl.undertow properties to the embedded server.  This runs after Spring Boot's own customizer, so
+ * anything set here wins over the equivalent server.undertow property.
+ */
+@Configuration
+@EnableConfigurationProperties(UndertowTuningProperties.class)
+public class UndertowConfig {
+
+    @Bean
+    public WebServerFactoryCustomizer<UndertowServletWebServerFactory> undertowTuning(UndertowTuningProperties properties) {
+        return factory -> {
+            if(properties.getIoThreads() != null) {
+                factory.setIoThreads(properties.getIoThreads());
+            }
+            if(properties.getWorkerThreads() != null) {
+                factory.setWorkerThreads(properties.getWorkerThreads());
+            }
+            if(properties.getBufferSize() != null) {
+                factory.setBufferSize(properties.getBufferSize());
+            }
+            if(properties.getDirectBuffers() != null) {
+                factory.setUseDirectBuffers(properties.getDirectBuffers());
+            }
+
+            UndertowTuningProperties.Http2 http2 = properties.getHttp2();
+            UndertowTuningProperties.KeepAlive keepAlive = properties.getKeepAlive();
+
+            factory.addBuilderCustomizers(builder -> {
+                builder.setServerOption(UndertowOptions.ENABLE_HTTP2, http2.isEnabled());
+                if(http2.getMaxConcurrentStreams() != null) {
+                    builder.setServerOption(UndertowOptions.HTTP2_SETTINGS_MAX_CONCURRENT_STREAMS,
+                                            http2.getMaxConcurrentStreams());
+                }
+                builder.setServerOption(UndertowOptions.NO_REQUEST_TIMEOUT, (int) keepAlive.getIdleTimeout().toMillis());
+            });
+
+            if(keepAlive.getMaxRequestsPerConnection() > 0) {
+                factory.addDeploymentInfoCustomizers(deploymentInfo -> deploymentInfo.addInitialHandlerChainWrapper(
+                        next -> new KeepAliveLimitHandler(next, keepAlive.getMaxRequestsPerConnection())));
+            }
+        };
+    }
+}
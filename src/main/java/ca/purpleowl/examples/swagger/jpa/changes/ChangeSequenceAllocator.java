@@ -0,0 +1,111 @@
+package ca.purpleowl.examples.swagger.jpa.changes;
+
+import lombok.extern.java.Log;
+
+import java.util.TreeSet;
+import java.util.function.LongSupplier;
+
+/**
+ * Hands out change sequence numbers, and keeps track of which ones might still be rolled back or committed.
+ *
+ * Handing out increasing numbers is the easy part.  The catch is that transactions don't commit in the order they got
+ * their numbers: if one transaction takes 5 and another takes 6 and commits first, a client syncing in between would
+ * see 6, carry on from there, and never find out about 5.  So every number stays "in flight" until its transaction
+ * finishes, and readers are only ever allowed to look up to safeHighWaterMark(), below the oldest number still in
+ * flight.
+ *
+ * The numbers themselves come from the change_sequences sequence in the database, BLOCK_SIZE at a time, the way
+ * AbstractEntity's IDs come from entity_ids (see ChangeSequenceBlocks).  So a restart carries on above every number
+ * handed out before it, committed or not, and two nodes sharing a database never hand out the same number.  Within a
+ * block, numbers are handed out in memory.
+ *
+ * The in-flight tracking is still only in memory, though.  A node can't see another node's transactions, so with more
+ * than one node writing, a client could be told it's up to date past a number another node has yet to commit.
+ */
+@Log
+public class ChangeSequenceAllocator {
+    /**
+     * How many numbers each trip to change_sequences reserves; it has to be what the sequence goes up by.
+     */
+    public static final int BLOCK_SIZE = 1000;
+
+    private final TreeSet<Long> inFlight = new TreeSet<>();
+    private final LongSupplier blocks;
+    private long last;
+    //One past the end of the numbers reserved so far.
+    private long end;
+
+    /**
+     * @param blocks - Reserves the next block from the database, returning its first number.
+     */
+    public ChangeSequenceAllocator(LongSupplier blocks) {
+        this.blocks = blocks;
+    }
+
+    /**
+     * Makes sure we never report anything below what's already in the database as unsafe to read.  The database's
+     * sequence has to have been moved past highest already (see ChangeSequenceBlocks.prepare()).
+     */
+    public synchronized void seed(long highest) {
+        last = Math.max(last, highest);
+    }
+
+    public synchronized long allocate() {
+        reserve(1);
+        last++;
+        inFlight.add(last);
+        return last;
+    }
+
+    /**
+     * Hands out a block of numbers at once, for bulk updates that number their rows themselves.  The whole block is in
+     * flight until it's released, which is done by releasing the first number in it.
+     *
+     * @param size - How many numbers are needed.
+     * @return The first number in the block.
+     */
+    public synchronized long allocateRange(long size) {
+        reserve(size);
+        long first = last + 1;
+        last += size;
+        inFlight.add(first);
+        return first;
+    }
+
+    /**
+     * Called once the transaction which allocated the number has committed or rolled back.
+     */
+    public synchronized void release(long sequence) {
+        inFlight.remove(sequence);
+    }
+
+    /**
+     * @return the highest sequence number for which every change at or below it has either committed or rolled back.
+     */
+    public synchronized long safeHighWaterMark() {
+        return inFlight.isEmpty() ? last : inFlight.first() - 1;
+    }
+
+    /**
+     * Makes sure the next count numbers after last are ours.  Blocks usually follow on from each other, but if another
+     * node got in between, whatever's left of ours is skipped so that ranges stay unbroken.
+     *
+     * This goes to the database with the lock held.  It's once per BLOCK_SIZE numbers, and anyone else waiting would
+     * need the new block anyway.
+     */
+    private void reserve(long count) {
+        while(end - last - 1 < count) {
+            long first = blocks.getAsLong();
+
+            if(first == end) {
+                end += BLOCK_SIZE;
+            } else if(first > last) {
+                last = first - 1;
+                end = first + BLOCK_SIZE;
+            } else {
+                throw new IllegalStateException("change_sequences handed out " + first + ", but we're already at " + last);
+            }
+            log.fine(() -> "reserved change sequences up to " + (end - 1));
+        }
+    }
+}
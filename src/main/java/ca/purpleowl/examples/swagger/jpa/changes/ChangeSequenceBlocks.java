@@ -0,0 +1,56 @@
+package ca.purpleowl.examples.swagger.jpa.changes;
+
+import lombok.extern.java.Log;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.util.function.LongSupplier;
+
+/**
+ * Reserves blocks of change sequence numbers for the ChangeSequenceAllocator from the change_sequences sequence.
+ *
+ * Inside a transaction, this uses the transaction's own connection, so stamping an entity in the middle of a flush
+ * never has to wait on the pool for a second one.  When sharded, every shard's changes are numbered from shard 0's
+ * sequence, which needs a connection of its own; see ChangeTrackingConfig.
+ *
+ * The persistent profile's schema creates the sequence (see the migrations in db/migration).  Hibernate knows nothing
+ * about it, so when Hibernate builds the schema, prepare() creates it instead.
+ */
+@Log
+public class ChangeSequenceBlocks implements LongSupplier {
+    private final JdbcTemplate jdbcTemplate;
+
+    public ChangeSequenceBlocks(DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    @Override
+    public long getAsLong() {
+        return jdbcTemplate.queryForObject("SELECT NEXT VALUE FOR change_sequences", Long.class);
+    }
+
+    /**
+     * Creates the sequence if it isn't there, checks it goes up by a whole block at a time, and moves it past the
+     * highest change sequence already in the database.  A database that had rows written around the sequence (or from
+     * before it existed) carries on above them.
+     */
+    public void prepare(long highest) {
+        jdbcTemplate.execute("CREATE SEQUENCE IF NOT EXISTS change_sequences START WITH 1 INCREMENT BY "
+                             + ChangeSequenceAllocator.BLOCK_SIZE);
+
+        //H2's CURRENT_VALUE is the value last handed out, so the next one is an increment above it.
+        long[] sequence = jdbcTemplate.queryForObject(
+                "SELECT CURRENT_VALUE, INCREMENT FROM INFORMATION_SCHEMA.SEQUENCES WHERE SEQUENCE_NAME = 'CHANGE_SEQUENCES'",
+                (resultSet, row) -> new long[]{resultSet.getLong(1), resultSet.getLong(2)});
+
+        if(sequence[1] != ChangeSequenceAllocator.BLOCK_SIZE) {
+            throw new IllegalStateException("change_sequences goes up by " + sequence[1] + ", not by "
+                                            + ChangeSequenceAllocator.BLOCK_SIZE);
+        }
+
+        if(sequence[0] + sequence[1] <= highest) {
+            log.info("moving change_sequences on past " + highest);
+            jdbcTemplate.execute("ALTER SEQUENCE change_sequences RESTART WITH " + (highest + 1));
+        }
+    }
+}
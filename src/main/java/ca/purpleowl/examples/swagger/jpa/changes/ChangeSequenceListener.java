@@ -0,0 +1,46 @@
+package ca.purpleowl.examples.swagger.jpa.changes;
+
+import ca.purpleowl.examples.swagger.jpa.entity.AbstractEntity;
+import lombok.extern.java.Log;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.persistence.PrePersist;
+import javax.persistence.PreUpdate;
+
+/**
+ * Stamps every entity with a fresh change sequence number whenever it's inserted or updated.  Hibernate gets this from
+ * Spring, which is how it ends up with the allocator.
+ *
+ * The number is released back to the allocator when the surrounding transaction completes, one way or the other.
+ */
+@Log
+public class ChangeSequenceListener {
+    private final ChangeSequenceAllocator allocator;
+
+    @Autowired
+    public ChangeSequenceListener(ChangeSequenceAllocator allocator) {
+        this.allocator = allocator;
+    }
+
+    @PrePersist
+    @PreUpdate
+    public void stamp(AbstractEntity entity) {
+        long sequence = allocator.allocate();
+        entity.setChangeSequence(sequence);
+
+        if(TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    allocator.release(sequence);
+                }
+            });
+        } else {
+            //Nothing to wait for, so it's as good as committed already.
+            log.fine("change sequence allocated outside of a transaction");
+            allocator.release(sequence);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package ca.purpleowl.examples.swagger.jpa.changes;
+
+import ca.purpleowl.examples.swagger.jpa.datasource.ShardRouter;
+import ca.purpleowl.examples.swagger.jpa.repository.ProgrammerRepository;
+import ca.purpleowl.examples.swagger.jpa.repository.TeamRepository;
+import org.springframework.beans.factory.ObjectProvider;
+
+/**
+ * Looks up the highest change sequence that has actually made it into the database.  That can be below numbers the
+ * ChangeSequenceAllocator has handed out, when the transactions that had them rolled back.
+ *
+ * The repositories are looked up lazily because Hibernate needs the allocator before they can exist.  With more than
+ * one shard, it's the furthest any of them got; every shard's changes are numbered from the one sequence.
+ */
+public class CommittedChangeSequences {
+    private final ObjectProvider<ProgrammerRepository> programmerRepository;
+    private final ObjectProvider<TeamRepository> teamRepository;
+    private final ObjectProvider<ShardRouter> shardRouter;
+
+    public CommittedChangeSequences(ObjectProvider<ProgrammerRepository> programmerRepository,
+                                    ObjectProvider<TeamRepository> teamRepository,
+                                    ObjectProvider<ShardRouter> shardRouter) {
+        this.programmerRepository = programmerRepository;
+        this.teamRepository = teamRepository;
+        this.shardRouter = shardRouter;
+    }
+
+    public long findHighest() {
+        //Slices of the application (repository tests, say) may not have a ShardRouter.
+        ShardRouter router = shardRouter.getIfAvailable();
+
+        if(router == null) {
+            return findHighestHere();
+        }
+        return router.onEveryShard(false, this::findHighestHere).stream().mapToLong(Long::longValue).max().orElse(0);
+    }
+
+    private long findHighestHere() {
+        return Math.max(programmerRepository.getObject().findMaxChangeSequence(),
+                        teamRepository.getObject().findMaxChangeSequence());
+    }
+}
@@ -0,0 +1,47 @@
+package ca.purpleowl.examples.swagger.jpa.datasource;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Settings for sending read-only work to replicas.  The primary is still configured the usual way, through
+ * spring.datasource, and everything here is ignored unless "enabled" is switched on.
+ */
+@Data
+@ConfigurationProperties("purpleowl.datasource.routing")
+public class DataSourceRoutingProperties {
+    private boolean enabled = false;
+
+    /**
+     * How long a client keeps reading from the primary after it has written something.  This should comfortably cover
+     * the replication lag, otherwise a client may save a Team and then not be able to find it.
+     */
+    private Duration stickyWindow = Duration.ofSeconds(5);
+
+    private List<Replica> replicas = new ArrayList<>();
+
+    private ReplicationStandIn replicationStandIn = new ReplicationStandIn();
+
+    @Data
+    public static class Replica {
+        private String url;
+        private String username = "sa";
+        private String password = "";
+        private String driverClassName = "org.h2.Driver";
+    }
+
+    /**
+     * There's no real replication between embedded H2 databases, so for local testing we fake it by copying the
+     * primary to every replica on a fixed delay.  The delay doubles as a throttle, which gives us a realistic amount
+     * of replication lag to test read-your-writes behaviour against.
+     */
+    @Data
+    public static class ReplicationStandIn {
+        private boolean enabled = false;
+        private Duration lag = Duration.ofSeconds(1);
+    }
+}
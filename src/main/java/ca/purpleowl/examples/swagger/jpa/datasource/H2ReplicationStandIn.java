@@ -0,0 +1,144 @@
+package ca.purpleowl.examples.swagger.jpa.datasource;
+
+import lombok.extern.java.Log;
+import org.springframework.scheduling.annotation.SchedulingConfigurer;
+import org.springframework.scheduling.config.ScheduledTaskRegistrar;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+
+/**
+ * A poor man's replication for embedded H2 databases, so that read/write routing can be exercised locally.  Every
+ * "lag" interval the primary is copied wholesale into each replica.  That's obviously not something you'd do with a
+ * real data set, but it's cheap for a handful of rows and gives us honest replication lag to test against.
+ *
+ * The schema is copied across with H2's SCRIPT command whenever a replica is missing a table, and the data is then
+ * replaced table by table inside a single transaction so readers of the replica never see a half-copied state.
+ */
+@Log
+public class H2ReplicationStandIn implements SchedulingConfigurer {
+    private static final String REPLICATE = "replicate";
+
+    private final DataSource primary;
+    private final List<DataSource> replicas;
+    private final Duration lag;
+
+    public H2ReplicationStandIn(DataSource primary, List<DataSource> replicas, Duration lag) {
+        this.primary = primary;
+        this.replicas = replicas;
+        this.lag = lag;
+    }
+
+    @Override
+    public void configureTasks(ScheduledTaskRegistrar taskRegistrar) {
+        taskRegistrar.addFixedDelayTask(this::replicate, lag.toMillis());
+    }
+
+    public void replicate() {
+        log.entering(H2ReplicationStandIn.class.getName(), REPLICATE);
+
+        for(DataSource replica : replicas) {
+            try(Connection source = primary.getConnection(); Connection target = replica.getConnection()) {
+                List<String> tables = listTables(source);
+
+                if(!listTables(target).containsAll(tables)) {
+                    copySchema(source, target);
+                }
+
+                copyData(source, target, tables);
+            } catch (SQLException e) {
+                //Most likely the schema hasn't been created yet.  We'll just try again next time around.
+                log.log(Level.WARNING, "replication to H2 replica failed", e);
+            }
+        }
+
+        log.exiting(H2ReplicationStandIn.class.getName(), REPLICATE);
+    }
+
+    private static List<String> listTables(Connection connection) throws SQLException {
+        List<String> tables = new ArrayList<>();
+
+        try(ResultSet resultSet = connection.getMetaData().getTables(null, "PUBLIC", "%", new String[]{"TABLE"})) {
+            while(resultSet.next()) {
+                tables.add(resultSet.getString("TABLE_NAME"));
+            }
+        }
+
+        return tables;
+    }
+
+    static void copySchema(Connection source, Connection target) throws SQLException {
+        log.info("copying schema from primary to H2 replica");
+        List<String> script = new ArrayList<>();
+
+        try(Statement statement = source.createStatement();
+            ResultSet resultSet = statement.executeQuery("SCRIPT NODATA NOPASSWORDS NOSETTINGS")) {
+            while(resultSet.next()) {
+                script.add(resultSet.getString(1));
+            }
+        }
+
+        try(Statement statement = target.createStatement()) {
+            statement.execute("DROP ALL OBJECTS");
+
+            for(String sql : script) {
+                //The primary's users are already on the replica... and SA can't be recreated while we're using it.
+                if(!sql.startsWith("CREATE USER")) {
+                    statement.execute(sql);
+                }
+            }
+        }
+    }
+
+    private static void copyData(Connection source, Connection target, List<String> tables) throws SQLException {
+        boolean autoCommit = target.getAutoCommit();
+        target.setAutoCommit(false);
+
+        try(Statement statement = target.createStatement()) {
+            statement.execute("SET REFERENTIAL_INTEGRITY FALSE");
+
+            for(String table : tables) {
+                statement.execute(String.format("DELETE FROM PUBLIC.\"%s\"", table));
+                copyRows(source, target, table);
+            }
+
+            target.commit();
+        } catch (SQLException e) {
+            target.rollback();
+            throw e;
+        } finally {
+            try(Statement statement = target.createStatement()) {
+                statement.execute("SET REFERENTIAL_INTEGRITY TRUE");
+            }
+            target.setAutoCommit(autoCommit);
+        }
+    }
+
+    private static void copyRows(Connection source, Connection target, String table) throws SQLException {
+        try(Statement select = source.createStatement();
+            ResultSet rows = select.executeQuery(String.format("SELECT * FROM PUBLIC.\"%s\"", table))) {
+            int columns = rows.getMetaData().getColumnCount();
+            String placeholders = String.join(", ", Collections.nCopies(columns, "?"));
+
+            try(PreparedStatement insert = target.prepareStatement(
+                    String.format("INSERT INTO PUBLIC.\"%s\" VALUES (%s)", table, placeholders))) {
+                while(rows.next()) {
+                    for(int i = 1; i <= columns; i++) {
+                        insert.setObject(i, rows.getObject(i));
+                    }
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+            }
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package ca.purpleowl.examples.swagger.jpa.datasource;
+
+import lombok.extern.java.Log;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Sends read-only transactions to one of the replicas and everything else to the primary.
+ *
+ * The decision is made when a connection is actually needed, so this MUST sit behind a LazyConnectionDataSourceProxy.
+ * Otherwise the transaction manager grabs a connection before it has marked the transaction as read-only and every
+ * single request ends up on the primary.
+ *
+ * Anything done outside of a transaction (schema creation, lazy loading in the view) goes to the primary as well,
+ * since we can't know whether it's going to write.
+ *
+ * Some reads can't be behind at all (the change feeds, the counts TeamStatistics keeps).  Those run read-only
+ * transactions inside readFromPrimary(), rather than read-write ones: a read-write transaction counts as a write, which
+ * would keep the client's other reads off the replicas (and out of request coalescing) for nothing.
+ */
+@Log
+public class ReadWriteRoutingDataSource extends AbstractRoutingDataSource {
+    static final String PRIMARY = "primary";
+    private static final String REPLICA_PREFIX = "replica-";
+    private static final ThreadLocal<Boolean> READ_FROM_PRIMARY = new ThreadLocal<>();
+
+    private final List<String> replicaKeys = new ArrayList<>();
+    private final ReadYourWritesTracker tracker;
+    private final AtomicInteger nextReplica = new AtomicInteger();
+
+    public ReadWriteRoutingDataSource(DataSource primary, List<DataSource> replicas, ReadYourWritesTracker tracker) {
+        this.tracker = tracker;
+
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+
+        for(int i = 0; i < replicas.size(); i++) {
+            String key = REPLICA_PREFIX + i;
+            replicaKeys.add(key);
+            targets.put(key, replicas.get(i));
+        }
+
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+        setLenientFallback(false);
+    }
+
+    /**
+     * Sends any read-only transaction the work starts (or is already in) to the primary, without counting it as a
+     * write.  This is only a hint for routing; the hint stays on the calling thread, and on anything but a routing
+     * DataSource it makes no difference at all.
+     */
+    public static <T> T readFromPrimary(Supplier<T> work) {
+        Boolean outer = READ_FROM_PRIMARY.get();
+        READ_FROM_PRIMARY.set(Boolean.TRUE);
+
+        try {
+            return work.get();
+        } finally {
+            if(outer == null) {
+                READ_FROM_PRIMARY.remove();
+            }
+        }
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if(TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            if(READ_FROM_PRIMARY.get() != null) {
+                log.finest("routing read-only transaction to primary, as asked");
+                return PRIMARY;
+            }
+
+            if(!replicaKeys.isEmpty() && !tracker.isSticky()) {
+                String key = replicaKeys.get(Math.floorMod(nextReplica.getAndIncrement(), replicaKeys.size()));
+                log.finest(String.format("routing read-only transaction to %s", key));
+                return key;
+            }
+
+            log.finest("routing read-only transaction to primary to keep the client's own writes visible");
+            return PRIMARY;
+        }
+
+        if(TransactionSynchronizationManager.isActualTransactionActive()) {
+            //We don't know if it actually writes anything, but assuming it does is the safe bet.  The replicas can only
+            //start catching up once it commits, so that's when the sticky window starts; a long transaction would use
+            //most of it up otherwise.
+            if(TransactionSynchronizationManager.isSynchronizationActive()) {
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                    @Override
+                    public void afterCommit() {
+                        tracker.recordWrite();
+                    }
+                });
+            } else {
+                tracker.recordWrite();
+            }
+        }
+
+        return PRIMARY;
+    }
+}
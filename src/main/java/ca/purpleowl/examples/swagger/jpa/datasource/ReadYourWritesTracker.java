@@ -0,0 +1,74 @@
+package ca.purpleowl.examples.swagger.jpa.datasource;
+
+import lombok.extern.java.Log;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers which clients have written recently so that their reads can be kept on the primary until the replicas
+ * have had a chance to catch up.  Without this, a client could save a Programmer and immediately get a 404 back when
+ * asking for it.
+ *
+ * The client for the current thread is bound by ClientIdentityFilter.  Work that isn't tied to a request (startup,
+ * scheduled jobs) shares a single anonymous client.
+ */
+@Log
+public class ReadYourWritesTracker {
+    private static final String ANONYMOUS_CLIENT = "";
+    private static final int PRUNE_THRESHOLD = 10_000;
+    private static final ThreadLocal<String> CURRENT_CLIENT = new ThreadLocal<>();
+
+    private final Map<String, Long> lastWrites = new ConcurrentHashMap<>();
+    private final long stickyWindowMillis;
+    private final Clock clock;
+
+    public ReadYourWritesTracker(Duration stickyWindow) {
+        this(stickyWindow, Clock.systemUTC());
+    }
+
+    ReadYourWritesTracker(Duration stickyWindow, Clock clock) {
+        this.stickyWindowMillis = stickyWindow.toMillis();
+        this.clock = clock;
+    }
+
+    public static void bindClient(String client) {
+        CURRENT_CLIENT.set(client);
+    }
+
+    public static void clearClient() {
+        CURRENT_CLIENT.remove();
+    }
+
+    /**
+     * Records that the current client has just done something that the replicas won't know about yet.
+     */
+    public void recordWrite() {
+        lastWrites.put(currentClient(), clock.millis());
+
+        if(lastWrites.size() > PRUNE_THRESHOLD) {
+            prune();
+        }
+    }
+
+    /**
+     * @return true if the current client wrote something recently enough that it should keep reading from the primary.
+     */
+    public boolean isSticky() {
+        Long lastWrite = lastWrites.get(currentClient());
+        return lastWrite != null && clock.millis() - lastWrite < stickyWindowMillis;
+    }
+
+    private void prune() {
+        long cutoff = clock.millis() - stickyWindowMillis;
+        lastWrites.values().removeIf(lastWrite -> lastWrite < cutoff);
+        log.fine(String.format("pruned read-your-writes tracker down to %d clients", lastWrites.size()));
+    }
+
+    private static String currentClient() {
+        String client = CURRENT_CLIENT.get();
+        return client == null ? ANONYMOUS_CLIENT : client;
+    }
+}
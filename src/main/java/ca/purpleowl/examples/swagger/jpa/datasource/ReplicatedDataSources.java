@@ -0,0 +1,46 @@
+package ca.purpleowl.examples.swagger.jpa.datasource;
+
+import org.springframework.beans.factory.DisposableBean;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Holds the primary and replica connection pools.  This deliberately isn't a DataSource itself: Spring Boot gets
+ * itself into a circular mess if more than one DataSource bean is being built at once, so the pools live here and only
+ * the routed DataSource is exposed as a bean.
+ */
+public class ReplicatedDataSources implements DisposableBean {
+    private final DataSource primary;
+    private final List<DataSource> replicas;
+
+    public ReplicatedDataSources(DataSource primary, List<DataSource> replicas) {
+        this.primary = primary;
+        this.replicas = Collections.unmodifiableList(new ArrayList<>(replicas));
+    }
+
+    public DataSource getPrimary() {
+        return primary;
+    }
+
+    public List<DataSource> getReplicas() {
+        return replicas;
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        close(primary);
+
+        for(DataSource replica : replicas) {
+            close(replica);
+        }
+    }
+
+    private static void close(DataSource dataSource) throws Exception {
+        if(dataSource instanceof AutoCloseable) {
+            ((AutoCloseable) dataSource).close();
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package ca.purpleowl.examples.swagger.jpa.datasource;
+
+import java.util.function.Supplier;
+
+/**
+ * Which shard the current thread is working against, for ShardRoutingDataSource and the BlockIdOptimizer.  Nothing
+ * outside of ShardRouter should need to set this.
+ */
+public final class ShardContext {
+    private static final ThreadLocal<Integer> CURRENT = new ThreadLocal<>();
+
+    private ShardContext() {}
+
+    /**
+     * @return The shard the current thread is working against, or null if it hasn't said (which means shard 0, the
+     *         spring.datasource one, as far as connections go).
+     */
+    public static Integer current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Runs work against the given shard, putting back whatever was there before afterward.
+     */
+    static <T> T callOn(int shard, Supplier<T> work) {
+        Integer previous = CURRENT.get();
+        CURRENT.set(shard);
+
+        try {
+            return work.get();
+        } finally {
+            if(previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package ca.purpleowl.examples.swagger.jpa.datasource;
+
+import lombok.extern.java.Log;
+import org.springframework.beans.BeanWrapperImpl;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.data.domain.Sort;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+/**
+ * Decides which shard things live on, and runs work against one shard or all of them.
+ *
+ * A Team lives on the shard its ID says (see shardOf), and its Programmers live with it, so everything about one Team
+ * is on one shard.  A Programmer without a Team stays wherever it was created.  IDs are handed out in blocks, and each
+ * shard's entity_ids sequence only ever hands out every Nth block (see ShardSchemaCopier), so an ID says which shard
+ * its entity was created on without anyone having to look it up.  Programmers can move shards when they change Teams,
+ * so for them that's only a good first guess.
+ *
+ * Work on a shard gets a transaction of its own, whatever the caller already has going: a transaction can only talk to
+ * one database, and the services' transactions are started before anybody knows which one that is.  That also means
+ * nothing spanning several services' calls can be rolled back as one, which is why the BatchDispatcher won't take
+ * atomic batches while sharded.  With only the one
+ * shard, all of this gets out of the way: work runs directly, in the caller's transaction, exactly as it would
+ * without sharding.
+ */
+@Log
+public class ShardRouter implements DisposableBean {
+    private final int shards;
+    private final int idBlockSize;
+    private final TransactionTemplate readOnly;
+    private final TransactionTemplate readWrite;
+    private final ExecutorService scatter;
+    private final AtomicInteger nextShard = new AtomicInteger();
+
+    /**
+     * @param shards - How many shards there are, including shard 0.
+     * @param idBlockSize - How many IDs the BlockIdOptimizer reserves at a time.
+     * @param scatterThreads - Threads shared by every request for running work on more than one shard at once.  The
+     *                         calling thread looks after one shard itself.
+     */
+    public ShardRouter(int shards, int idBlockSize, int scatterThreads, PlatformTransactionManager transactionManager) {
+        if(shards < 1) {
+            throw new IllegalArgumentException("there has to be at least one shard, not " + shards);
+        }
+
+        this.shards = shards;
+        this.idBlockSize = idBlockSize;
+
+        this.readOnly = new TransactionTemplate(transactionManager);
+        this.readOnly.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.readOnly.setReadOnly(true);
+        this.readWrite = new TransactionTemplate(transactionManager);
+        this.readWrite.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+        if(shards > 1) {
+            CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("shard-scatter-");
+            threadFactory.setDaemon(true);
+            this.scatter = Executors.newFixedThreadPool(scatterThreads, threadFactory);
+        } else {
+            this.scatter = null;
+        }
+    }
+
+    public int count() {
+        return shards;
+    }
+
+    public boolean isSharded() {
+        return shards > 1;
+    }
+
+    /**
+     * @return The shard the entity with this ID was created on.  For a Team, that's where it lives.
+     */
+    public int shardOf(long id) {
+        return (int) Math.floorMod((id - 1) / idBlockSize, (long) shards);
+    }
+
+    /**
+     * @return The shard to create the next new Team (or Team-less Programmer) on.  They're dealt out in turn.
+     */
+    public int shardForNew() {
+        return Math.floorMod(nextShard.getAndIncrement(), shards);
+    }
+
+    /**
+     * Runs work against one shard, in a transaction of its own.
+     */
+    public <T> T onShard(int shard, boolean readOnly, Supplier<T> work) {
+        if(!isSharded()) {
+            return work.get();
+        }
+
+        TransactionTemplate template = readOnly ? this.readOnly : this.readWrite;
+        return ShardContext.callOn(shard, () -> template.execute(status -> work.get()));
+    }
+
+    /**
+     * Runs work against every shard at once, each in a transaction of its own.
+     *
+     * @return What the work came back with on each shard, in shard order.
+     */
+    public <T> List<T> onEveryShard(boolean readOnly, Supplier<T> work) {
+        if(!isSharded()) {
+            return Collections.singletonList(work.get());
+        }
+
+        return scatter(0, -1, readOnly, shard -> work.get());
+    }
+
+    /**
+     * Finds an entity that could be on any shard: on the shard its ID points to first, and if it's not there, on all
+     * the others at once.  Since the lookup only finds anything where the entity actually is, it's free to change it
+     * as well, as long as it isn't read-only.
+     *
+     * @param lookup - Given the shard it's running against, returns what it found there, or null.
+     * @return Whatever the lookup found, or null if it found nothing anywhere.
+     */
+    public <T> T findOnAnyShard(long id, boolean readOnly, IntFunction<T> lookup) {
+        if(!isSharded()) {
+            return lookup.apply(0);
+        }
+
+        int hint = shardOf(id);
+        T found = onShard(hint, readOnly, () -> lookup.apply(hint));
+        if(found != null) {
+            return found;
+        }
+
+        log.fine(() -> "entity " + id + " has moved off shard " + hint + ", looking everywhere else");
+        for(T elsewhere : scatter(hint + 1, hint, readOnly, lookup)) {
+            if(elsewhere != null) {
+                return elsewhere;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Merges lists that are each already in order into one list in the same order, a k-way merge.
+     */
+    public static <T> List<T> merge(List<List<T>> sorted, Comparator<? super T> order) {
+        if(sorted.size() == 1) {
+            return sorted.get(0);
+        }
+
+        PriorityQueue<Cursor<T>> heads = new PriorityQueue<>((a, b) -> order.compare(a.head(), b.head()));
+        int total = 0;
+        for(List<T> list : sorted) {
+            total += list.size();
+            if(!list.isEmpty()) {
+                heads.add(new Cursor<>(list));
+            }
+        }
+
+        List<T> merged = new ArrayList<>(total);
+        while(!heads.isEmpty()) {
+            Cursor<T> cursor = heads.poll();
+            merged.add(cursor.head());
+
+            if(cursor.advance()) {
+                heads.add(cursor);
+            }
+        }
+
+        return merged;
+    }
+
+    /**
+     * The order the database puts things in for a Sort, for merging results from several shards.  As with H2, nulls
+     * count as lower than anything else.  Ties are left alone; the database doesn't promise anything about them either.
+     */
+    public static <T> Comparator<T> comparing(Sort sort) {
+        Comparator<T> comparator = (a, b) -> 0;
+
+        for(Sort.Order order : sort) {
+            Comparator<Object> values = Comparator.nullsFirst(order.isIgnoreCase() ? ShardRouter::compareIgnoringCase
+                                                                                   : ShardRouter::compareNaturally);
+            Comparator<T> byProperty = Comparator.comparing(item -> new BeanWrapperImpl(item).getPropertyValue(order.getProperty()),
+                                                            values);
+            comparator = comparator.thenComparing(order.isAscending() ? byProperty : byProperty.reversed());
+        }
+
+        return comparator;
+    }
+
+    @Override
+    public void destroy() {
+        if(scatter != null) {
+            scatter.shutdownNow();
+        }
+    }
+
+    /**
+     * Runs work against every shard but the skipped one (if any), the home shard on the calling thread and the rest on
+     * the scatter threads.  The skipped shard's result is null.
+     */
+    private <T> List<T> scatter(int home, int skip, boolean readOnly, IntFunction<T> work) {
+        int local = Math.floorMod(home, shards);
+        List<CompletableFuture<T>> futures = new ArrayList<>(Collections.nCopies(shards, null));
+
+        for(int shard = 0; shard < shards; shard++) {
+            int target = shard;
+            if(shard != local && shard != skip) {
+                futures.set(shard, CompletableFuture.supplyAsync(() -> onShard(target, readOnly, () -> work.apply(target)),
+                                                                 scatter));
+            }
+        }
+
+        List<T> results = new ArrayList<>(Collections.nCopies(shards, null));
+        if(local != skip) {
+            results.set(local, onShard(local, readOnly, () -> work.apply(local)));
+        }
+
+        try {
+            for(int shard = 0; shard < shards; shard++) {
+                if(futures.get(shard) != null) {
+                    results.set(shard, futures.get(shard).join());
+                }
+            }
+        } catch(CompletionException e) {
+            if(e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if(e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+
+        return results;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int compareNaturally(Object a, Object b) {
+        return ((Comparable<Object>) a).compareTo(b);
+    }
+
+    private static int compareIgnoringCase(Object a, Object b) {
+        if(a instanceof String && b instanceof String) {
+            return ((String) a).compareToIgnoreCase((String) b);
+        }
+        return compareNaturally(a, b);
+    }
+
+    private static final class Cursor<T> {
+        private final List<T> list;
+        private int position;
+
+        private Cursor(List<T> list) {
+            this.list = list;
+        }
+
+        private T head() {
+            return list.get(position);
+        }
+
+        private boolean advance() {
+            return ++position < list.size();
+        }
+    }
+}
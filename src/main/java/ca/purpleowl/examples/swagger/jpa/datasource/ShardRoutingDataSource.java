@@ -0,0 +1,39 @@
+package ca.purpleowl.examples.swagger.jpa.datasource;
+
+import lombok.extern.java.Log;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hands out connections to whichever shard the current thread is working against (see ShardContext), or to shard 0
+ * if it hasn't said.  Schema creation and the like go to shard 0 that way, and ShardSchemaCopier takes it from there.
+ *
+ * As with ReadWriteRoutingDataSource, this has to sit behind a LazyConnectionDataSourceProxy.  ShardRouter sets the
+ * shard before it starts a transaction, so it doesn't strictly need the delay, but the service-level transactions
+ * wrapped around ShardRouter's own never run a statement and shouldn't tie up a connection on shard 0 either.
+ */
+@Log
+public class ShardRoutingDataSource extends AbstractRoutingDataSource {
+    public ShardRoutingDataSource(List<DataSource> shards) {
+        Map<Object, Object> targets = new HashMap<>();
+
+        for(int i = 0; i < shards.size(); i++) {
+            targets.put(i, shards.get(i));
+        }
+
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(shards.get(0));
+        setLenientFallback(false);
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        Integer shard = ShardContext.current();
+        log.finest(() -> "routing connection to shard " + (shard == null ? 0 : shard));
+        return shard == null ? 0 : shard;
+    }
+}
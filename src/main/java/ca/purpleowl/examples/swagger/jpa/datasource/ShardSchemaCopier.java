@@ -0,0 +1,104 @@
+package ca.purpleowl.examples.swagger.jpa.datasource;
+
+import lombok.extern.java.Log;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+/**
+ * Hibernate only creates the schema once, on shard 0 (nobody has picked a shard while it's doing it).  Once the
+ * EntityManagerFactory is up, this copies that schema to every other shard, the same way H2ReplicationStandIn does
+ * for replicas, so it only works between H2 databases.
+ *
+ * It then sets up each shard's entity_ids sequence to hand out every Nth block of IDs, starting from the shard's own
+ * block: with three shards, shard 0 gets IDs 1-50, 151-200 and so on, and shard 1 gets 51-100, 201-250.  That's what
+ * lets ShardRouter.shardOf() work out where something was created from its ID alone.
+ *
+ * Shards that are already set up (a persistent database being restarted) are left exactly as they are.  Switching
+ * sharding on over a database that already has data in it isn't supported, and fails here rather than handing out IDs
+ * that are already taken.
+ */
+@Log
+public class ShardSchemaCopier implements BeanPostProcessor {
+    private final ObjectProvider<ShardedDataSources> shardedDataSources;
+    private final int idBlockSize;
+
+    public ShardSchemaCopier(ObjectProvider<ShardedDataSources> shardedDataSources, int idBlockSize) {
+        this.shardedDataSources = shardedDataSources;
+        this.idBlockSize = idBlockSize;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if(bean instanceof EntityManagerFactory) {
+            List<DataSource> shards = shardedDataSources.getObject().getShards();
+
+            try(Connection source = shards.get(0).getConnection()) {
+                stripeIds(source, 0, shards.size(), false);
+
+                for(int shard = 1; shard < shards.size(); shard++) {
+                    try(Connection target = shards.get(shard).getConnection()) {
+                        boolean copied = !isSetUp(target);
+                        if(copied) {
+                            log.info("copying schema from shard 0 to shard " + shard);
+                            H2ReplicationStandIn.copySchema(source, target);
+                        }
+                        stripeIds(target, shard, shards.size(), copied);
+                    }
+                }
+            } catch(SQLException e) {
+                throw new DataAccessResourceFailureException("couldn't set up the shards", e);
+            }
+        }
+
+        return bean;
+    }
+
+    /**
+     * @param copied - Whether the schema was only just copied here, in which case the sequence came along with shard
+     *                 0's (already striped) settings and has to be restarted from this shard's own block regardless.
+     */
+    private void stripeIds(Connection connection, int shard, int shards, boolean copied) throws SQLException {
+        long stride = (long) idBlockSize * shards;
+
+        if(!copied) {
+            try(Statement statement = connection.createStatement();
+                ResultSet resultSet = statement.executeQuery("SELECT INCREMENT FROM INFORMATION_SCHEMA.SEQUENCES " +
+                                                             "WHERE SEQUENCE_NAME = 'ENTITY_IDS'")) {
+                if(resultSet.next() && resultSet.getLong(1) == stride) {
+                    return;
+                }
+            }
+        }
+
+        if(hasData(connection)) {
+            throw new IllegalStateException("shard " + shard + " already has data that wasn't sharded this way");
+        }
+
+        try(Statement statement = connection.createStatement()) {
+            statement.execute("ALTER SEQUENCE entity_ids RESTART WITH " + (1 + (long) shard * idBlockSize)
+                              + " INCREMENT BY " + stride);
+        }
+    }
+
+    private static boolean isSetUp(Connection connection) throws SQLException {
+        try(ResultSet resultSet = connection.getMetaData().getTables(null, "PUBLIC", "TEAM", new String[]{"TABLE"})) {
+            return resultSet.next();
+        }
+    }
+
+    private static boolean hasData(Connection connection) throws SQLException {
+        try(Statement statement = connection.createStatement();
+            ResultSet resultSet = statement.executeQuery("SELECT (SELECT COUNT(*) FROM team) + (SELECT COUNT(*) FROM programmer)")) {
+            return resultSet.next() && resultSet.getLong(1) > 0;
+        }
+    }
+}
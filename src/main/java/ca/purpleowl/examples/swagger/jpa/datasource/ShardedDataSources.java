@@ -0,0 +1,33 @@
+package ca.purpleowl.examples.swagger.jpa.datasource;
+
+import org.springframework.beans.factory.DisposableBean;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Holds one connection pool per shard, shard 0 first.  Like ReplicatedDataSources, this isn't a DataSource itself;
+ * only the routed DataSource is exposed as a bean.
+ */
+public class ShardedDataSources implements DisposableBean {
+    private final List<DataSource> shards;
+
+    public ShardedDataSources(List<DataSource> shards) {
+        this.shards = Collections.unmodifiableList(new ArrayList<>(shards));
+    }
+
+    public List<DataSource> getShards() {
+        return shards;
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        for(DataSource shard : shards) {
+            if(shard instanceof AutoCloseable) {
+                ((AutoCloseable) shard).close();
+            }
+        }
+    }
+}
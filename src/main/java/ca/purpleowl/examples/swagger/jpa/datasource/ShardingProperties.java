@@ -0,0 +1,38 @@
+package ca.purpleowl.examples.swagger.jpa.datasource;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Settings for spreading Teams (and their Programmers) over several databases.  Shard 0 is configured the usual way,
+ * through spring.datasource; "shards" lists the rest.  Everything here is ignored unless "enabled" is switched on, and
+ * it can't be combined with purpleowl.datasource.routing.
+ */
+@Data
+@ConfigurationProperties("purpleowl.datasource.sharding")
+public class ShardingProperties {
+    private boolean enabled = false;
+
+    /**
+     * Every shard after shard 0.  Changing how many there are moves where IDs say their entities live, so this can't
+     * change once there's data.
+     */
+    private List<Shard> shards = new ArrayList<>();
+
+    /**
+     * Threads shared by every request for querying the shards at once.  Each request queries one shard on its own
+     * thread, so there's little point having more than (shards - 1) times the number of requests that do this at once.
+     */
+    private int scatterThreads = 8;
+
+    @Data
+    public static class Shard {
+        private String url;
+        private String username = "sa";
+        private String password = "";
+        private String driverClassName = "org.h2.Driver";
+    }
+}
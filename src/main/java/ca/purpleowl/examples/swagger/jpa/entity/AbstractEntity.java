@@ -1,21 +1,100 @@
 package ca.purpleowl.examples.swagger.jpa.entity;
 
-import lombok.Data;
+import ca.purpleowl.examples.swagger.jpa.changes.ChangeSequenceListener;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
 import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+import org.hibernate.proxy.HibernateProxyHelper;
 
+import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.EntityListeners;
 import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
 import javax.persistence.Inheritance;
 import javax.persistence.InheritanceType;
+import javax.persistence.Version;
 
-
-@Data
+/**
+ * Equality is by ID and type, not by field values.  That's what Hibernate means by "the same entity" anyway, and it
+ * means a hashCode() or equals() never has to look at (and possibly load) associations.  Lombok's generated versions
+ * walked Team.programmers and Programmer.team, so putting an entity in a Set could pull in a whole object graph.
+ *
+ * Entities that haven't been saved yet have no ID, so they're only equal to themselves.  hashCode() is the same for
+ * every entity of a type so that it doesn't change when an entity gets its ID on save, which would lose it from any
+ * HashSet it was already in.  Sets of entities end up as lists within each bucket, which is fine for the sizes we
+ * deal with.
+ *
+ * Both are final, and only use getId(), so that calling them on a lazy-loading proxy doesn't load it.
+ */
+@Getter
+@Setter
+@ToString
 @Entity
 @Inheritance(strategy = InheritanceType.TABLE_PER_CLASS)
+@EntityListeners(ChangeSequenceListener.class)
 public abstract class AbstractEntity {
+    /**
+     * How many IDs each trip to entity_ids reserves.  Sharding stripes the blocks across shards, so it needs to know
+     * this too; see ShardRouter.
+     */
+    public static final int ID_BLOCK_SIZE = 50;
+
+    /**
+     * IDs come from the entity_ids sequence (or a table of the same name, on databases without sequences) a block at a
+     * time, and are handed out in memory from there by the BlockIdOptimizer.  Every node reserves its own blocks, so
+     * more than one of us can share a database, and Programmers and Teams share the one sequence.
+     */
     @Id
-    @GeneratedValue(generator = "increment")
-    @GenericGenerator(name = "increment", strategy = "increment")
+    @GeneratedValue(generator = "entity-ids")
+    @GenericGenerator(name = "entity-ids",
+                      strategy = "enhanced-sequence",
+                      parameters = {
+                              @Parameter(name = SequenceStyleGenerator.SEQUENCE_PARAM, value = "entity_ids"),
+                              @Parameter(name = SequenceStyleGenerator.INCREMENT_PARAM, value = "" + ID_BLOCK_SIZE),
+                              @Parameter(name = SequenceStyleGenerator.OPT_PARAM,
+                                         value = "ca.purpleowl.examples.swagger.jpa.ids.BlockIdOptimizer")
+                      })
     protected Long id;
+
+    /**
+     * Goes up every time the entity is written, from one sequence shared by every entity.  It's what the /changes
+     * endpoints use to work out what has changed since a client last looked, so each concrete entity indexes it.
+     */
+    @Column(nullable = false)
+    protected Long changeSequence;
+
+    /**
+     * Optimistic locking.  Every update checks this hasn't moved since the entity was read (and bumps it), so two
+     * writers can't silently overwrite each other's changes.  Nobody has to take a lock to get that guarantee; the
+     * loser just finds out when it tries to commit.
+     */
+    @Version
+    protected Long version;
+
+    @Override
+    public final boolean equals(Object other) {
+        if(this == other) {
+            return true;
+        }
+
+        if(other == null || typeOf(this) != typeOf(other)) {
+            return false;
+        }
+
+        Long id = getId();
+        return id != null && id.equals(((AbstractEntity) other).getId());
+    }
+
+    @Override
+    public final int hashCode() {
+        return typeOf(this).hashCode();
+    }
+
+    private static Class typeOf(Object entity) {
+        return HibernateProxyHelper.getClassWithoutInitializingProxy(entity);
+    }
 }
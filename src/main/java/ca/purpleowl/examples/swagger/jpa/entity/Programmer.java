@@ -1,19 +1,33 @@
 package ca.purpleowl.examples.swagger.jpa.entity;
 
-import lombok.Data;
-import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+import org.hibernate.annotations.DynamicUpdate;
 
 import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.FetchType;
+import javax.persistence.Index;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
 import javax.persistence.Table;
 import java.time.LocalDate;
 
-@Data
-@Table
+@Getter
+@Setter
+@ToString(callSuper = true)
+//(teamId, name) covers listing a Team's Programmers in name order without a sort step, and dateHired covers the
+//hire-date filters on GET /programmer.
+@Table(indexes = {
+        @Index(name = "idx_programmer_change_sequence", columnList = "changeSequence"),
+        @Index(name = "idx_programmer_team_name", columnList = "teamId, name"),
+        @Index(name = "idx_programmer_date_hired", columnList = "dateHired")
+})
+//UPDATEs only set the columns that actually changed, so a PATCH of one field writes just that field (plus the version
+//and change sequence).  Bytecode enhancement tracks which fields are dirty, so working that out is cheap.
+@DynamicUpdate
 @Entity
-@EqualsAndHashCode(callSuper = true) //Some additional instructions are needed here.
 public class Programmer extends AbstractEntity {
     @Column
     private String name;
@@ -21,7 +35,10 @@ public class Programmer extends AbstractEntity {
     @Column
     private LocalDate dateHired;
 
-    @ManyToOne
+    //Only loaded when something asks for it.  The queries that need it fetch it up front (see ProgrammerRepository), and
+    //it's left out of toString() so that logging a Programmer never loads it.
+    @ToString.Exclude
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "teamId")
     private Team team;
 
@@ -1,22 +1,30 @@
 package ca.purpleowl.examples.swagger.jpa.entity;
 
-import lombok.Data;
-import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.Setter;
 import lombok.ToString;
+import org.hibernate.annotations.DynamicUpdate;
 
 import javax.persistence.CascadeType;
 import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.Index;
 import javax.persistence.OneToMany;
 import javax.persistence.Table;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 
-@Data
-@Table
+@Getter
+@Setter
+@ToString(callSuper = true)
+@Table(indexes = {
+        @Index(name = "idx_team_change_sequence", columnList = "changeSequence"),
+        @Index(name = "idx_team_last_stand_up", columnList = "lastStandUp")
+})
+//See Programmer.
+@DynamicUpdate
 @Entity
-@EqualsAndHashCode(callSuper = true)
 public class Team extends AbstractEntity {
     @Column
     private String name;
@@ -28,12 +36,18 @@ public class Team extends AbstractEntity {
     private LocalDateTime lastStandUp;
 
     //We exclude this from the generated toString because it will just cause us trouble.
+    //Who's on the Team is recorded on each Programmer (Programmer.team), not here, so this is just the other end of that
+    //link.  Joining a Team only writes the Programmer's row; nothing here has to be loaded or written back.
     @ToString.Exclude
-    @OneToMany(cascade = CascadeType.ALL)
+    @OneToMany(mappedBy = "team", cascade = CascadeType.ALL)
     private List<Programmer> programmers = new ArrayList<>();
 
     public Team() {}
 
+    /**
+     * Keeps both ends of the link in step, which is handy when building a new Team.  On a Team that's already saved,
+     * this loads every Programmer on it; all that really needs doing is programmer.setTeam(team).
+     */
     public void addProgrammer(Programmer programmer) {
         programmer.setTeam(this);
         this.programmers.add(programmer);
@@ -0,0 +1,120 @@
+package ca.purpleowl.examples.swagger.jpa.ids;
+
+import lombok.extern.java.Log;
+import ca.purpleowl.examples.swagger.jpa.datasource.ShardContext;
+import org.hibernate.id.IdentifierGeneratorHelper;
+import org.hibernate.id.IntegralDataTypeHolder;
+import org.hibernate.id.enhanced.AccessCallback;
+import org.hibernate.id.enhanced.Optimizer;
+
+import java.io.Serializable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands out IDs from blocks reserved in the database.
+ *
+ * Every value we get from the database (a sequence, or a row in a table if the database has no sequences) is the
+ * first ID of a block of incrementSize IDs which belongs to this JVM alone.  Other nodes get their own blocks from the
+ * same source, so nobody collides, and each node only goes to the database once per block.
+ *
+ * Within the block, handing out an ID is a single atomic increment; nobody waits on anybody.  Only the thread that
+ * finds the block used up takes a lock, to fetch the next one, and any threads that run out at the same moment wait
+ * for that one fetch rather than making their own.  Hibernate's pooled optimizers synchronize every single call, which
+ * is what this one is here to avoid.
+ *
+ * The values from the database are the low end of each block (like Hibernate's "pooled-lo"), so a sequence starting
+ * at 1 and going up by 50 gives 1-50, 51-100, and so on.  IDs left over in a block when the node shuts down are simply
+ * never used.
+ *
+ * When the databases are sharded, each shard's sequence hands out different blocks (see ShardSchemaCopier), and an ID's
+ * block says which shard it was made on.  So blocks are kept per shard, and an entity created on a shard always gets
+ * one of that shard's IDs.
+ *
+ * Hibernate creates these by class name (see the optimizer parameter on AbstractEntity's generator), through the
+ * public (Class, int) constructor.
+ */
+@Log
+public class BlockIdOptimizer implements Optimizer {
+    private final Class returnClass;
+    private final int incrementSize;
+
+    //Used whenever no shard has been picked, which is always the case without sharding.
+    private final Blocks unsharded = new Blocks();
+    private final ConcurrentMap<Integer, Blocks> sharded = new ConcurrentHashMap<>();
+
+    public BlockIdOptimizer(Class returnClass, int incrementSize) {
+        if(incrementSize < 1) {
+            throw new IllegalArgumentException("incrementSize must be at least 1, not " + incrementSize);
+        }
+
+        this.returnClass = returnClass;
+        this.incrementSize = incrementSize;
+    }
+
+    @Override
+    public Serializable generate(AccessCallback callback) {
+        Integer shard = ShardContext.current();
+        Blocks blocks = shard == null ? unsharded : sharded.computeIfAbsent(shard, key -> new Blocks());
+
+        while(true) {
+            Block current = blocks.block;
+            long id = current.next.getAndIncrement();
+
+            if(id < current.end) {
+                return IdentifierGeneratorHelper.getIntegralDataTypeHolder(returnClass).initialize(id).makeValue();
+            }
+
+            synchronized(blocks) {
+                //Somebody else may have refilled it while we were waiting, in which case we just go round again.
+                if(blocks.block == current) {
+                    long first = callback.getNextValue().makeValue().longValue();
+                    log.fine(() -> "Reserved IDs " + first + " to " + (first + incrementSize - 1));
+                    blocks.block = new Block(first, first + incrementSize);
+                }
+            }
+        }
+    }
+
+    @Override
+    public IntegralDataTypeHolder getLastSourceValue() {
+        return IdentifierGeneratorHelper.getIntegralDataTypeHolder(returnClass).initialize(unsharded.block.first);
+    }
+
+    @Override
+    public int getIncrementSize() {
+        return incrementSize;
+    }
+
+    /**
+     * The database has to move on by a whole block each time it's asked, not by one.
+     */
+    @Override
+    public boolean applyIncrementSizeToSourceValues() {
+        return true;
+    }
+
+    /**
+     * The block currently being handed out from one source of IDs.  Whoever refills it holds the lock on this.
+     */
+    private static final class Blocks {
+        private volatile Block block = new Block(0, 0);
+    }
+
+    /**
+     * IDs from first (inclusive) to end (exclusive).  next can run past end when several threads find the block used
+     * up at once; those values are never handed out.
+     */
+    private static final class Block {
+        private final long first;
+        private final long end;
+        private final AtomicLong next;
+
+        private Block(long first, long end) {
+            this.first = first;
+            this.end = end;
+            this.next = new AtomicLong(first);
+        }
+    }
+}
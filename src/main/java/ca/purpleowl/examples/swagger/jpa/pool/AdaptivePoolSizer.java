@@ -0,0 +1,117 @@
+package ca.purpleowl.examples.swagger.jpa.pool;
+
+import com.zaxxer.hikari.HikariConfigMXBean;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import lombok.extern.java.Log;
+import org.springframework.scheduling.annotation.SchedulingConfigurer;
+import org.springframework.scheduling.config.ScheduledTaskRegistrar;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Resizes the connection pools between the configured bounds based on what they've been doing since the last look.
+ *
+ * The idea is Little's law: the total time connections were held over an interval, divided by the length of the
+ * interval, is how many connections were busy on average.  That plus some headroom is the size we want.  If threads
+ * were left waiting for connections on top of that, the pool gets bumped up regardless.  Changes are limited to
+ * maxStep at a time so a single spike doesn't send the pool size all over the place.
+ */
+@Log
+public class AdaptivePoolSizer implements SchedulingConfigurer {
+    private static final String RESIZE = "resize";
+
+    private final List<HikariDataSource> pools;
+    private final PoolUsageMetricsTrackerFactory usage;
+    private final PoolSizingProperties properties;
+    private final LongSupplier nanoClock;
+    private final Map<String, PoolUsageMetricsTrackerFactory.PoolUsage.Snapshot> lastSnapshots = new HashMap<>();
+    private long lastTick;
+
+    public AdaptivePoolSizer(List<HikariDataSource> pools,
+                             PoolUsageMetricsTrackerFactory usage,
+                             PoolSizingProperties properties) {
+        this(pools, usage, properties, System::nanoTime);
+    }
+
+    AdaptivePoolSizer(List<HikariDataSource> pools,
+                      PoolUsageMetricsTrackerFactory usage,
+                      PoolSizingProperties properties,
+                      LongSupplier nanoClock) {
+        this.pools = pools;
+        this.usage = usage;
+        this.properties = properties;
+        this.nanoClock = nanoClock;
+        this.lastTick = nanoClock.getAsLong();
+    }
+
+    @Override
+    public void configureTasks(ScheduledTaskRegistrar taskRegistrar) {
+        taskRegistrar.addFixedDelayTask(this::resize, properties.getInterval().toMillis());
+    }
+
+    public synchronized void resize() {
+        log.entering(AdaptivePoolSizer.class.getName(), RESIZE);
+
+        long now = nanoClock.getAsLong();
+        long elapsedNanos = now - lastTick;
+        lastTick = now;
+
+        for(HikariDataSource pool : pools) {
+            HikariPoolMXBean poolBean = pool.getHikariPoolMXBean();
+            if(poolBean == null || elapsedNanos <= 0) {
+                //Not started yet, so there's nothing to go on.
+                continue;
+            }
+
+            PoolUsageMetricsTrackerFactory.PoolUsage.Snapshot snapshot = usage.snapshot(pool.getPoolName());
+            PoolUsageMetricsTrackerFactory.PoolUsage.Snapshot delta =
+                    snapshot.minus(lastSnapshots.getOrDefault(pool.getPoolName(), snapshot));
+            lastSnapshots.put(pool.getPoolName(), snapshot);
+
+            HikariConfigMXBean config = pool.getHikariConfigMXBean();
+            int current = config.getMaximumPoolSize();
+            int target = targetSize(current, delta, poolBean.getThreadsAwaitingConnection(), elapsedNanos, pool.getPoolName());
+
+            if(target != current) {
+                log.info(String.format("resizing pool %s from %d to %d connections", pool.getPoolName(), current, target));
+                if(target < config.getMinimumIdle()) {
+                    config.setMinimumIdle(target);
+                }
+                config.setMaximumPoolSize(target);
+            }
+        }
+
+        log.exiting(AdaptivePoolSizer.class.getName(), RESIZE);
+    }
+
+    int targetSize(int current,
+                   PoolUsageMetricsTrackerFactory.PoolUsage.Snapshot delta,
+                   int threadsWaiting,
+                   long elapsedNanos,
+                   String poolName) {
+        double averageInUse = (double) TimeUnit.MILLISECONDS.toNanos(delta.getHoldMillis()) / elapsedNanos;
+        int target = (int) Math.ceil(averageInUse * (1 + properties.getHeadroom()));
+
+        long averageAcquireNanos = delta.getAcquires() == 0 ? 0 : delta.getAcquireNanos() / delta.getAcquires();
+        boolean starved = threadsWaiting > 0 || averageAcquireNanos > properties.getTargetAcquireWait().toNanos();
+
+        if(starved) {
+            target = Math.max(target, current + 1);
+
+            long averageHoldMillis = delta.getReleases() == 0 ? 0 : delta.getHoldMillis() / delta.getReleases();
+            if(averageHoldMillis > properties.getSlowHoldThreshold().toMillis()) {
+                log.warning(String.format("pool %s is starved, but connections are being held for %dms on average.  " +
+                                          "Check %s for slow operations; more connections will only go so far.",
+                                          poolName, averageHoldMillis, PoolUsageMetricsTrackerFactory.HOLD_TIMER));
+            }
+        }
+
+        target = Math.max(current - properties.getMaxStep(), Math.min(current + properties.getMaxStep(), target));
+        return Math.max(properties.getMinimumPoolSize(), Math.min(properties.getMaximumPoolSize(), target));
+    }
+}
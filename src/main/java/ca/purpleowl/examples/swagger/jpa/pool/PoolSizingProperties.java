@@ -0,0 +1,53 @@
+package ca.purpleowl.examples.swagger.jpa.pool;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Settings for the AdaptivePoolSizer.  It's off by default; the pools keep whatever size spring.datasource.hikari
+ * gives them unless this is switched on.
+ */
+@Data
+@ConfigurationProperties("purpleowl.datasource.pool-sizing")
+public class PoolSizingProperties {
+    private boolean enabled = false;
+
+    /**
+     * The sizer will never shrink a pool below this...
+     */
+    private int minimumPoolSize = 4;
+
+    /**
+     * ...or grow it above this.  Keep in mind the database has to cope with this many connections from every node.
+     */
+    private int maximumPoolSize = 32;
+
+    /**
+     * How often to take a look at the pools.
+     */
+    private Duration interval = Duration.ofSeconds(10);
+
+    /**
+     * If threads are waiting longer than this (on average) for a connection, the pool is considered starved.
+     */
+    private Duration targetAcquireWait = Duration.ofMillis(5);
+
+    /**
+     * Spare capacity to keep on top of the observed demand, as a fraction.  0.25 means 25% more connections than
+     * were in use on average.
+     */
+    private double headroom = 0.25;
+
+    /**
+     * The most the pool size may change by in one go.
+     */
+    private int maxStep = 4;
+
+    /**
+     * Connections held longer than this (on average) point at slow queries.  Adding connections won't fix those, so
+     * we say so in the log when the pool is starved.
+     */
+    private Duration slowHoldThreshold = Duration.ofMillis(250);
+}
@@ -0,0 +1,162 @@
+package ca.purpleowl.examples.swagger.jpa.pool;
+
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.ObjectProvider;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hooks into Hikari's own metrics.  Everything Hikari normally publishes (the hikaricp.connections.* meters: active,
+ * idle, pending, acquire time and so on) is passed straight through to Micrometer as usual.  On top of that:
+ *
+ *  - Every time a connection goes back into the pool, the time it was held for is recorded against the service
+ *    method that had it, in purpleowl.datasource.connection.hold (tagged by pool and operation).  That's how we
+ *    find the queries that are hogging connections.
+ *  - Running totals of acquire and hold times are kept per pool for the AdaptivePoolSizer to work from.
+ *
+ * The MeterRegistry is only looked up once a pool starts.  This gets handed to the DataSource while it's being built,
+ * which is too early to go asking for the registry.
+ */
+public class PoolUsageMetricsTrackerFactory implements MetricsTrackerFactory {
+    public static final String HOLD_TIMER = "purpleowl.datasource.connection.hold";
+
+    private final ObjectProvider<MeterRegistry> meterRegistry;
+    private final Map<String, PoolUsage> usage = new ConcurrentHashMap<>();
+
+    public PoolUsageMetricsTrackerFactory(ObjectProvider<MeterRegistry> meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public IMetricsTracker create(String poolName, PoolStats poolStats) {
+        MeterRegistry registry = meterRegistry.getObject();
+        PoolUsage poolUsage = usage.computeIfAbsent(poolName, name -> new PoolUsage());
+
+        return new Tracker(new MicrometerMetricsTrackerFactory(registry).create(poolName, poolStats),
+                           registry,
+                           poolName,
+                           poolUsage);
+    }
+
+    /**
+     * @return the running totals for the named pool, or an empty set of totals if it hasn't started yet.
+     */
+    public PoolUsage.Snapshot snapshot(String poolName) {
+        PoolUsage poolUsage = usage.get(poolName);
+        return poolUsage == null ? new PoolUsage.Snapshot(0, 0, 0, 0) : poolUsage.snapshot();
+    }
+
+    /**
+     * Cumulative counts and times for one pool.  Callers interested in a rate take two snapshots and subtract.
+     */
+    public static class PoolUsage {
+        private final LongAdder acquires = new LongAdder();
+        private final LongAdder acquireNanos = new LongAdder();
+        private final LongAdder releases = new LongAdder();
+        private final LongAdder holdMillis = new LongAdder();
+
+        Snapshot snapshot() {
+            return new Snapshot(acquires.sum(), acquireNanos.sum(), releases.sum(), holdMillis.sum());
+        }
+
+        public static class Snapshot {
+            private final long acquires;
+            private final long acquireNanos;
+            private final long releases;
+            private final long holdMillis;
+
+            Snapshot(long acquires, long acquireNanos, long releases, long holdMillis) {
+                this.acquires = acquires;
+                this.acquireNanos = acquireNanos;
+                this.releases = releases;
+                this.holdMillis = holdMillis;
+            }
+
+            public Snapshot minus(Snapshot earlier) {
+                return new Snapshot(acquires - earlier.acquires,
+                                    acquireNanos - earlier.acquireNanos,
+                                    releases - earlier.releases,
+                                    holdMillis - earlier.holdMillis);
+            }
+
+            public long getAcquires() {
+                return acquires;
+            }
+
+            public long getAcquireNanos() {
+                return acquireNanos;
+            }
+
+            public long getReleases() {
+                return releases;
+            }
+
+            public long getHoldMillis() {
+                return holdMillis;
+            }
+        }
+    }
+
+    private static class Tracker implements IMetricsTracker {
+        private final IMetricsTracker delegate;
+        private final MeterRegistry registry;
+        private final String poolName;
+        private final PoolUsage poolUsage;
+        private final Map<String, Timer> holdTimers = new ConcurrentHashMap<>();
+
+        Tracker(IMetricsTracker delegate, MeterRegistry registry, String poolName, PoolUsage poolUsage) {
+            this.delegate = delegate;
+            this.registry = registry;
+            this.poolName = poolName;
+            this.poolUsage = poolUsage;
+        }
+
+        @Override
+        public void recordConnectionCreatedMillis(long connectionCreatedMillis) {
+            delegate.recordConnectionCreatedMillis(connectionCreatedMillis);
+        }
+
+        @Override
+        public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+            delegate.recordConnectionAcquiredNanos(elapsedAcquiredNanos);
+            poolUsage.acquires.increment();
+            poolUsage.acquireNanos.add(elapsedAcquiredNanos);
+        }
+
+        /**
+         * Hikari calls this on the thread closing the connection, which is the one still running the service method.
+         */
+        @Override
+        public void recordConnectionUsageMillis(long elapsedBorrowedMillis) {
+            delegate.recordConnectionUsageMillis(elapsedBorrowedMillis);
+            poolUsage.releases.increment();
+            poolUsage.holdMillis.add(elapsedBorrowedMillis);
+
+            holdTimers.computeIfAbsent(ServiceOperation.current(),
+                                       operation -> Timer.builder(HOLD_TIMER)
+                                                         .description("How long connections are held, by operation")
+                                                         .tag("pool", poolName)
+                                                         .tag("operation", operation)
+                                                         .register(registry))
+                      .record(elapsedBorrowedMillis, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public void recordConnectionTimeout() {
+            delegate.recordConnectionTimeout();
+        }
+
+        @Override
+        public void close() {
+            delegate.close();
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package ca.purpleowl.examples.swagger.jpa.pool;
+
+/**
+ * Keeps track of which service method the current thread is working on, so that anything further down (the
+ * connection pool metrics, in particular) can say who it's doing the work for.
+ */
+public final class ServiceOperation {
+    public static final String NONE = "none";
+
+    private static final ThreadLocal<String> CURRENT = new ThreadLocal<>();
+
+    private ServiceOperation() {}
+
+    public static String current() {
+        String operation = CURRENT.get();
+        return operation == null ? NONE : operation;
+    }
+
+    /**
+     * @return the operation that was current before this one, to be handed back to restore() when we're done.
+     */
+    static String enter(String operation) {
+        String previous = CURRENT.get();
+        CURRENT.set(operation);
+        return previous;
+    }
+
+    static void restore(String previous) {
+        if(previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package ca.purpleowl.examples.swagger.jpa.pool;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+
+/**
+ * Marks the current thread with the service method it's running, e.g. "TeamService.addProgrammerToTeam".  This runs
+ * outside of the transaction advice, so the connection is handed back to the pool (on commit) while the operation is
+ * still set.  Calls from one service method into another keep the outermost name.
+ */
+@Aspect
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class ServiceOperationAspect {
+
+    @Around("execution(public * ca.purpleowl.examples.swagger.service..*(..))")
+    public Object markOperation(ProceedingJoinPoint joinPoint) throws Throwable {
+        if(!ServiceOperation.NONE.equals(ServiceOperation.current())) {
+            return joinPoint.proceed();
+        }
+
+        String previous = ServiceOperation.enter(joinPoint.getSignature().getDeclaringType().getSimpleName() + "." +
+                                                 joinPoint.getSignature().getName());
+        try {
+            return joinPoint.proceed();
+        } finally {
+            ServiceOperation.restore(previous);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package ca.purpleowl.examples.swagger.jpa.repository;
+
+import ca.purpleowl.examples.swagger.jpa.entity.Team;
+
+import java.util.List;
+
+/**
+ * The part of ProgrammerRepository that can't be written as a @Query; see ProgrammerMovesImpl.
+ */
+public interface ProgrammerMoves {
+    /**
+     * Moves the Programmers with the given IDs from one Team to another (or off Teams altogether, if "to" is null) in
+     * a single UPDATE.  Any of them that aren't on the "from" Team are left where they are.
+     *
+     * Bulk updates go around Hibernate, so the things it would usually do for us are done here instead: the version
+     * goes up, and each Programmer gets its own change sequence number.  Those come out of a block the caller
+     * allocated, one per ID passed in: the first ID gets firstSequence, the second the one after it, and so on.  The
+     * persistence context is cleared afterward, since anything already loaded in it is now out of date.
+     *
+     * @return How many Programmers were moved.
+     */
+    int moveByTeamIdAndIdIn(long fromTeamId, List<Long> programmerIds, Team to, long firstSequence);
+}
@@ -0,0 +1,54 @@
+package ca.purpleowl.examples.swagger.jpa.repository;
+
+import ca.purpleowl.examples.swagger.jpa.entity.Programmer;
+import ca.purpleowl.examples.swagger.jpa.entity.Team;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaUpdate;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Root;
+import java.util.List;
+
+/**
+ * Spring Data picks this up by name and mixes it into ProgrammerRepository.
+ *
+ * Handing each row of one UPDATE its own number can't be done in a fixed JPQL statement without something
+ * database-specific (like H2's ROWNUM()), so the statement is built for the IDs it's given instead: the new change
+ * sequence is a CASE on the ID, with one WHEN per Programmer.  That's plain SQL any database will run, and still one
+ * statement however many Programmers there are.
+ */
+public class ProgrammerMovesImpl implements ProgrammerMoves {
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public int moveByTeamIdAndIdIn(long fromTeamId, List<Long> programmerIds, Team to, long firstSequence) {
+        if(programmerIds.isEmpty()) {
+            return 0;
+        }
+
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaUpdate<Programmer> update = builder.createCriteriaUpdate(Programmer.class);
+        Root<Programmer> programmer = update.from(Programmer.class);
+
+        Path<Long> changeSequence = programmer.get("changeSequence");
+        CriteriaBuilder.SimpleCase<Long, Long> newChangeSequence = builder.selectCase(programmer.<Long>get("id"));
+        for(int i = 0; i < programmerIds.size(); i++) {
+            newChangeSequence.when(programmerIds.get(i), firstSequence + i);
+        }
+
+        update.set(programmer.<Team>get("team"), to)
+              .set(programmer.<Long>get("version"), builder.sum(programmer.<Long>get("version"), 1L))
+              .set(changeSequence, newChangeSequence.otherwise(changeSequence))
+              .where(builder.equal(programmer.get("team").get("id"), fromTeamId),
+                     programmer.get("id").in(programmerIds));
+
+        //What @Modifying(flushAutomatically = true, clearAutomatically = true) would do.
+        entityManager.flush();
+        int moved = entityManager.createQuery(update).executeUpdate();
+        entityManager.clear();
+        return moved;
+    }
+}
@@ -1,22 +1,137 @@
 package ca.purpleowl.examples.swagger.jpa.repository;
 
 import ca.purpleowl.examples.swagger.jpa.entity.Programmer;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.repository.EntityGraph;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
+import org.springframework.lang.Nullable;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+
+public interface ProgrammerRepository extends JpaRepository<Programmer, Long>,
+                                              JpaSpecificationExecutor<Programmer>,
+                                              ProgrammerMoves {
+    /**
+     * Every Programmer drags its Team along with it.  Left to its own devices, Hibernate would select the Programmers
+     * and then issue one more select per distinct Team... a classic N+1.  The EntityGraph has the Team fetched in the
+     * same statement instead.
+     *
+     * @return A List of all Programmer JPA Entities, with their Teams already loaded.
+     */
+    @Override
+    @EntityGraph(attributePaths = "team")
+    List<Programmer> findAll();
+
+    /**
+     * The filtered and sorted version of findAll(), used by the Programmer list endpoint; see ProgrammerSpecifications
+     * for the filters.  The Team comes along in the same statement, for the same reason as above.
+     *
+     * @param spec - The filters to apply, or null for none.
+     * @param sort - The order to return them in.
+     * @return A List of matching Programmer JPA Entities, with their Teams already loaded.
+     */
+    @Override
+    @EntityGraph(attributePaths = "team")
+    List<Programmer> findAll(@Nullable Specification<Programmer> spec, Sort sort);
+
+    /**
+     * findById() leaves the Team to be loaded if and when it's needed.  This is for when we already know it will be: the
+     * Team comes back in the same statement.
+     *
+     * @param programmerId - The ID of the desired Programmer.
+     * @return The Programmer JPA Entity, with its Team already loaded.
+     */
+    @Query("SELECT p FROM Programmer p LEFT JOIN FETCH p.team WHERE p.id = :programmerId")
+    Optional<Programmer> findWithTeamById(@Param("programmerId") long programmerId);
 
-public interface ProgrammerRepository extends JpaRepository<Programmer, Long> {
     /**
      * We want to be able to select all programmers by their Team ID.  We can't really do this directly using the
      * naming magic of JpaRepository extensions, so we use the Query annotation to provide the JPQL for the specific
      * query that we want to create.  Parameters, such as "teamId" need to use the Param annotation to indicate which
      * parameters from the JPQL they are associated with.
      *
+     * The Team is fetched in the same statement so that we don't go back to the database for it afterward.
+     *
      * @param teamId - The ID of the Team from which all Programmer profiles should be returned.
      * @return A List of Programmer JPA Entities representing the Programmer profiles from the specified Team.
      */
-    @Query("SELECT p FROM Programmer p WHERE p.team.id = :teamId ORDER BY p.name")
+    @Query("SELECT p FROM Programmer p JOIN FETCH p.team t WHERE t.id = :teamId ORDER BY p.name")
     List<Programmer> findAllByTeamId(@Param("teamId") long teamId);
+
+    /**
+     * Headcount by Team and hire month, worked out by the database.  This is what TeamStatistics starts from; after
+     * that it keeps its own counts up to date as Programmers are saved and moved around.
+     *
+     * @return One row per Team and month that anyone on the Team was hired in.
+     */
+    @Query("SELECT p.team.id AS teamId, YEAR(p.dateHired) AS year, MONTH(p.dateHired) AS month, COUNT(p) AS hires " +
+           "FROM Programmer p WHERE p.team IS NOT NULL " +
+           "GROUP BY p.team.id, YEAR(p.dateHired), MONTH(p.dateHired)")
+    List<TeamHires> countHiresByTeamAndMonth();
+
+    /**
+     * Everything written after "since", up to and including "upTo", oldest change first.  This walks the
+     * changeSequence index, so it costs about the same whether there are ten Programmers or ten million.
+     *
+     * @param since - Only Programmers with a changeSequence above this are returned.
+     * @param upTo - ...and none above this.  See ChangeSequenceAllocator for why there's an upper bound.
+     * @param pageable - How many to return (the page number is ignored; "since" does the paging).
+     * @return A List of Programmer JPA Entities, with their Teams already loaded.
+     */
+    @Query("SELECT p FROM Programmer p LEFT JOIN FETCH p.team " +
+           "WHERE p.changeSequence > :since AND p.changeSequence <= :upTo ORDER BY p.changeSequence")
+    List<Programmer> findChanges(@Param("since") long since, @Param("upTo") long upTo, Pageable pageable);
+
+    /**
+     * The IDs of the Programmers on a Team, locked until the transaction ends so that nobody can move them somewhere
+     * else while we're moving them; see TeamService.moveProgrammers.  Native, for the FOR UPDATE.
+     */
+    @Query(value = "SELECT id FROM programmer WHERE team_id = :teamId ORDER BY id FOR UPDATE", nativeQuery = true)
+    List<Number> lockIdsByTeamId(@Param("teamId") long teamId);
+
+    /**
+     * As lockIdsByTeamId, but only for the Programmers with the given IDs.  Any of them that aren't on the Team are
+     * left out.
+     */
+    @Query(value = "SELECT id FROM programmer WHERE team_id = :teamId AND id IN (:programmerIds) ORDER BY id FOR UPDATE",
+           nativeQuery = true)
+    List<Number> lockIdsByTeamIdAndIdIn(@Param("teamId") long teamId,
+                                        @Param("programmerIds") Collection<Long> programmerIds);
+
+    /**
+     * Writes a Programmer that already exists on another shard into this one, keeping its ID; see
+     * TeamService.moveAcrossShards.  Hibernate would insist on handing out a new ID for a new row, hence the SQL.
+     */
+    @Modifying
+    @Query(value = "INSERT INTO programmer (id, name, date_hired, team_id, version, change_sequence) " +
+                   "VALUES (:programmerId, :name, :dateHired, :teamId, :version, :changeSequence)",
+           nativeQuery = true)
+    void insertCopy(@Param("programmerId") long programmerId,
+                    @Param("name") String name,
+                    @Param("dateHired") LocalDate dateHired,
+                    @Param("teamId") long teamId,
+                    @Param("version") long version,
+                    @Param("changeSequence") long changeSequence);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("DELETE FROM Programmer p WHERE p.id IN :programmerIds")
+    int deleteByIdIn(@Param("programmerIds") Collection<Long> programmerIds);
+
+    /**
+     * Used to pick up the change sequence where we left off on startup.  This has to see the primary, so it's not
+     * read-only (read-only work may be sent to a replica).
+     */
+    @Transactional
+    @Query("SELECT COALESCE(MAX(p.changeSequence), 0) FROM Programmer p")
+    long findMaxChangeSequence();
 }
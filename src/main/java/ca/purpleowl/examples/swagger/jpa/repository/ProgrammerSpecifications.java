@@ -0,0 +1,39 @@
+package ca.purpleowl.examples.swagger.jpa.repository;
+
+import ca.purpleowl.examples.swagger.jpa.entity.Programmer;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.time.LocalDate;
+
+/**
+ * The filters the Programmer list endpoint can apply, for use with ProgrammerRepository.findAll(Specification, Sort).
+ *
+ * Each of these returns null when there's nothing to filter on.  Specification.where(...).and(...) skips nulls, so
+ * only the filters a client actually asked for end up in the WHERE clause, and the database is free to use the index
+ * that matches them.  (The "(:param IS NULL OR ...)" style of query would save us this class, but it tends to put the
+ * database off using any index at all.)
+ */
+public final class ProgrammerSpecifications {
+    private ProgrammerSpecifications() {}
+
+    /**
+     * Compares against the teamId column itself, so this doesn't join to Team.  Uses idx_programmer_team_name.
+     */
+    public static Specification<Programmer> onTeam(Long teamId) {
+        return teamId == null ? null : (root, query, builder) -> builder.equal(root.get("team").get("id"), teamId);
+    }
+
+    /**
+     * Uses idx_programmer_date_hired.
+     */
+    public static Specification<Programmer> hiredOnOrAfter(LocalDate from) {
+        return from == null ? null : (root, query, builder) -> builder.greaterThanOrEqualTo(root.get("dateHired"), from);
+    }
+
+    /**
+     * Uses idx_programmer_date_hired.
+     */
+    public static Specification<Programmer> hiredOnOrBefore(LocalDate to) {
+        return to == null ? null : (root, query, builder) -> builder.lessThanOrEqualTo(root.get("dateHired"), to);
+    }
+}
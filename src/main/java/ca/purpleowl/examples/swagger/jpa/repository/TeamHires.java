@@ -0,0 +1,15 @@
+package ca.purpleowl.examples.swagger.jpa.repository;
+
+/**
+ * One row of ProgrammerRepository.countHiresByTeamAndMonth(): how many of a Team's Programmers were hired in a given
+ * month.  Year and month are null for Programmers without a hire date.
+ */
+public interface TeamHires {
+    Long getTeamId();
+
+    Integer getYear();
+
+    Integer getMonth();
+
+    long getHires();
+}
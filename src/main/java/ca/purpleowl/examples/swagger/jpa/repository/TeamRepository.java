@@ -1,7 +1,26 @@
 package ca.purpleowl.examples.swagger.jpa.repository;
 
 import ca.purpleowl.examples.swagger.jpa.entity.Team;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
-public interface TeamRepository extends JpaRepository<Team, Long> {
+import java.util.List;
+
+/**
+ * Filtered and sorted lists of Teams come from findAll(Specification, Sort), with the filters in TeamSpecifications.
+ */
+public interface TeamRepository extends JpaRepository<Team, Long>, JpaSpecificationExecutor<Team> {
+    /**
+     * The Team counterpart of ProgrammerRepository.findChanges.
+     */
+    @Query("SELECT t FROM Team t WHERE t.changeSequence > :since AND t.changeSequence <= :upTo ORDER BY t.changeSequence")
+    List<Team> findChanges(@Param("since") long since, @Param("upTo") long upTo, Pageable pageable);
+
+    @Transactional
+    @Query("SELECT COALESCE(MAX(t.changeSequence), 0) FROM Team t")
+    long findMaxChangeSequence();
 }
@@ -0,0 +1,21 @@
+package ca.purpleowl.examples.swagger.jpa.repository;
+
+import ca.purpleowl.examples.swagger.jpa.entity.Team;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.time.LocalDateTime;
+
+/**
+ * The Team counterpart of ProgrammerSpecifications.  Both of these use idx_team_last_stand_up.
+ */
+public final class TeamSpecifications {
+    private TeamSpecifications() {}
+
+    public static Specification<Team> stoodUpOnOrAfter(LocalDateTime from) {
+        return from == null ? null : (root, query, builder) -> builder.greaterThanOrEqualTo(root.get("lastStandUp"), from);
+    }
+
+    public static Specification<Team> stoodUpOnOrBefore(LocalDateTime to) {
+        return to == null ? null : (root, query, builder) -> builder.lessThanOrEqualTo(root.get("lastStandUp"), to);
+    }
+}
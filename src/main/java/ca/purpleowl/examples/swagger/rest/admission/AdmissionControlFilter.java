@@ -0,0 +1,247 @@
+package ca.purpleowl.examples.swagger.rest.admission;
+
+import ca.purpleowl.examples.swagger.rest.filter.ClientIdentityFilter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.java.Log;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Decides whether a request gets to go any further, before it has a chance to tie up a worker thread waiting on the
+ * connection pool.  There are two checks:
+ *
+ *  1. Each source (the authenticated user, or else the remote address) has a token bucket, and so does each client
+ *     of a source, told apart by X-Client-Id.  A request needs a token from both, so a client can't get past its
+ *     source's limit by making up new IDs.  Clients that go over their rate get a 429 and a Retry-After telling them
+ *     when they'll have a token again.  A batch costs a token for each request in it; see chargeExtra.
+ *  2. Each EndpointClass has a limited number of slots.  If a request can't get one within the class's latency
+ *     budget, we're overloaded and it gets a 503 (again with a Retry-After) rather than waiting around forever.  A
+ *     batch holds a slot of its own class while it runs, and each request in it of any other class needs one of its
+ *     own as well; see admitWithin.
+ *
+ * Admissions and rejections are counted in the "purpleowl.admission" metrics, tagged by endpoint class and (for
+ * rejections) the reason.
+ */
+@Log
+public class AdmissionControlFilter extends OncePerRequestFilter {
+    static final int MAX_TRACKED_BUCKETS = 10_000;
+    private static final String OVERLOADED_RETRY_AFTER_SECONDS = "1";
+    private static final String SOURCE_KEY = "source:";
+    private static final String CLIENT_KEY = "client:";
+
+    private final AdmissionControlProperties properties;
+    private final MeterRegistry meterRegistry;
+    private final LongSupplier nanoClock;
+    //Least recently used first.  Guarded by itself.
+    private final Map<String, TokenBucket> buckets = new LinkedHashMap<String, TokenBucket>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, TokenBucket> eldest) {
+            //A full bucket is no different from a brand new one, and one that's gone unused for this long is all but
+            //certainly full, so there's no harm in forgetting it.
+            return size() > MAX_TRACKED_BUCKETS;
+        }
+    };
+    private final Map<EndpointClass, Semaphore> slots = new EnumMap<>(EndpointClass.class);
+    private final Map<EndpointClass, Timer> queueWaits = new EnumMap<>(EndpointClass.class);
+
+    public AdmissionControlFilter(AdmissionControlProperties properties, MeterRegistry meterRegistry) {
+        this(properties, meterRegistry, System::nanoTime);
+    }
+
+    AdmissionControlFilter(AdmissionControlProperties properties, MeterRegistry meterRegistry, LongSupplier nanoClock) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        this.nanoClock = nanoClock;
+
+        for(EndpointClass endpointClass : EndpointClass.values()) {
+            Semaphore semaphore = new Semaphore(properties.getLimits().get(endpointClass).getMaxConcurrent(), true);
+            slots.put(endpointClass, semaphore);
+
+            String tag = tag(endpointClass);
+            meterRegistry.gauge("purpleowl.admission.in.flight",
+                                Tags.of("class", tag),
+                                semaphore,
+                                s -> properties.getLimits().get(endpointClass).getMaxConcurrent() - s.availablePermits());
+            queueWaits.put(endpointClass, Timer.builder("purpleowl.admission.queue.wait")
+                                               .tag("class", tag)
+                                               .register(meterRegistry));
+        }
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request,
+                                    HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        if(!properties.isEnabled()) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        EndpointClass endpointClass = EndpointClass.of(request);
+
+        long waitNanos = tryAcquire(request, 1);
+        if(waitNanos > 0) {
+            reject(response, endpointClass, HttpStatus.TOO_MANY_REQUESTS, "rate_limited", retryAfterSeconds(waitNanos));
+            return;
+        }
+
+        Semaphore semaphore = slots.get(endpointClass);
+        if(!acquire(semaphore, endpointClass)) {
+            reject(response, endpointClass, HttpStatus.SERVICE_UNAVAILABLE, "overloaded", OVERLOADED_RETRY_AFTER_SECONDS);
+            return;
+        }
+
+        try {
+            meterRegistry.counter("purpleowl.admission.admitted", "class", tag(endpointClass)).increment();
+            filterChain.doFilter(request, response);
+        } finally {
+            semaphore.release();
+        }
+    }
+
+    /**
+     * Charges a request for the tokens it turns out to be worth on top of the one it was let in with.  A batch gets in
+     * like any other request, and only then is it known how many requests are in it; each of those costs a token, the
+     * same as it would have on its own.
+     *
+     * @throws RateLimitedException if the client or its source hasn't got that many tokens.  The Retry-After has been
+     *                              set on the response by then.
+     */
+    public void chargeExtra(HttpServletRequest request, HttpServletResponse response, int tokens) {
+        if(!properties.isEnabled() || tokens < 1) {
+            return;
+        }
+
+        long waitNanos = tryAcquire(request, tokens);
+        if(waitNanos > 0) {
+            EndpointClass endpointClass = EndpointClass.of(request);
+            log.fine(String.format("rejecting %s request: rate_limited", endpointClass));
+            meterRegistry.counter("purpleowl.admission.rejected", "class", tag(endpointClass), "reason", "rate_limited")
+                         .increment();
+
+            response.setHeader(HttpHeaders.RETRY_AFTER, retryAfterSeconds(waitNanos));
+            throw new RateLimitedException(tokens);
+        }
+    }
+
+    /**
+     * Runs one of the requests inside another (a batch) under its own EndpointClass's limit.  The outer request already
+     * has a slot, which is enough for anything of the same class in it.  Anything else waits for a slot of its own
+     * class, just as it would have on its own, so that putting list reads in a batch can't get them past their limit.
+     * If none comes free in time, the inner request gets the same 503 and Retry-After it would have on its own, and
+     * isn't run.
+     */
+    public void admitWithin(HttpServletRequest outer,
+                            HttpServletRequest request,
+                            HttpServletResponse response,
+                            Admitted work) throws ServletException, IOException {
+        EndpointClass endpointClass = EndpointClass.of(request);
+
+        if(!properties.isEnabled() || endpointClass == EndpointClass.of(outer)) {
+            work.run();
+            return;
+        }
+
+        Semaphore semaphore = slots.get(endpointClass);
+        if(!acquire(semaphore, endpointClass)) {
+            reject(response, endpointClass, HttpStatus.SERVICE_UNAVAILABLE, "overloaded", OVERLOADED_RETRY_AFTER_SECONDS);
+            return;
+        }
+
+        try {
+            meterRegistry.counter("purpleowl.admission.admitted", "class", tag(endpointClass)).increment();
+            work.run();
+        } finally {
+            semaphore.release();
+        }
+    }
+
+    /**
+     * @return 0 if the tokens were taken from both the source's bucket and the client's, otherwise how many nanoseconds
+     *         until they might be.
+     */
+    private long tryAcquire(HttpServletRequest request, int tokens) {
+        long waitNanos = bucket(SOURCE_KEY + ClientIdentityFilter.sourceOf(request),
+                                properties.getSourceRequestsPerSecond(),
+                                properties.getSourceBurst()).tryAcquire(tokens);
+        if(waitNanos == 0) {
+            waitNanos = bucket(CLIENT_KEY + ClientIdentityFilter.clientOf(request),
+                               properties.getClientRequestsPerSecond(),
+                               properties.getClientBurst()).tryAcquire(tokens);
+        }
+        return waitNanos;
+    }
+
+    private boolean acquire(Semaphore semaphore, EndpointClass endpointClass) {
+        if(semaphore.tryAcquire()) {
+            return true;
+        }
+
+        long start = nanoClock.getAsLong();
+        try {
+            return semaphore.tryAcquire(properties.getLimits().get(endpointClass).getMaxQueueWait().toNanos(),
+                                        TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            queueWaits.get(endpointClass).record(nanoClock.getAsLong() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    int trackedBuckets() {
+        synchronized(buckets) {
+            return buckets.size();
+        }
+    }
+
+    private TokenBucket bucket(String key, double tokensPerSecond, int capacity) {
+        synchronized(buckets) {
+            return buckets.computeIfAbsent(key, k -> new TokenBucket(tokensPerSecond, capacity, nanoClock));
+        }
+    }
+
+    private void reject(HttpServletResponse response,
+                        EndpointClass endpointClass,
+                        HttpStatus status,
+                        String reason,
+                        String retryAfterSeconds) throws IOException {
+        log.fine(String.format("rejecting %s request: %s", endpointClass, reason));
+        meterRegistry.counter("purpleowl.admission.rejected", "class", tag(endpointClass), "reason", reason)
+                     .increment();
+
+        response.setHeader(HttpHeaders.RETRY_AFTER, retryAfterSeconds);
+        response.sendError(status.value(), status.getReasonPhrase());
+    }
+
+    private static String retryAfterSeconds(long waitNanos) {
+        return Long.toString(Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + TimeUnit.SECONDS.toNanos(1) - 1)));
+    }
+
+    private static String tag(EndpointClass endpointClass) {
+        return endpointClass.name().toLowerCase();
+    }
+
+    /**
+     * Whatever admitWithin lets through.
+     */
+    @FunctionalInterface
+    public interface Admitted {
+        void run() throws ServletException, IOException;
+    }
+}
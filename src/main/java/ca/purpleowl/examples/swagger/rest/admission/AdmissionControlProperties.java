@@ -0,0 +1,67 @@
+package ca.purpleowl.examples.swagger.rest.admission;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+
+@Data
+@ConfigurationProperties("purpleowl.admission")
+public class AdmissionControlProperties {
+    private boolean enabled = true;
+
+    /**
+     * Sustained requests per second allowed from any one source: the authenticated user, or failing that the remote
+     * address.  Every client behind it (told apart by X-Client-Id) shares this, so making up client IDs doesn't get a
+     * source any more than this.
+     */
+    private double sourceRequestsPerSecond = 200;
+
+    /**
+     * How many requests a source can fire off at once before its rate limit applies.
+     */
+    private int sourceBurst = 400;
+
+    /**
+     * Sustained requests per second allowed from any one client of a source.
+     */
+    private double clientRequestsPerSecond = 50;
+
+    /**
+     * How many requests a client can fire off at once before the rate limit applies.
+     */
+    private int clientBurst = 100;
+
+    private Map<EndpointClass, Limit> limits = defaultLimits();
+
+    @Data
+    public static class Limit {
+        /**
+         * How many requests of this class may be in progress at once.
+         */
+        private int maxConcurrent;
+
+        /**
+         * How long a request may wait for one of those slots before we give up on it and return a 503.  This is our
+         * latency budget for queueing; there's no point making a client wait longer than it would for the response.
+         */
+        private Duration maxQueueWait;
+
+        public Limit() {}
+
+        Limit(int maxConcurrent, Duration maxQueueWait) {
+            this.maxConcurrent = maxConcurrent;
+            this.maxQueueWait = maxQueueWait;
+        }
+    }
+
+    private static Map<EndpointClass, Limit> defaultLimits() {
+        Map<EndpointClass, Limit> limits = new EnumMap<>(EndpointClass.class);
+        limits.put(EndpointClass.SINGLE_READ, new Limit(64, Duration.ofMillis(50)));
+        limits.put(EndpointClass.LIST_READ, new Limit(8, Duration.ofMillis(250)));
+        limits.put(EndpointClass.WRITE, new Limit(16, Duration.ofMillis(100)));
+        return limits;
+    }
+}
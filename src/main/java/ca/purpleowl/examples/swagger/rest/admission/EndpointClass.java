@@ -0,0 +1,30 @@
+package ca.purpleowl.examples.swagger.rest.admission;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.regex.Pattern;
+
+/**
+ * A rough idea of how expensive a request is going to be.  Each class gets its own concurrency limit, so that a flood
+ * of full-list reads can't starve the cheap lookups (or the writes) of database connections.
+ */
+public enum EndpointClass {
+    /** A GET for a single resource by ID, like GET /programmer/1.  Cheap. */
+    SINGLE_READ,
+    /** Any other GET.  These tend to return collections, so they're the expensive ones. */
+    LIST_READ,
+    /** Anything that isn't a GET. */
+    WRITE;
+
+    private static final Pattern SINGLE_RESOURCE = Pattern.compile("^/[^/]+/\\d+/?$");
+
+    public static EndpointClass of(HttpServletRequest request) {
+        String method = request.getMethod();
+
+        if("GET".equals(method) || "HEAD".equals(method)) {
+            String path = request.getRequestURI().substring(request.getContextPath().length());
+            return SINGLE_RESOURCE.matcher(path).matches() ? SINGLE_READ : LIST_READ;
+        }
+
+        return WRITE;
+    }
+}
@@ -0,0 +1,15 @@
+package ca.purpleowl.examples.swagger.rest.admission;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Thrown when a request turns out to cost more tokens than its client has left, like a batch too big for what's left
+ * of the client's rate limit.  Nothing in it has been run.
+ */
+@ResponseStatus(value = HttpStatus.TOO_MANY_REQUESTS, reason = "Too Many Requests")
+public class RateLimitedException extends RuntimeException {
+    public RateLimitedException(int tokens) {
+        super(String.format("not enough tokens left for a request costing %d more", tokens));
+    }
+}
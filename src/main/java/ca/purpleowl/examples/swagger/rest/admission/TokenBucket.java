@@ -0,0 +1,50 @@
+package ca.purpleowl.examples.swagger.rest.admission;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Your classic token bucket.  Tokens drip in at a fixed rate up to a maximum, and every request takes one (or, for a
+ * batch, one for each request in it).  Buckets are per client and only ever touched briefly, so plain synchronization
+ * is more than good enough here.
+ */
+class TokenBucket {
+    private final double tokensPerNano;
+    private final double capacity;
+    private final LongSupplier nanoClock;
+
+    private double tokens;
+    private long lastRefill;
+
+    TokenBucket(double tokensPerSecond, int capacity, LongSupplier nanoClock) {
+        this.tokensPerNano = tokensPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.capacity = capacity;
+        this.nanoClock = nanoClock;
+        this.tokens = capacity;
+        this.lastRefill = nanoClock.getAsLong();
+    }
+
+    /**
+     * Asking for more than the bucket can ever hold costs a full bucket instead; it would never be let through
+     * otherwise.
+     *
+     * @return 0 if the tokens were taken, otherwise how many nanoseconds until there will be enough of them.
+     */
+    synchronized long tryAcquire(int count) {
+        refill();
+
+        double needed = Math.min(count, capacity);
+        if(tokens >= needed) {
+            tokens -= needed;
+            return 0;
+        }
+
+        return (long) Math.ceil((needed - tokens) / tokensPerNano);
+    }
+
+    private void refill() {
+        long now = nanoClock.getAsLong();
+        tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerNano);
+        lastRefill = now;
+    }
+}
@@ -0,0 +1,18 @@
+package ca.purpleowl.examples.swagger.rest.asset;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import lombok.Data;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@Data
+public class BatchOperationAsset {
+    private String method;
+    //Relative to the API root, like "/team/1/add-programmer/2", including any query string.
+    private String path;
+    private Map<String, String> headers = new LinkedHashMap<>();
+    private JsonNode body;
+
+    public BatchOperationAsset(){}
+}
@@ -0,0 +1,16 @@
+package ca.purpleowl.examples.swagger.rest.asset;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+public class BatchRequestAsset {
+    //If true, every request commits together or none of them do.
+    private boolean atomic;
+    //Run in this order.
+    private List<BatchOperationAsset> requests = new ArrayList<>();
+
+    public BatchRequestAsset(){}
+}
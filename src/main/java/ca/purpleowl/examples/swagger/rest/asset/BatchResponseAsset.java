@@ -0,0 +1,20 @@
+package ca.purpleowl.examples.swagger.rest.asset;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+public class BatchResponseAsset {
+    private boolean atomic;
+    //Only for atomic batches: true if one of the requests failed and so nothing was kept.
+    @JsonInclude(Include.NON_NULL)
+    private Boolean rolledBack;
+    //One per request, in the same order.
+    private List<BatchResultAsset> responses = new ArrayList<>();
+
+    public BatchResponseAsset(){}
+}
@@ -0,0 +1,20 @@
+package ca.purpleowl.examples.swagger.rest.asset;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.databind.JsonNode;
+import lombok.Data;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@Data
+public class BatchResultAsset {
+    private int status;
+    @JsonInclude(Include.NON_EMPTY)
+    private Map<String, String> headers = new LinkedHashMap<>();
+    @JsonInclude(Include.NON_NULL)
+    private JsonNode body;
+
+    public BatchResultAsset(){}
+}
@@ -1,5 +1,6 @@
 package ca.purpleowl.examples.swagger.rest.asset;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonInclude.Include;
 import lombok.Data;
@@ -13,4 +14,7 @@ public class ProgrammerAsset {
     private Long teamId;
     @JsonInclude(Include.NON_EMPTY)
     private String teamName;
+    //This goes out as the ETag header rather than in the body.
+    @JsonIgnore
+    private Long version;
 }
@@ -0,0 +1,16 @@
+package ca.purpleowl.examples.swagger.rest.asset;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import lombok.Data;
+
+@Data
+public class ProgrammerMoveAsset {
+    private Long fromTeamId;
+    //Left out when the Programmers were taken off the Team rather than moved to another one.
+    @JsonInclude(Include.NON_NULL)
+    private Long toTeamId;
+    private int moved;
+
+    public ProgrammerMoveAsset(){}
+}
@@ -1,5 +1,6 @@
 package ca.purpleowl.examples.swagger.rest.asset;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonInclude.Include;
 import lombok.Data;
@@ -11,6 +12,9 @@ public class TeamAsset {
     private String teamFocus;
     @JsonInclude(Include.NON_EMPTY)
     private String lastStandUp;
+    //This goes out as the ETag header rather than in the body.
+    @JsonIgnore
+    private Long version;
 
     public TeamAsset(){}
 }
@@ -0,0 +1,23 @@
+package ca.purpleowl.examples.swagger.rest.asset;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import lombok.Data;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@Data
+public class TeamStatsAsset {
+    private Long teamId;
+    private String name;
+    private long headcount;
+    //Keyed by month (yyyy-MM), oldest first.  Months nobody on the Team was hired in are left out.
+    private Map<String, Long> hiresPerMonth = new LinkedHashMap<>();
+    @JsonInclude(Include.NON_EMPTY)
+    private String lastStandUp;
+    @JsonInclude(Include.NON_NULL)
+    private Long minutesSinceLastStandUp;
+
+    public TeamStatsAsset(){}
+}
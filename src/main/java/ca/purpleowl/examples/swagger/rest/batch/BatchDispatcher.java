@@ -0,0 +1,391 @@
+package ca.purpleowl.examples.swagger.rest.batch;
+
+import ca.purpleowl.examples.swagger.jpa.datasource.ShardRouter;
+import ca.purpleowl.examples.swagger.rest.admission.AdmissionControlFilter;
+import ca.purpleowl.examples.swagger.rest.asset.BatchOperationAsset;
+import ca.purpleowl.examples.swagger.rest.asset.BatchRequestAsset;
+import ca.purpleowl.examples.swagger.rest.asset.BatchResponseAsset;
+import ca.purpleowl.examples.swagger.rest.asset.BatchResultAsset;
+import ca.purpleowl.examples.swagger.rest.idempotency.IdempotencyStore;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.NullNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+import lombok.extern.java.Log;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.LinkedCaseInsensitiveMap;
+import org.springframework.util.StringUtils;
+import org.springframework.web.servlet.DispatcherServlet;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Runs the requests in a batch, one after another, by handing each of them straight to the DispatcherServlet.  They go
+ * through exactly the same controllers (and argument binding, and exception handling) as they would have on their own;
+ * they just don't need a connection, or a round trip, each.
+ *
+ * A later request can use something from an earlier one's response with a reference like {{0.programmerId}}: the
+ * index of the earlier request, then the path to a field of its body.  That's how a client creates a Programmer and a
+ * Team and then adds one to the other, all in the one batch, without knowing either ID up front.  A reference can go
+ * in the path, or anywhere in the body; a body value that's nothing but a reference is replaced by whatever it refers
+ * to (so numbers stay numbers).  A request whose references can't be filled in, because the request they point at
+ * failed or hasn't run yet, isn't run and gets a 424 Failed Dependency.
+ *
+ * Batches are either atomic or not:
+ *  - Not atomic (the default): every request runs in its own transactions, just as if it had been sent by itself.  One
+ *    failing doesn't stop the rest.
+ *  - Atomic: the whole batch runs in one transaction, which the services' transactions join.  The first request to
+ *    fail stops the batch, everything is rolled back, and the requests after it get a 424.  Nothing the batch did is
+ *    published (change events, the read model, the stats) unless it commits.
+ *
+ * Atomic batches can't be run when the database is sharded.  Work on a shard gets a transaction of its own (see
+ * ShardRouter), which commits whatever the batch's transaction does afterwards, so "all or nothing" would quietly
+ * become "whatever got done before the failure".  They're turned away with a 400 instead, before anything runs.
+ *
+ * Only the Programmer and Team endpoints can be batched.  Filters (the ClientIdentityFilter, admission control) see
+ * the batch, not the requests inside it.  Admission control only takes one token for the batch, so the rest - one for
+ * each request after the first - are taken here, before anything runs; a client can't get around its rate limit by
+ * batching.  Likewise, the batch only holds a WRITE slot, so each request in it that isn't a write takes a slot of its
+ * own class while it runs (see AdmissionControlFilter.admitWithin).
+ */
+@Log
+public class BatchDispatcher {
+    public static final int MAX_REQUESTS = 50;
+
+    private static final String DISPATCH = "dispatch";
+    private static final List<String> METHODS = Arrays.asList("GET", "POST", "PUT", "PATCH", "DELETE");
+    private static final List<String> BATCHABLE_PATHS = Arrays.asList("/programmer", "/team");
+    private static final Pattern REFERENCE = Pattern.compile("\\{\\{(\\d+)((?:\\.[^.{}]+)*)}}");
+    private static final Pattern WHOLE_REFERENCE = Pattern.compile("^" + REFERENCE.pattern() + "$");
+
+    /**
+     * Headers of the batch request that aren't passed on to the requests inside it, because they're about the batch
+     * request's own body or only make sense for the batch as a whole.
+     */
+    private static final Set<String> BATCH_ONLY_HEADERS = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+    static {
+        BATCH_ONLY_HEADERS.addAll(Arrays.asList(HttpHeaders.CONTENT_TYPE,
+                                                HttpHeaders.CONTENT_LENGTH,
+                                                HttpHeaders.CONTENT_ENCODING,
+                                                HttpHeaders.TRANSFER_ENCODING,
+                                                HttpHeaders.ACCEPT,
+                                                HttpHeaders.ACCEPT_ENCODING,
+                                                HttpHeaders.EXPECT,
+                                                HttpHeaders.IF_MATCH,
+                                                HttpHeaders.IF_NONE_MATCH,
+                                                HttpHeaders.IF_MODIFIED_SINCE,
+                                                HttpHeaders.IF_UNMODIFIED_SINCE,
+                                                IdempotencyStore.IDEMPOTENCY_KEY_HEADER));
+    }
+
+    private final ObjectProvider<DispatcherServlet> dispatcherServlet;
+    private final PlatformTransactionManager transactionManager;
+    private final ObjectMapper objectMapper;
+    private final ShardRouter shardRouter;
+    private final AdmissionControlFilter admissionControl;
+
+    public BatchDispatcher(ObjectProvider<DispatcherServlet> dispatcherServlet,
+                           PlatformTransactionManager transactionManager,
+                           ObjectMapper objectMapper,
+                           ShardRouter shardRouter,
+                           AdmissionControlFilter admissionControl) {
+        this.dispatcherServlet = dispatcherServlet;
+        this.transactionManager = transactionManager;
+        this.objectMapper = objectMapper;
+        this.shardRouter = shardRouter;
+        this.admissionControl = admissionControl;
+    }
+
+    /**
+     * @param request - The batch request.
+     * @param response - The batch response.  Nothing is written to it here, apart from a Retry-After for a batch that's
+     *                   over the client's rate limit.
+     * @param batch - The requests to run.
+     * @return One response for each request, in the same order.
+     */
+    public BatchResponseAsset dispatch(HttpServletRequest request, HttpServletResponse response, BatchRequestAsset batch) {
+        log.entering(BatchDispatcher.class.getName(), DISPATCH, batch);
+        validate(batch);
+        admissionControl.chargeExtra(request, response, batch.getRequests().size() - 1);
+
+        BatchResponseAsset returnMe = new BatchResponseAsset();
+        returnMe.setAtomic(batch.isAtomic());
+
+        if(batch.isAtomic()) {
+            boolean rolledBack = new TransactionTemplate(transactionManager).execute(status -> {
+                boolean succeeded = runAll(request, response, batch, returnMe.getResponses());
+                if(!succeeded) {
+                    status.setRollbackOnly();
+                }
+                return !succeeded;
+            });
+            returnMe.setRolledBack(rolledBack);
+        } else {
+            runAll(request, response, batch, returnMe.getResponses());
+        }
+
+        log.exiting(BatchDispatcher.class.getName(), DISPATCH, returnMe);
+        return returnMe;
+    }
+
+    private void validate(BatchRequestAsset batch) {
+        if(batch.getRequests() == null || batch.getRequests().isEmpty()) {
+            throw new InvalidBatchException("a batch needs at least one request");
+        }
+        if(batch.getRequests().size() > MAX_REQUESTS) {
+            throw new InvalidBatchException(String.format("a batch can't have more than %d requests", MAX_REQUESTS));
+        }
+        if(batch.isAtomic() && shardRouter.isSharded()) {
+            throw new InvalidBatchException("atomic batches can't be run while the database is sharded");
+        }
+
+        for(BatchOperationAsset operation : batch.getRequests()) {
+            if(operation == null || operation.getMethod() == null ||
+               !METHODS.contains(operation.getMethod().toUpperCase())) {
+                throw new InvalidBatchException("each request needs one of these methods: " + METHODS);
+            }
+            if(operation.getPath() == null || BATCHABLE_PATHS.stream().noneMatch(root -> isUnder(operation.getPath(), root))) {
+                throw new InvalidBatchException("each request has to go to one of " + BATCHABLE_PATHS);
+            }
+        }
+    }
+
+    /**
+     * @return true if every request succeeded.
+     */
+    private boolean runAll(HttpServletRequest request,
+                           HttpServletResponse response,
+                           BatchRequestAsset batch,
+                           List<BatchResultAsset> results) {
+        boolean succeeded = true;
+
+        for(BatchOperationAsset operation : batch.getRequests()) {
+            BatchResultAsset result;
+
+            if(!succeeded && batch.isAtomic()) {
+                result = notRun("an earlier request in the batch failed");
+            } else {
+                result = run(request, response, operation, results, batch.isAtomic());
+            }
+
+            succeeded &= result.getStatus() < 400;
+            results.add(result);
+        }
+
+        return succeeded;
+    }
+
+    private BatchResultAsset run(HttpServletRequest request,
+                                 HttpServletResponse response,
+                                 BatchOperationAsset operation,
+                                 List<BatchResultAsset> earlier,
+                                 boolean atomic) {
+        String path;
+        JsonNode body;
+        try {
+            path = resolveText(operation.getPath(), earlier);
+            body = operation.getBody() == null ? null : resolve(operation.getBody(), earlier);
+        } catch(UnresolvedReferenceException e) {
+            return notRun(e.getMessage());
+        }
+
+        String method = operation.getMethod().toUpperCase();
+        HttpHeaders headers = headersFor(request, operation, atomic);
+        byte[] content = null;
+        if(body != null && !body.isNull()) {
+            content = toBytes(body);
+            if(headers.getContentType() == null) {
+                headers.setContentType(MediaType.APPLICATION_JSON_UTF8);
+            }
+        }
+
+        if(log.isLoggable(Level.FINE)) {
+            log.fine(String.format("dispatching batched %s %s", method, path));
+        }
+
+        SubRequest subRequest = new SubRequest(request, method, path, headers, content);
+        SubResponse subResponse = new SubResponse(response);
+        try {
+            admissionControl.admitWithin(request, subRequest, subResponse,
+                                         () -> dispatcherServlet.getObject().service(subRequest, subResponse));
+        } catch(ServletException | IOException | RuntimeException e) {
+            //Nothing handled it, so it would have been a 500 on its own, too.
+            log.log(Level.WARNING, String.format("batched %s %s failed", method, path), e);
+            subResponse.sendError(HttpStatus.INTERNAL_SERVER_ERROR.value(), e.getMessage());
+        }
+
+        return toResult(subResponse);
+    }
+
+    private HttpHeaders headersFor(HttpServletRequest request, BatchOperationAsset operation, boolean atomic) {
+        HttpHeaders headers = new HttpHeaders();
+
+        for(String name : Collections.list(request.getHeaderNames())) {
+            if(!BATCH_ONLY_HEADERS.contains(name)) {
+                headers.put(name, Collections.list(request.getHeaders(name)));
+            }
+        }
+        headers.setAccept(Collections.singletonList(MediaType.ALL));
+
+        if(operation.getHeaders() != null) {
+            operation.getHeaders().forEach(headers::set);
+        }
+        if(atomic) {
+            //The IdempotencyStore would remember the response even if the batch rolled back.  The batch's own key
+            //covers everything in it instead.
+            headers.remove(IdempotencyStore.IDEMPOTENCY_KEY_HEADER);
+        }
+
+        return headers;
+    }
+
+    private BatchResultAsset toResult(SubResponse subResponse) {
+        BatchResultAsset result = new BatchResultAsset();
+        result.setStatus(subResponse.getStatusCode());
+
+        Map<String, String> headers = new LinkedCaseInsensitiveMap<>();
+        subResponse.getCapturedHeaders().forEach((name, values) -> {
+            if(!HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name)) {
+                headers.put(name, String.join(", ", values));
+            }
+        });
+        result.setHeaders(headers);
+
+        byte[] body = subResponse.getBody();
+        if(body.length > 0) {
+            result.setBody(fromBytes(body));
+        } else if(subResponse.getErrorMessage() != null || subResponse.getStatusCode() >= 400) {
+            result.setBody(error(subResponse.getStatusCode(), subResponse.getErrorMessage()));
+        }
+
+        return result;
+    }
+
+    private BatchResultAsset notRun(String message) {
+        BatchResultAsset result = new BatchResultAsset();
+        result.setStatus(HttpStatus.FAILED_DEPENDENCY.value());
+        result.setBody(error(HttpStatus.FAILED_DEPENDENCY.value(), message));
+        return result;
+    }
+
+    private JsonNode error(int status, String message) {
+        ObjectNode error = objectMapper.createObjectNode();
+        HttpStatus httpStatus = HttpStatus.resolve(status);
+        error.put("error", httpStatus == null ? Integer.toString(status) : httpStatus.getReasonPhrase());
+        if(StringUtils.hasText(message)) {
+            error.put("message", message);
+        }
+        return error;
+    }
+
+    private JsonNode resolve(JsonNode node, List<BatchResultAsset> earlier) {
+        if(node.isTextual()) {
+            Matcher whole = WHOLE_REFERENCE.matcher(node.asText());
+            return whole.matches() ? lookUp(whole, earlier).deepCopy() : new TextNode(resolveText(node.asText(), earlier));
+        }
+
+        if(node.isObject()) {
+            ObjectNode returnMe = objectMapper.createObjectNode();
+            Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+            while(fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                returnMe.set(field.getKey(), resolve(field.getValue(), earlier));
+            }
+            return returnMe;
+        }
+
+        if(node.isArray()) {
+            ArrayNode returnMe = objectMapper.createArrayNode();
+            node.forEach(element -> returnMe.add(resolve(element, earlier)));
+            return returnMe;
+        }
+
+        return node;
+    }
+
+    private String resolveText(String text, List<BatchResultAsset> earlier) {
+        Matcher matcher = REFERENCE.matcher(text);
+        StringBuffer returnMe = new StringBuffer();
+
+        while(matcher.find()) {
+            matcher.appendReplacement(returnMe, Matcher.quoteReplacement(lookUp(matcher, earlier).asText()));
+        }
+
+        return matcher.appendTail(returnMe).toString();
+    }
+
+    private static JsonNode lookUp(Matcher reference, List<BatchResultAsset> earlier) {
+        int index = Integer.parseInt(reference.group(1));
+        if(index >= earlier.size()) {
+            throw new UnresolvedReferenceException(reference.group(), "it refers to a request that hasn't run yet");
+        }
+
+        BatchResultAsset result = earlier.get(index);
+        if(result.getStatus() >= 400) {
+            throw new UnresolvedReferenceException(reference.group(), "the request it refers to failed");
+        }
+
+        JsonNode node = result.getBody() == null ? NullNode.getInstance() : result.getBody();
+        List<String> fields = new ArrayList<>(Arrays.asList(reference.group(2).split("\\.")));
+        //The path starts with a ".", which leaves an empty first element.
+        fields.remove(0);
+        for(String field : fields) {
+            node = node.isArray() && field.chars().allMatch(Character::isDigit) ? node.path(Integer.parseInt(field))
+                                                                                 : node.path(field);
+        }
+
+        if(node.isMissingNode() || node.isNull()) {
+            throw new UnresolvedReferenceException(reference.group(), "there's nothing there");
+        }
+        return node;
+    }
+
+    private JsonNode fromBytes(byte[] body) {
+        try {
+            return objectMapper.readTree(body);
+        } catch(IOException e) {
+            return new TextNode(new String(body, StandardCharsets.UTF_8));
+        }
+    }
+
+    private byte[] toBytes(JsonNode body) {
+        try {
+            return objectMapper.writeValueAsBytes(body);
+        } catch(JsonProcessingException e) {
+            throw new IllegalStateException("couldn't write a JSON tree back out as JSON", e);
+        }
+    }
+
+    private static boolean isUnder(String path, String root) {
+        return path.equals(root) || path.startsWith(root + "/") || path.startsWith(root + "?");
+    }
+
+    private static class UnresolvedReferenceException extends RuntimeException {
+        UnresolvedReferenceException(String reference, String why) {
+            super(String.format("couldn't fill in %s: %s", reference, why));
+        }
+    }
+}
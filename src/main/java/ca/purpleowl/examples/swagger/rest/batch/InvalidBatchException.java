@@ -0,0 +1,15 @@
+package ca.purpleowl.examples.swagger.rest.batch;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Thrown when a batch can't be run at all: it's too big, or one of its requests has no method or goes somewhere
+ * batches can't.  Nothing in the batch is run.
+ */
+@ResponseStatus(value = HttpStatus.BAD_REQUEST, reason = "Invalid batch")
+public class InvalidBatchException extends RuntimeException {
+    public InvalidBatchException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,30 @@
+package ca.purpleowl.examples.swagger.rest.changes;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.springframework.hateoas.Link;
+import org.springframework.hateoas.Resources;
+
+/**
+ * A page of changes.  The changed entities are embedded as they would be for any other collection; on top of that
+ * there's the token to send as "since" next time, and whether there's more to fetch right away.
+ */
+public class ChangeSetResources<T> extends Resources<T> {
+    private final String nextToken;
+    private final boolean moreAvailable;
+
+    public ChangeSetResources(Iterable<T> content, String nextToken, boolean moreAvailable, Iterable<Link> links) {
+        super(content, links);
+        this.nextToken = nextToken;
+        this.moreAvailable = moreAvailable;
+    }
+
+    @JsonProperty("nextToken")
+    public String getNextToken() {
+        return nextToken;
+    }
+
+    @JsonProperty("moreAvailable")
+    public boolean isMoreAvailable() {
+        return moreAvailable;
+    }
+}
@@ -0,0 +1,49 @@
+package ca.purpleowl.examples.swagger.rest.changes;
+
+import org.springframework.util.StringUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Turns change sequence numbers into the tokens handed to clients and back again.  Clients are supposed to treat
+ * these as opaque, and they're versioned so that we're free to put something else in them later.
+ */
+public final class ChangeToken {
+    private static final String PREFIX = "v1:";
+
+    private ChangeToken() {}
+
+    public static String encode(long sequence) {
+        return Base64.getUrlEncoder()
+                     .withoutPadding()
+                     .encodeToString((PREFIX + sequence).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param token - A token previously returned by encode(), or null/empty to start from the beginning.
+     * @return the change sequence the token stands for.
+     * @throws InvalidChangeTokenException if the token isn't one of ours.
+     */
+    public static long decode(String token) {
+        if(!StringUtils.hasText(token)) {
+            return 0;
+        }
+
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+
+            if(decoded.startsWith(PREFIX)) {
+                long sequence = Long.parseLong(decoded.substring(PREFIX.length()));
+
+                if(sequence >= 0) {
+                    return sequence;
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            //Covers NumberFormatException too.  Falls through to the exception below.
+        }
+
+        throw new InvalidChangeTokenException(token);
+    }
+}
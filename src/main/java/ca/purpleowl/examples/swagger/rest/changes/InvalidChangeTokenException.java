@@ -0,0 +1,14 @@
+package ca.purpleowl.examples.swagger.rest.changes;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Thrown when a client sends a change token we didn't give it.
+ */
+@ResponseStatus(value = HttpStatus.BAD_REQUEST, reason = "Unrecognized change token")
+public class InvalidChangeTokenException extends RuntimeException {
+    public InvalidChangeTokenException(String token) {
+        super(String.format("%s is not a valid change token", token));
+    }
+}
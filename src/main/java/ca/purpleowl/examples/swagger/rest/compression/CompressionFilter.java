@@ -0,0 +1,82 @@
+package ca.purpleowl.examples.swagger.rest.compression;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.util.InvalidMimeTypeException;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Gzips API responses for clients that ask for it, once they're big enough to be worth it.  A list of a few thousand
+ * Programmers is mostly the same handful of field names and link prefixes over and over, and comes down to a tenth of
+ * its size or less.
+ *
+ * We can't know how big a response is until it's been written, so the whole thing is held back in memory and then
+ * either compressed or sent on as it was.  That's fine for our endpoints (the lists are built in memory anyway), but
+ * this shouldn't go anywhere near a streaming endpoint like the event feed.
+ */
+public class CompressionFilter extends OncePerRequestFilter {
+    private static final String GZIP = "gzip";
+
+    private final GzipCompressor compressor;
+    private final int minResponseSize;
+    private final List<MediaType> mimeTypes;
+
+    public CompressionFilter(GzipCompressor compressor, CompressionProperties properties) {
+        this.compressor = compressor;
+        this.minResponseSize = (int) properties.getMinResponseSize().toBytes();
+        this.mimeTypes = properties.getMimeTypes()
+                                   .stream()
+                                   .map(MediaType::parseMediaType)
+                                   .collect(Collectors.toList());
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request,
+                                    HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        //Whatever we end up doing, a cache has to know that the answer depends on this.
+        response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+
+        if(!GzipCompressor.acceptsGzip(request.getHeader(HttpHeaders.ACCEPT_ENCODING))) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        ContentCachingResponseWrapper held = new ContentCachingResponseWrapper(response);
+        filterChain.doFilter(request, held);
+
+        if(held.getContentSize() >= minResponseSize
+                && response.getHeader(HttpHeaders.CONTENT_ENCODING) == null
+                && isCompressible(held.getContentType())) {
+            byte[] compressed = compressor.compress(held.getContentInputStream(), held.getContentSize());
+
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, GZIP);
+            response.setContentLength(compressed.length);
+            response.getOutputStream().write(compressed);
+        } else {
+            held.copyBodyToResponse();
+        }
+    }
+
+    private boolean isCompressible(String contentType) {
+        if(contentType == null) {
+            return false;
+        }
+
+        try {
+            MediaType mediaType = MediaType.parseMediaType(contentType);
+            return mimeTypes.stream().anyMatch(compressible -> compressible.isCompatibleWith(mediaType));
+        } catch(InvalidMimeTypeException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package ca.purpleowl.examples.swagger.rest.compression;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.util.Arrays;
+import java.util.List;
+
+@Data
+@ConfigurationProperties("purpleowl.compression")
+public class CompressionProperties {
+    /**
+     * Whether API responses are gzipped for clients that ask for it.  The Swagger UI is served compressed either way.
+     */
+    private boolean enabled = true;
+
+    /**
+     * Responses smaller than this go out as they are.  Below a packet or two, gzip's header and the time spent
+     * compressing cost more than they save.
+     */
+    private DataSize minResponseSize = DataSize.ofKilobytes(2);
+
+    /**
+     * The deflate level, from 1 (fastest) to 9 (smallest).  6 is where gzip itself sits, and going higher buys very
+     * little for JSON.
+     */
+    private int level = 6;
+
+    /**
+     * How many idle compressors to keep around for reuse.  Each one holds a few hundred KB of native memory, so this
+     * wants to be about the number of responses we'd expect to be compressing at once, and no more.
+     */
+    private int poolSize = 16;
+
+    /**
+     * The content types worth compressing.
+     */
+    private List<String> mimeTypes = Arrays.asList("application/json", "application/hal+json");
+}
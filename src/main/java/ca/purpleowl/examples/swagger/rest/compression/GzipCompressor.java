@@ -0,0 +1,136 @@
+package ca.purpleowl.examples.swagger.rest.compression;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Gzips things, reusing Deflaters (and their buffers) from one call to the next.
+ *
+ * A GZIPOutputStream makes a new Deflater every time, and a Deflater is mostly native memory that's only given back
+ * when it's ended or, failing that, whenever the garbage collector gets round to it.  Doing that for every response
+ * is a good way to find out how much native memory the box has.  So instead we keep a few idle ones in a pool and
+ * write the gzip header and trailer around them ourselves.
+ */
+public class GzipCompressor {
+    private static final int BUFFER_SIZE = 8192;
+    //The same header GZIPOutputStream writes: magic number, deflate, no flags, no timestamp.
+    private static final byte[] HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0};
+
+    private final int level;
+    private final BlockingQueue<Compressor> idle;
+
+    public GzipCompressor(CompressionProperties properties) {
+        this.level = properties.getLevel();
+        this.idle = new ArrayBlockingQueue<>(Math.max(1, properties.getPoolSize()));
+    }
+
+    /**
+     * @param in - What to compress.  It's read to the end but not closed.
+     * @param sizeHint - Roughly how big the input is, to save growing the output as we go.
+     * @return The input, gzipped.
+     */
+    public byte[] compress(InputStream in, int sizeHint) throws IOException {
+        Compressor compressor = idle.poll();
+        if(compressor == null) {
+            compressor = new Compressor(level);
+        }
+
+        try {
+            return compressor.compress(in, sizeHint);
+        } finally {
+            compressor.deflater.reset();
+            if(!idle.offer(compressor)) {
+                compressor.deflater.end();
+            }
+        }
+    }
+
+    /**
+     * @param acceptEncoding - The request's Accept-Encoding header, if it had one.
+     * @return Whether the client will take a gzipped response.
+     */
+    public static boolean acceptsGzip(String acceptEncoding) {
+        if(acceptEncoding == null) {
+            return false;
+        }
+
+        Double gzip = null;
+        Double anything = null;
+
+        for(String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            String name = parts[0].trim();
+            double quality = 1;
+
+            for(int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].trim();
+                if(parameter.startsWith("q=")) {
+                    try {
+                        quality = Double.parseDouble(parameter.substring(2));
+                    } catch(NumberFormatException e) {
+                        quality = 0;
+                    }
+                }
+            }
+
+            if(name.equalsIgnoreCase("gzip") || name.equalsIgnoreCase("x-gzip")) {
+                gzip = quality;
+            } else if(name.equals("*")) {
+                anything = quality;
+            }
+        }
+
+        //Naming gzip outright beats a wildcard, whichever way round they come.
+        return gzip != null ? gzip > 0 : anything != null && anything > 0;
+    }
+
+    private static class Compressor {
+        private final Deflater deflater;
+        private final byte[] input = new byte[BUFFER_SIZE];
+        private final byte[] output = new byte[BUFFER_SIZE];
+        private final CRC32 crc = new CRC32();
+
+        Compressor(int level) {
+            //Raw deflate; the header and trailer are ours to write.
+            this.deflater = new Deflater(level, true);
+        }
+
+        byte[] compress(InputStream in, int sizeHint) throws IOException {
+            //JSON usually comes down to a fifth or so of its size.
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, sizeHint / 4));
+            out.write(HEADER);
+            crc.reset();
+            long length = 0;
+
+            for(int read = in.read(input); read >= 0; read = in.read(input)) {
+                crc.update(input, 0, read);
+                length += read;
+                deflater.setInput(input, 0, read);
+                while(!deflater.needsInput()) {
+                    out.write(output, 0, deflater.deflate(output));
+                }
+            }
+
+            deflater.finish();
+            while(!deflater.finished()) {
+                out.write(output, 0, deflater.deflate(output));
+            }
+
+            writeInt(out, crc.getValue());
+            writeInt(out, length);
+            return out.toByteArray();
+        }
+
+        private static void writeInt(ByteArrayOutputStream out, long value) {
+            out.write((int) value & 0xff);
+            out.write((int) (value >> 8) & 0xff);
+            out.write((int) (value >> 16) & 0xff);
+            out.write((int) (value >> 24) & 0xff);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package ca.purpleowl.examples.swagger.rest.compression;
+
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.servlet.resource.AbstractResourceResolver;
+import org.springframework.web.servlet.resource.HttpResource;
+import org.springframework.web.servlet.resource.ResourceResolverChain;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Serves gzipped copies of static text files (scripts, stylesheets and the like) to clients that will take them.
+ *
+ * Spring's own EncodedResourceResolver does this for files that were compressed at build time and sit next to the
+ * originals as .gz files.  The Swagger UI comes out of a jar we don't build, though, so instead each file is
+ * compressed the first time it's asked for and the result is kept for as long as we're running.  There are only a
+ * handful of them, and they never change underneath us.
+ */
+public class PrecompressedResourceResolver extends AbstractResourceResolver {
+    private static final Set<String> COMPRESSIBLE = new HashSet<>(Arrays.asList("html", "js", "css", "map", "json", "svg"));
+
+    private final GzipCompressor compressor;
+    private final ConcurrentMap<Resource, Resource> compressed = new ConcurrentHashMap<>();
+
+    public PrecompressedResourceResolver(GzipCompressor compressor) {
+        this.compressor = compressor;
+    }
+
+    @Override
+    protected Resource resolveResourceInternal(HttpServletRequest request,
+                                               String requestPath,
+                                               List<? extends Resource> locations,
+                                               ResourceResolverChain chain) {
+        Resource resource = chain.resolveResource(request, requestPath, locations);
+
+        if(resource == null
+                || request == null
+                || !GzipCompressor.acceptsGzip(request.getHeader(HttpHeaders.ACCEPT_ENCODING))
+                || !isCompressible(resource.getFilename())) {
+            return resource;
+        }
+
+        return compressed.computeIfAbsent(resource, this::compress);
+    }
+
+    @Override
+    protected String resolveUrlPathInternal(String resourceUrlPath,
+                                            List<? extends Resource> locations,
+                                            ResourceResolverChain chain) {
+        return chain.resolveUrlPath(resourceUrlPath, locations);
+    }
+
+    /**
+     * @return The gzipped Resource, or the original if compressing it didn't make it any smaller.
+     */
+    private Resource compress(Resource original) {
+        try(InputStream in = original.getInputStream()) {
+            byte[] bytes = StreamUtils.copyToByteArray(in);
+            byte[] gzipped = compressor.compress(new ByteArrayInputStream(bytes), bytes.length);
+
+            return gzipped.length < bytes.length ? new GzippedResource(original, gzipped) : original;
+        } catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static boolean isCompressible(String filename) {
+        if(filename == null || filename.lastIndexOf('.') < 0) {
+            return false;
+        }
+        return COMPRESSIBLE.contains(filename.substring(filename.lastIndexOf('.') + 1).toLowerCase());
+    }
+
+    /**
+     * The gzipped bytes, standing in for the original everywhere but the body.  The name (and so the content type)
+     * and modification time are the original's.
+     */
+    static class GzippedResource extends AbstractResource implements HttpResource {
+        private final Resource original;
+        private final byte[] gzipped;
+
+        GzippedResource(Resource original, byte[] gzipped) {
+            this.original = original;
+            this.gzipped = gzipped;
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return new ByteArrayInputStream(gzipped);
+        }
+
+        @Override
+        public boolean exists() {
+            return true;
+        }
+
+        @Override
+        public long contentLength() {
+            return gzipped.length;
+        }
+
+        @Override
+        public long lastModified() throws IOException {
+            return original.lastModified();
+        }
+
+        @Override
+        public URL getURL() throws IOException {
+            return original.getURL();
+        }
+
+        @Override
+        public Resource createRelative(String relativePath) throws IOException {
+            return original.createRelative(relativePath);
+        }
+
+        @Override
+        public String getFilename() {
+            return original.getFilename();
+        }
+
+        @Override
+        public String getDescription() {
+            return "gzipped " + original.getDescription();
+        }
+
+        @Override
+        public HttpHeaders getResponseHeaders() {
+            HttpHeaders headers = new HttpHeaders();
+            headers.set(HttpHeaders.CONTENT_ENCODING, "gzip");
+            headers.set(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+            return headers;
+        }
+    }
+}
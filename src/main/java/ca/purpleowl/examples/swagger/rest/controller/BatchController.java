@@ -0,0 +1,116 @@
+package ca.purpleowl.examples.swagger.rest.controller;
+
+import ca.purpleowl.examples.swagger.rest.asset.BatchRequestAsset;
+import ca.purpleowl.examples.swagger.rest.asset.BatchResponseAsset;
+import ca.purpleowl.examples.swagger.rest.batch.BatchDispatcher;
+import ca.purpleowl.examples.swagger.rest.filter.ClientIdentityFilter;
+import ca.purpleowl.examples.swagger.rest.idempotency.IdempotencyStore;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiParam;
+import io.swagger.annotations.ApiResponse;
+import io.swagger.annotations.ApiResponses;
+import lombok.extern.java.Log;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+import springfox.documentation.annotations.ApiIgnore;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Lets a client send several requests to the Programmer and Team endpoints in one go.  Clients on slow links (phones,
+ * mostly) tend to make a chain of calls - create a Programmer, create a Team, put one on the other, read the Team back
+ * - and pay a full round trip for every one of them.  Batching them pays for one.
+ */
+@Log
+@Api(tags = {"Batch"},
+     description = "Endpoint for sending several requests at once",
+     produces = "application/json",
+     consumes = "application/json",
+     protocols = "http")
+@RestController
+@RequestMapping("/batch")
+public class BatchController {
+    private static final String BATCH = "batch";
+
+    private final BatchDispatcher batchDispatcher;
+    private final IdempotencyStore idempotencyStore;
+
+    @Autowired
+    public BatchController(BatchDispatcher batchDispatcher, IdempotencyStore idempotencyStore) {
+        this.batchDispatcher = batchDispatcher;
+        this.idempotencyStore = idempotencyStore;
+    }
+
+    /**
+     * Runs each request in the batch, in order, as if it had been sent on its own, and returns all of their responses
+     * (status, headers and body) together.  A later request can refer to a field of an earlier one's response, like
+     * {{0.programmerId}}, in its path or body.  If the batch is atomic, either every request commits or none do;
+     * atomic batches are turned away while the database is sharded, as that can't be promised across shards.
+     *
+     * The batch as a whole can carry an Idempotency-Key, which makes retrying it safe in the same way as for the POSTs.
+     *
+     * @param batch - The requests to run.
+     * @param idempotencyKey - An optional client-generated key identifying this particular batch.
+     * @return A ResponseEntity containing the response to each request, in the same order as the requests.
+     */
+    @ApiOperation(value = "Runs several requests in one round trip",
+                  notes = "Runs each request in the batch, in order, against the Programmer and Team endpoints, and " +
+                          "returns all of their responses together.  A later request can refer to a field of an " +
+                          "earlier one's response, like {{0.programmerId}}, in its path or body.  If the batch is " +
+                          "atomic, either every request commits or none do; otherwise each stands on its own.  Atomic " +
+                          "batches aren't available while the database is sharded.",
+                  response = BatchResponseAsset.class,
+                  httpMethod = "POST",
+                  produces = "application/json",
+                  consumes = "application/json")
+    @ApiResponses(value = {
+            @ApiResponse(code = 200,
+                         message = "The batch ran; each request's own status is in its response",
+                         response = BatchResponseAsset.class),
+            @ApiResponse(code = 400,
+                         message = "The batch was empty, too big, had a request that can't be batched, or was " +
+                                   "atomic while the database is sharded"),
+            @ApiResponse(code = 409,
+                         message = "A batch with the same Idempotency-Key is still being processed"),
+            @ApiResponse(code = 422,
+                         message = "The Idempotency-Key was already used for a different batch"),
+            @ApiResponse(code = 429,
+                         message = "The client doesn't have a token left for every request in the batch"),
+            @ApiResponse(code = 500,
+                         message = "Internal error")
+    })
+    @RequestMapping(method = RequestMethod.POST,
+                    consumes = MediaType.APPLICATION_JSON_VALUE,
+                    produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<BatchResponseAsset> batch(
+            @RequestBody
+            @ApiParam(value = "The requests to run, in order")
+            BatchRequestAsset batch,
+            @RequestHeader(name = IdempotencyStore.IDEMPOTENCY_KEY_HEADER, required = false)
+            @ApiParam(value = "Optional client-generated key which makes retries of this batch safe")
+            String idempotencyKey,
+            @ApiIgnore
+            HttpServletRequest request,
+            @ApiIgnore
+            HttpServletResponse response) {
+        log.entering(BatchController.class.getName(), BATCH, batch);
+
+        ResponseEntity<BatchResponseAsset> returnMe = idempotencyStore.execute(
+                ClientIdentityFilter.clientOf(request),
+                idempotencyKey,
+                BATCH,
+                batch,
+                () -> ResponseEntity.ok(batchDispatcher.dispatch(request, response, batch)));
+
+        log.exiting(BatchController.class.getName(), BATCH, returnMe);
+        return returnMe;
+    }
+}
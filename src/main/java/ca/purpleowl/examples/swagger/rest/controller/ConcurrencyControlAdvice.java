@@ -0,0 +1,25 @@
+package ca.purpleowl.examples.swagger.rest.controller;
+
+import ca.purpleowl.examples.swagger.service.VersionConflictException;
+import lombok.extern.java.Log;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+/**
+ * Both flavours of "somebody else changed this first" end up as a 412 Precondition Failed: either the client's
+ * If-Match didn't match the current version, or another transaction committed between our read and our write.  Either
+ * way the client should re-read and try again.
+ */
+@Log
+@RestControllerAdvice
+public class ConcurrencyControlAdvice {
+
+    @ExceptionHandler({VersionConflictException.class, ObjectOptimisticLockingFailureException.class})
+    public ResponseEntity<Void> versionConflict(RuntimeException e) {
+        log.fine(e.getMessage());
+        return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build();
+    }
+}
@@ -0,0 +1,48 @@
+package ca.purpleowl.examples.swagger.rest.controller;
+
+import ca.purpleowl.examples.swagger.service.VersionConflictException;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.StringUtils;
+
+/**
+ * Converts between entity versions and the ETag / If-Match headers.  An entity's ETag is just its version in quotes,
+ * e.g. "3".
+ */
+final class EntityTags {
+    private static final String ANY = "*";
+    private static final String WEAK_PREFIX = "W/";
+
+    private EntityTags() {}
+
+    static ResponseEntity.BodyBuilder ok(Long version) {
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok();
+
+        if(version != null) {
+            builder.eTag(version.toString());
+        }
+
+        return builder;
+    }
+
+    /**
+     * @param ifMatch - The If-Match header, as sent.  One ETag (from a previous response) or "*".
+     * @return the version the client expects, or null if it didn't set any condition ("*" included).
+     * @throws VersionConflictException if the header isn't one of our ETags, since it can't possibly match.
+     */
+    static Long expectedVersion(String ifMatch, String entityType, Long id) {
+        if(!StringUtils.hasText(ifMatch) || ANY.equals(ifMatch.trim())) {
+            return null;
+        }
+
+        String tag = ifMatch.trim();
+        if(tag.startsWith(WEAK_PREFIX)) {
+            tag = tag.substring(WEAK_PREFIX.length());
+        }
+
+        try {
+            return Long.valueOf(StringUtils.trimLeadingCharacter(StringUtils.trimTrailingCharacter(tag, '"'), '"'));
+        } catch (NumberFormatException e) {
+            throw new VersionConflictException(entityType, id, null, null);
+        }
+    }
+}
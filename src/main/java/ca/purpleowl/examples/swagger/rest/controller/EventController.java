@@ -0,0 +1,157 @@
+package ca.purpleowl.examples.swagger.rest.controller;
+
+import ca.purpleowl.examples.swagger.rest.asset.ProgrammerAsset;
+import ca.purpleowl.examples.swagger.rest.asset.TeamAsset;
+import ca.purpleowl.examples.swagger.rest.events.ChangeFeed;
+import ca.purpleowl.examples.swagger.rest.events.ChangeNotification;
+import ca.purpleowl.examples.swagger.service.event.EntityChangeEvent;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiParam;
+import io.swagger.annotations.ApiResponse;
+import io.swagger.annotations.ApiResponses;
+import io.undertow.server.ServerConnection;
+import io.undertow.servlet.handlers.ServletRequestContext;
+import lombok.extern.java.Log;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.MessageSource;
+import org.springframework.context.support.MessageSourceAccessor;
+import org.springframework.hateoas.Resource;
+import org.springframework.hateoas.core.DefaultRelProvider;
+import org.springframework.hateoas.hal.Jackson2HalModule;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.xnio.IoUtils;
+
+import java.util.logging.Level;
+
+/**
+ * A Server-Sent Events feed of changes to Teams and Programmers, so that clients can stop polling GET /team and
+ * GET /programmer just to find out whether anything has happened.
+ *
+ * This also listens for the EntityChangeEvents published by the services.  Changes are only passed along once their
+ * transaction has committed, and that happens on the thread that made the change - which is still handling its
+ * request, so the Hypermedia links in the bodies come out exactly as they would from the other controllers.
+ */
+@Log
+@Api(tags = {"Events"},
+     description = "Endpoint for following changes to Teams and Programmers",
+     produces = MediaType.TEXT_EVENT_STREAM_VALUE,
+     protocols = "http")
+@RestController
+@RequestMapping("/events")
+public class EventController {
+    private static final String SUBSCRIBE = "subscribe";
+    private static final String ON_ENTITY_CHANGE = "onEntityChange";
+
+    private final ChangeFeed changeFeed;
+    private final ObjectMapper halObjectMapper;
+
+    /**
+     * Spring HATEOAS keeps the ObjectMapper it uses for HAL to itself, so we make our own the same way it does: a copy of
+     * the application's ObjectMapper with the HAL module on top.
+     */
+    @Autowired
+    public EventController(ChangeFeed changeFeed, ObjectMapper objectMapper, MessageSource messageSource) {
+        this.changeFeed = changeFeed;
+        this.halObjectMapper = objectMapper.copy().registerModule(new Jackson2HalModule());
+        this.halObjectMapper.setHandlerInstantiator(new Jackson2HalModule.HalHandlerInstantiator(
+                new DefaultRelProvider(),
+                null,
+                new MessageSourceAccessor(messageSource)));
+    }
+
+    /**
+     * Opens a stream of change notifications.  Each notification is an SSE event named after the type of entity that
+     * changed ("team" or "programmer"), with data like {"type":"team","id":1,"version":0}.  If includeBody is set, the data also
+     * contains the entity's HAL representation, as GET would return it, under "body".
+     *
+     * @param includeBody - Whether or not to include the changed entity in each notification.
+     * @return An SseEmitter which the notifications will be sent through.
+     */
+    @ApiOperation(value = "Subscribes to changes to Teams and Programmers",
+                  notes = "Opens a stream of Server-Sent Events, one for every Team or Programmer that's saved.  Each " +
+                          "event is named after the type of entity that changed (\"team\" or \"programmer\") and " +
+                          "carries its type, ID and version.  If includeBody is set, it also carries the entity's HAL " +
+                          "representation under \"body\".",
+                  produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Subscribed"),
+            @ApiResponse(code = 503, message = "Too many subscribers"),
+            @ApiResponse(code = 500, message = "Internal error")
+    })
+    @RequestMapping(method = RequestMethod.GET, produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> subscribe(
+            @RequestParam(value = "includeBody", required = false, defaultValue = "false")
+            @ApiParam(value = "Whether or not to include the changed entity in each notification")
+            boolean includeBody) {
+        log.entering(EventController.class.getName(), SUBSCRIBE, includeBody);
+        //Closing the connection is the only way to get out of a write that's stuck on a client that has stopped reading.
+        ServerConnection connection = ServletRequestContext.requireCurrent().getExchange().getConnection();
+        SseEmitter emitter = changeFeed.subscribe(includeBody, () -> IoUtils.safeClose(connection));
+
+        if(emitter == null) {
+            log.exiting(EventController.class.getName(), SUBSCRIBE, HttpStatus.SERVICE_UNAVAILABLE);
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+
+        log.exiting(EventController.class.getName(), SUBSCRIBE, emitter);
+        return ResponseEntity.ok(emitter);
+    }
+
+    /**
+     * Renders a change once for all subscribers.  The transaction has already committed by the time this is called, so
+     * nothing in here may be allowed to throw back at the caller.
+     */
+    @TransactionalEventListener
+    public void onEntityChange(EntityChangeEvent event) {
+        log.entering(EventController.class.getName(), ON_ENTITY_CHANGE, event);
+
+        if(changeFeed.subscriberCount() == 0) {
+            log.exiting(EventController.class.getName(), ON_ENTITY_CHANGE);
+            return;
+        }
+
+        String type = event.getEntityType().name().toLowerCase();
+
+        try {
+            String compact = halObjectMapper.writeValueAsString(new ChangeNotification(type, event.getId(), event.getVersion(), null));
+            String withBody = null;
+
+            if(changeFeed.wantsBodies()) {
+                withBody = halObjectMapper.writeValueAsString(new ChangeNotification(type,
+                                                                                    event.getId(),
+                                                                                    event.getVersion(),
+                                                                                    wrap(event)));
+            }
+
+            changeFeed.publish(type, compact, withBody);
+        } catch (JsonProcessingException | IllegalStateException e) {
+            //IllegalStateException means there's no request to build links from, i.e. the change didn't come in
+            //through the API.  Either way, better to drop one notification than to fail a change that's committed.
+            log.log(Level.WARNING, "unable to publish change notification for " + type + " " + event.getId(), e);
+        }
+
+        log.exiting(EventController.class.getName(), ON_ENTITY_CHANGE);
+    }
+
+    private static Resource wrap(EntityChangeEvent event) {
+        switch(event.getEntityType()) {
+            case TEAM:
+                return TeamController.wrapAsset((TeamAsset) event.getAsset());
+            case PROGRAMMER:
+                return ProgrammerController.wrapAsset((ProgrammerAsset) event.getAsset());
+            default:
+                throw new IllegalStateException("unknown entity type " + event.getEntityType());
+        }
+    }
+}
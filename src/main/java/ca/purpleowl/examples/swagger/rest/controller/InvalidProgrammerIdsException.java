@@ -0,0 +1,15 @@
+package ca.purpleowl.examples.swagger.rest.controller;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Thrown when a bulk move is given Programmer IDs that can't be real (zero or negative), or more of them than we'll
+ * take in one request.
+ */
+@ResponseStatus(value = HttpStatus.BAD_REQUEST, reason = "Invalid programmerIds")
+public class InvalidProgrammerIdsException extends RuntimeException {
+    public InvalidProgrammerIdsException(String message) {
+        super(message);
+    }
+}
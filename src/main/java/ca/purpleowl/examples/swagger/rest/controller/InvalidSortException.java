@@ -0,0 +1,14 @@
+package ca.purpleowl.examples.swagger.rest.controller;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Thrown when a client asks for a list sorted by something we don't sort by, or in a direction that isn't asc or desc.
+ */
+@ResponseStatus(value = HttpStatus.BAD_REQUEST, reason = "Unsupported sort")
+public class InvalidSortException extends RuntimeException {
+    public InvalidSortException(String sort, String direction) {
+        super(String.format("can't sort by %s %s", sort, direction));
+    }
+}
@@ -0,0 +1,37 @@
+package ca.purpleowl.examples.swagger.rest.controller;
+
+import org.springframework.data.domain.Sort;
+
+import java.util.Arrays;
+
+/**
+ * Turns the "sort" and "direction" parameters on the list endpoints into a Sort.  Only the properties each endpoint
+ * names are allowed, both so that clients can't sort by things that have no index behind them and so that nothing a
+ * client sends ends up in a query unchecked.
+ */
+final class ListSorting {
+    static final String ID = "id";
+
+    private ListSorting() {}
+
+    /**
+     * @param sort - The property the client asked to sort by, or null for the default.
+     * @param direction - "asc" or "desc" (in any case), or null for ascending.
+     * @param defaultSort - What to sort by if the client didn't say.
+     * @param sortable - The properties the client is allowed to sort by.
+     * @return A Sort on the chosen property, then by ID so that ties always come back in the same order.
+     */
+    static Sort parse(String sort, String direction, String defaultSort, String... sortable) {
+        if(sort != null && !Arrays.asList(sortable).contains(sort)) {
+            throw new InvalidSortException(sort, direction);
+        }
+        String property = sort == null ? defaultSort : sort;
+
+        Sort.Direction parsedDirection = direction == null ? Sort.Direction.ASC
+                                                           : Sort.Direction.fromOptionalString(direction)
+                                                                           .orElseThrow(() -> new InvalidSortException(sort, direction));
+
+        Sort returnMe = Sort.by(parsedDirection, property);
+        return property.equals(ID) ? returnMe : returnMe.and(Sort.by(parsedDirection, ID));
+    }
+}
@@ -1,28 +1,47 @@
 package ca.purpleowl.examples.swagger.rest.controller;
 
 import ca.purpleowl.examples.swagger.rest.asset.ProgrammerAsset;
+import ca.purpleowl.examples.swagger.rest.changes.ChangeSetResources;
+import ca.purpleowl.examples.swagger.rest.changes.ChangeToken;
+import ca.purpleowl.examples.swagger.rest.filter.ClientIdentityFilter;
+import ca.purpleowl.examples.swagger.rest.hal.HalWriter;
+import ca.purpleowl.examples.swagger.rest.idempotency.IdempotencyStore;
+import ca.purpleowl.examples.swagger.service.ChangeSet;
 import ca.purpleowl.examples.swagger.service.ProgrammerService;
+import ca.purpleowl.examples.swagger.service.readmodel.ReadModel;
+import com.fasterxml.jackson.databind.JsonNode;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
 import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
 import lombok.extern.java.Log;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.hateoas.Link;
+import org.springframework.hateoas.MediaTypes;
 import org.springframework.hateoas.Resource;
 import org.springframework.hateoas.Resources;
 import org.springframework.hateoas.core.EmbeddedWrappers;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import springfox.documentation.annotations.ApiIgnore;
 
+import javax.servlet.http.HttpServletRequest;
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.logging.Level;
@@ -46,20 +65,33 @@ import static org.springframework.hateoas.mvc.ControllerLinkBuilder.methodOn;
 @RequestMapping(value = "/programmer")
 public class ProgrammerController {
     private final ProgrammerService programmerService;
+    private final IdempotencyStore idempotencyStore;
+    private final ObjectProvider<ReadModel> readModel;
 
     private static final String RETRIEVE_PROGRAMMER = "retrieveProgrammer";
     private static final String RETRIEVE_ALL_PROGRAMMERS = "retrieveAllProgrammers";
     private static final String CREATE_PROGRAMMER = "createProgrammer";
+    private static final String PATCH_PROGRAMMER = "patchProgrammer";
+    private static final String RETRIEVE_PROGRAMMER_CHANGES = "retrieveProgrammerChanges";
     private static final String WRAP_ASSET = "wrapAsset";
+    private static final int MAX_CHANGES = 1000;
+    private static final String NAME = "name";
+    private static final String DATE_HIRED = "dateHired";
 
     /**
      * Autowired constructor which accepts a ProgrammerService as a parameter.
      *
      * @param programmerService - An instance of ProgrammerService, which loosens coupling between the Controller and the JPA model.
+     * @param idempotencyStore - Remembers responses to requests carrying an Idempotency-Key, so that retries aren't saved twice.
+     * @param readModel - The in-memory read model, if it's switched on.  The GETs are answered from it when it is.
      */
     @Autowired
-    public ProgrammerController(ProgrammerService programmerService) {
+    public ProgrammerController(ProgrammerService programmerService,
+                                IdempotencyStore idempotencyStore,
+                                ObjectProvider<ReadModel> readModel) {
         this.programmerService = programmerService;
+        this.idempotencyStore = idempotencyStore;
+        this.readModel = readModel;
     }
 
     /**
@@ -101,7 +133,9 @@ public class ProgrammerController {
                       required = true)
             Long programmerId) {
         log.entering(ProgrammerController.class.getName(), RETRIEVE_PROGRAMMER, programmerId);
-        ProgrammerAsset asset = programmerService.findProgrammer(programmerId);
+        ReadModel model = readModel();
+        ProgrammerAsset asset = model != null ? model.findProgrammer(programmerId)
+                                              : programmerService.findProgrammer(programmerId);
 
         if(asset != null) {
             if(log.isLoggable(Level.FINER)){
@@ -111,7 +145,7 @@ public class ProgrammerController {
             Resource returnMe = wrapAsset(asset);
 
             log.exiting(ProgrammerController.class.getName(), RETRIEVE_PROGRAMMER, returnMe);
-            return ResponseEntity.ok(returnMe);
+            return EntityTags.ok(asset.getVersion()).body(returnMe);
         }
 
         log.exiting(ProgrammerController.class.getName(), RETRIEVE_PROGRAMMER, HttpStatus.NOT_FOUND);
@@ -124,7 +158,18 @@ public class ProgrammerController {
      * the system are returned.  These are wrapped within Resource wrappers and returned within a ResponseEntity which
      * provides the Status Code and any other relevant information regarding the success or failure of the request.
      *
+     * The list can also be narrowed down to a range of hire dates, and sorted by name or hire date.  All of that is
+     * done by the database (using its indexes), rather than by fetching everything and picking through it here... or
+     * worse, on the client.  Without a sort, Programmers on a Team come back by name and everyone else by ID.
+     *
+     * Lists that come from the database are written straight out as HAL by a HalWriter, rather than wrapped up in
+     * Resources one Programmer at a time.  Big lists make a lot less garbage that way.
+     *
      * @param teamId - An optional parameter representing the numeric ID of the Team for which all programmers should be listed.  If not used, null should be provided.
+     * @param dateHiredFrom - Only Programmers hired on or after this date, if not null.
+     * @param dateHiredTo - Only Programmers hired on or before this date, if not null.
+     * @param sort - Optionally, "name" or "dateHired".
+     * @param direction - Optionally, "asc" (the default) or "desc".
      * @return A ResponseEntity object containing a relevant Status Code and a JSON representation of the desired Programmer profiles.
      */
     @ApiOperation(value = "Retrieves all programmers from the persistence mechanism",
@@ -133,7 +178,8 @@ public class ProgrammerController {
                           "is provided, then all Programmer profiles within the system are returned.  These are " +
                           "wrapped within Resource wrappers and returned within a ResponseEntity which provides the " +
                           "Status Code and any other relevant information regarding the success or failure of the " +
-                          "request.",
+                          "request.  The list can also be narrowed down to a range of hire dates, and sorted by name " +
+                          "or hire date.",
                   response = ProgrammerAsset[].class,
                   httpMethod = "GET",
                   produces = "application/hal+json")
@@ -141,42 +187,79 @@ public class ProgrammerController {
             @ApiResponse(code = 200,
                          message = "Successful retrieval of all programmer profiles",
                          response = ProgrammerAsset[].class),
+            @ApiResponse(code = 400,
+                         message = "A date couldn't be read, or the sort isn't supported"),
             @ApiResponse(code = 500,
                          message = "Internal error")
     })
     @RequestMapping(method = RequestMethod.GET, produces = "application/hal+json")
-    public ResponseEntity<Resources> retrieveAllProgrammers(
+    public ResponseEntity<?> retrieveAllProgrammers(
             @RequestParam(name = "teamId",
                           required = false)
             @ApiParam(value = "Optional ID of the Team for which all Programmer profiles should be listed",
                       allowableValues = "range[1, infinity]",
                       allowEmptyValue = true)
-            Long teamId) {
-        log.entering(ProgrammerController.class.getName(), RETRIEVE_ALL_PROGRAMMERS, teamId);
-
-        List<Resource> programmers;
-        if(teamId == null) {
-            log.finer("querying for all programmers");
-            programmers = programmerService.findAllProgrammers()
-                                           .stream()
-                                           .map(this::wrapAsset)
-                                           .collect(Collectors.toList());
-        } else {
-            log.finer(String.format("querying for all programmers on team %d", teamId));
-            programmers = programmerService.findAllProgrammersOnTeam(teamId)
-                                           .stream()
-                                           .map(this::wrapAsset)
-                                           .collect(Collectors.toList());
-        }
+            Long teamId,
+            @RequestParam(name = "dateHiredFrom", required = false)
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+            @ApiParam(value = "Only list Programmers hired on or after this date (yyyy-MM-dd)")
+            LocalDate dateHiredFrom,
+            @RequestParam(name = "dateHiredTo", required = false)
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+            @ApiParam(value = "Only list Programmers hired on or before this date (yyyy-MM-dd)")
+            LocalDate dateHiredTo,
+            @RequestParam(name = "sort", required = false)
+            @ApiParam(value = "What to sort the Programmers by", allowableValues = "name, dateHired")
+            String sort,
+            @RequestParam(name = "direction", required = false)
+            @ApiParam(value = "Which way to sort them", allowableValues = "asc, desc")
+            String direction) {
+        log.entering(ProgrammerController.class.getName(),
+                     RETRIEVE_ALL_PROGRAMMERS,
+                     new Object[]{teamId, dateHiredFrom, dateHiredTo, sort, direction});
 
         //We will build a link back to this endpoint and title it as "self."
         List<Link> selfLink = Collections.singletonList(
-                linkTo(methodOn(ProgrammerController.class).retrieveAllProgrammers(teamId))
+                linkTo(methodOn(ProgrammerController.class).retrieveAllProgrammers(teamId,
+                                                                                   dateHiredFrom,
+                                                                                   dateHiredTo,
+                                                                                   sort,
+                                                                                   direction))
                         .withSelfRel()
                         //We call this to remove reference to template variables.
                         .expand()
         );
 
+        ReadModel model = readModel();
+        boolean filtered = dateHiredFrom != null || dateHiredTo != null || sort != null || direction != null;
+
+        if(filtered || model == null) {
+            //Straight from the database to HAL, without an Asset and a Resource for every Programmer on the way.
+            HalWriter halWriter = HalWriter.forCurrentRequest(selfLink.get(0).getHref());
+            byte[] hal;
+
+            if(filtered) {
+                Sort parsedSort = ListSorting.parse(sort, direction, teamId == null ? ListSorting.ID : NAME, NAME, DATE_HIRED);
+                log.finer(String.format("querying for programmers on team %s hired %s to %s, sorted by %s",
+                                        teamId, dateHiredFrom, dateHiredTo, parsedSort));
+                hal = programmerService.renderProgrammers(teamId, dateHiredFrom, dateHiredTo, parsedSort, halWriter);
+            } else if(teamId == null) {
+                log.finer("querying for all programmers");
+                hal = programmerService.renderAllProgrammers(halWriter);
+            } else {
+                log.finer(String.format("querying for all programmers on team %d", teamId));
+                hal = programmerService.renderAllProgrammersOnTeam(teamId, halWriter);
+            }
+
+            log.exiting(ProgrammerController.class.getName(), RETRIEVE_ALL_PROGRAMMERS, hal.length);
+            return ResponseEntity.ok().contentType(MediaTypes.HAL_JSON_UTF8).body(hal);
+        }
+
+        List<ProgrammerAsset> found = teamId == null ? model.findAllProgrammers() : model.findAllProgrammersOnTeam(teamId);
+        List<Resource> programmers = found.stream()
+                                          .map(ProgrammerController::wrapAsset)
+                                          .collect(Collectors.toList());
+
         Resources resources;
 
         if(programmers.isEmpty()) {
@@ -204,7 +287,11 @@ public class ProgrammerController {
      * wraps the wrapper placed around the ProgrammerAsset object.  There's a lot of wrapping here, mainly to satisfy
      * some weirdness in my implementation of the Swagger2 framework.
      *
+     * If the client supplies an Idempotency-Key header, retries carrying the same key get the original response back
+     * rather than saving the Programmer a second time.
+     *
      * @param programmerAsset - A ProgrammerAsset deserialized from the body of the request.
+     * @param idempotencyKey - An optional client-generated key identifying this particular request.
      * @return A ProgrammerAsset wrapped in a Resource, loaded into the body of a ResponseEntity.
      */
     @ApiOperation(value = "Saves a programmer's profile to the persistence mechanism.",
@@ -221,6 +308,10 @@ public class ProgrammerController {
                          response = ProgrammerAsset.class),
             @ApiResponse(code = 400,
                          message = "The provided profile was invalid or incomplete."),
+            @ApiResponse(code = 409,
+                         message = "A request with the same Idempotency-Key is still being processed"),
+            @ApiResponse(code = 422,
+                         message = "The Idempotency-Key was already used for a different request"),
             @ApiResponse(code = 500,
                          message = "Internal Error")
     })
@@ -230,14 +321,160 @@ public class ProgrammerController {
     public ResponseEntity<Resource> createProgrammer(
             @RequestBody
             @ApiParam(value = "A JSON representation of the Programmer profile to be saved to the persistence mechanism")
-            ProgrammerAsset programmerAsset) {
+            ProgrammerAsset programmerAsset,
+            @RequestHeader(name = IdempotencyStore.IDEMPOTENCY_KEY_HEADER, required = false)
+            @ApiParam(value = "Optional client-generated key which makes retries of this request safe")
+            String idempotencyKey,
+            @ApiIgnore
+            HttpServletRequest request) {
         log.entering(ProgrammerController.class.getName(), CREATE_PROGRAMMER, programmerAsset);
-        ProgrammerAsset savedProgrammer = programmerService.saveProgrammer(programmerAsset);
 
-        Resource returnMe = wrapAsset(savedProgrammer);
+        ResponseEntity<Resource> returnMe = idempotencyStore.execute(ClientIdentityFilter.clientOf(request),
+                                                                     idempotencyKey,
+                                                                     CREATE_PROGRAMMER,
+                                                                     programmerAsset,
+                                                                     () -> {
+            ProgrammerAsset savedProgrammer = programmerService.saveProgrammer(programmerAsset);
+            return EntityTags.ok(savedProgrammer.getVersion()).body(wrapAsset(savedProgrammer));
+        });
 
         log.exiting(ProgrammerController.class.getName(), CREATE_PROGRAMMER, returnMe);
-        return ResponseEntity.ok(returnMe);
+        return returnMe;
+    }
+
+    /**
+     * Changes just the fields of a Programmer profile that are in the body, which is a JSON Merge Patch (RFC 7396): fields
+     * left out are left alone, and fields set to null are cleared.  Only the changed columns are written, so this is
+     * cheaper than POSTing the whole profile back, and can't undo somebody else's change to a field this client never
+     * touched.  The name and dateHired can be patched.
+     *
+     * As with the POST, sending the ETag from an earlier response as If-Match makes the patch conditional.
+     *
+     * @param programmerId - The ID of the Programmer to patch.
+     * @param patch - The merge patch.
+     * @param ifMatch - An optional ETag from an earlier response, which the Programmer must still match.
+     * @return A ResponseEntity containing a relevant Status Code and the patched Programmer.
+     */
+    @ApiOperation(value = "Changes some of a programmer's fields",
+                  notes = "Accepts a JSON Merge Patch (RFC 7396): fields left out are left alone, and fields set to " +
+                          "null are cleared.  Only the changed columns are written.  The name and dateHired can be patched.",
+                  response = ProgrammerAsset.class,
+                  httpMethod = "PATCH",
+                  produces = "application/hal+json",
+                  consumes = "application/merge-patch+json")
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Successfully patched the Programmer", response = ProgrammerAsset.class),
+            @ApiResponse(code = 400, message = "The patch was invalid, or tried to change something it can't"),
+            @ApiResponse(code = 404, message = "Programmer was not found"),
+            @ApiResponse(code = 412, message = "The Programmer has changed since the ETag sent as If-Match"),
+            @ApiResponse(code = 500, message = "Internal error")
+    })
+    @RequestMapping(path = "/{programmerId}",
+                    method = RequestMethod.PATCH,
+                    consumes = {"application/merge-patch+json", "application/json"},
+                    produces = "application/hal+json")
+    public ResponseEntity<Resource> patchProgrammer(
+            @PathVariable("programmerId")
+            @ApiParam(value = "ID of the Programmer to patch", allowableValues = "range[1, infinity]", required = true)
+            Long programmerId,
+            @RequestBody
+            @ApiParam(value = "A JSON Merge Patch of the Programmer")
+            JsonNode patch,
+            @RequestHeader(name = HttpHeaders.IF_MATCH, required = false)
+            @ApiParam(value = "Optional ETag from an earlier response; the patch is refused if the Programmer has changed since")
+            String ifMatch) {
+        log.entering(ProgrammerController.class.getName(), PATCH_PROGRAMMER, new Object[]{programmerId, patch, ifMatch});
+        Long expectedVersion = EntityTags.expectedVersion(ifMatch, "programmer", programmerId);
+
+        ProgrammerAsset patched = programmerService.patchProgrammer(programmerId, patch, expectedVersion);
+
+        if(patched == null) {
+            log.exiting(ProgrammerController.class.getName(), PATCH_PROGRAMMER, HttpStatus.NOT_FOUND);
+            return ResponseEntity.notFound().build();
+        }
+
+        Resource returnMe = wrapAsset(patched);
+
+        log.exiting(ProgrammerController.class.getName(), PATCH_PROGRAMMER, returnMe);
+        return EntityTags.ok(patched.getVersion()).body(returnMe);
+    }
+
+    /**
+     * Returns the Programmer profiles created or modified since the given change token, oldest change first, along with
+     * a new token ("nextToken") to send as "since" next time.  Leaving "since" out starts from the very beginning.  If
+     * there were more changes than "limit" allows, "moreAvailable" is true and the "next" link fetches the next batch.
+     *
+     * This lets a client keep its own copy of the programmers up to date without re-reading all of them every time.
+     *
+     * @param since - An optional change token from a previous response.
+     * @param limit - The most changes to return at once (between 1 and 1000).
+     * @return A ResponseEntity containing a relevant Status Code and the changed Programmer profiles.
+     */
+    @ApiOperation(value = "Retrieves programmers changed since a previous request",
+                  notes = "Returns the Programmer profiles created or modified since the given change token, oldest " +
+                          "change first, along with a new token (\"nextToken\") to send as \"since\" next time.  " +
+                          "Leaving \"since\" out starts from the very beginning.  If there were more changes than " +
+                          "\"limit\" allows, \"moreAvailable\" is true and the \"next\" link fetches the next batch.",
+                  response = ProgrammerAsset[].class,
+                  httpMethod = "GET",
+                  produces = "application/hal+json")
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Successful retrieval of changes", response = ProgrammerAsset[].class),
+            @ApiResponse(code = 400, message = "The change token wasn't recognized"),
+            @ApiResponse(code = 500, message = "Internal error")
+    })
+    @RequestMapping(path = "/changes", method = RequestMethod.GET, produces = "application/hal+json")
+    public ResponseEntity<Resources> retrieveProgrammerChanges(
+            @RequestParam(name = "since", required = false)
+            @ApiParam(value = "Change token from a previous response; leave out to start from the beginning")
+            String since,
+            @RequestParam(name = "limit", required = false, defaultValue = "100")
+            @ApiParam(value = "The most changes to return at once", allowableValues = "range[1, 1000]")
+            int limit) {
+        log.entering(ProgrammerController.class.getName(), RETRIEVE_PROGRAMMER_CHANGES, new Object[]{since, limit});
+        int boundedLimit = Math.max(1, Math.min(MAX_CHANGES, limit));
+
+        ChangeSet<ProgrammerAsset> changeSet = programmerService.findProgrammerChanges(ChangeToken.decode(since), boundedLimit);
+        String nextToken = ChangeToken.encode(changeSet.getLastSequence());
+
+        List<Resource> changes = changeSet.getChanges()
+                                          .stream()
+                                          .map(ProgrammerController::wrapAsset)
+                                          .collect(Collectors.toList());
+
+        List<Link> links = Arrays.asList(
+                linkTo(methodOn(ProgrammerController.class).retrieveProgrammerChanges(since, boundedLimit)).withSelfRel().expand(),
+                linkTo(methodOn(ProgrammerController.class).retrieveProgrammerChanges(nextToken, boundedLimit)).withRel("next").expand()
+        );
+
+        Resources resources;
+
+        if(changes.isEmpty()) {
+            EmbeddedWrappers wrappers = new EmbeddedWrappers(true);
+            resources = new ChangeSetResources<>(Collections.singletonList(wrappers.emptyCollectionOf(ProgrammerAsset.class)),
+                                                 nextToken,
+                                                 false,
+                                                 links);
+        } else {
+            resources = new ChangeSetResources<>(changes, nextToken, changeSet.isMore(), links);
+        }
+
+        log.exiting(ProgrammerController.class.getName(), RETRIEVE_PROGRAMMER_CHANGES, resources);
+        return ResponseEntity.ok(resources);
+    }
+
+    /**
+     * @return the in-memory read model, if it's switched on and finished loading.  Otherwise null, and the GETs go to
+     *         the service (and the database) instead.
+     */
+    private ReadModel readModel() {
+        //Inside an atomic batch's transaction, the model hasn't seen the batch's own writes yet.
+        if(TransactionSynchronizationManager.isActualTransactionActive()) {
+            return null;
+        }
+
+        ReadModel model = readModel.getIfAvailable();
+        return model != null && model.isReady() ? model : null;
     }
 
     /**
@@ -247,7 +484,7 @@ public class ProgrammerController {
      * @param asset - A ProgrammerAsset describing a Programmer profile.
      * @return A Resource wrapping the ProgrammerAsset and populated with appropriate Hypermedia links.
      */
-    private Resource wrapAsset(ProgrammerAsset asset) {
+    static Resource wrapAsset(ProgrammerAsset asset) {
         log.entering(ProgrammerController.class.getName(), WRAP_ASSET, asset);
 
         List<Link> links = new ArrayList<>();
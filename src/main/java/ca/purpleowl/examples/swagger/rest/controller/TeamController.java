@@ -1,28 +1,51 @@
 package ca.purpleowl.examples.swagger.rest.controller;
 
 import ca.purpleowl.examples.swagger.jpa.entity.Team;
+import ca.purpleowl.examples.swagger.rest.asset.ProgrammerMoveAsset;
 import ca.purpleowl.examples.swagger.rest.asset.TeamAsset;
+import ca.purpleowl.examples.swagger.rest.asset.TeamStatsAsset;
+import ca.purpleowl.examples.swagger.rest.changes.ChangeSetResources;
+import ca.purpleowl.examples.swagger.rest.changes.ChangeToken;
+import ca.purpleowl.examples.swagger.rest.filter.ClientIdentityFilter;
+import ca.purpleowl.examples.swagger.rest.hal.HalWriter;
+import ca.purpleowl.examples.swagger.rest.idempotency.IdempotencyStore;
+import ca.purpleowl.examples.swagger.service.ChangeSet;
 import ca.purpleowl.examples.swagger.service.TeamService;
+import ca.purpleowl.examples.swagger.service.readmodel.ReadModel;
+import ca.purpleowl.examples.swagger.service.stats.TeamStatistics;
+import com.fasterxml.jackson.databind.JsonNode;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
 import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
 import lombok.extern.java.Log;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.hateoas.Link;
+import org.springframework.hateoas.MediaTypes;
 import org.springframework.hateoas.Resource;
 import org.springframework.hateoas.Resources;
 import org.springframework.hateoas.core.EmbeddedWrappers;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import springfox.documentation.annotations.ApiIgnore;
 
+import javax.servlet.http.HttpServletRequest;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -48,20 +71,41 @@ public class TeamController {
     private static final String RETRIEVE_TEAM = "retrieveTeam";
     private static final String CREATE_TEAM = "createTeam";
     private static final String ADD_PROGRAMMER_TO_TEAM = "addProgrammerToTeam";
+    private static final String PATCH_TEAM = "patchTeam";
+    private static final String MOVE_PROGRAMMERS = "moveProgrammers";
+    private static final String REMOVE_PROGRAMMERS = "removeProgrammers";
+    private static final String RETRIEVE_TEAM_CHANGES = "retrieveTeamChanges";
+    private static final String RETRIEVE_TEAM_STATS = "retrieveTeamStats";
+    private static final String RETRIEVE_ALL_TEAM_STATS = "retrieveAllTeamStats";
     private static final String WRAP_ASSET = "wrapAsset";
+    private static final int MAX_CHANGES = 1000;
+    //The most programmerIds one bulk move takes.  Bigger reorgs can move whole Teams, or be split up.
+    private static final int MAX_PROGRAMMER_IDS = 1000;
+    private static final String NAME = "name";
+    private static final String LAST_STAND_UP = "lastStandUp";
 
     private final TeamService teamService;
+    private final IdempotencyStore idempotencyStore;
+    private final ObjectProvider<ReadModel> readModel;
+    private final TeamStatistics teamStatistics;
 
     @Autowired
-    public TeamController(TeamService teamService) {
+    public TeamController(TeamService teamService,
+                          IdempotencyStore idempotencyStore,
+                          ObjectProvider<ReadModel> readModel,
+                          TeamStatistics teamStatistics) {
         this.teamService = teamService;
+        this.idempotencyStore = idempotencyStore;
+        this.readModel = readModel;
+        this.teamStatistics = teamStatistics;
     }
 
     /**
      * Accepts a numeric ID as a path parameter shoudl should represent the ID of a Team stored in the persistence
      * mechanism for which information is desired.  If the record exists, a JSON representation of that Team is
      * returned, along with Hypermedia links to this endpoint (labelled "self") and to the list of programmers
-     * assigned to the team (labelled "programmers").
+     * assigned to the team (labelled "programmers").  The ETag header carries the Team's current version, for use
+     * with If-Match.
      *
      * @param teamId - A numeric representation of the ID of the desired Team
      * @return A ResponseEntity containing a relevant status code and a body containing a JSON representation of the Team.
@@ -93,13 +137,14 @@ public class TeamController {
                       required = true)
             Long teamId) {
         log.entering(TeamController.class.getName(), RETRIEVE_TEAM, teamId);
-        TeamAsset team = teamService.findTeam(teamId);
+        ReadModel model = readModel();
+        TeamAsset team = model != null ? model.findTeam(teamId) : teamService.findTeam(teamId);
 
         if(team != null) {
             Resource returnMe = wrapAsset(team);
 
             log.exiting(TeamController.class.getName(), RETRIEVE_TEAM, returnMe);
-            return ResponseEntity.ok(returnMe);
+            return EntityTags.ok(team.getVersion()).body(returnMe);
         }
 
         log.exiting(TeamController.class.getName(), RETRIEVE_TEAM, HttpStatus.NOT_FOUND);
@@ -114,35 +159,83 @@ public class TeamController {
      * The ResponseEntity which wraps the response is also used to describe the success or failure of the requested
      * operation.
      *
+     * The list can be narrowed down to Teams whose last stand-up falls within a range, and sorted by name or last
+     * stand-up, all by the database.  Without a sort, Teams come back by ID.  Lists that come from the database are
+     * written straight out as HAL by a HalWriter, rather than wrapped up in Resources one Team at a time.
+     *
+     * @param lastStandUpFrom - Only Teams whose last stand-up was at or after this time, if not null.
+     * @param lastStandUpTo - Only Teams whose last stand-up was at or before this time, if not null.
+     * @param sort - Optionally, "name" or "lastStandUp".
+     * @param direction - Optionally, "asc" (the default) or "desc".
      * @return A list of TeamAssets wrapped in Resource wrappers, themselves contained by a Resources collection wrapper.
      */
     @ApiOperation(value = "Retrieves all teams from the persistence mechanism",
             notes = "Returns a collection of all Team profiles within the persistence mechanism.  Each Team " +
                     "profile is wrapped in a Resource class (to allow for insertion of Hypermedia links for " +
                     "each Team), which are collected under a single Resources instance (to allow for insertion " +
-                    "of Hypermedia links at the root of the collection).",
+                    "of Hypermedia links at the root of the collection).  The list can be narrowed down to Teams " +
+                    "whose last stand-up falls within a range, and sorted by name or last stand-up.",
             response = Team[].class)
     @ApiResponses(value = {
             @ApiResponse(code = 200,
                     message = "Successful retrieval of all teams",
                     response = Team[].class),
+            @ApiResponse(code = 400,
+                    message = "A date couldn't be read, or the sort isn't supported"),
             @ApiResponse(code = 500,
                     message = "Internal error")
     })
     @RequestMapping(method = RequestMethod.GET, produces = "application/hal+json")
-    public ResponseEntity<Resources> retrieveAllTeams() {
-        log.entering(TeamController.class.getName(), RETRIEVE_ALL_TEAMS);
+    public ResponseEntity<?> retrieveAllTeams(
+            @RequestParam(name = "lastStandUpFrom", required = false)
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+            @ApiParam(value = "Only list Teams whose last stand-up was at or after this time (yyyy-MM-ddTHH:mm:ss)")
+            LocalDateTime lastStandUpFrom,
+            @RequestParam(name = "lastStandUpTo", required = false)
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+            @ApiParam(value = "Only list Teams whose last stand-up was at or before this time (yyyy-MM-ddTHH:mm:ss)")
+            LocalDateTime lastStandUpTo,
+            @RequestParam(name = "sort", required = false)
+            @ApiParam(value = "What to sort the Teams by", allowableValues = "name, lastStandUp")
+            String sort,
+            @RequestParam(name = "direction", required = false)
+            @ApiParam(value = "Which way to sort them", allowableValues = "asc, desc")
+            String direction) {
+        log.entering(TeamController.class.getName(),
+                     RETRIEVE_ALL_TEAMS,
+                     new Object[]{lastStandUpFrom, lastStandUpTo, sort, direction});
         EmbeddedWrappers wrappers = new EmbeddedWrappers(true);
 
-        List<Resource> teams = teamService.findAllTeams()
-                .stream()
-                .map(this::wrapAsset)
-                .collect(Collectors.toList());
-
         List<Link> selfLink = Collections.singletonList(
-                linkTo(methodOn(TeamController.class).retrieveAllTeams()).withSelfRel()
+                linkTo(methodOn(TeamController.class).retrieveAllTeams(lastStandUpFrom, lastStandUpTo, sort, direction))
+                        .withSelfRel()
+                        .expand()
         );
 
+        ReadModel model = readModel();
+        boolean filtered = lastStandUpFrom != null || lastStandUpTo != null || sort != null || direction != null;
+
+        if(filtered || model == null) {
+            //Straight from the database to HAL; see HalWriter.
+            HalWriter halWriter = HalWriter.forCurrentRequest(selfLink.get(0).getHref());
+            byte[] hal;
+
+            if(filtered) {
+                Sort parsedSort = ListSorting.parse(sort, direction, ListSorting.ID, NAME, LAST_STAND_UP);
+                hal = teamService.renderTeams(lastStandUpFrom, lastStandUpTo, parsedSort, halWriter);
+            } else {
+                hal = teamService.renderAllTeams(halWriter);
+            }
+
+            log.exiting(TeamController.class.getName(), RETRIEVE_ALL_TEAMS, hal.length);
+            return ResponseEntity.ok().contentType(MediaTypes.HAL_JSON_UTF8).body(hal);
+        }
+
+        List<Resource> teams = model.findAllTeams()
+                                    .stream()
+                                    .map(TeamController::wrapAsset)
+                                    .collect(Collectors.toList());
+
         Resources resources;
 
         if(teams.isEmpty()) {
@@ -167,7 +260,15 @@ public class TeamController {
      *  - 400: The provided Team was invalid or incomplete
      *  - 500: There was an unexpected internal server error
      *
+     * Retries carrying the same Idempotency-Key header as an earlier request get that request's response back.
+     *
+     * If the TeamAsset carries the ID of an existing Team, that Team is updated.  Sending the ETag from an earlier
+     * response as If-Match makes the update conditional: if the Team has changed since, nothing is saved and a 412 is
+     * returned instead.  The same goes for two updates racing each other, with or without If-Match.
+     *
      * @param teamAsset - A TeamAsset deserialized from the body of the request
+     * @param ifMatch - An optional ETag from an earlier response, which the Team must still match.
+     * @param idempotencyKey - An optional client-generated key identifying this particular request.
      * @return A TeamAsset wrapped in a Resource, loaded into the body of a ResponseEntity.
      */
     @ApiOperation(value = "Saves a team to the persistence mechanism",
@@ -176,28 +277,51 @@ public class TeamController {
                   response = Team.class)
     @ApiResponses(value = {
             @ApiResponse(code = 200, message = "Successfully saved a Team", response = Team.class),
+            @ApiResponse(code = 409, message = "A request with the same Idempotency-Key is still being processed"),
+            @ApiResponse(code = 412, message = "The Team has changed since the If-Match ETag was issued"),
+            @ApiResponse(code = 422, message = "The Idempotency-Key was already used for a different request"),
             @ApiResponse(code = 500, message = "Internal error")
     })
     @RequestMapping(method = RequestMethod.POST, produces = "application/hal+json")
     public ResponseEntity<Resource> createTeam(
             @RequestBody
             @ApiParam(value = "A JSON representation of the Team profile to be saved to the persistence mechanism")
-            TeamAsset teamAsset) {
+            TeamAsset teamAsset,
+            @RequestHeader(name = HttpHeaders.IF_MATCH, required = false)
+            @ApiParam(value = "Optional ETag the Team must still match for the update to go ahead")
+            String ifMatch,
+            @RequestHeader(name = IdempotencyStore.IDEMPOTENCY_KEY_HEADER, required = false)
+            @ApiParam(value = "Optional client-generated key which makes retries of this request safe")
+            String idempotencyKey,
+            @ApiIgnore
+            HttpServletRequest request) {
         log.entering(TeamController.class.getName(), CREATE_TEAM, teamAsset);
-        TeamAsset savedTeam = teamService.saveTeam(teamAsset);
 
-        Resource returnMe = wrapAsset(savedTeam);
+        Long expectedVersion = EntityTags.expectedVersion(ifMatch, "team", teamAsset.getTeamId());
+
+        ResponseEntity<Resource> returnMe = idempotencyStore.execute(ClientIdentityFilter.clientOf(request),
+                                                                     idempotencyKey,
+                                                                     CREATE_TEAM,
+                                                                     Arrays.asList(teamAsset, ifMatch),
+                                                                     () -> {
+            TeamAsset savedTeam = teamService.saveTeam(teamAsset, expectedVersion);
+            return EntityTags.ok(savedTeam.getVersion()).body(wrapAsset(savedTeam));
+        });
 
         log.exiting(TeamController.class.getName(), CREATE_TEAM, returnMe);
-        return ResponseEntity.ok(returnMe);
+        return returnMe;
     }
 
     /**
      * Accepts a numeric Team ID and Programmer ID as path parameters and - if both the Team and Programmer profile are
      * found - adds the Programmer to the Team and returns a 200 HTTP Status.  If either the Team or Programmer profile
-     * are NOT found, then a 404 HTTP Status is returned instead.
+     * are NOT found, then a 404 HTTP Status is returned instead.  As with createTeam, an Idempotency-Key header makes
+     * retries safe, and an If-Match header (holding the Team's ETag) makes the change conditional on the Team not
+     * having changed in the meantime.
      * @param teamId - A numeric representation of the ID for the desired Team, supplied as a path parameter.
      * @param programmerId - A numeric representation of the ID for the desired Programmer Profile, supplied as a path parameter.
+     * @param ifMatch - An optional ETag from an earlier response, which the Team must still match.
+     * @param idempotencyKey - An optional client-generated key identifying this particular request.
      * @return An HTTP Status representative of success (200) or failure (404/500) of the operation.
      */
     @ApiOperation(value = "Adds a programmer to the specified Team",
@@ -207,6 +331,9 @@ public class TeamController {
     @ApiResponses(value = {
             @ApiResponse(code = 200, message = "Successfully associated programmer with team."),
             @ApiResponse(code = 404, message = "The provided team or programmer (or both!) couldn't be found"),
+            @ApiResponse(code = 409, message = "A request with the same Idempotency-Key is still being processed"),
+            @ApiResponse(code = 412, message = "The Team has changed since the If-Match ETag was issued"),
+            @ApiResponse(code = 422, message = "The Idempotency-Key was already used for a different request"),
             @ApiResponse(code = 500, message = "Internal error")
     })
     @RequestMapping(path = "/{teamId}/add-programmer/{programmerId}", method = RequestMethod.POST, produces = "application/hal+json")
@@ -222,19 +349,369 @@ public class TeamController {
                       allowableValues = "range[1, infinity]",
                       allowEmptyValue = true,
                       required = true)
-            Long programmerId) {
+            Long programmerId,
+            @RequestHeader(name = HttpHeaders.IF_MATCH, required = false)
+            @ApiParam(value = "Optional ETag the Team must still match for the change to go ahead")
+            String ifMatch,
+            @RequestHeader(name = IdempotencyStore.IDEMPOTENCY_KEY_HEADER, required = false)
+            @ApiParam(value = "Optional client-generated key which makes retries of this request safe")
+            String idempotencyKey,
+            @ApiIgnore
+            HttpServletRequest request) {
                                                                     //TODO Well, that's hideous.  Is there not a better way?
         log.entering(TeamController.class.getName(), ADD_PROGRAMMER_TO_TEAM, new Object[]{teamId, programmerId});
 
-        if(teamService.addProgrammerToTeam(programmerId, teamId)) {
+        Long expectedVersion = EntityTags.expectedVersion(ifMatch, "team", teamId);
+
+        ResponseEntity<Object> returnMe = idempotencyStore.execute(ClientIdentityFilter.clientOf(request),
+                                                                   idempotencyKey,
+                                                                   ADD_PROGRAMMER_TO_TEAM,
+                                                                   Arrays.asList(teamId, programmerId, ifMatch),
+                                                                   () -> {
+            if(teamService.addProgrammerToTeam(programmerId, teamId, expectedVersion)) {
+                return ResponseEntity.ok().build();
+            }
+
+            return ResponseEntity.notFound().build();
+        });
+
+        log.exiting(TeamController.class.getName(), ADD_PROGRAMMER_TO_TEAM, returnMe.getStatusCode());
+        return returnMe;
+    }
+
+    /**
+     * Moves Programmers from one Team to another in one go, for reorgs.  By default the whole Team moves; passing
+     * "programmerIds" moves just those Programmers (any of them not on the "from" Team stay where they are).  This is
+     * a bulk UPDATE, so it takes about as long for a Team of five hundred as for a Team of five.  At most
+     * MAX_PROGRAMMER_IDS can be listed, and they all have to be positive.
+     *
+     * @param fromTeamId - The Team to move Programmers off.
+     * @param toTeamId - The Team to move them to.
+     * @param programmerIds - Optionally, which Programmers to move.
+     * @return A ResponseEntity containing a relevant Status Code and how many Programmers were moved.
+     */
+    @ApiOperation(value = "Moves programmers from one team to another",
+                  notes = "Moves Programmers from one Team to another in bulk.  By default the whole " +
+                          "Team moves; passing \"programmerIds\" moves just those Programmers (any of them not on " +
+                          "the \"from\" Team stay where they are).  At most 1000 programmerIds, all positive.",
+                  response = ProgrammerMoveAsset.class,
+                  httpMethod = "POST",
+                  produces = "application/hal+json")
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Programmers were moved", response = ProgrammerMoveAsset.class),
+            @ApiResponse(code = 400, message = "Too many programmerIds, or ones that can't exist"),
+            @ApiResponse(code = 404, message = "One of the Teams was not found"),
+            @ApiResponse(code = 500, message = "Internal error")
+    })
+    @RequestMapping(path = "/{fromTeamId}/move-to/{toTeamId}",
+                    method = RequestMethod.POST,
+                    produces = "application/hal+json")
+    public ResponseEntity<Resource> moveProgrammers(
+            @PathVariable("fromTeamId")
+            @ApiParam(value = "ID of the Team to move Programmers off", required = true)
+            Long fromTeamId,
+            @PathVariable("toTeamId")
+            @ApiParam(value = "ID of the Team to move them to", required = true)
+            Long toTeamId,
+            @RequestParam(name = "programmerIds", required = false)
+            @ApiParam(value = "Optional IDs of the Programmers to move; leave out to move the whole Team")
+            List<Long> programmerIds) {
+        log.entering(TeamController.class.getName(), MOVE_PROGRAMMERS, new Object[]{fromTeamId, toTeamId, programmerIds});
+        checkProgrammerIds(programmerIds);
+
+        Integer moved = teamService.moveProgrammers(fromTeamId, toTeamId, programmerIds);
+        ResponseEntity<Resource> returnMe = moved(fromTeamId, toTeamId, moved);
+
+        log.exiting(TeamController.class.getName(), MOVE_PROGRAMMERS, returnMe.getStatusCode());
+        return returnMe;
+    }
+
+    /**
+     * The same as moveProgrammers, except that the Programmers are left without a Team.
+     *
+     * @param teamId - The Team to take Programmers off.
+     * @param programmerIds - Optionally, which Programmers to take off it.
+     * @return A ResponseEntity containing a relevant Status Code and how many Programmers were removed.
+     */
+    @ApiOperation(value = "Removes programmers from a team",
+                  notes = "Takes Programmers off a Team in bulk, leaving them without a Team.  By " +
+                          "default everyone is removed; passing \"programmerIds\" removes just those Programmers " +
+                          "(at most 1000).",
+                  response = ProgrammerMoveAsset.class,
+                  httpMethod = "POST",
+                  produces = "application/hal+json")
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Programmers were removed", response = ProgrammerMoveAsset.class),
+            @ApiResponse(code = 400, message = "Too many programmerIds, or ones that can't exist"),
+            @ApiResponse(code = 404, message = "Team was not found"),
+            @ApiResponse(code = 500, message = "Internal error")
+    })
+    @RequestMapping(path = "/{teamId}/remove-programmers",
+                    method = RequestMethod.POST,
+                    produces = "application/hal+json")
+    public ResponseEntity<Resource> removeProgrammers(
+            @PathVariable("teamId")
+            @ApiParam(value = "ID of the Team to take Programmers off", required = true)
+            Long teamId,
+            @RequestParam(name = "programmerIds", required = false)
+            @ApiParam(value = "Optional IDs of the Programmers to remove; leave out to remove everyone")
+            List<Long> programmerIds) {
+        log.entering(TeamController.class.getName(), REMOVE_PROGRAMMERS, new Object[]{teamId, programmerIds});
+        checkProgrammerIds(programmerIds);
+
+        Integer removed = teamService.moveProgrammers(teamId, null, programmerIds);
+        ResponseEntity<Resource> returnMe = moved(teamId, null, removed);
+
+        log.exiting(TeamController.class.getName(), REMOVE_PROGRAMMERS, returnMe.getStatusCode());
+        return returnMe;
+    }
+
+    private static void checkProgrammerIds(List<Long> programmerIds) {
+        if(programmerIds == null) {
+            return;
+        }
+        if(programmerIds.size() > MAX_PROGRAMMER_IDS) {
+            throw new InvalidProgrammerIdsException("at most " + MAX_PROGRAMMER_IDS + " programmerIds can be moved at once");
+        }
+        if(programmerIds.stream().anyMatch(id -> id == null || id < 1)) {
+            throw new InvalidProgrammerIdsException("programmerIds have to be positive");
+        }
+    }
+
+    private static ResponseEntity<Resource> moved(Long fromTeamId, Long toTeamId, Integer moved) {
+        if(moved == null) {
+            return ResponseEntity.notFound().build();
+        }
+
+        ProgrammerMoveAsset asset = new ProgrammerMoveAsset();
+        asset.setFromTeamId(fromTeamId);
+        asset.setToTeamId(toTeamId);
+        asset.setMoved(moved);
+
+        List<Link> links = new ArrayList<>();
+        links.add(linkTo(methodOn(TeamController.class).retrieveTeam(fromTeamId)).withRel("from").expand());
+        if(toTeamId != null) {
+            links.add(linkTo(methodOn(TeamController.class).retrieveTeam(toTeamId)).withRel("to").expand());
+        }
+
+        return ResponseEntity.ok(new Resource<>(asset, links));
+    }
+
+    /**
+     * Changes just the fields of a Team profile that are in the body, which is a JSON Merge Patch (RFC 7396): fields
+     * left out are left alone, and fields set to null are cleared.  Only the changed columns are written, so this is
+     * cheaper than POSTing the whole profile back, and can't undo somebody else's change to a field this client never
+     * touched.  The name, teamFocus and lastStandUp can be patched; who's on the Team is changed through
+     * add-programmer.
+     *
+     * As with the POST, sending the ETag from an earlier response as If-Match makes the patch conditional.
+     *
+     * @param teamId - The ID of the Team to patch.
+     * @param patch - The merge patch.
+     * @param ifMatch - An optional ETag from an earlier response, which the Team must still match.
+     * @return A ResponseEntity containing a relevant Status Code and the patched Team.
+     */
+    @ApiOperation(value = "Changes some of a team's fields",
+                  notes = "Accepts a JSON Merge Patch (RFC 7396): fields left out are left alone, and fields set to " +
+                          "null are cleared.  Only the changed columns are written.  The name, teamFocus and lastStandUp can be patched.",
+                  response = TeamAsset.class,
+                  httpMethod = "PATCH",
+                  produces = "application/hal+json",
+                  consumes = "application/merge-patch+json")
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Successfully patched the Team", response = TeamAsset.class),
+            @ApiResponse(code = 400, message = "The patch was invalid, or tried to change something it can't"),
+            @ApiResponse(code = 404, message = "Team was not found"),
+            @ApiResponse(code = 412, message = "The Team has changed since the ETag sent as If-Match"),
+            @ApiResponse(code = 500, message = "Internal error")
+    })
+    @RequestMapping(path = "/{teamId}",
+                    method = RequestMethod.PATCH,
+                    consumes = {"application/merge-patch+json", "application/json"},
+                    produces = "application/hal+json")
+    public ResponseEntity<Resource> patchTeam(
+            @PathVariable("teamId")
+            @ApiParam(value = "ID of the Team to patch", allowableValues = "range[1, infinity]", required = true)
+            Long teamId,
+            @RequestBody
+            @ApiParam(value = "A JSON Merge Patch of the Team")
+            JsonNode patch,
+            @RequestHeader(name = HttpHeaders.IF_MATCH, required = false)
+            @ApiParam(value = "Optional ETag from an earlier response; the patch is refused if the Team has changed since")
+            String ifMatch) {
+        log.entering(TeamController.class.getName(), PATCH_TEAM, new Object[]{teamId, patch, ifMatch});
+        Long expectedVersion = EntityTags.expectedVersion(ifMatch, "team", teamId);
+
+        TeamAsset patched = teamService.patchTeam(teamId, patch, expectedVersion);
 
-            log.exiting(TeamController.class.getName(), ADD_PROGRAMMER_TO_TEAM, HttpStatus.OK);
-            return ResponseEntity.ok().build();
+        if(patched == null) {
+            log.exiting(TeamController.class.getName(), PATCH_TEAM, HttpStatus.NOT_FOUND);
+            return ResponseEntity.notFound().build();
+        }
+
+        Resource returnMe = wrapAsset(patched);
+
+        log.exiting(TeamController.class.getName(), PATCH_TEAM, returnMe);
+        return EntityTags.ok(patched.getVersion()).body(returnMe);
+    }
+
+    /**
+     * Returns the Team profiles created or modified since the given change token, oldest change first, along with
+     * a new token ("nextToken") to send as "since" next time.  Leaving "since" out starts from the very beginning.  If
+     * there were more changes than "limit" allows, "moreAvailable" is true and the "next" link fetches the next batch.
+     *
+     * This lets a client keep its own copy of the teams up to date without re-reading all of them every time.
+     *
+     * @param since - An optional change token from a previous response.
+     * @param limit - The most changes to return at once (between 1 and 1000).
+     * @return A ResponseEntity containing a relevant Status Code and the changed Team profiles.
+     */
+    @ApiOperation(value = "Retrieves teams changed since a previous request",
+                  notes = "Returns the Team profiles created or modified since the given change token, oldest " +
+                          "change first, along with a new token (\"nextToken\") to send as \"since\" next time.  " +
+                          "Leaving \"since\" out starts from the very beginning.  If there were more changes than " +
+                          "\"limit\" allows, \"moreAvailable\" is true and the \"next\" link fetches the next batch.",
+                  response = TeamAsset[].class,
+                  httpMethod = "GET",
+                  produces = "application/hal+json")
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Successful retrieval of changes", response = TeamAsset[].class),
+            @ApiResponse(code = 400, message = "The change token wasn't recognized"),
+            @ApiResponse(code = 500, message = "Internal error")
+    })
+    @RequestMapping(path = "/changes", method = RequestMethod.GET, produces = "application/hal+json")
+    public ResponseEntity<Resources> retrieveTeamChanges(
+            @RequestParam(name = "since", required = false)
+            @ApiParam(value = "Change token from a previous response; leave out to start from the beginning")
+            String since,
+            @RequestParam(name = "limit", required = false, defaultValue = "100")
+            @ApiParam(value = "The most changes to return at once", allowableValues = "range[1, 1000]")
+            int limit) {
+        log.entering(TeamController.class.getName(), RETRIEVE_TEAM_CHANGES, new Object[]{since, limit});
+        int boundedLimit = Math.max(1, Math.min(MAX_CHANGES, limit));
+
+        ChangeSet<TeamAsset> changeSet = teamService.findTeamChanges(ChangeToken.decode(since), boundedLimit);
+        String nextToken = ChangeToken.encode(changeSet.getLastSequence());
+
+        List<Resource> changes = changeSet.getChanges()
+                                          .stream()
+                                          .map(TeamController::wrapAsset)
+                                          .collect(Collectors.toList());
+
+        List<Link> links = Arrays.asList(
+                linkTo(methodOn(TeamController.class).retrieveTeamChanges(since, boundedLimit)).withSelfRel().expand(),
+                linkTo(methodOn(TeamController.class).retrieveTeamChanges(nextToken, boundedLimit)).withRel("next").expand()
+        );
+
+        Resources resources;
+
+        if(changes.isEmpty()) {
+            EmbeddedWrappers wrappers = new EmbeddedWrappers(true);
+            resources = new ChangeSetResources<>(Collections.singletonList(wrappers.emptyCollectionOf(TeamAsset.class)),
+                                                 nextToken,
+                                                 false,
+                                                 links);
         } else {
+            resources = new ChangeSetResources<>(changes, nextToken, changeSet.isMore(), links);
+        }
 
-            log.exiting(TeamController.class.getName(), ADD_PROGRAMMER_TO_TEAM, HttpStatus.NOT_FOUND);
+        log.exiting(TeamController.class.getName(), RETRIEVE_TEAM_CHANGES, resources);
+        return ResponseEntity.ok(resources);
+    }
+
+    /**
+     * Returns a Team's headcount, how many of its Programmers were hired in each month, and how long it's been since
+     * its last stand-up.  This is kept up to date as Programmers are saved and join Teams, so it costs about the same
+     * however big the Team is.
+     *
+     * @param teamId - A numeric representation of the ID of the Team.
+     * @return A ResponseEntity containing a relevant Status Code and the Team's statistics.
+     */
+    @ApiOperation(value = "Retrieves a team's statistics",
+                  notes = "Returns a Team's headcount, how many of its Programmers were hired in each month, and how " +
+                          "long it's been since its last stand-up.",
+                  response = TeamStatsAsset.class,
+                  httpMethod = "GET",
+                  produces = "application/hal+json")
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Successful retrieval of the Team's statistics", response = TeamStatsAsset.class),
+            @ApiResponse(code = 404, message = "Team was not found"),
+            @ApiResponse(code = 500, message = "Internal error")
+    })
+    @RequestMapping(path = "/{teamId}/stats", method = RequestMethod.GET, produces = "application/hal+json")
+    public ResponseEntity<Resource> retrieveTeamStats(
+            @PathVariable("teamId")
+            @ApiParam(value = "ID of the Team", allowableValues = "range[1, infinity]", required = true)
+            Long teamId) {
+        log.entering(TeamController.class.getName(), RETRIEVE_TEAM_STATS, teamId);
+        TeamStatsAsset stats = teamStatistics.findTeamStats(teamId);
+
+        if(stats == null) {
+            log.exiting(TeamController.class.getName(), RETRIEVE_TEAM_STATS, HttpStatus.NOT_FOUND);
             return ResponseEntity.notFound().build();
         }
+
+        Resource returnMe = wrapStats(stats);
+
+        log.exiting(TeamController.class.getName(), RETRIEVE_TEAM_STATS, returnMe);
+        return ResponseEntity.ok(returnMe);
+    }
+
+    /**
+     * Returns the statistics described under retrieveTeamStats for every Team, in ID order.  This reads one row per
+     * Team; the Programmers themselves aren't touched.
+     *
+     * @return A ResponseEntity containing a relevant Status Code and every Team's statistics.
+     */
+    @ApiOperation(value = "Retrieves every team's statistics",
+                  notes = "Returns the headcount, hires per month, and time since the last stand-up of every Team, " +
+                          "in ID order.",
+                  response = TeamStatsAsset[].class,
+                  httpMethod = "GET",
+                  produces = "application/hal+json")
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Successful retrieval of statistics", response = TeamStatsAsset[].class),
+            @ApiResponse(code = 500, message = "Internal error")
+    })
+    @RequestMapping(path = "/stats", method = RequestMethod.GET, produces = "application/hal+json")
+    public ResponseEntity<Resources> retrieveAllTeamStats() {
+        log.entering(TeamController.class.getName(), RETRIEVE_ALL_TEAM_STATS);
+
+        List<Resource> stats = teamStatistics.findAllTeamStats()
+                                             .stream()
+                                             .map(TeamController::wrapStats)
+                                             .collect(Collectors.toList());
+
+        List<Link> selfLink = Collections.singletonList(
+                linkTo(methodOn(TeamController.class).retrieveAllTeamStats()).withSelfRel()
+        );
+
+        Resources resources;
+
+        if(stats.isEmpty()) {
+            EmbeddedWrappers wrappers = new EmbeddedWrappers(true);
+            resources = new Resources<>(Collections.singletonList(wrappers.emptyCollectionOf(TeamStatsAsset.class)),
+                                        selfLink);
+        } else {
+            resources = new Resources<>(stats, selfLink);
+        }
+
+        log.exiting(TeamController.class.getName(), RETRIEVE_ALL_TEAM_STATS, resources);
+        return ResponseEntity.ok(resources);
+    }
+
+    /**
+     * @return the in-memory read model, if it's switched on and finished loading.  Otherwise null, and the GETs go to
+     *         the service (and the database) instead.
+     */
+    private ReadModel readModel() {
+        //Inside an atomic batch's transaction, the model hasn't seen the batch's own writes yet.
+        if(TransactionSynchronizationManager.isActualTransactionActive()) {
+            return null;
+        }
+
+        ReadModel model = readModel.getIfAvailable();
+        return model != null && model.isReady() ? model : null;
     }
 
     /**
@@ -244,7 +721,7 @@ public class TeamController {
      * @param asset - A TeamAsset class describing a Team.
      * @return A Resources wrapping the TeamAsset and populated with appropriate Hypermedia links.
      */
-    private Resource wrapAsset(TeamAsset asset) {
+    static Resource wrapAsset(TeamAsset asset) {
         log.entering(TeamController.class.getName(), WRAP_ASSET, asset);
         List<Link> links = new ArrayList<>();
 
@@ -252,7 +729,7 @@ public class TeamController {
             links.add(linkTo(methodOn(TeamController.class).retrieveTeam(asset.getTeamId()))
                             .withSelfRel());
 
-            links.add(linkTo(methodOn(ProgrammerController.class).retrieveAllProgrammers(asset.getTeamId()))
+            links.add(linkTo(methodOn(ProgrammerController.class).retrieveAllProgrammers(asset.getTeamId(), null, null, null, null))
                             .withRel("programmers")
                             .expand());
         }
@@ -262,4 +739,13 @@ public class TeamController {
         log.exiting(TeamController.class.getName(), WRAP_ASSET, returnMe);
         return returnMe;
     }
+
+    private static Resource wrapStats(TeamStatsAsset stats) {
+        List<Link> links = Arrays.asList(
+                linkTo(methodOn(TeamController.class).retrieveTeamStats(stats.getTeamId())).withSelfRel().expand(),
+                linkTo(methodOn(TeamController.class).retrieveTeam(stats.getTeamId())).withRel("team").expand()
+        );
+
+        return new Resource<>(stats, links);
+    }
 }
@@ -0,0 +1,280 @@
+package ca.purpleowl.examples.swagger.rest.events;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.java.Log;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.SchedulingConfigurer;
+import org.springframework.scheduling.config.ScheduledTaskRegistrar;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fans change notifications out to every GET /events subscriber.
+ *
+ * Each notification is serialized once (twice, if anybody wants bodies) by whoever publishes it, and the same string is
+ * queued for every subscriber.  Subscriber queues are bounded: the request thread that published the change never
+ * waits on a subscriber, and a subscriber whose queue is full is disconnected rather than allowed to hold everybody up
+ * or eat up memory.  The actual writes happen on a small dispatcher pool, with at most one drain per subscriber running
+ * at a time so that notifications arrive in order.
+ *
+ * Those writes are blocking, and a client that has stopped reading (without going away) will eventually have one
+ * block for good.  Every write is timed, and one that's gone on longer than writeTimeout is given up on: the
+ * subscriber is evicted and its connection closed underneath the write, which is the only thing that gets the
+ * dispatcher thread out of it (Undertow's blocking writes carry on regardless of interrupts).  Evicting a subscriber
+ * because its queue filled up does the same to any write it has under way.
+ *
+ * The SSE connections themselves are async requests, so they don't tie up a worker thread while they're idle.
+ */
+@Log
+public class ChangeFeed implements SchedulingConfigurer, DisposableBean {
+    private static final String PUBLISH = "publish";
+
+    private final EventFeedProperties properties;
+    private final Executor dispatcher;
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final AtomicLong sequence = new AtomicLong();
+    private final Counter published;
+    private final Counter evicted;
+
+    public ChangeFeed(EventFeedProperties properties, MeterRegistry meterRegistry) {
+        this(properties,
+             Executors.newFixedThreadPool(properties.getDispatcherThreads(), new CustomizableThreadFactory("change-feed-")),
+             meterRegistry);
+    }
+
+    ChangeFeed(EventFeedProperties properties, Executor dispatcher, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.dispatcher = dispatcher;
+        this.published = meterRegistry.counter("purpleowl.events.published");
+        this.evicted = meterRegistry.counter("purpleowl.events.evicted");
+        meterRegistry.gaugeCollectionSize("purpleowl.events.subscribers", Collections.emptyList(), subscribers);
+    }
+
+    @Override
+    public void configureTasks(ScheduledTaskRegistrar taskRegistrar) {
+        taskRegistrar.addFixedDelayTask(this::heartbeat, properties.getHeartbeat().toMillis());
+        taskRegistrar.addFixedDelayTask(this::evictStalled, Math.max(1, properties.getWriteTimeout().toMillis() / 2));
+    }
+
+    @Override
+    public void destroy() {
+        for(Subscriber subscriber : subscribers) {
+            subscriber.emitter.complete();
+        }
+        subscribers.clear();
+
+        if(dispatcher instanceof ExecutorService) {
+            ((ExecutorService) dispatcher).shutdownNow();
+        }
+    }
+
+    /**
+     * @param disconnect - Closes the subscriber's connection outright, for when a write to it is stuck.
+     * @return an emitter for the new subscriber, or null if we're already at maxSubscribers.
+     */
+    public SseEmitter subscribe(boolean includeBody, Runnable disconnect) {
+        if(subscribers.size() >= properties.getMaxSubscribers()) {
+            return null;
+        }
+
+        SseEmitter emitter = new SseEmitter(properties.getSubscriptionTimeout().toMillis());
+        Subscriber subscriber = new Subscriber(emitter, disconnect, includeBody, properties.getSubscriberBufferSize());
+
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(() -> subscribers.remove(subscriber));
+        emitter.onError(error -> subscribers.remove(subscriber));
+        subscribers.add(subscriber);
+
+        return emitter;
+    }
+
+    /**
+     * @param name - The SSE event name, which is the entity type.
+     * @param compact - The notification serialized without a body.
+     * @param withBody - The notification serialized with a body, or null if nobody asked for one.
+     */
+    public void publish(String name, String compact, String withBody) {
+        log.entering(ChangeFeed.class.getName(), PUBLISH, name);
+        String id = Long.toString(sequence.incrementAndGet());
+        published.increment();
+
+        for(Subscriber subscriber : subscribers) {
+            String data = subscriber.includeBody && withBody != null ? withBody : compact;
+            SseEmitter.SseEventBuilder event = SseEmitter.event()
+                                                         .id(id)
+                                                         .name(name)
+                                                         .data(data, MediaType.APPLICATION_JSON);
+
+            if(subscriber.queue.offer(event)) {
+                schedule(subscriber);
+            } else {
+                evict(subscriber);
+            }
+        }
+
+        log.exiting(ChangeFeed.class.getName(), PUBLISH, id);
+    }
+
+    /**
+     * @return true if any current subscriber wants bodies, so publishers can skip rendering them otherwise.
+     */
+    public boolean wantsBodies() {
+        for(Subscriber subscriber : subscribers) {
+            if(subscriber.includeBody) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    public int subscriberCount() {
+        return subscribers.size();
+    }
+
+    void heartbeat() {
+        for(Subscriber subscriber : subscribers) {
+            if(subscriber.queue.isEmpty() && subscriber.queue.offer(SseEmitter.event().comment("heartbeat"))) {
+                schedule(subscriber);
+            }
+        }
+    }
+
+    /**
+     * Evicts every subscriber with a write that has taken longer than writeTimeout.
+     */
+    void evictStalled() {
+        long timeout = properties.getWriteTimeout().toNanos();
+
+        for(Subscriber subscriber : subscribers) {
+            if(subscriber.isStalled(timeout)) {
+                evict(subscriber);
+            }
+        }
+    }
+
+    private void schedule(Subscriber subscriber) {
+        if(subscriber.draining.compareAndSet(false, true)) {
+            dispatcher.execute(() -> drain(subscriber));
+        }
+    }
+
+    private void drain(Subscriber subscriber) {
+        try {
+            SseEmitter.SseEventBuilder event;
+            while((event = subscriber.queue.poll()) != null) {
+                if(!send(subscriber, event)) {
+                    return;
+                }
+            }
+        } finally {
+            subscriber.draining.set(false);
+        }
+
+        //Something may have been queued after we last looked, but before we let go of the drain.
+        if(!subscriber.queue.isEmpty()) {
+            schedule(subscriber);
+        }
+    }
+
+    /**
+     * @return false if we're done with this subscriber.
+     */
+    private boolean send(Subscriber subscriber, SseEmitter.SseEventBuilder event) {
+        if(!subscriber.startWrite()) {
+            return false;
+        }
+
+        try {
+            subscriber.emitter.send(event);
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            //The client has gone away (or the emitter has already completed, or we've closed the connection on it).
+            //Either way, we're done with it.
+            subscribers.remove(subscriber);
+            subscriber.queue.clear();
+            return false;
+        } finally {
+            subscriber.finishWrite();
+        }
+    }
+
+    private void evict(Subscriber subscriber) {
+        if(subscribers.remove(subscriber)) {
+            log.info("evicting slow change feed subscriber");
+            evicted.increment();
+            subscriber.queue.clear();
+
+            if(subscriber.evict()) {
+                subscriber.disconnect.run();
+            } else {
+                subscriber.emitter.complete();
+            }
+        }
+    }
+
+    private static class Subscriber {
+        private final SseEmitter emitter;
+        private final boolean includeBody;
+        private final Queue<SseEmitter.SseEventBuilder> queue;
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private final Runnable disconnect;
+
+        //Guarded by this.
+        private boolean writing;
+        private long writeStarted;
+        private boolean evicted;
+
+        Subscriber(SseEmitter emitter, Runnable disconnect, boolean includeBody, int bufferSize) {
+            this.emitter = emitter;
+            this.disconnect = disconnect;
+            this.includeBody = includeBody;
+            this.queue = new ArrayBlockingQueue<>(bufferSize);
+        }
+
+        /**
+         * @return false if the subscriber has been evicted, and mustn't be written to any more.
+         */
+        synchronized boolean startWrite() {
+            if(evicted) {
+                return false;
+            }
+
+            writing = true;
+            writeStarted = System.nanoTime();
+            return true;
+        }
+
+        synchronized void finishWrite() {
+            writing = false;
+        }
+
+        synchronized boolean isStalled(long timeoutNanos) {
+            return writing && System.nanoTime() - writeStarted > timeoutNanos;
+        }
+
+        /**
+         * Stops any more writes from starting.
+         *
+         * @return true if one is already under way, and the only way to end it is to disconnect.
+         */
+        synchronized boolean evict() {
+            evicted = true;
+            return writing;
+        }
+    }
+}
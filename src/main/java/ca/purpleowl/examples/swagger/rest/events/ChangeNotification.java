@@ -0,0 +1,17 @@
+package ca.purpleowl.examples.swagger.rest.events;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+
+/**
+ * What actually goes out over the wire for a change.  The body is the same HAL representation GET would return, and is
+ * only sent to subscribers who asked for it.
+ */
+@Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ChangeNotification {
+    private final String type;
+    private final long id;
+    private final Long version;
+    private final Object body;
+}
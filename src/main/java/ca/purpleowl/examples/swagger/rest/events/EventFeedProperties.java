@@ -0,0 +1,46 @@
+package ca.purpleowl.examples.swagger.rest.events;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties("purpleowl.events")
+public class EventFeedProperties {
+    /**
+     * New subscriptions are turned away (with a 503) past this many.
+     */
+    private int maxSubscribers = 10_000;
+
+    /**
+     * How many notifications may be waiting to go out to a single subscriber.  A subscriber that falls this far behind
+     * is disconnected; it can reconnect and catch up with GET /programmer and GET /team.
+     */
+    private int subscriberBufferSize = 256;
+
+    /**
+     * Threads writing notifications out to subscribers.  Writes are quick unless a client has stopped reading, and
+     * those clients get evicted once their buffer fills up or a write takes longer than writeTimeout, so a handful of
+     * threads goes a long way.
+     */
+    private int dispatcherThreads = 4;
+
+    /**
+     * How long a single write to a subscriber may take.  Once a client stops reading and its TCP buffers fill up,
+     * writes to it block; past this, the write is abandoned and the subscriber disconnected, so that it doesn't keep a
+     * dispatcher thread from everybody else.
+     */
+    private Duration writeTimeout = Duration.ofSeconds(5);
+
+    /**
+     * How often to send a comment down idle connections.  Keeps proxies from timing them out, and finds the clients
+     * that have gone away without telling us.
+     */
+    private Duration heartbeat = Duration.ofSeconds(15);
+
+    /**
+     * Subscriptions are closed after this long.  EventSource clients reconnect by themselves.
+     */
+    private Duration subscriptionTimeout = Duration.ofMinutes(30);
+}
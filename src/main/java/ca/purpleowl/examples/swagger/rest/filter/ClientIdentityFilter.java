@@ -0,0 +1,52 @@
+package ca.purpleowl.examples.swagger.rest.filter;
+
+import ca.purpleowl.examples.swagger.jpa.datasource.ReadYourWritesTracker;
+import org.springframework.util.StringUtils;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.security.Principal;
+
+/**
+ * Works out who is making the request so that read-your-writes stickiness can be tracked per client rather than for
+ * everyone at once.  Clients can identify themselves with an X-Client-Id header, which is handy behind a proxy;
+ * otherwise we fall back on the remote address.
+ */
+public class ClientIdentityFilter extends OncePerRequestFilter {
+    public static final String CLIENT_ID_HEADER = "X-Client-Id";
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request,
+                                    HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        String clientId = request.getHeader(CLIENT_ID_HEADER);
+        ReadYourWritesTracker.bindClient(StringUtils.hasText(clientId) ? clientId : request.getRemoteAddr());
+
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            ReadYourWritesTracker.clearClient();
+        }
+    }
+
+    /**
+     * @return Where the request came from: the authenticated user, or else the remote address.
+     */
+    public static String sourceOf(HttpServletRequest request) {
+        Principal principal = request.getUserPrincipal();
+        return principal != null ? "user " + principal.getName() : request.getRemoteAddr();
+    }
+
+    /**
+     * @return The client making the request, within its source.  An X-Client-Id only tells clients from the same
+     *         source apart, so nobody can pass themselves off as a client somewhere else just by sending its ID.
+     */
+    public static String clientOf(HttpServletRequest request) {
+        String clientId = request.getHeader(CLIENT_ID_HEADER);
+        return sourceOf(request) + ' ' + (StringUtils.hasText(clientId) ? clientId : "");
+    }
+}
@@ -0,0 +1,253 @@
+package ca.purpleowl.examples.swagger.rest.hal;
+
+import ca.purpleowl.examples.swagger.jpa.entity.Programmer;
+import ca.purpleowl.examples.swagger.jpa.entity.Team;
+import ca.purpleowl.examples.swagger.rest.controller.ProgrammerController;
+import ca.purpleowl.examples.swagger.rest.controller.TeamController;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+import static org.springframework.hateoas.mvc.ControllerLinkBuilder.linkTo;
+
+/**
+ * Writes lists of Programmers and Teams as HAL, straight from the entities to JSON tokens.
+ *
+ * The usual way round, every item in a list becomes an Asset, a formatted date String, an ArrayList of Links (each
+ * built by working out the current request's URL all over again) and a Resource, and then Jackson walks all of that
+ * reflectively.  That's fine for one item, but a list of thousands makes a lot of garbage for what's basically string
+ * concatenation.  This writes the same bytes, field for field, with the link prefixes worked out once per response
+ * and the dates and hrefs built up in a reused buffer.  Both are checked against each other in HalWriterTest, so if
+ * you change what an Asset looks like, change it here too.
+ *
+ * A HalWriter is made for one response and isn't thread-safe.
+ */
+public class HalWriter {
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final String programmerBase;
+    private final String teamBase;
+    private final String selfHref;
+    private final StringBuilder text = new StringBuilder(128);
+    private char[] chars = new char[128];
+
+    /**
+     * @param programmerBase - The URL of the Programmer endpoint, like http://localhost:8085/programmer.
+     * @param teamBase - The URL of the Team endpoint.
+     * @param selfHref - The "self" link for the list as a whole.
+     */
+    public HalWriter(String programmerBase, String teamBase, String selfHref) {
+        this.programmerBase = programmerBase;
+        this.teamBase = teamBase;
+        this.selfHref = selfHref;
+    }
+
+    /**
+     * @param selfHref - The "self" link for the list as a whole.
+     * @return A HalWriter whose links point back at the server handling the current request.
+     */
+    public static HalWriter forCurrentRequest(String selfHref) {
+        return new HalWriter(linkTo(ProgrammerController.class).toUri().toString(),
+                             linkTo(TeamController.class).toUri().toString(),
+                             selfHref);
+    }
+
+    /**
+     * @return The same bytes GET /programmer would return for the Programmers, as Resources of ProgrammerAssets.
+     */
+    public byte[] programmers(Iterable<Programmer> programmers) {
+        ByteArrayBuilder out = new ByteArrayBuilder();
+
+        try(JsonGenerator json = JSON_FACTORY.createGenerator(out)) {
+            startList(json, "programmerAssetList");
+            for(Programmer programmer : programmers) {
+                writeProgrammer(json, programmer);
+            }
+            endList(json);
+        } catch(IOException e) {
+            //There's nothing underneath but a byte array, so there's nothing to go wrong.
+            throw new UncheckedIOException(e);
+        }
+
+        return out.toByteArray();
+    }
+
+    /**
+     * @return The same bytes GET /team would return for the Teams, as Resources of TeamAssets.
+     */
+    public byte[] teams(Iterable<Team> teams) {
+        ByteArrayBuilder out = new ByteArrayBuilder();
+
+        try(JsonGenerator json = JSON_FACTORY.createGenerator(out)) {
+            startList(json, "teamAssetList");
+            for(Team team : teams) {
+                writeTeam(json, team);
+            }
+            endList(json);
+        } catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return out.toByteArray();
+    }
+
+    private void startList(JsonGenerator json, String rel) throws IOException {
+        json.writeStartObject();
+        json.writeObjectFieldStart("_embedded");
+        json.writeArrayFieldStart(rel);
+    }
+
+    private void endList(JsonGenerator json) throws IOException {
+        json.writeEndArray();
+        json.writeEndObject();
+        json.writeObjectFieldStart("_links");
+        writeLink(json, "self", selfHref);
+        json.writeEndObject();
+        json.writeEndObject();
+    }
+
+    /**
+     * Matches ProgrammerService.entityToAsset() and ProgrammerController.wrapAsset().
+     */
+    private void writeProgrammer(JsonGenerator json, Programmer programmer) throws IOException {
+        Long id = programmer.getId();
+        Team team = programmer.getTeam();
+        Long teamId = team == null ? null : team.getId();
+
+        json.writeStartObject();
+        writeNumberField(json, "programmerId", id);
+        json.writeStringField("name", programmer.getName());
+        json.writeFieldName("dateHired");
+        if(programmer.getDateHired() == null) {
+            json.writeNull();
+        } else {
+            writeDate(json, programmer.getDateHired());
+        }
+        if(teamId != null) {
+            json.writeNumberField("teamId", teamId);
+        }
+        if(team != null && team.getName() != null && !team.getName().isEmpty()) {
+            json.writeStringField("teamName", team.getName());
+        }
+
+        if(id != null || teamId != null) {
+            json.writeObjectFieldStart("_links");
+            if(id != null) {
+                writeLink(json, "self", programmerBase, "/", id);
+            }
+            if(teamId != null) {
+                writeLink(json, "team", teamBase, "/", teamId);
+            }
+            json.writeEndObject();
+        }
+        json.writeEndObject();
+    }
+
+    /**
+     * Matches TeamService.entityToAsset() and TeamController.wrapAsset().
+     */
+    private void writeTeam(JsonGenerator json, Team team) throws IOException {
+        Long id = team.getId();
+
+        json.writeStartObject();
+        writeNumberField(json, "teamId", id);
+        json.writeStringField("name", team.getName());
+        json.writeStringField("teamFocus", team.getTeamFocus());
+        if(team.getLastStandUp() != null) {
+            json.writeFieldName("lastStandUp");
+            writeDateTime(json, team.getLastStandUp());
+        }
+
+        if(id != null) {
+            json.writeObjectFieldStart("_links");
+            writeLink(json, "self", teamBase, "/", id);
+            writeLink(json, "programmers", programmerBase, "?teamId=", id);
+            json.writeEndObject();
+        }
+        json.writeEndObject();
+    }
+
+    private static void writeNumberField(JsonGenerator json, String field, Long value) throws IOException {
+        if(value == null) {
+            json.writeNullField(field);
+        } else {
+            json.writeNumberField(field, value);
+        }
+    }
+
+    private static void writeLink(JsonGenerator json, String rel, String href) throws IOException {
+        json.writeObjectFieldStart(rel);
+        json.writeStringField("href", href);
+        json.writeEndObject();
+    }
+
+    private void writeLink(JsonGenerator json, String rel, String base, String separator, long id) throws IOException {
+        text.setLength(0);
+        text.append(base).append(separator).append(id);
+
+        json.writeObjectFieldStart(rel);
+        json.writeFieldName("href");
+        writeText(json);
+        json.writeEndObject();
+    }
+
+    private void writeDate(JsonGenerator json, LocalDate date) throws IOException {
+        text.setLength(0);
+        if(date.getYear() >= 0 && date.getYear() <= 9999) {
+            appendDate(date.getYear(), date.getMonthValue(), date.getDayOfMonth());
+        } else {
+            //The formatter adds a sign to years outside of 0000-9999.  It's not worth doing that by hand.
+            DateTimeFormatter.ISO_LOCAL_DATE.formatTo(date, text);
+        }
+        writeText(json);
+    }
+
+    private void writeDateTime(JsonGenerator json, LocalDateTime dateTime) throws IOException {
+        text.setLength(0);
+        if(dateTime.getYear() >= 0 && dateTime.getYear() <= 9999 && dateTime.getNano() == 0) {
+            appendDate(dateTime.getYear(), dateTime.getMonthValue(), dateTime.getDayOfMonth());
+            text.append('T');
+            appendTwoDigits(dateTime.getHour());
+            text.append(':');
+            appendTwoDigits(dateTime.getMinute());
+            text.append(':');
+            appendTwoDigits(dateTime.getSecond());
+        } else {
+            DateTimeFormatter.ISO_LOCAL_DATE_TIME.formatTo(dateTime, text);
+        }
+        writeText(json);
+    }
+
+    private void appendDate(int year, int month, int day) {
+        text.append((char) ('0' + year / 1000))
+            .append((char) ('0' + year / 100 % 10))
+            .append((char) ('0' + year / 10 % 10))
+            .append((char) ('0' + year % 10))
+            .append('-');
+        appendTwoDigits(month);
+        text.append('-');
+        appendTwoDigits(day);
+    }
+
+    private void appendTwoDigits(int value) {
+        text.append((char) ('0' + value / 10)).append((char) ('0' + value % 10));
+    }
+
+    /**
+     * Writes whatever's in the text buffer as a JSON string, without turning it into a String first.
+     */
+    private void writeText(JsonGenerator json) throws IOException {
+        int length = text.length();
+        if(chars.length < length) {
+            chars = new char[Math.max(length, chars.length * 2)];
+        }
+        text.getChars(0, length, chars, 0);
+        json.writeString(chars, 0, length);
+    }
+}
@@ -0,0 +1,15 @@
+package ca.purpleowl.examples.swagger.rest.idempotency;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Thrown when a client sends a request with an Idempotency-Key it has already used for a different request.
+ */
+@ResponseStatus(value = HttpStatus.UNPROCESSABLE_ENTITY,
+                reason = "The Idempotency-Key has already been used for a different request")
+public class IdempotencyKeyReusedException extends RuntimeException {
+    public IdempotencyKeyReusedException(String key) {
+        super(String.format("Idempotency-Key %s was already used for a different request", key));
+    }
+}
@@ -0,0 +1,26 @@
+package ca.purpleowl.examples.swagger.rest.idempotency;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties("purpleowl.idempotency")
+public class IdempotencyProperties {
+    /**
+     * How long a completed response is kept around for replay.  Clients retrying after this has passed will get their
+     * request executed again.
+     */
+    private Duration retention = Duration.ofHours(1);
+
+    /**
+     * The most responses we'll hold on to at once.  The oldest completed entries get evicted first.
+     */
+    private int maxEntries = 10_000;
+
+    /**
+     * How long a duplicate request waits for the original to finish before giving up with a 409.
+     */
+    private Duration inFlightTimeout = Duration.ofSeconds(30);
+}
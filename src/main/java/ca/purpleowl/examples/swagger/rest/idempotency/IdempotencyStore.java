@@ -0,0 +1,220 @@
+package ca.purpleowl.examples.swagger.rest.idempotency;
+
+import lombok.extern.java.Log;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+
+import java.time.Clock;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Remembers the responses to requests that carried an Idempotency-Key so that a client retrying one of them (usually
+ * because it timed out waiting on us) gets the original response back instead of creating a duplicate.
+ *
+ * A few rules of the road:
+ *  - Keys are scoped to the client and the operation, so the same key can safely be used against two different
+ *    endpoints, and one client can never be handed another's response by guessing (or colliding with) its key.
+ *  - Only successful (2xx) responses are kept.  Anything else may well succeed the next time around.
+ *  - If a duplicate arrives while the original is still running, it waits for the original and shares its response
+ *    rather than running the operation a second time.  If the original throws instead, there's nothing to share, so
+ *    the duplicate goes ahead and runs as though it had been first.
+ *  - Reusing a key with a different request body is a client error.
+ *
+ * Entries are kept in memory, bounded in number and expired after the configured retention period.
+ */
+@Log
+public class IdempotencyStore {
+    public static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+
+    private static final String EXECUTE = "execute";
+
+    private final Map<List<String>, Entry> entries = new ConcurrentHashMap<>();
+    //Only ever holds entries that are (or were) in the map; the ones that aren't any more are skipped over.
+    private final Queue<Entry> insertionOrder = new ConcurrentLinkedQueue<>();
+    private final IdempotencyProperties properties;
+    private final Clock clock;
+
+    public IdempotencyStore(IdempotencyProperties properties) {
+        this(properties, Clock.systemUTC());
+    }
+
+    IdempotencyStore(IdempotencyProperties properties, Clock clock) {
+        this.properties = properties;
+        this.clock = clock;
+    }
+
+    /**
+     * Runs the supplied action unless a request with the same key has already been (or is being) handled, in which
+     * case the earlier response is returned instead.
+     *
+     * @param client - Who's asking, used to scope the key (see ClientIdentityFilter.clientOf()).
+     * @param idempotencyKey - The client-supplied key.  If null, the action is simply run.
+     * @param operation - A name for the operation, used to scope the key.
+     * @param request - Whatever identifies the request's content, used to catch keys being reused for other requests.
+     * @param action - The operation to perform.
+     * @return Either a fresh response, or the response of the earlier request with the same key.
+     */
+    public <T> ResponseEntity<T> execute(String client,
+                                         String idempotencyKey,
+                                         String operation,
+                                         Object request,
+                                         Supplier<ResponseEntity<T>> action) {
+        if(idempotencyKey == null) {
+            return action.get();
+        }
+
+        log.entering(IdempotencyStore.class.getName(), EXECUTE, new Object[]{client, idempotencyKey, operation});
+        //A list rather than one string, as client IDs (and IPv6 addresses) can have any separator we might pick in them.
+        List<String> storeKey = Arrays.asList(client, operation, idempotencyKey);
+
+        while(true) {
+            Entry entry = new Entry(storeKey, request);
+            Entry existing = entries.putIfAbsent(storeKey, entry);
+
+            if(existing == null) {
+                insertionOrder.add(entry);
+                evictIfNeeded();
+                return run(entry, action);
+            }
+
+            if(existing.isExpired()) {
+                forget(existing);
+                continue;
+            }
+
+            if(!Objects.equals(existing.request, request)) {
+                throw new IdempotencyKeyReusedException(idempotencyKey);
+            }
+
+            log.fine(String.format("replaying response for %s", storeKey));
+            ResponseEntity<T> replayed = replay(idempotencyKey, existing);
+
+            if(replayed != null) {
+                return replayed;
+            }
+
+            //The original threw, and has already been forgotten.  Nothing was saved, so this one gets to try.
+            log.fine(String.format("original request for %s failed, running the duplicate", storeKey));
+        }
+    }
+
+    private <T> ResponseEntity<T> run(Entry entry, Supplier<ResponseEntity<T>> action) {
+        ResponseEntity<T> response;
+
+        try {
+            response = action.get();
+        } catch (RuntimeException e) {
+            forget(entry);
+            entry.response.completeExceptionally(e);
+            throw e;
+        }
+
+        if(response.getStatusCode().is2xxSuccessful()) {
+            entry.completedAt = clock.millis();
+        } else {
+            forget(entry);
+        }
+
+        entry.response.complete(response);
+        return response;
+    }
+
+    /**
+     * Takes the entry out of the map, and out of the queue as well, so that the queue doesn't fill up with keys that
+     * have since been reused.
+     */
+    private void forget(Entry entry) {
+        if(entries.remove(entry.key, entry)) {
+            insertionOrder.remove(entry);
+        }
+    }
+
+    /**
+     * @return The original response, or null if the original request threw.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> ResponseEntity<T> replay(String idempotencyKey, Entry existing) {
+        ResponseEntity<T> original;
+
+        try {
+            original = (ResponseEntity<T>) existing.response.get(properties.getInFlightTimeout().toMillis(),
+                                                                  TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new IdempotentRequestInProgressException(idempotencyKey);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IdempotentRequestInProgressException(idempotencyKey);
+        } catch (ExecutionException e) {
+            return null;
+        }
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.putAll(original.getHeaders());
+        headers.set(REPLAYED_HEADER, Boolean.TRUE.toString());
+
+        return new ResponseEntity<>(original.getBody(), headers, original.getStatusCode());
+    }
+
+    /**
+     * Drops expired entries from the front of the queue, then keeps dropping the oldest completed entries until we're
+     * back under the limit.  In-flight entries are never dropped; they go to the back of the queue instead.  Entries
+     * that have already been forgotten are skipped, so that they can't take a newer entry for the same key with them.
+     */
+    private void evictIfNeeded() {
+        int attempts = insertionOrder.size();
+
+        while(attempts-- > 0) {
+            Entry oldest = insertionOrder.peek();
+            if(oldest == null) {
+                return;
+            }
+
+            boolean current = entries.get(oldest.key) == oldest;
+            boolean overLimit = entries.size() > properties.getMaxEntries();
+            if(current && !oldest.isExpired() && !overLimit) {
+                return;
+            }
+
+            insertionOrder.poll();
+
+            if(current && overLimit && !oldest.isExpired() && oldest.completedAt == null) {
+                insertionOrder.add(oldest);
+            } else if(current) {
+                entries.remove(oldest.key, oldest);
+            }
+        }
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    private class Entry {
+        private final List<String> key;
+        private final Object request;
+        private final CompletableFuture<ResponseEntity<?>> response = new CompletableFuture<>();
+        private volatile Long completedAt;
+
+        Entry(List<String> key, Object request) {
+            this.key = key;
+            this.request = request;
+        }
+
+        boolean isExpired() {
+            Long completed = completedAt;
+            return completed != null && clock.millis() - completed > properties.getRetention().toMillis();
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package ca.purpleowl.examples.swagger.rest.idempotency;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Thrown when a duplicate request gives up waiting for the original to finish.  The client can simply retry later.
+ */
+@ResponseStatus(value = HttpStatus.CONFLICT,
+                reason = "A request with this Idempotency-Key is still being processed")
+public class IdempotentRequestInProgressException extends RuntimeException {
+    public IdempotentRequestInProgressException(String key) {
+        super(String.format("Request with Idempotency-Key %s is still in flight", key));
+    }
+}
@@ -0,0 +1,46 @@
+package ca.purpleowl.examples.swagger.rest.server;
+
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.AttachmentKey;
+import io.undertow.util.Protocols;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Closes an HTTP/1.1 connection once it has served a certain number of requests.  Undertow will keep a connection
+ * alive forever as long as the client keeps using it, which is lovely until a load balancer has pinned all of a
+ * gateway's connections to the one instance that happened to be up first.
+ *
+ * The count lives on the connection, and requests on one HTTP/1.1 connection never overlap, so there's no contention
+ * to speak of.
+ */
+public class KeepAliveLimitHandler implements HttpHandler {
+    private static final AttachmentKey<AtomicInteger> REQUESTS = AttachmentKey.create(AtomicInteger.class);
+
+    private final HttpHandler next;
+    private final int maxRequestsPerConnection;
+
+    public KeepAliveLimitHandler(HttpHandler next, int maxRequestsPerConnection) {
+        this.next = next;
+        this.maxRequestsPerConnection = maxRequestsPerConnection;
+    }
+
+    @Override
+    public void handleRequest(HttpServerExchange exchange) throws Exception {
+        if(Protocols.HTTP_1_1.equals(exchange.getProtocol())) {
+            AtomicInteger requests = exchange.getConnection().getAttachment(REQUESTS);
+            if(requests == null) {
+                requests = new AtomicInteger();
+                exchange.getConnection().putAttachment(REQUESTS, requests);
+            }
+
+            if(requests.incrementAndGet() >= maxRequestsPerConnection) {
+                //Sends "Connection: close" and shuts the connection once this response has gone.
+                exchange.setPersistent(false);
+            }
+        }
+
+        next.handleRequest(exchange);
+    }
+}
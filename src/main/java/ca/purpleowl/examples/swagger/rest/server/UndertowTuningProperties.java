@@ -0,0 +1,68 @@
+package ca.purpleowl.examples.swagger.rest.server;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Everything about Undertow itself that we've had reason to turn, in one place.  Anything left unset keeps Undertow's
+ * own default, which it works out from the number of cores and the size of the heap.
+ */
+@Data
+@ConfigurationProperties("purpleowl.undertow")
+public class UndertowTuningProperties {
+    private Http2 http2 = new Http2();
+
+    /**
+     * Threads doing non-blocking I/O; one per core by default.  These should never block, so there's rarely any point
+     * in having more of them than cores.
+     */
+    private Integer ioThreads;
+
+    /**
+     * Threads running the servlets; eight per I/O thread by default.  Every request holds one of these for as long as
+     * it's talking to the database, so more than the connection pool can keep busy just means more waiting around.
+     */
+    private Integer workerThreads;
+
+    /**
+     * The size of each buffer in the pool requests and responses are read into and written from.
+     */
+    private Integer bufferSize;
+
+    /**
+     * Whether those buffers live off the heap, which saves a copy on every read and write to the socket.
+     */
+    private Boolean directBuffers;
+
+    private KeepAlive keepAlive = new KeepAlive();
+
+    @Data
+    public static class Http2 {
+        /**
+         * Accept HTTP/2 over plain text (h2c), either upgraded from HTTP/1.1 or with prior knowledge.  Clients that
+         * don't ask for it carry on with HTTP/1.1.
+         */
+        private boolean enabled = true;
+
+        /**
+         * How many requests a client may have going at once on one HTTP/2 connection.  Unset means no limit.
+         */
+        private Integer maxConcurrentStreams;
+    }
+
+    @Data
+    public static class KeepAlive {
+        /**
+         * How long an idle connection is kept open waiting for another request.
+         */
+        private Duration idleTimeout = Duration.ofSeconds(60);
+
+        /**
+         * How many requests one HTTP/1.1 connection serves before we close it, so that clients behind a load balancer
+         * get spread out again every so often.  Zero means no limit.  HTTP/2 connections aren't affected.
+         */
+        private int maxRequestsPerConnection = 0;
+    }
+}
@@ -0,0 +1,50 @@
+package ca.purpleowl.examples.swagger.service;
+
+import ca.purpleowl.examples.swagger.jpa.entity.AbstractEntity;
+import lombok.Data;
+
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * One page of changes, as returned by the find*Changes methods on the services.
+ */
+@Data
+public class ChangeSet<T> {
+    /**
+     * The changed entities, oldest change first.
+     */
+    private final List<T> changes;
+
+    /**
+     * Where to carry on from next time.  Everything up to and including this has been returned.
+     */
+    private final long lastSequence;
+
+    /**
+     * Whether there were more changes than would fit in this page.
+     */
+    private final boolean more;
+
+    /**
+     * @param found - Whatever the repository found; up to limit + 1 entities, so that we can tell if there are more.
+     * @param limit - How many changes the client asked for.
+     * @param upTo - The upper bound the repository was given.
+     * @param toAsset - Converts each entity to an Asset.
+     */
+    static <E extends AbstractEntity, T> ChangeSet<T> of(List<E> found,
+                                                         int limit,
+                                                         long upTo,
+                                                         Function<E, T> toAsset) {
+        boolean more = found.size() > limit;
+        List<E> page = more ? found.subList(0, limit) : found;
+
+        //If that's everything, the client is up to date as of upTo, whether or not anything changed.  A since beyond
+        //upTo (a number that was handed out but rolled back, say) is never kept: going back to upTo only costs the
+        //client a look at changes it may have seen, where keeping since could skip changes numbered below it.
+        long lastSequence = more ? page.get(page.size() - 1).getChangeSequence() : upTo;
+
+        return new ChangeSet<>(page.stream().map(toAsset).collect(Collectors.toList()), lastSequence, more);
+    }
+}
@@ -0,0 +1,15 @@
+package ca.purpleowl.examples.swagger.service;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Thrown when a merge patch isn't a JSON object, tries to change something that can't be changed that way, or has a
+ * value we can't make sense of.
+ */
+@ResponseStatus(value = HttpStatus.BAD_REQUEST, reason = "Invalid merge patch")
+public class InvalidPatchException extends RuntimeException {
+    public InvalidPatchException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,71 @@
+package ca.purpleowl.examples.swagger.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * A JSON Merge Patch (RFC 7396) against one of our Assets.  Fields the patch leaves out are left alone, and a field set
+ * to null is cleared.  Since our Assets are flat, there's no nesting to worry about.
+ *
+ * Only the fields a service says can be patched are allowed; anything else (IDs, versions, made-up fields) gets the
+ * whole patch refused rather than quietly ignored.
+ */
+final class MergePatch {
+    private final JsonNode patch;
+
+    private MergePatch(JsonNode patch) {
+        this.patch = patch;
+    }
+
+    static MergePatch of(JsonNode patch, String... patchable) {
+        if(patch == null || !patch.isObject()) {
+            throw new InvalidPatchException("a merge patch has to be a JSON object");
+        }
+
+        List<String> allowed = Arrays.asList(patchable);
+        patch.fieldNames().forEachRemaining(field -> {
+            if(!allowed.contains(field)) {
+                throw new InvalidPatchException(String.format("%s can't be patched", field));
+            }
+        });
+
+        return new MergePatch(patch);
+    }
+
+    /**
+     * Hands the new value of a text field to the setter, if the patch has one.  Null clears the field.
+     */
+    void text(String field, Consumer<String> setter) {
+        if(patch.has(field)) {
+            JsonNode value = patch.get(field);
+            if(!value.isNull() && !value.isTextual()) {
+                throw new InvalidPatchException(String.format("%s has to be a string", field));
+            }
+            setter.accept(value.isNull() ? null : value.textValue());
+        }
+    }
+
+    /**
+     * As text(), for fields which have to be parsed and can't be cleared.
+     */
+    <T> void parsed(String field, Function<String, T> parser, Consumer<T> setter) {
+        if(patch.has(field)) {
+            JsonNode value = patch.get(field);
+            if(!value.isTextual()) {
+                throw new InvalidPatchException(String.format("%s has to be a string, and can't be removed", field));
+            }
+
+            T parsed;
+            try {
+                parsed = parser.apply(value.textValue());
+            } catch(RuntimeException e) {
+                throw new InvalidPatchException(String.format("%s isn't valid: %s", field, value.textValue()));
+            }
+            setter.accept(parsed);
+        }
+    }
+}
@@ -1,15 +1,30 @@
 package ca.purpleowl.examples.swagger.service;
 
+import ca.purpleowl.examples.swagger.jpa.changes.ChangeSequenceAllocator;
+import ca.purpleowl.examples.swagger.jpa.datasource.ReadWriteRoutingDataSource;
+import ca.purpleowl.examples.swagger.jpa.datasource.ShardRouter;
 import ca.purpleowl.examples.swagger.jpa.entity.Programmer;
 import ca.purpleowl.examples.swagger.jpa.repository.ProgrammerRepository;
+import ca.purpleowl.examples.swagger.jpa.repository.ProgrammerSpecifications;
 import ca.purpleowl.examples.swagger.rest.asset.ProgrammerAsset;
 import ca.purpleowl.examples.swagger.rest.controller.ProgrammerController;
+import ca.purpleowl.examples.swagger.rest.hal.HalWriter;
+import ca.purpleowl.examples.swagger.service.coalescing.Coalesced;
+import ca.purpleowl.examples.swagger.service.event.EntityChangeEvent;
+import ca.purpleowl.examples.swagger.service.stats.TeamStatistics;
+import com.fasterxml.jackson.databind.JsonNode;
 import lombok.extern.java.Log;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
 import java.util.stream.Collectors;
@@ -18,34 +33,65 @@ import java.util.stream.Collectors;
  * The purpose of this is just to loosen the coupling between the JPA Model and the REST Endpoints.  I always like to
  * keep the two separate.  This also helps us pull a bunch of logic away from the REST Controller.  It should only
  * really be making decisions on what the Status Code is, and adding hypermedia links to the returned data, obviously.
+ *
+ * Everything in here runs inside a read-only transaction unless it says otherwise.  Read-only means Hibernate won't
+ * bother flushing or keeping snapshots of what it loads for dirty checking, which is exactly what we want for the
+ * (many) reads.  Anything that writes gets exactly one read-write transaction for the whole operation.
+ *
+ * Writes also publish an EntityChangeEvent, which is what feeds GET /events.
+ *
+ * Everything goes through the ShardRouter.  A Programmer lives on its Team's shard, so anything about one Team only
+ * goes to that shard; everything else is asked of every shard at once and the answers merged back into order.  With
+ * just the one shard (the usual case), the ShardRouter stays out of the way and all of this is as it always was.
  */
 @Log
 @Service
+@Transactional(readOnly = true)
 public class ProgrammerService {
     private static final String FIND_PROGRAMMER = "findProgrammer";
     private static final String FIND_ALL_PROGRAMMERS = "findAllProgrammers";
     private static final String FIND_ALL_PROGRAMMERS_ON_TEAM = "findAllProgrammersOnTeam";
+    private static final String FIND_PROGRAMMERS = "findProgrammers";
+    private static final String RENDER_PROGRAMMERS = "renderProgrammers";
     private static final String SAVE_PROGRAMMER = "saveProgrammer";
+    private static final String PATCH_PROGRAMMER = "patchProgrammer";
 
+    private static final String FIND_PROGRAMMER_CHANGES = "findProgrammerChanges";
     private static final String ENTITY_TO_ASSET = "entityToAsset";
     private static final String ASSET_TO_ENTITY = "assetToEntity";
 
+    private static final Comparator<Programmer> BY_ID = Comparator.comparing(Programmer::getId);
+    private static final Comparator<Programmer> BY_CHANGE = Comparator.comparing(Programmer::getChangeSequence);
+
     private final ProgrammerRepository programmerRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ChangeSequenceAllocator changeSequenceAllocator;
+    private final TeamStatistics teamStatistics;
+    private final ShardRouter shardRouter;
 
     @Autowired
-    public ProgrammerService(ProgrammerRepository programmerRepository) {
+    public ProgrammerService(ProgrammerRepository programmerRepository,
+                             ApplicationEventPublisher eventPublisher,
+                             ChangeSequenceAllocator changeSequenceAllocator,
+                             TeamStatistics teamStatistics,
+                             ShardRouter shardRouter) {
         this.programmerRepository = programmerRepository;
+        this.eventPublisher = eventPublisher;
+        this.changeSequenceAllocator = changeSequenceAllocator;
+        this.teamStatistics = teamStatistics;
+        this.shardRouter = shardRouter;
     }
 
+    /**
+     * Concurrent lookups of the same Programmer share a single trip to the database; see TeamService.findTeam.
+     */
+    @Coalesced
     public ProgrammerAsset findProgrammer(long programmerId) {
         log.entering(ProgrammerService.class.getName(), FIND_PROGRAMMER, programmerId);
-        ProgrammerAsset returnMe = null;
-
-        Optional<Programmer> programmer = programmerRepository.findById(programmerId);
 
-        if(programmer.isPresent()) {
-            returnMe = entityToAsset(programmer.get());
-        }
+        //A Programmer that has changed Teams may not be on the shard it was created on any more.
+        ProgrammerAsset returnMe = shardRouter.findOnAnyShard(programmerId, true, shard ->
+                programmerRepository.findWithTeamById(programmerId).map(ProgrammerService::entityToAsset).orElse(null));
 
         log.exiting(ProgrammerService.class.getName(), FIND_PROGRAMMER, returnMe);
         return returnMe;
@@ -54,11 +100,9 @@ public class ProgrammerService {
     public List<ProgrammerAsset> findAllProgrammers() {
         log.entering(ProgrammerService.class.getName(), FIND_ALL_PROGRAMMERS);
 
-        List<ProgrammerAsset> returnMe =
-                programmerRepository.findAll()
-                                    .stream()
-                                    .map(ProgrammerService::entityToAsset)
-                                    .collect(Collectors.toList());
+        List<ProgrammerAsset> returnMe = loadAll().stream()
+                                                  .map(ProgrammerService::entityToAsset)
+                                                  .collect(Collectors.toList());
 
         log.exiting(ProgrammerService.class.getName(), FIND_ALL_PROGRAMMERS, returnMe);
         return returnMe;
@@ -67,41 +111,213 @@ public class ProgrammerService {
     public List<ProgrammerAsset> findAllProgrammersOnTeam(long teamId) {
         log.entering(ProgrammerService.class.getName(), FIND_ALL_PROGRAMMERS_ON_TEAM, teamId);
 
-        List<ProgrammerAsset> returnMe =
-                programmerRepository.findAllByTeamId(teamId)
-                                    .stream()
-                                    .map(ProgrammerService::entityToAsset)
-                                    .collect(Collectors.toList());
+        List<ProgrammerAsset> returnMe = loadTeam(teamId).stream()
+                                                         .map(ProgrammerService::entityToAsset)
+                                                         .collect(Collectors.toList());
 
         log.exiting(ProgrammerService.class.getName(), FIND_ALL_PROGRAMMERS_ON_TEAM, returnMe);
         return returnMe;
     }
 
+    /**
+     * These three are findAllProgrammers(), findAllProgrammersOnTeam() and findProgrammers() for the list endpoint: they
+     * load the same Programmers, but hand them straight to the HalWriter instead of turning each one into an Asset
+     * first.  The HAL is written inside the transaction (the Teams have to be there to read) but into memory, so the
+     * connection goes back to the pool before a slow client gets a chance to hold onto it.
+     */
+    public byte[] renderAllProgrammers(HalWriter halWriter) {
+        log.entering(ProgrammerService.class.getName(), RENDER_PROGRAMMERS);
+
+        byte[] returnMe = halWriter.programmers(loadAll());
+
+        log.exiting(ProgrammerService.class.getName(), RENDER_PROGRAMMERS, returnMe.length);
+        return returnMe;
+    }
+
+    public byte[] renderAllProgrammersOnTeam(long teamId, HalWriter halWriter) {
+        log.entering(ProgrammerService.class.getName(), RENDER_PROGRAMMERS, teamId);
+
+        byte[] returnMe = halWriter.programmers(loadTeam(teamId));
+
+        log.exiting(ProgrammerService.class.getName(), RENDER_PROGRAMMERS, returnMe.length);
+        return returnMe;
+    }
+
+    public byte[] renderProgrammers(Long teamId, LocalDate hiredFrom, LocalDate hiredTo, Sort sort, HalWriter halWriter) {
+        log.entering(ProgrammerService.class.getName(), RENDER_PROGRAMMERS, new Object[]{teamId, hiredFrom, hiredTo, sort});
+
+        byte[] returnMe = halWriter.programmers(load(teamId, hiredFrom, hiredTo, sort));
+
+        log.exiting(ProgrammerService.class.getName(), RENDER_PROGRAMMERS, returnMe.length);
+        return returnMe;
+    }
+
+    /**
+     * Finds the Programmers matching whichever of the filters aren't null, in the given order.  All of the filtering and
+     * sorting happens in the database, so only the matching Programmers are ever loaded.
+     *
+     * @param teamId - Only Programmers on this Team, if not null.
+     * @param hiredFrom - Only Programmers hired on or after this date, if not null.
+     * @param hiredTo - Only Programmers hired on or before this date, if not null.
+     * @param sort - The order to return them in.
+     */
+    public List<ProgrammerAsset> findProgrammers(Long teamId, LocalDate hiredFrom, LocalDate hiredTo, Sort sort) {
+        log.entering(ProgrammerService.class.getName(), FIND_PROGRAMMERS, new Object[]{teamId, hiredFrom, hiredTo, sort});
+
+        List<ProgrammerAsset> returnMe = load(teamId, hiredFrom, hiredTo, sort).stream()
+                                                                               .map(ProgrammerService::entityToAsset)
+                                                                               .collect(Collectors.toList());
+
+        log.exiting(ProgrammerService.class.getName(), FIND_PROGRAMMERS, returnMe);
+        return returnMe;
+    }
+
+    /**
+     * Finds the Programmers written since the given change sequence, oldest change first.  Only changes whose transactions
+     * have finished are considered (see ChangeSequenceAllocator), so a client that carries on from the returned
+     * lastSequence won't miss anything that commits late.
+     *
+     * This reads from the primary, as a replica might not have caught up to the changes we're about to say the client
+     * has seen.  It's still read-only, so that the client isn't taken for a writer (see ReadWriteRoutingDataSource).
+     */
+    public ChangeSet<ProgrammerAsset> findProgrammerChanges(long since, int limit) {
+        log.entering(ProgrammerService.class.getName(), FIND_PROGRAMMER_CHANGES, new Object[]{since, limit});
+        ChangeSet<ProgrammerAsset> returnMe = ReadWriteRoutingDataSource.readFromPrimary(() -> {
+            long upTo = changeSequenceAllocator.safeHighWaterMark();
+
+            //Each shard has its own share of the changes, so we take a whole page from each and keep the oldest.
+            List<Programmer> found = ShardRouter.merge(
+                    shardRouter.onEveryShard(true, () -> programmerRepository.findChanges(since, upTo, PageRequest.of(0, limit + 1))),
+                    BY_CHANGE);
+            return ChangeSet.of(found, limit, upTo, ProgrammerService::entityToAsset);
+        });
+
+        log.exiting(ProgrammerService.class.getName(), FIND_PROGRAMMER_CHANGES, returnMe);
+        return returnMe;
+    }
+
+    @Transactional
     public ProgrammerAsset saveProgrammer(ProgrammerAsset saveMe) {
         log.entering(ProgrammerService.class.getName(), SAVE_PROGRAMMER, saveMe);
-        Programmer programmer = assetToEntity(saveMe);
 
-        programmer = programmerRepository.save(programmer);
+        //New Programmers don't have a Team, so they can go on any shard.
+        ProgrammerAsset returnMe = shardRouter.onShard(shardRouter.shardForNew(), false, () -> save(saveMe));
+
+        log.exiting(ProgrammerService.class.getName(), SAVE_PROGRAMMER, returnMe);
+        return returnMe;
+    }
+
+    private ProgrammerAsset save(ProgrammerAsset saveMe) {
+        Programmer programmer = programmerRepository.save(assetToEntity(saveMe));
+        //Flushing now rather than at commit means the version we hand back is the one that was written.
+        programmerRepository.flush();
+        //New Programmers don't come with a Team today, but if one ever does, the Team's stats need to know.
+        teamStatistics.recordChange(null, null, teamIdOf(programmer), programmer.getDateHired());
 
         ProgrammerAsset returnMe = entityToAsset(programmer);
+        eventPublisher.publishEvent(new EntityChangeEvent(EntityChangeEvent.EntityType.PROGRAMMER,
+                                                          programmer.getId(),
+                                                          programmer.getVersion(),
+                                                          returnMe));
+        return returnMe;
+    }
 
-        log.exiting(ProgrammerService.class.getName(), SAVE_PROGRAMMER, returnMe);
+    /**
+     * Applies a JSON Merge Patch to a Programmer, writing only the columns that change; see TeamService.patchTeam.
+     * Moving a Programmer between Teams still goes through TeamService.addProgrammerToTeam, so teamId can't be patched.
+     *
+     * @param programmerId - The Programmer to patch.
+     * @param patch - The merge patch; name and dateHired can be patched.
+     * @param expectedVersion - If not null, the version the client last saw.  The patch is refused with a
+     *                          VersionConflictException if the Programmer has changed since.
+     * @return The patched Programmer, or null if there's no such Programmer.
+     */
+    @Transactional
+    public ProgrammerAsset patchProgrammer(long programmerId, JsonNode patch, Long expectedVersion) {
+        log.entering(ProgrammerService.class.getName(), PATCH_PROGRAMMER, new Object[]{programmerId, patch, expectedVersion});
+        MergePatch mergePatch = MergePatch.of(patch, "name", "dateHired");
+
+        //The patch only finds the Programmer on the shard it's actually on, so that's the only one written to.
+        ProgrammerAsset returnMe =
+                shardRouter.findOnAnyShard(programmerId, false, shard -> patch(programmerId, mergePatch, expectedVersion));
+
+        log.exiting(ProgrammerService.class.getName(), PATCH_PROGRAMMER, returnMe);
         return returnMe;
     }
 
+    private ProgrammerAsset patch(long programmerId, MergePatch mergePatch, Long expectedVersion) {
+        Optional<Programmer> existing = programmerRepository.findWithTeamById(programmerId);
+
+        ProgrammerAsset returnMe = null;
+
+        if(existing.isPresent()) {
+            Programmer programmer = existing.get();
+            if(expectedVersion != null && !expectedVersion.equals(programmer.getVersion())) {
+                throw new VersionConflictException("programmer", programmerId, expectedVersion, programmer.getVersion());
+            }
+            Long versionBefore = programmer.getVersion();
+            LocalDate hiredBefore = programmer.getDateHired();
+
+            mergePatch.text("name", programmer::setName);
+            mergePatch.parsed("dateHired", LocalDate::parse, programmer::setDateHired);
+            programmerRepository.flush();
+            teamStatistics.recordChange(teamIdOf(programmer), hiredBefore, teamIdOf(programmer), programmer.getDateHired());
+
+            returnMe = entityToAsset(programmer);
+            if(!versionBefore.equals(programmer.getVersion())) {
+                eventPublisher.publishEvent(new EntityChangeEvent(EntityChangeEvent.EntityType.PROGRAMMER,
+                                                                  programmer.getId(),
+                                                                  programmer.getVersion(),
+                                                                  returnMe));
+            }
+        }
+
+        return returnMe;
+    }
+
+    private List<Programmer> loadAll() {
+        return ShardRouter.merge(shardRouter.onEveryShard(true, programmerRepository::findAll), BY_ID);
+    }
+
+    private List<Programmer> loadTeam(long teamId) {
+        return shardRouter.onShard(shardRouter.shardOf(teamId), true, () -> programmerRepository.findAllByTeamId(teamId));
+    }
+
+    private List<Programmer> load(Long teamId, LocalDate hiredFrom, LocalDate hiredTo, Sort sort) {
+        Specification<Programmer> filters = filters(teamId, hiredFrom, hiredTo);
+
+        if(teamId != null) {
+            return shardRouter.onShard(shardRouter.shardOf(teamId), true, () -> programmerRepository.findAll(filters, sort));
+        }
+
+        return ShardRouter.merge(shardRouter.onEveryShard(true, () -> programmerRepository.findAll(filters, sort)),
+                                 ShardRouter.comparing(sort));
+    }
+
+    private static Long teamIdOf(Programmer programmer) {
+        return programmer.getTeam() == null ? null : programmer.getTeam().getId();
+    }
+
+    private static Specification<Programmer> filters(Long teamId, LocalDate hiredFrom, LocalDate hiredTo) {
+        return Specification.where(ProgrammerSpecifications.onTeam(teamId))
+                            .and(ProgrammerSpecifications.hiredOnOrAfter(hiredFrom))
+                            .and(ProgrammerSpecifications.hiredOnOrBefore(hiredTo));
+    }
+
     /**
      * Converts a JPA Entity to an Asset class.
      *
      * @param programmer - A JPA Entity describing a Programmer Profile.
      * @return A JSON Asset class representing the Programmer JPA Entity.
      */
-    private static ProgrammerAsset entityToAsset(Programmer programmer) {
+    static ProgrammerAsset entityToAsset(Programmer programmer) {
         log.entering(ProgrammerController.class.getName(), ENTITY_TO_ASSET, programmer);
 
         ProgrammerAsset asset = new ProgrammerAsset();
         asset.setName(programmer.getName());
         asset.setProgrammerId(programmer.getId());
         asset.setDateHired(DateTimeFormatter.ISO_LOCAL_DATE.format(programmer.getDateHired()));
+        asset.setVersion(programmer.getVersion());
 
         if(programmer.getTeam() != null) {
             asset.setTeamId(programmer.getTeam().getId());
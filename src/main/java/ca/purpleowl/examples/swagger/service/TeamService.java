@@ -1,17 +1,41 @@
 package ca.purpleowl.examples.swagger.service;
 
+import ca.purpleowl.examples.swagger.jpa.changes.ChangeSequenceAllocator;
+import ca.purpleowl.examples.swagger.jpa.datasource.ReadWriteRoutingDataSource;
+import ca.purpleowl.examples.swagger.jpa.datasource.ShardRouter;
 import ca.purpleowl.examples.swagger.jpa.entity.Programmer;
 import ca.purpleowl.examples.swagger.jpa.entity.Team;
 import ca.purpleowl.examples.swagger.jpa.repository.ProgrammerRepository;
 import ca.purpleowl.examples.swagger.jpa.repository.TeamRepository;
+import ca.purpleowl.examples.swagger.jpa.repository.TeamSpecifications;
 import ca.purpleowl.examples.swagger.rest.asset.TeamAsset;
+import ca.purpleowl.examples.swagger.rest.hal.HalWriter;
+import ca.purpleowl.examples.swagger.service.coalescing.Coalesced;
+import ca.purpleowl.examples.swagger.service.event.EntityChangeEvent;
+import ca.purpleowl.examples.swagger.service.stats.TeamStatistics;
+import com.fasterxml.jackson.databind.JsonNode;
 import lombok.extern.java.Log;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
@@ -19,35 +43,69 @@ import java.util.stream.Collectors;
  * This class exists purely to decouple the JPA model from the REST Controllers.  They should be unaware of the
  * implementation for the persistence layer.  Swagger2 also introduces some significant bloat from Annotations, so it's
  * good to move logic from that controller back to a Service class for clarity if nothing else.
+ *
+ * As with ProgrammerService, reads run in read-only transactions (no flushing, no dirty-checking snapshots) and each
+ * write gets a single read-write transaction covering everything it loads and saves.  Writes publish an
+ * EntityChangeEvent as well; adding a Programmer to a Team is published as a change to the Programmer, since that's
+ * the side of the relationship the Assets show.
+ *
+ * Teams are spread across the shards (if there are any) by the ShardRouter, and each Team's Programmers live on the
+ * same shard it does; see ProgrammerService.  Moving Programmers to a Team on another shard moves their rows over.
  */
 @Log
 @Service
+@Transactional(readOnly = true)
 public class TeamService {
     private static final String FIND_TEAM = "findTeam";
     private static final String FIND_ALL_TEAMS = "findAllTeams";
+    private static final String FIND_TEAMS = "findTeams";
+    private static final String RENDER_TEAMS = "renderTeams";
     private static final String SAVE_TEAM = "createTeam";
     private static final String ADD_PROGRAMMER_TO_TEAM = "addProgrammerToTeam";
+    private static final String PATCH_TEAM = "patchTeam";
+    private static final String MOVE_PROGRAMMERS = "moveProgrammers";
+    private static final String FIND_TEAM_CHANGES = "findTeamChanges";
     private static final String ENTITY_TO_ASSET = "entityToAsset";
     private static final String ASSET_TO_ENTITY = "assetToEntity";
 
+    //See moveProgrammers.  TeamController.MAX_PROGRAMMER_IDS keeps a client's own list to one chunk.
+    private static final int MOVE_CHUNK_SIZE = 1000;
+
+    private static final Comparator<Team> BY_ID = Comparator.comparing(Team::getId);
+    private static final Comparator<Team> BY_CHANGE = Comparator.comparing(Team::getChangeSequence);
+
     private final TeamRepository teamRepository;
     private final ProgrammerRepository programmerRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ChangeSequenceAllocator changeSequenceAllocator;
+    private final TeamStatistics teamStatistics;
+    private final ShardRouter shardRouter;
 
     @Autowired
-    public TeamService(TeamRepository teamRepository, ProgrammerRepository programmerRepository) {
+    public TeamService(TeamRepository teamRepository,
+                       ProgrammerRepository programmerRepository,
+                       ApplicationEventPublisher eventPublisher,
+                       ChangeSequenceAllocator changeSequenceAllocator,
+                       TeamStatistics teamStatistics,
+                       ShardRouter shardRouter) {
         this.teamRepository = teamRepository;
         this.programmerRepository = programmerRepository;
+        this.eventPublisher = eventPublisher;
+        this.changeSequenceAllocator = changeSequenceAllocator;
+        this.teamStatistics = teamStatistics;
+        this.shardRouter = shardRouter;
     }
 
+    /**
+     * Popular Teams get asked for by a lot of clients at once (think of a dashboard on every screen in the office), so
+     * concurrent lookups of the same Team share a single trip to the database.
+     */
+    @Coalesced
     public TeamAsset findTeam(long teamId) {
         log.entering(TeamService.class.getName(), FIND_TEAM, teamId);
-        TeamAsset returnMe = null;
-
-        Optional<Team> team = teamRepository.findById(teamId);
 
-        if(team.isPresent()) {
-            returnMe = entityToAsset(team.get());
-        }
+        TeamAsset returnMe = shardRouter.onShard(shardRouter.shardOf(teamId), true, () ->
+                teamRepository.findById(teamId).map(TeamService::entityToAsset).orElse(null));
 
         log.exiting(TeamService.class.getName(), FIND_TEAM, returnMe);
         return returnMe;
@@ -56,47 +114,439 @@ public class TeamService {
     public List<TeamAsset> findAllTeams() {
         log.entering(TeamService.class.getName(), FIND_ALL_TEAMS);
 
-        List<TeamAsset> returnMe = teamRepository.findAll()
-                                                 .stream()
-                                                 .map(TeamService::entityToAsset)
-                                                 .collect(Collectors.toList());
+        List<TeamAsset> returnMe = loadAll().stream()
+                                            .map(TeamService::entityToAsset)
+                                            .collect(Collectors.toList());
 
         log.exiting(TeamService.class.getName(), FIND_ALL_TEAMS, returnMe);
         return returnMe;
     }
 
-    public TeamAsset saveTeam(TeamAsset asset) {
-        log.entering(TeamService.class.getName(), SAVE_TEAM, asset);
-        Team team = assetToEntity(asset);
+    /**
+     * The Team counterpart of ProgrammerService.findProgrammers: the Teams whose last stand-up falls within whichever
+     * ends of the range aren't null, in the given order, all worked out by the database.
+     */
+    public List<TeamAsset> findTeams(LocalDateTime stoodUpFrom, LocalDateTime stoodUpTo, Sort sort) {
+        log.entering(TeamService.class.getName(), FIND_TEAMS, new Object[]{stoodUpFrom, stoodUpTo, sort});
 
-        team = teamRepository.save(team);
+        List<TeamAsset> returnMe = load(stoodUpFrom, stoodUpTo, sort).stream()
+                                                                     .map(TeamService::entityToAsset)
+                                                                     .collect(Collectors.toList());
 
-        TeamAsset returnMe = entityToAsset(team);
+        log.exiting(TeamService.class.getName(), FIND_TEAMS, returnMe);
+        return returnMe;
+    }
+
+    /**
+     * findAllTeams() and findTeams() for the list endpoint, written straight out as HAL; see
+     * ProgrammerService.renderAllProgrammers().
+     */
+    public byte[] renderAllTeams(HalWriter halWriter) {
+        log.entering(TeamService.class.getName(), RENDER_TEAMS);
+
+        byte[] returnMe = halWriter.teams(loadAll());
+
+        log.exiting(TeamService.class.getName(), RENDER_TEAMS, returnMe.length);
+        return returnMe;
+    }
+
+    public byte[] renderTeams(LocalDateTime stoodUpFrom, LocalDateTime stoodUpTo, Sort sort, HalWriter halWriter) {
+        log.entering(TeamService.class.getName(), RENDER_TEAMS, new Object[]{stoodUpFrom, stoodUpTo, sort});
+
+        byte[] returnMe = halWriter.teams(load(stoodUpFrom, stoodUpTo, sort));
+
+        log.exiting(TeamService.class.getName(), RENDER_TEAMS, returnMe.length);
+        return returnMe;
+    }
+
+    /**
+     * Finds the Teams written since the given change sequence, oldest change first.  Only changes whose transactions
+     * have finished are considered (see ChangeSequenceAllocator), so a client that carries on from the returned
+     * lastSequence won't miss anything that commits late.
+     *
+     * This reads from the primary, as a replica might not have caught up to the changes we're about to say the client
+     * has seen.  It's still read-only, so that the client isn't taken for a writer (see ReadWriteRoutingDataSource).
+     */
+    public ChangeSet<TeamAsset> findTeamChanges(long since, int limit) {
+        log.entering(TeamService.class.getName(), FIND_TEAM_CHANGES, new Object[]{since, limit});
+        ChangeSet<TeamAsset> returnMe = ReadWriteRoutingDataSource.readFromPrimary(() -> {
+            long upTo = changeSequenceAllocator.safeHighWaterMark();
+
+            //See ProgrammerService.findProgrammerChanges.
+            List<Team> found = ShardRouter.merge(
+                    shardRouter.onEveryShard(true, () -> teamRepository.findChanges(since, upTo, PageRequest.of(0, limit + 1))),
+                    BY_CHANGE);
+            return ChangeSet.of(found, limit, upTo, TeamService::entityToAsset);
+        });
+
+        log.exiting(TeamService.class.getName(), FIND_TEAM_CHANGES, returnMe);
+        return returnMe;
+    }
+
+    /**
+     * Creates a Team, or updates the existing one if the asset has the ID of a Team we already have.  Updates only
+     * touch the Team's own fields; who's on the Team is left alone.
+     *
+     * @param asset - The Team to save.
+     * @param expectedVersion - If not null, the version the client last saw.  The update is refused with a
+     *                          VersionConflictException if the Team has changed since.
+     */
+    @Transactional
+    public TeamAsset saveTeam(TeamAsset asset, Long expectedVersion) {
+        log.entering(TeamService.class.getName(), SAVE_TEAM, new Object[]{asset, expectedVersion});
+        int shard = asset.getTeamId() == null ? shardRouter.shardForNew() : shardRouter.shardOf(asset.getTeamId());
+
+        TeamAsset returnMe = shardRouter.onShard(shard, false, () -> save(asset, expectedVersion));
 
         log.exiting(TeamService.class.getName(), SAVE_TEAM, returnMe);
         return returnMe;
     }
 
-    public boolean addProgrammerToTeam(long programmerId, long teamId) {
+    private TeamAsset save(TeamAsset asset, Long expectedVersion) {
+        Optional<Team> existing = asset.getTeamId() == null ? Optional.empty() : teamRepository.findById(asset.getTeamId());
+
+        Team team;
+        if(existing.isPresent()) {
+            team = existing.get();
+            checkVersion(team, expectedVersion);
+            //Copied onto the managed entity rather than merged, so nothing the asset doesn't know about is lost.
+            copyAssetToEntity(asset, team);
+        } else {
+            if(expectedVersion != null) {
+                //The client expected to be updating something that isn't there.
+                throw new VersionConflictException("team", asset.getTeamId(), expectedVersion, null);
+            }
+
+            team = assetToEntity(asset);
+            team.setId(null);
+            team = teamRepository.save(team);
+        }
+
+        //Flushing now rather than at commit means the version we hand back is the one that was written.
+        teamRepository.flush();
+
+        TeamAsset returnMe = entityToAsset(team);
+        eventPublisher.publishEvent(new EntityChangeEvent(EntityChangeEvent.EntityType.TEAM,
+                                                          team.getId(),
+                                                          team.getVersion(),
+                                                          returnMe));
+        return returnMe;
+    }
+
+    /**
+     * Applies a JSON Merge Patch to a Team.  Only the fields in the patch are changed, and (thanks to @DynamicUpdate)
+     * only their columns are written, so fields the client didn't mention can't be overwritten with stale values.
+     *
+     * @param teamId - The Team to patch.
+     * @param patch - The merge patch; name, teamFocus and lastStandUp can be patched.
+     * @param expectedVersion - If not null, the version the client last saw.  The patch is refused with a
+     *                          VersionConflictException if the Team has changed since.
+     * @return The patched Team, or null if there's no such Team.
+     */
+    @Transactional
+    public TeamAsset patchTeam(long teamId, JsonNode patch, Long expectedVersion) {
+        log.entering(TeamService.class.getName(), PATCH_TEAM, new Object[]{teamId, patch, expectedVersion});
+        MergePatch mergePatch = MergePatch.of(patch, "name", "teamFocus", "lastStandUp");
+
+        TeamAsset returnMe = shardRouter.onShard(shardRouter.shardOf(teamId), false, () ->
+                patch(teamId, mergePatch, expectedVersion));
+
+        log.exiting(TeamService.class.getName(), PATCH_TEAM, returnMe);
+        return returnMe;
+    }
+
+    private TeamAsset patch(long teamId, MergePatch mergePatch, Long expectedVersion) {
+        Optional<Team> existing = teamRepository.findById(teamId);
+
+        TeamAsset returnMe = null;
+
+        if(existing.isPresent()) {
+            Team team = existing.get();
+            checkVersion(team, expectedVersion);
+            Long versionBefore = team.getVersion();
+
+            mergePatch.text("name", team::setName);
+            mergePatch.text("teamFocus", team::setTeamFocus);
+            mergePatch.parsed("lastStandUp", LocalDateTime::parse, team::setLastStandUp);
+            teamRepository.flush();
+
+            returnMe = entityToAsset(team);
+            //A patch that doesn't actually change anything doesn't write anything, so there's nothing to announce.
+            if(!versionBefore.equals(team.getVersion())) {
+                eventPublisher.publishEvent(new EntityChangeEvent(EntityChangeEvent.EntityType.TEAM,
+                                                                  team.getId(),
+                                                                  team.getVersion(),
+                                                                  returnMe));
+            }
+        }
+
+        return returnMe;
+    }
+
+    /**
+     * Requests adding different Programmers to the same Team don't get in each other's way: each one only writes its
+     * own Programmer.  The Team's version doesn't change either, so an If-Match from before the add still matches.
+     *
+     * A Programmer who is on another shard (on a Team there, or created there without one) is moved over to the Team's
+     * shard; see moveAcrossShards.
+     *
+     * @param expectedVersion - If not null, the version of the Team the client last saw.  Nothing is changed, and a
+     *                          VersionConflictException is thrown, if the Team has changed since.
+     * @return true if both the Team and the Programmer were found (and the Programmer is now on the Team).
+     */
+    @Transactional
+    public boolean addProgrammerToTeam(long programmerId, long teamId, Long expectedVersion) {
         log.entering(TeamService.class.getName(), ADD_PROGRAMMER_TO_TEAM, new Object[]{programmerId, teamId});
-        Optional<Team> maybeTeam = teamRepository.findById(teamId);
-        Optional<Programmer> maybeProgrammer = programmerRepository.findById(programmerId);
+        int teamShard = shardRouter.shardOf(teamId);
+
+        Boolean added = shardRouter.onShard(teamShard, false, () -> addWithinShard(programmerId, teamId, expectedVersion));
 
-        boolean returnMe = false;
+        if(added == null && shardRouter.isSharded()) {
+            Map.Entry<Integer, Programmer> elsewhere = shardRouter.findOnAnyShard(programmerId, true, shard ->
+                    shard == teamShard ? null : programmerRepository.findWithTeamById(programmerId)
+                                                                    .map(programmer -> new SimpleImmutableEntry<>(shard, programmer))
+                                                                    .orElse(null));
 
-        if(maybeTeam.isPresent() && maybeProgrammer.isPresent()) {
-            Team team = maybeTeam.get();
-            Programmer programmer = maybeProgrammer.get();
-            team.addProgrammer(programmer);
-            teamRepository.save(team);
-            returnMe = true;
+            added = elsewhere != null
+                    && moveAcrossShards(Collections.singletonList(elsewhere.getValue()), elsewhere.getKey(), teamId, expectedVersion) > 0;
         }
 
+        boolean returnMe = Boolean.TRUE.equals(added);
+
         log.exiting(TeamService.class.getName(), ADD_PROGRAMMER_TO_TEAM, returnMe);
         //I'm just going to assume that this is always an indicator of whether or not we were successful.
         return returnMe;
     }
 
+    /**
+     * @return true if the Programmer is now on the Team, false if there's no such Team, or null if the Team is here but
+     *         the Programmer isn't (on this shard, at least).
+     */
+    private Boolean addWithinShard(long programmerId, long teamId, Long expectedVersion) {
+        Optional<Team> maybeTeam = teamRepository.findById(teamId);
+        Optional<Programmer> maybeProgrammer = programmerRepository.findById(programmerId);
+
+        if(!maybeTeam.isPresent()) {
+            return false;
+        }
+        if(!maybeProgrammer.isPresent()) {
+            return null;
+        }
+
+        Team team = maybeTeam.get();
+        Programmer programmer = maybeProgrammer.get();
+        checkVersion(team, expectedVersion);
+
+        //Membership lives on the Programmer, so this is a single-row UPDATE of the Programmer.  We deliberately
+        //leave Team.programmers alone: loading it would cost a read per member, and every request adding to the
+        //same Team would end up fighting over it.  We flush a little early so that the event carries the
+        //Programmer's new version.
+        Long previousTeamId = programmer.getTeam() == null ? null : programmer.getTeam().getId();
+        programmer.setTeam(team);
+        programmerRepository.flush();
+        teamStatistics.recordChange(previousTeamId, programmer.getDateHired(), team.getId(), programmer.getDateHired());
+
+        eventPublisher.publishEvent(new EntityChangeEvent(EntityChangeEvent.EntityType.PROGRAMMER,
+                                                          programmer.getId(),
+                                                          programmer.getVersion(),
+                                                          ProgrammerService.entityToAsset(programmer)));
+        return true;
+    }
+
+    /**
+     * Moves Programmers from one Team to another, or off their Team altogether, with bulk UPDATEs.  The number of
+     * statements barely depends on how big the Team is: the IDs being moved are locked in one SELECT, then moved in a
+     * single UPDATE per MOVE_CHUNK_SIZE of them, and neither Team's row is touched.  Each UPDATE gets exactly as many
+     * change sequence numbers as it has IDs, however those IDs are spread out.
+     *
+     * Since the UPDATEs go around Hibernate, the moved Programmers are read back afterward (in one statement per
+     * chunk, by their new change sequence numbers) so that everything that normally hears about writes still does:
+     * the event feed, the read model, and the Team statistics.
+     *
+     * Programmers taken off their Team altogether stay on the shard they're on.  When the other Team is on another
+     * shard, the UPDATE can't do it; see moveAcrossShards.
+     *
+     * @param fromTeamId - The Team to move Programmers off.
+     * @param toTeamId - The Team to move them to, or null to leave them without a Team.
+     * @param programmerIds - Which of the Team's Programmers to move, or null for all of them.  IDs of Programmers
+     *                        who aren't on the "from" Team are ignored.
+     * @return How many Programmers were moved, or null if either Team doesn't exist.
+     */
+    @Transactional
+    public Integer moveProgrammers(long fromTeamId, Long toTeamId, Collection<Long> programmerIds) {
+        log.entering(TeamService.class.getName(), MOVE_PROGRAMMERS, new Object[]{fromTeamId, toTeamId, programmerIds});
+        int fromShard = shardRouter.shardOf(fromTeamId);
+        int toShard = toTeamId == null ? fromShard : shardRouter.shardOf(toTeamId);
+
+        Integer returnMe = fromShard == toShard
+                ? shardRouter.onShard(fromShard, false, () -> moveWithinShard(fromTeamId, toTeamId, programmerIds))
+                : moveBetweenShards(fromTeamId, fromShard, toTeamId, toShard, programmerIds);
+
+        log.exiting(TeamService.class.getName(), MOVE_PROGRAMMERS, returnMe);
+        return returnMe;
+    }
+
+    private Integer moveWithinShard(long fromTeamId, Long toTeamId, Collection<Long> programmerIds) {
+        if(!teamRepository.existsById(fromTeamId) || toTeamId != null && !teamRepository.existsById(toTeamId)) {
+            return null;
+        }
+        if(Objects.equals(fromTeamId, toTeamId) || programmerIds != null && programmerIds.isEmpty()) {
+            return 0;
+        }
+
+        //Locked, so that the UPDATEs below find every one of these still on the Team.  Anybody joining the Team in the
+        //meantime isn't in the list, so can't use up a change sequence number we haven't allocated.
+        List<Long> ids = (programmerIds == null
+                ? programmerRepository.lockIdsByTeamId(fromTeamId)
+                : programmerRepository.lockIdsByTeamIdAndIdIn(fromTeamId, programmerIds))
+                .stream()
+                .map(Number::longValue)
+                .collect(Collectors.toList());
+        Team to = toTeamId == null ? null : teamRepository.getOne(toTeamId);
+
+        int moved = 0;
+        //In chunks, to keep the IN lists to a sensible length when a whole Team moves.
+        for(int start = 0; start < ids.size(); start += MOVE_CHUNK_SIZE) {
+            List<Long> chunk = ids.subList(start, Math.min(ids.size(), start + MOVE_CHUNK_SIZE));
+            long firstSequence = allocateChangeSequences(chunk.size());
+            int movedNow = programmerRepository.moveByTeamIdAndIdIn(fromTeamId, chunk, to, firstSequence);
+            moved += movedNow;
+
+            if(movedNow > 0) {
+                for(Programmer programmer : programmerRepository.findChanges(firstSequence - 1,
+                                                                             firstSequence + chunk.size() - 1,
+                                                                             Pageable.unpaged())) {
+                    teamStatistics.recordChange(fromTeamId, programmer.getDateHired(), toTeamId, programmer.getDateHired());
+                    eventPublisher.publishEvent(new EntityChangeEvent(EntityChangeEvent.EntityType.PROGRAMMER,
+                                                                      programmer.getId(),
+                                                                      programmer.getVersion(),
+                                                                      ProgrammerService.entityToAsset(programmer)));
+                }
+            }
+        }
+
+        return moved;
+    }
+
+    private Integer moveBetweenShards(long fromTeamId, int fromShard, long toTeamId, int toShard, Collection<Long> programmerIds) {
+        if(!shardRouter.onShard(fromShard, true, () -> teamRepository.existsById(fromTeamId))
+                || !shardRouter.onShard(toShard, true, () -> teamRepository.existsById(toTeamId))) {
+            return null;
+        }
+
+        List<Programmer> leaving = shardRouter.onShard(fromShard, true, () -> programmerRepository.findAllByTeamId(fromTeamId))
+                                              .stream()
+                                              .filter(programmer -> programmerIds == null || programmerIds.contains(programmer.getId()))
+                                              .collect(Collectors.toList());
+
+        return leaving.isEmpty() ? 0 : moveAcrossShards(leaving, fromShard, toTeamId, null);
+    }
+
+    /**
+     * Moves Programmers onto a Team that lives on another shard.  A Programmer has to live with its Team, so each one
+     * is copied (same ID, next version) into the Team's shard, and then the originals are deleted.
+     *
+     * Those are two transactions against two databases, and nothing ties them together.  If we go down in between, the
+     * Programmers are left on both shards (lookups by ID find one or the other) until someone tidies up.  Something
+     * like an outbox, or XA, would be needed to close that gap; for an example app, we just live with it.
+     *
+     * @param programmers - The Programmers to move, as they were on the shard they're coming from.
+     * @param expectedVersion - If not null, the version of the Team the client last saw.
+     * @return How many Programmers were moved; none if the Team has gone in the meantime.
+     */
+    private int moveAcrossShards(List<Programmer> programmers, int fromShard, long toTeamId, Long expectedVersion) {
+        int toShard = shardRouter.shardOf(toTeamId);
+        log.fine(() -> "moving " + programmers.size() + " programmers from shard " + fromShard + " to shard " + toShard);
+
+        Map<Long, Long> previousTeamIds = new HashMap<>();
+        for(Programmer programmer : programmers) {
+            previousTeamIds.put(programmer.getId(), programmer.getTeam() == null ? null : programmer.getTeam().getId());
+        }
+
+        int copied = shardRouter.onShard(toShard, false, () -> {
+            Optional<Team> team = teamRepository.findById(toTeamId);
+            if(!team.isPresent()) {
+                return 0;
+            }
+            checkVersion(team.get(), expectedVersion);
+
+            long firstSequence = allocateChangeSequences(programmers.size());
+            for(int i = 0; i < programmers.size(); i++) {
+                Programmer programmer = programmers.get(i);
+                programmerRepository.insertCopy(programmer.getId(),
+                                                programmer.getName(),
+                                                programmer.getDateHired(),
+                                                toTeamId,
+                                                programmer.getVersion() + 1,
+                                                firstSequence + i);
+            }
+
+            for(Programmer programmer : programmerRepository.findChanges(firstSequence - 1,
+                                                                         firstSequence + programmers.size() - 1,
+                                                                         Pageable.unpaged())) {
+                teamStatistics.recordChange(previousTeamIds.get(programmer.getId()),
+                                            programmer.getDateHired(),
+                                            toTeamId,
+                                            programmer.getDateHired());
+                eventPublisher.publishEvent(new EntityChangeEvent(EntityChangeEvent.EntityType.PROGRAMMER,
+                                                                  programmer.getId(),
+                                                                  programmer.getVersion(),
+                                                                  ProgrammerService.entityToAsset(programmer)));
+            }
+            return programmers.size();
+        });
+
+        if(copied > 0) {
+            shardRouter.onShard(fromShard, false, () -> programmerRepository.deleteByIdIn(previousTeamIds.keySet()));
+        }
+
+        return copied;
+    }
+
+    /**
+     * The bulk version of what ChangeSequenceListener does for each entity Hibernate writes.
+     */
+    private long allocateChangeSequences(long count) {
+        long first = changeSequenceAllocator.allocateRange(count);
+
+        if(TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    changeSequenceAllocator.release(first);
+                }
+            });
+        } else {
+            changeSequenceAllocator.release(first);
+        }
+
+        return first;
+    }
+
+    private List<Team> loadAll() {
+        return ShardRouter.merge(shardRouter.onEveryShard(true, teamRepository::findAll), BY_ID);
+    }
+
+    private List<Team> load(LocalDateTime stoodUpFrom, LocalDateTime stoodUpTo, Sort sort) {
+        Specification<Team> filters = filters(stoodUpFrom, stoodUpTo);
+        return ShardRouter.merge(shardRouter.onEveryShard(true, () -> teamRepository.findAll(filters, sort)),
+                                 ShardRouter.comparing(sort));
+    }
+
+    private static Specification<Team> filters(LocalDateTime stoodUpFrom, LocalDateTime stoodUpTo) {
+        return Specification.where(TeamSpecifications.stoodUpOnOrAfter(stoodUpFrom))
+                            .and(TeamSpecifications.stoodUpOnOrBefore(stoodUpTo));
+    }
+
+    /**
+     * A cheap check up front for clients that tell us what they expect.  The @Version column catches anything that
+     * sneaks in between here and the commit.
+     */
+    private static void checkVersion(Team team, Long expectedVersion) {
+        if(expectedVersion != null && !expectedVersion.equals(team.getVersion())) {
+            throw new VersionConflictException("team", team.getId(), expectedVersion, team.getVersion());
+        }
+    }
 
     private static TeamAsset entityToAsset(Team team) {
         log.entering(TeamService.class.getName(), ENTITY_TO_ASSET, team);
@@ -105,6 +555,7 @@ public class TeamService {
         asset.setName(team.getName());
         asset.setTeamFocus(team.getTeamFocus());
         asset.setLastStandUp(DateTimeFormatter.ISO_LOCAL_DATE_TIME.format(team.getLastStandUp()));
+        asset.setVersion(team.getVersion());
 
         log.exiting(TeamService.class.getName(), ENTITY_TO_ASSET, asset);
         return asset;
@@ -114,11 +565,15 @@ public class TeamService {
         log.entering(TeamService.class.getName(), ASSET_TO_ENTITY, asset);
         Team entity = new Team();
         entity.setId(asset.getTeamId());
-        entity.setName(asset.getName());
-        entity.setTeamFocus(asset.getTeamFocus());
-        entity.setLastStandUp(LocalDateTime.parse(asset.getLastStandUp()));
+        copyAssetToEntity(asset, entity);
 
         log.exiting(TeamService.class.getName(), ASSET_TO_ENTITY, entity);
         return entity;
     }
+
+    private static void copyAssetToEntity(TeamAsset asset, Team entity) {
+        entity.setName(asset.getName());
+        entity.setTeamFocus(asset.getTeamFocus());
+        entity.setLastStandUp(LocalDateTime.parse(asset.getLastStandUp()));
+    }
 }
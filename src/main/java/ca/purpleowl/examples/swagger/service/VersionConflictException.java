@@ -0,0 +1,11 @@
+package ca.purpleowl.examples.swagger.service;
+
+/**
+ * Thrown when a client asks to change an entity on the condition that it's still at a particular version, and it
+ * isn't.
+ */
+public class VersionConflictException extends RuntimeException {
+    public VersionConflictException(String entityType, Long id, Long expectedVersion, Long actualVersion) {
+        super(String.format("%s %s is at version %s, not %s", entityType, id, actualVersion, expectedVersion));
+    }
+}
@@ -0,0 +1,20 @@
+package ca.purpleowl.examples.swagger.service.coalescing;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a read-only service method whose concurrent calls with equal arguments can share a single execution.  The
+ * first call runs; any identical calls arriving while it's still running wait for it and get the same result (or the
+ * same exception) back.  See CoalescingAspect.
+ *
+ * Because the result is shared between callers, it has to be treated as read-only by all of them.
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Coalesced {
+}
@@ -0,0 +1,55 @@
+package ca.purpleowl.examples.swagger.service.coalescing;
+
+import ca.purpleowl.examples.swagger.jpa.datasource.ReadYourWritesTracker;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Runs @Coalesced methods through a SingleFlight, keyed on their arguments.
+ *
+ * This sits outside the transaction advice (but inside ServiceOperationAspect), so followers never open a transaction
+ * or touch the connection pool; only the leader does.
+ *
+ * Clients who have just written something skip coalescing altogether.  The routing DataSource keeps their reads on the
+ * primary so they see their own writes, and a load started on someone else's behalf might have gone to a replica.
+ * Callers already inside a transaction (an atomic batch) skip it as well, as only their own transaction can see what
+ * they've written so far.
+ */
+@Aspect
+@Order(Ordered.HIGHEST_PRECEDENCE + 1)
+public class CoalescingAspect {
+    private final ConcurrentMap<Method, SingleFlight> flights = new ConcurrentHashMap<>();
+    private final MeterRegistry meterRegistry;
+    private final ObjectProvider<ReadYourWritesTracker> readYourWritesTracker;
+
+    public CoalescingAspect(MeterRegistry meterRegistry, ObjectProvider<ReadYourWritesTracker> readYourWritesTracker) {
+        this.meterRegistry = meterRegistry;
+        this.readYourWritesTracker = readYourWritesTracker;
+    }
+
+    @Around("@annotation(ca.purpleowl.examples.swagger.service.coalescing.Coalesced)")
+    public Object coalesce(ProceedingJoinPoint joinPoint) throws Throwable {
+        ReadYourWritesTracker tracker = readYourWritesTracker.getIfAvailable();
+        if(tracker != null && tracker.isSticky() || TransactionSynchronizationManager.isActualTransactionActive()) {
+            return joinPoint.proceed();
+        }
+
+        Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        SingleFlight flight = flights.computeIfAbsent(method, m -> new SingleFlight(
+                m.getDeclaringClass().getSimpleName() + "." + m.getName(), meterRegistry));
+
+        return flight.execute(Arrays.asList(joinPoint.getArgs()), joinPoint::proceed);
+    }
+}
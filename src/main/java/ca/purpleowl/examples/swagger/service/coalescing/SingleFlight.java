@@ -0,0 +1,87 @@
+package ca.purpleowl.examples.swagger.service.coalescing;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Makes sure only one load per key is running at a time.  Whoever asks first (the leader) does the work; anyone asking
+ * for the same key while it's running (followers) waits for the leader and gets its result.  Nothing is kept
+ * afterward: as soon as the load finishes, the next call for that key starts a new one.  This isn't a cache, so the
+ * result is never older than the request that's waiting on it... except that a follower can get a result whose load
+ * started a moment before the follower arrived.
+ *
+ * Every operation gets its own SingleFlight, which counts its leaders and followers as purpleowl.coalescing.calls and
+ * publishes purpleowl.coalescing.ratio, the share of calls that didn't have to do any work.
+ */
+public class SingleFlight {
+    static final String CALLS_METRIC = "purpleowl.coalescing.calls";
+    static final String RATIO_METRIC = "purpleowl.coalescing.ratio";
+
+    private final ConcurrentMap<Object, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private final Counter leaders;
+    private final Counter followers;
+
+    /**
+     * The work to share.  Can throw whatever the service method it wraps can.
+     */
+    @FunctionalInterface
+    public interface Load {
+        Object run() throws Throwable;
+    }
+
+    public SingleFlight(String operation, MeterRegistry meterRegistry) {
+        this.leaders = meterRegistry.counter(CALLS_METRIC, "operation", operation, "role", "leader");
+        this.followers = meterRegistry.counter(CALLS_METRIC, "operation", operation, "role", "follower");
+
+        Gauge.builder(RATIO_METRIC, this, SingleFlight::coalescingRatio)
+             .tag("operation", operation)
+             .description("Fraction of calls that shared another call's load")
+             .register(meterRegistry);
+    }
+
+    public Object execute(Object key, Load load) throws Throwable {
+        CompletableFuture<Object> mine = new CompletableFuture<>();
+        CompletableFuture<Object> running = inFlight.putIfAbsent(key, mine);
+
+        if(running != null) {
+            followers.increment();
+            return await(running);
+        }
+
+        leaders.increment();
+        try {
+            Object result = load.run();
+            mine.complete(result);
+            return result;
+        } catch (Throwable e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    double coalescingRatio() {
+        double total = leaders.count() + followers.count();
+        return total == 0 ? 0 : followers.count() / total;
+    }
+
+    int inFlight() {
+        return inFlight.size();
+    }
+
+    private static Object await(CompletableFuture<Object> running) throws Throwable {
+        try {
+            return running.join();
+        } catch (CompletionException e) {
+            //The leader's exception, exactly as it was thrown.
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package ca.purpleowl.examples.swagger.service.event;
+
+import lombok.Data;
+
+/**
+ * Published by the services whenever a Team or Programmer is written.  It's published inside the writing transaction,
+ * so anybody who only cares about changes that actually made it to the database should listen for it with
+ * a @TransactionalEventListener (which defaults to after commit).
+ *
+ * The event carries the Asset as it was when the change was made, so listeners don't have to go back to the database
+ * to find out what changed.
+ */
+@Data
+public class EntityChangeEvent {
+    private final EntityType entityType;
+    private final long id;
+    private final Long version;
+    private final Object asset;
+
+    public enum EntityType {
+        TEAM,
+        PROGRAMMER
+    }
+}
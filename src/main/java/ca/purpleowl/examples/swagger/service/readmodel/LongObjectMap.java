@@ -0,0 +1,170 @@
+package ca.purpleowl.examples.swagger.service.readmodel;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * A hash map from (positive) longs to objects, kept in two flat arrays.  A HashMap<Long, V> costs a boxed Long and a
+ * Node per entry on top of the value itself; this costs a long and a reference.
+ *
+ * Open addressing with linear probing.  Zero marks an empty slot, which is why keys have to be positive (entity IDs
+ * always are).  Not thread-safe; ReadModel does the locking.
+ */
+final class LongObjectMap<V> {
+    private static final int MINIMUM_CAPACITY = 16;
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private long[] keys;
+    private Object[] values;
+    private int size;
+    private int resizeAt;
+
+    LongObjectMap() {
+        allocate(MINIMUM_CAPACITY);
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(long key) {
+        int slot = find(key);
+        return slot < 0 ? null : (V) values[slot];
+    }
+
+    /**
+     * @return the value previously held for the key, if any.
+     */
+    @SuppressWarnings("unchecked")
+    V put(long key, V value) {
+        checkKey(key);
+        int mask = keys.length - 1;
+        int slot = slotFor(key, mask);
+
+        while(keys[slot] != 0) {
+            if(keys[slot] == key) {
+                V previous = (V) values[slot];
+                values[slot] = value;
+                return previous;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        keys[slot] = key;
+        values[slot] = value;
+        if(++size > resizeAt) {
+            rehash(keys.length * 2);
+        }
+        return null;
+    }
+
+    /**
+     * @return the value that was removed, if any.
+     */
+    @SuppressWarnings("unchecked")
+    V remove(long key) {
+        int slot = find(key);
+        if(slot < 0) {
+            return null;
+        }
+
+        V previous = (V) values[slot];
+        size--;
+
+        //Shift later entries in the same run back into the gap, so that lookups never stop short at an empty slot.
+        int mask = keys.length - 1;
+        int gap = slot;
+        int next = (gap + 1) & mask;
+        while(keys[next] != 0) {
+            int home = slotFor(keys[next], mask);
+            //Only move an entry if its home slot isn't between the gap and where it currently sits (cyclically).
+            if(((next - home) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[gap] = 0;
+        values[gap] = null;
+
+        return previous;
+    }
+
+    int size() {
+        return size;
+    }
+
+    @SuppressWarnings("unchecked")
+    void forEachValue(Consumer<V> action) {
+        for(int slot = 0; slot < keys.length; slot++) {
+            if(keys[slot] != 0) {
+                action.accept((V) values[slot]);
+            }
+        }
+    }
+
+    long[] keys() {
+        long[] returnMe = new long[size];
+        int i = 0;
+        for(long key : keys) {
+            if(key != 0) {
+                returnMe[i++] = key;
+            }
+        }
+        Arrays.sort(returnMe);
+        return returnMe;
+    }
+
+    private int find(long key) {
+        if(key <= 0) {
+            return -1;
+        }
+
+        int mask = keys.length - 1;
+        int slot = slotFor(key, mask);
+        while(keys[slot] != 0) {
+            if(keys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(capacity);
+
+        int mask = capacity - 1;
+        for(int i = 0; i < oldKeys.length; i++) {
+            if(oldKeys[i] != 0) {
+                int slot = slotFor(oldKeys[i], mask);
+                while(keys[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new Object[capacity];
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    /**
+     * IDs come out of a sequence, so they're anything but random.  Mixing the bits stops runs of consecutive IDs from
+     * piling up in runs of consecutive slots.
+     */
+    private static int slotFor(long key, int mask) {
+        long mixed = key * 0x9E3779B97F4A7C15L;
+        return (int) (mixed ^ (mixed >>> 32)) & mask;
+    }
+
+    private static void checkKey(long key) {
+        if(key <= 0) {
+            throw new IllegalArgumentException("Keys must be positive, not " + key);
+        }
+    }
+}
@@ -0,0 +1,560 @@
+package ca.purpleowl.examples.swagger.service.readmodel;
+
+import ca.purpleowl.examples.swagger.jpa.changes.ChangeSequenceAllocator;
+import ca.purpleowl.examples.swagger.jpa.changes.CommittedChangeSequences;
+import ca.purpleowl.examples.swagger.rest.asset.ProgrammerAsset;
+import ca.purpleowl.examples.swagger.rest.asset.TeamAsset;
+import ca.purpleowl.examples.swagger.service.ChangeSet;
+import ca.purpleowl.examples.swagger.service.ProgrammerService;
+import ca.purpleowl.examples.swagger.service.TeamService;
+import ca.purpleowl.examples.swagger.service.event.EntityChangeEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.java.Log;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.scheduling.annotation.SchedulingConfigurer;
+import org.springframework.scheduling.config.IntervalTask;
+import org.springframework.scheduling.config.ScheduledTaskRegistrar;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.LongFunction;
+import java.util.logging.Level;
+
+/**
+ * Every Team and Programmer, in memory, so that the GET endpoints never have to go near JPA.
+ *
+ * Nothing in here is an entity.  Teams and Programmers are small immutable views in maps keyed by a primitive long,
+ * and each Team's members are an array of Programmer IDs, kept in name order so that reading them never sorts.  A Programmer only holds its Team's ID; the Team's name
+ * is looked up when the Programmer is read, so renaming a Team doesn't mean touching every one of its Programmers.
+ *
+ * Everything is loaded once at startup and then kept current from the EntityChangeEvents the services publish, once
+ * their transactions have committed.  Each change carries the entity's version, and anything older than what we
+ * already have is ignored, so it doesn't matter what order they arrive in (or whether they overlap the initial load).
+ * Every so often checkConsistency() compares the whole thing against the database and fixes up any drift, such as
+ * rows written behind the services' backs.
+ *
+ * Until the initial load is finished, isReady() is false and the controllers keep using the services.
+ *
+ * If there's a ReadModelSnapshot, everything is written out to it when we shut down, and the next start loads that
+ * instead of reading the whole database.  Whatever changed after the snapshot was taken is then caught up on from the
+ * change feeds, the same way any other client of them would.  The feeds don't say what was deleted, though, so
+ * anything deleted while we were down hangs around until the first consistency check.
+ */
+@Log
+public class ReadModel implements SmartInitializingSingleton, SchedulingConfigurer, DisposableBean {
+    private static final String LOAD = "load";
+    private static final String RESTORE = "restore";
+    private static final int CATCH_UP_PAGE = 1000;
+    private static final String CHECK_CONSISTENCY = "checkConsistency";
+    private static final long[] NO_MEMBERS = new long[0];
+    //Like ProgrammerRepository.findAllByTeamId, with the ID to settle ties between Programmers with the same name.
+    private static final Comparator<ProgrammerView> BY_NAME =
+            Comparator.comparing((ProgrammerView programmer) -> programmer.name,
+                                 Comparator.nullsFirst(Comparator.naturalOrder()))
+                      .thenComparingLong(programmer -> programmer.id);
+
+    private final TeamService teamService;
+    private final ProgrammerService programmerService;
+    private final ChangeSequenceAllocator changeSequenceAllocator;
+    private final CommittedChangeSequences committedChangeSequences;
+    private final ReadModelSnapshot snapshot;
+    private final ReadModelProperties properties;
+    private final Counter mismatches;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final LongObjectMap<TeamView> teams = new LongObjectMap<>();
+    private final LongObjectMap<ProgrammerView> programmers = new LongObjectMap<>();
+    private final LongObjectMap<long[]> members = new LongObjectMap<>();
+
+    private volatile boolean ready;
+
+    /**
+     * @param snapshot - Where to save everything at shutdown and look for it at startup, or null not to.
+     */
+    public ReadModel(TeamService teamService,
+                     ProgrammerService programmerService,
+                     ChangeSequenceAllocator changeSequenceAllocator,
+                     CommittedChangeSequences committedChangeSequences,
+                     ReadModelSnapshot snapshot,
+                     ReadModelProperties properties,
+                     MeterRegistry meterRegistry) {
+        this.teamService = teamService;
+        this.programmerService = programmerService;
+        this.changeSequenceAllocator = changeSequenceAllocator;
+        this.committedChangeSequences = committedChangeSequences;
+        this.snapshot = snapshot;
+        this.properties = properties;
+        this.mismatches = meterRegistry.counter("purpleowl.readmodel.mismatches");
+
+        Gauge.builder("purpleowl.readmodel.entities", this, model -> model.size(model.teams)).tag("type", "team")
+             .register(meterRegistry);
+        Gauge.builder("purpleowl.readmodel.entities", this, model -> model.size(model.programmers)).tag("type", "programmer")
+             .register(meterRegistry);
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        load();
+    }
+
+    @Override
+    public void configureTasks(ScheduledTaskRegistrar taskRegistrar) {
+        //We've only just loaded everything, so there's no point checking straight away.
+        long interval = properties.getConsistencyCheckInterval().toMillis();
+        taskRegistrar.addFixedDelayTask(new IntervalTask(this::checkConsistency, interval, interval));
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public void load() {
+        log.entering(ReadModel.class.getName(), LOAD);
+
+        if(!restore()) {
+            teamService.findAllTeams().forEach(this::applyTeam);
+            programmerService.findAllProgrammers().forEach(this::applyProgrammer);
+        }
+        ready = true;
+
+        log.exiting(ReadModel.class.getName(), LOAD, size(programmers));
+    }
+
+    /**
+     * Saves everything to the snapshot, if we have one.  What's in memory can be a moment behind the database (events
+     * are applied after their transactions commit), so the change sequence we note down is the one from before we
+     * start copying; the next start then catches up on anything from there on, even if we already had it.
+     *
+     * It's also no further than what's actually in the database.  The last numbers handed out may have been rolled
+     * back, and the next start only has the database to go on, so otherwise the snapshot could look like it was ahead
+     * of it.
+     */
+    @Override
+    public void destroy() {
+        if(snapshot == null || !ready) {
+            return;
+        }
+
+        long lastSequence = Math.min(changeSequenceAllocator.safeHighWaterMark(), committedChangeSequences.findHighest());
+        try {
+            snapshot.write(lastSequence, findAllTeams(), findAllProgrammers());
+        } catch(IOException e) {
+            //The next start just has to load from the database.
+            log.log(Level.WARNING, "couldn't write the read model snapshot to " + snapshot.getPath(), e);
+        }
+    }
+
+    /**
+     * @return true if everything was loaded from the snapshot (and the change feeds since).
+     */
+    private boolean restore() {
+        if(snapshot == null) {
+            return false;
+        }
+        log.entering(ReadModel.class.getName(), RESTORE);
+
+        ReadModelSnapshot.Contents contents = snapshot.read();
+        snapshot.delete();
+        if(contents == null) {
+            log.exiting(ReadModel.class.getName(), RESTORE, false);
+            return false;
+        }
+
+        //A snapshot from further along than the database is from some other database (or one that's been restored
+        //from a backup since).  Catching up from it would miss everything in between, so it's no use to us.
+        long committed = committedChangeSequences.findHighest();
+        if(contents.getLastSequence() > committed) {
+            log.warning(String.format("ignoring read model snapshot at change %d, as the database is only at %d",
+                                      contents.getLastSequence(), committed));
+            log.exiting(ReadModel.class.getName(), RESTORE, false);
+            return false;
+        }
+
+        contents.getTeams().forEach(this::applyTeam);
+        contents.getProgrammers().forEach(this::applyProgrammer);
+
+        int caughtUp = catchUp(contents.getLastSequence(), teamService::findTeamChanges, this::applyTeam)
+                + catchUp(contents.getLastSequence(), programmerService::findProgrammerChanges, this::applyProgrammer);
+
+        log.info(String.format("restored %d teams and %d programmers from %s, and caught up on %d changes since",
+                               contents.getTeams().size(), contents.getProgrammers().size(), snapshot.getPath(), caughtUp));
+        log.exiting(ReadModel.class.getName(), RESTORE, true);
+        return true;
+    }
+
+    private static <T> int catchUp(long since, ChangeFeed<T> feed, Consumer<T> apply) {
+        int count = 0;
+        ChangeSet<T> changeSet;
+        do {
+            changeSet = feed.findChanges(since, CATCH_UP_PAGE);
+            changeSet.getChanges().forEach(apply);
+            count += changeSet.getChanges().size();
+            since = changeSet.getLastSequence();
+        } while(changeSet.isMore());
+        return count;
+    }
+
+    @TransactionalEventListener
+    public void onEntityChange(EntityChangeEvent event) {
+        if(event.getEntityType() == EntityChangeEvent.EntityType.TEAM) {
+            applyTeam((TeamAsset) event.getAsset());
+        } else {
+            applyProgrammer((ProgrammerAsset) event.getAsset());
+        }
+    }
+
+    public TeamAsset findTeam(long teamId) {
+        lock.readLock().lock();
+        try {
+            TeamView team = teams.get(teamId);
+            return team == null ? null : team.toAsset();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return Every Team, in ID order.
+     */
+    public List<TeamAsset> findAllTeams() {
+        lock.readLock().lock();
+        try {
+            return toAssets(teams.keys(), id -> teams.get(id).toAsset());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public ProgrammerAsset findProgrammer(long programmerId) {
+        lock.readLock().lock();
+        try {
+            ProgrammerView programmer = programmers.get(programmerId);
+            return programmer == null ? null : programmer.toAsset(teams);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return Every Programmer, in ID order.
+     */
+    public List<ProgrammerAsset> findAllProgrammers() {
+        lock.readLock().lock();
+        try {
+            return toAssets(programmers.keys(), id -> programmers.get(id).toAsset(teams));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return The Programmers on the Team, ordered by name like ProgrammerRepository.findAllByTeamId.
+     */
+    public List<ProgrammerAsset> findAllProgrammersOnTeam(long teamId) {
+        lock.readLock().lock();
+        try {
+            long[] ids = members.get(teamId);
+            return toAssets(ids == null ? NO_MEMBERS : ids, id -> programmers.get(id).toAsset(teams));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Compares everything against the database, and brings anything that's behind up to date.  Entities that are newer
+     * here than in what we read from the database were written while we were reading, and are left alone.
+     *
+     * @return how many entities were out of step.
+     */
+    public int checkConsistency() {
+        log.entering(ReadModel.class.getName(), CHECK_CONSISTENCY);
+        int found = 0;
+
+        Set<Long> seen = new HashSet<>();
+        for(TeamAsset team : teamService.findAllTeams()) {
+            seen.add(team.getTeamId());
+            if(applyTeam(team)) {
+                found++;
+            }
+        }
+        for(long teamId : keysOf(teams)) {
+            //Might be gone, or might just be newer than our read.  Ask again to find out which.
+            if(!seen.contains(teamId) && teamService.findTeam(teamId) == null) {
+                removeTeam(teamId);
+                found++;
+            }
+        }
+
+        seen.clear();
+        for(ProgrammerAsset programmer : programmerService.findAllProgrammers()) {
+            seen.add(programmer.getProgrammerId());
+            if(applyProgrammer(programmer)) {
+                found++;
+            }
+        }
+        for(long programmerId : keysOf(programmers)) {
+            if(!seen.contains(programmerId) && programmerService.findProgrammer(programmerId) == null) {
+                removeProgrammer(programmerId);
+                found++;
+            }
+        }
+
+        if(found > 0) {
+            mismatches.increment(found);
+            log.warning(String.format("read model was out of step with the database for %d entities", found));
+        }
+
+        log.exiting(ReadModel.class.getName(), CHECK_CONSISTENCY, found);
+        return found;
+    }
+
+    /**
+     * @return true if this changed anything.
+     */
+    boolean applyTeam(TeamAsset asset) {
+        TeamView update = new TeamView(asset);
+
+        lock.writeLock().lock();
+        try {
+            TeamView current = teams.get(update.id);
+            if(current != null && !update.isNewerThan(current.version)) {
+                return false;
+            }
+
+            teams.put(update.id, update);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return true if this changed anything.
+     */
+    boolean applyProgrammer(ProgrammerAsset asset) {
+        ProgrammerView update = new ProgrammerView(asset);
+
+        lock.writeLock().lock();
+        try {
+            ProgrammerView current = programmers.get(update.id);
+            if(current != null && !update.isNewerThan(current.version)) {
+                return false;
+            }
+
+            //A new name means a new place in the Team, too.  It has to leave while it can still be found by its old one.
+            boolean moving = current == null
+                             || current.teamId != update.teamId
+                             || !Objects.equals(current.name, update.name);
+            if(moving && current != null) {
+                leaveTeam(current);
+            }
+            programmers.put(update.id, update);
+            if(moving) {
+                joinTeam(update);
+            }
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void removeTeam(long teamId) {
+        lock.writeLock().lock();
+        try {
+            teams.remove(teamId);
+            members.remove(teamId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void removeProgrammer(long programmerId) {
+        lock.writeLock().lock();
+        try {
+            ProgrammerView removed = programmers.get(programmerId);
+            if(removed != null) {
+                leaveTeam(removed);
+                programmers.remove(programmerId);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /*
+     * Members are kept in name order (see BY_NAME) so that these are a binary search and one array copy.  The
+     * Programmer has to be the one in the programmers map, so that the search can find it.  Callers hold the write
+     * lock.
+     */
+    private void joinTeam(ProgrammerView programmer) {
+        if(programmer.teamId == 0) {
+            return;
+        }
+
+        long[] current = members.get(programmer.teamId);
+        if(current == null) {
+            members.put(programmer.teamId, new long[]{programmer.id});
+            return;
+        }
+
+        int index = indexOf(current, programmer);
+        if(index < 0) {
+            int insertAt = -index - 1;
+            long[] updated = new long[current.length + 1];
+            System.arraycopy(current, 0, updated, 0, insertAt);
+            updated[insertAt] = programmer.id;
+            System.arraycopy(current, insertAt, updated, insertAt + 1, current.length - insertAt);
+            members.put(programmer.teamId, updated);
+        }
+    }
+
+    private void leaveTeam(ProgrammerView programmer) {
+        long[] current = programmer.teamId == 0 ? null : members.get(programmer.teamId);
+        if(current == null) {
+            return;
+        }
+
+        int index = indexOf(current, programmer);
+        if(index >= 0) {
+            long[] updated = new long[current.length - 1];
+            System.arraycopy(current, 0, updated, 0, index);
+            System.arraycopy(current, index + 1, updated, index, current.length - index - 1);
+            members.put(programmer.teamId, updated);
+        }
+    }
+
+    /**
+     * Arrays.binarySearch, but comparing the Programmers the IDs stand for.
+     */
+    private int indexOf(long[] members, ProgrammerView programmer) {
+        int low = 0;
+        int high = members.length - 1;
+
+        while(low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = BY_NAME.compare(programmers.get(members[middle]), programmer);
+
+            if(comparison < 0) {
+                low = middle + 1;
+            } else if(comparison > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private long[] keysOf(LongObjectMap<?> map) {
+        lock.readLock().lock();
+        try {
+            return map.keys();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private int size(LongObjectMap<?> map) {
+        lock.readLock().lock();
+        try {
+            return map.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static <T> List<T> toAssets(long[] ids, LongFunction<T> toAsset) {
+        List<T> returnMe = new ArrayList<>(ids.length);
+        for(long id : ids) {
+            returnMe.add(toAsset.apply(id));
+        }
+        return returnMe;
+    }
+
+    private static long versionOf(Long version) {
+        return version == null ? -1 : version;
+    }
+
+    @FunctionalInterface
+    private interface ChangeFeed<T> {
+        ChangeSet<T> findChanges(long since, int limit);
+    }
+
+    private static final class TeamView {
+        private final long id;
+        private final long version;
+        private final String name;
+        private final String teamFocus;
+        private final String lastStandUp;
+
+        private TeamView(TeamAsset asset) {
+            this.id = asset.getTeamId();
+            this.version = versionOf(asset.getVersion());
+            this.name = asset.getName();
+            this.teamFocus = asset.getTeamFocus();
+            this.lastStandUp = asset.getLastStandUp();
+        }
+
+        private boolean isNewerThan(long otherVersion) {
+            return version > otherVersion;
+        }
+
+        private TeamAsset toAsset() {
+            TeamAsset asset = new TeamAsset();
+            asset.setTeamId(id);
+            asset.setName(name);
+            asset.setTeamFocus(teamFocus);
+            asset.setLastStandUp(lastStandUp);
+            asset.setVersion(version);
+            return asset;
+        }
+    }
+
+    private static final class ProgrammerView {
+        private final long id;
+        private final long version;
+        private final String name;
+        private final String dateHired;
+        //0 for no Team.
+        private final long teamId;
+
+        private ProgrammerView(ProgrammerAsset asset) {
+            this.id = asset.getProgrammerId();
+            this.version = versionOf(asset.getVersion());
+            this.name = asset.getName();
+            this.dateHired = asset.getDateHired();
+            this.teamId = asset.getTeamId() == null ? 0 : asset.getTeamId();
+        }
+
+        private boolean isNewerThan(long otherVersion) {
+            return version > otherVersion;
+        }
+
+        private ProgrammerAsset toAsset(LongObjectMap<TeamView> teams) {
+            ProgrammerAsset asset = new ProgrammerAsset();
+            asset.setProgrammerId(id);
+            asset.setName(name);
+            asset.setDateHired(dateHired);
+            asset.setVersion(version);
+
+            if(teamId != 0) {
+                asset.setTeamId(teamId);
+                TeamView team = teams.get(teamId);
+                asset.setTeamName(team == null ? null : team.name);
+            }
+            return asset;
+        }
+    }
+}
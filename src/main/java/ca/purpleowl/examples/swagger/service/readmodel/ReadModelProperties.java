@@ -0,0 +1,38 @@
+package ca.purpleowl.examples.swagger.service.readmodel;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties("purpleowl.read-model")
+public class ReadModelProperties {
+    /**
+     * Serve the GET endpoints from memory rather than the database.  Off by default: anything that writes to the
+     * database without going through the services (scripts, another node) is invisible to it until the next
+     * consistency check.
+     */
+    private boolean enabled = false;
+
+    /**
+     * How often to compare the read model against the database, and fix up anything that's drifted.
+     */
+    private Duration consistencyCheckInterval = Duration.ofMinutes(5);
+
+    private Snapshot snapshot = new Snapshot();
+
+    @Data
+    public static class Snapshot {
+        /**
+         * Save the read model to a file at shutdown, and start from it next time instead of reading the whole
+         * database.  Only worth it when the database outlives us, so the persistent profile turns it on.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Where the snapshot goes.  Relative paths are from the working directory.
+         */
+        private String path = "data/read-model.snapshot";
+    }
+}
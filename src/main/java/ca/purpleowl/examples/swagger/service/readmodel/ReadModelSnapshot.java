@@ -0,0 +1,191 @@
+package ca.purpleowl.examples.swagger.service.readmodel;
+
+import ca.purpleowl.examples.swagger.rest.asset.ProgrammerAsset;
+import ca.purpleowl.examples.swagger.rest.asset.TeamAsset;
+import lombok.Data;
+import lombok.extern.java.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+
+/**
+ * The read model, saved to a file when we shut down, so that the next start can pick up where we left off instead of
+ * reading every Team and Programmer back out of the database.
+ *
+ * The file is a flat run of fixed-order fields (longs, and strings as a length and UTF-8 bytes), which the next start
+ * maps into memory and reads straight through.  It also records the change sequence everything in it was current up
+ * to, so that whatever has been written since (by another node, say) can be caught up on from the change feed.  Once
+ * it's been read, the file is deleted; after an unclean shutdown there's no snapshot, and the read model loads from
+ * the database.
+ *
+ * Anything unexpected in the file (a different format, or a short file) just means it's ignored and the read model
+ * loads from the database as it always has.  A snapshot over 2GB can't be mapped in one go, so the same goes for that.
+ */
+@Log
+public class ReadModelSnapshot {
+    //"PORM": PurpleOwl Read Model.
+    private static final int MAGIC = 0x504F524D;
+    private static final int FORMAT = 1;
+    private static final int NULL = -1;
+
+    private final Path path;
+
+    public ReadModelSnapshot(Path path) {
+        this.path = path;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Writes the snapshot to a temporary file next to the real one and then moves it into place, so a crash part way
+     * through leaves the last good snapshot where it was.
+     *
+     * @param lastSequence - The change sequence everything here is current up to.
+     */
+    void write(long lastSequence, List<TeamAsset> teams, List<ProgrammerAsset> programmers) throws IOException {
+        Path absolute = path.toAbsolutePath();
+        Files.createDirectories(absolute.getParent());
+        Path temporary = absolute.resolveSibling(absolute.getFileName() + ".tmp");
+
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT);
+            out.writeLong(lastSequence);
+
+            out.writeInt(teams.size());
+            for(TeamAsset team : teams) {
+                out.writeLong(team.getTeamId());
+                out.writeLong(versionOf(team.getVersion()));
+                writeString(out, team.getName());
+                writeString(out, team.getTeamFocus());
+                writeString(out, team.getLastStandUp());
+            }
+
+            out.writeInt(programmers.size());
+            for(ProgrammerAsset programmer : programmers) {
+                out.writeLong(programmer.getProgrammerId());
+                out.writeLong(versionOf(programmer.getVersion()));
+                writeString(out, programmer.getName());
+                writeString(out, programmer.getDateHired());
+                out.writeLong(programmer.getTeamId() == null ? 0 : programmer.getTeamId());
+            }
+        }
+
+        Files.move(temporary, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        log.info(String.format("wrote read model snapshot of %d teams and %d programmers to %s",
+                               teams.size(), programmers.size(), absolute));
+    }
+
+    /**
+     * @return What was in the snapshot, or null if there isn't one we can use.
+     */
+    Contents read() {
+        if(!Files.isRegularFile(path)) {
+            log.fine(() -> "no read model snapshot at " + path.toAbsolutePath());
+            return null;
+        }
+
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if(buffer.getInt() != MAGIC || buffer.getInt() != FORMAT) {
+                log.warning("ignoring read model snapshot " + path.toAbsolutePath() + ", as it's not one we can read");
+                return null;
+            }
+
+            Contents contents = new Contents(buffer.getLong());
+
+            int teams = buffer.getInt();
+            for(int i = 0; i < teams; i++) {
+                TeamAsset team = new TeamAsset();
+                team.setTeamId(buffer.getLong());
+                team.setVersion(buffer.getLong());
+                team.setName(readString(buffer));
+                team.setTeamFocus(readString(buffer));
+                team.setLastStandUp(readString(buffer));
+                contents.teams.add(team);
+            }
+
+            int programmers = buffer.getInt();
+            for(int i = 0; i < programmers; i++) {
+                ProgrammerAsset programmer = new ProgrammerAsset();
+                programmer.setProgrammerId(buffer.getLong());
+                programmer.setVersion(buffer.getLong());
+                programmer.setName(readString(buffer));
+                programmer.setDateHired(readString(buffer));
+                long teamId = buffer.getLong();
+                programmer.setTeamId(teamId == 0 ? null : teamId);
+                contents.programmers.add(programmer);
+            }
+
+            return contents;
+        } catch(IOException | BufferUnderflowException | IllegalArgumentException e) {
+            log.log(Level.WARNING, "ignoring read model snapshot " + path.toAbsolutePath() + ", as it couldn't be read", e);
+            return null;
+        }
+    }
+
+    /**
+     * A snapshot is only good for the start that reads it.  Left where it was, a crash later on would have the start
+     * after that restore from it again, with everything deleted since back from the dead until the first consistency
+     * check, so it's gone as soon as it's been read.  The next clean shutdown writes a fresh one.
+     */
+    void delete() {
+        try {
+            Files.deleteIfExists(path);
+        } catch(IOException e) {
+            log.log(Level.WARNING, "couldn't delete read model snapshot " + path.toAbsolutePath(), e);
+        }
+    }
+
+    private static long versionOf(Long version) {
+        return version == null ? -1 : version;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if(value == null) {
+            out.writeInt(NULL);
+            return;
+        }
+
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if(length == NULL) {
+            return null;
+        }
+        if(length < 0 || length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Data
+    static class Contents {
+        private final long lastSequence;
+        private final List<TeamAsset> teams = new ArrayList<>();
+        private final List<ProgrammerAsset> programmers = new ArrayList<>();
+    }
+}
@@ -0,0 +1,278 @@
+package ca.purpleowl.examples.swagger.service.stats;
+
+import ca.purpleowl.examples.swagger.jpa.datasource.ReadWriteRoutingDataSource;
+import ca.purpleowl.examples.swagger.jpa.datasource.ShardRouter;
+import ca.purpleowl.examples.swagger.jpa.entity.Team;
+import ca.purpleowl.examples.swagger.jpa.repository.ProgrammerRepository;
+import ca.purpleowl.examples.swagger.jpa.repository.TeamHires;
+import ca.purpleowl.examples.swagger.jpa.repository.TeamRepository;
+import ca.purpleowl.examples.swagger.rest.asset.TeamStatsAsset;
+import lombok.extern.java.Log;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Headcount and hires per month for each Team.
+ *
+ * Working these out from scratch means going through every Programmer, so we only do that once (with a GROUP BY, so at
+ * least it's the database going through them rather than us).  After that, the services tell us about every Programmer
+ * they save or move between Teams, and we adjust the counts as those transactions commit.  Reading the stats then
+ * costs one row per Team, however many Programmers there are.
+ *
+ * The awkward part is the load racing with the adjustments: a Programmer moved while the GROUP BY is running might be
+ * counted by it and then adjusted for again afterward.  So the load only replaces the counts if no writes were
+ * in flight from before it started until after it finished.  If there were, its answer is still handed back to
+ * whoever asked, and the next read tries again.
+ *
+ * Rows written around the services (straight through the repositories) aren't seen until rebuild() is called.
+ *
+ * Reads all go to the primary: the counts we keep have to come from there, as a replica that hasn't caught up would
+ * leave them wrong for good rather than just for a moment.  They're read-only all the same, so that asking for stats
+ * doesn't make a client look like a writer (see ReadWriteRoutingDataSource).
+ */
+@Log
+@Service
+@Transactional(readOnly = true)
+public class TeamStatistics {
+    private static final String FIND_TEAM_STATS = "findTeamStats";
+    private static final String FIND_ALL_TEAM_STATS = "findAllTeamStats";
+    private static final String REBUILD = "rebuild";
+
+    private final TeamRepository teamRepository;
+    private final ProgrammerRepository programmerRepository;
+    private final ShardRouter shardRouter;
+
+    private final Object lock = new Object();
+    //Null until the first load succeeds.  Guarded by lock.
+    private Map<Long, Rollup> rollups;
+
+    private final AtomicLong writesStarted = new AtomicLong();
+    private final AtomicLong writesFinished = new AtomicLong();
+
+    @Autowired
+    public TeamStatistics(TeamRepository teamRepository,
+                          ProgrammerRepository programmerRepository,
+                          ShardRouter shardRouter) {
+        this.teamRepository = teamRepository;
+        this.programmerRepository = programmerRepository;
+        this.shardRouter = shardRouter;
+    }
+
+    /**
+     * @return The stats for the Team, or null if there's no such Team.
+     */
+    public TeamStatsAsset findTeamStats(long teamId) {
+        log.entering(TeamStatistics.class.getName(), FIND_TEAM_STATS, teamId);
+
+        TeamStatsAsset returnMe = ReadWriteRoutingDataSource.readFromPrimary(() ->
+                shardRouter.onShard(shardRouter.shardOf(teamId), true, () -> teamRepository.findById(teamId))
+                           .map(team -> toAsset(team, rollupOf(teamId)))
+                           .orElse(null));
+
+        log.exiting(TeamStatistics.class.getName(), FIND_TEAM_STATS, returnMe);
+        return returnMe;
+    }
+
+    /**
+     * @return The stats for every Team, in ID order.
+     */
+    public List<TeamStatsAsset> findAllTeamStats() {
+        log.entering(TeamStatistics.class.getName(), FIND_ALL_TEAM_STATS);
+
+        List<TeamStatsAsset> returnMe = ReadWriteRoutingDataSource.readFromPrimary(() -> {
+            Map<Long, Rollup> current = allRollups();
+
+            return shardRouter.onEveryShard(true, teamRepository::findAll)
+                              .stream()
+                              .flatMap(List::stream)
+                              .sorted(Comparator.comparing(Team::getId))
+                              .map(team -> toAsset(team, current.get(team.getId())))
+                              .collect(Collectors.toList());
+        });
+
+        log.exiting(TeamStatistics.class.getName(), FIND_ALL_TEAM_STATS, returnMe);
+        return returnMe;
+    }
+
+    /**
+     * Called by the services whenever a Programmer is written in a way that might change the stats.  Nothing changes
+     * here unless (and until) the surrounding transaction commits.
+     *
+     * @param fromTeamId - The Team the Programmer was on before, or null.
+     * @param fromDateHired - The Programmer's hire date before.
+     * @param toTeamId - The Team the Programmer is on now, or null.
+     * @param toDateHired - The Programmer's hire date now.
+     */
+    public void recordChange(Long fromTeamId, LocalDate fromDateHired, Long toTeamId, LocalDate toDateHired) {
+        if(Objects.equals(fromTeamId, toTeamId) && Objects.equals(fromDateHired, toDateHired)) {
+            return;
+        }
+
+        if(!TransactionSynchronizationManager.isSynchronizationActive()) {
+            apply(fromTeamId, fromDateHired, toTeamId, toDateHired);
+            return;
+        }
+
+        writesStarted.incrementAndGet();
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                apply(fromTeamId, fromDateHired, toTeamId, toDateHired);
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                writesFinished.incrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * Recounts everything from the database.
+     *
+     * @return true if the new counts were kept; false if writes got in the way (see above).
+     */
+    public boolean rebuild() {
+        log.entering(TeamStatistics.class.getName(), REBUILD);
+        boolean returnMe = ReadWriteRoutingDataSource.readFromPrimary(this::load).kept;
+
+        log.exiting(TeamStatistics.class.getName(), REBUILD, returnMe);
+        return returnMe;
+    }
+
+    private Rollup rollupOf(long teamId) {
+        synchronized(lock) {
+            if(rollups != null) {
+                Rollup rollup = rollups.get(teamId);
+                return rollup == null ? null : rollup.copy();
+            }
+        }
+
+        log.fine("no team statistics yet, counting from the database");
+        return load().rollups.get(teamId);
+    }
+
+    private Map<Long, Rollup> allRollups() {
+        synchronized(lock) {
+            if(rollups != null) {
+                return copy(rollups);
+            }
+        }
+
+        log.fine("no team statistics yet, counting from the database");
+        return load().rollups;
+    }
+
+    private Load load() {
+        long started = writesStarted.get();
+        boolean quiet = started == writesFinished.get();
+
+        Map<Long, Rollup> counted = new HashMap<>();
+        //Each Team's Programmers are all on one shard, so no Team turns up in more than one shard's rows.
+        List<List<TeamHires>> perShard = shardRouter.onEveryShard(true, programmerRepository::countHiresByTeamAndMonth);
+        for(TeamHires row : perShard.stream().flatMap(List::stream).collect(Collectors.toList())) {
+            YearMonth month = row.getYear() == null ? null : YearMonth.of(row.getYear(), row.getMonth());
+            counted.computeIfAbsent(row.getTeamId(), teamId -> new Rollup()).add(month, row.getHires());
+        }
+
+        synchronized(lock) {
+            //Nothing was in flight when we started, and nothing has started since, so the counts are exactly right.
+            boolean kept = quiet && writesStarted.get() == started;
+            if(kept) {
+                rollups = counted;
+            }
+            return new Load(copy(counted), kept);
+        }
+    }
+
+    private void apply(Long fromTeamId, LocalDate fromDateHired, Long toTeamId, LocalDate toDateHired) {
+        synchronized(lock) {
+            if(rollups == null) {
+                //Whatever loads them will see this change in the database.
+                return;
+            }
+
+            if(fromTeamId != null) {
+                rollups.computeIfAbsent(fromTeamId, teamId -> new Rollup()).add(monthOf(fromDateHired), -1);
+            }
+            if(toTeamId != null) {
+                rollups.computeIfAbsent(toTeamId, teamId -> new Rollup()).add(monthOf(toDateHired), 1);
+            }
+        }
+    }
+
+    private static TeamStatsAsset toAsset(Team team, Rollup rollup) {
+        TeamStatsAsset asset = new TeamStatsAsset();
+        asset.setTeamId(team.getId());
+        asset.setName(team.getName());
+
+        if(rollup != null) {
+            asset.setHeadcount(rollup.headcount);
+            rollup.hires.forEach((month, hires) -> asset.getHiresPerMonth().put(month.toString(), hires));
+        }
+
+        if(team.getLastStandUp() != null) {
+            asset.setLastStandUp(DateTimeFormatter.ISO_LOCAL_DATE_TIME.format(team.getLastStandUp()));
+            asset.setMinutesSinceLastStandUp(Duration.between(team.getLastStandUp(), LocalDateTime.now()).toMinutes());
+        }
+
+        return asset;
+    }
+
+    private static YearMonth monthOf(LocalDate date) {
+        return date == null ? null : YearMonth.from(date);
+    }
+
+    private static Map<Long, Rollup> copy(Map<Long, Rollup> rollups) {
+        Map<Long, Rollup> returnMe = new HashMap<>();
+        rollups.forEach((teamId, rollup) -> returnMe.put(teamId, rollup.copy()));
+        return returnMe;
+    }
+
+    private static class Rollup {
+        private long headcount;
+        private final TreeMap<YearMonth, Long> hires = new TreeMap<>();
+
+        void add(YearMonth month, long count) {
+            headcount += count;
+            if(month != null) {
+                //Dropping months that reach zero keeps them out of the stats, the same as if we'd counted from scratch.
+                hires.merge(month, count, (a, b) -> a + b == 0 ? null : a + b);
+            }
+        }
+
+        Rollup copy() {
+            Rollup returnMe = new Rollup();
+            returnMe.headcount = headcount;
+            returnMe.hires.putAll(hires);
+            return returnMe;
+        }
+    }
+
+    private static class Load {
+        private final Map<Long, Rollup> rollups;
+        private final boolean kept;
+
+        Load(Map<Long, Rollup> rollups, boolean kept) {
+            this.rollups = rollups;
+            this.kept = kept;
+        }
+    }
+}
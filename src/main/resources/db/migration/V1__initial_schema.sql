@@ -0,0 +1,32 @@
+-- The schema Hibernate builds from the entities, as of the first persistent release.  Later changes to the entities
+-- need a V2__... alongside this; the persistent profile only validates the schema, it never changes it.
+
+-- AbstractEntity's generator reserves 50 IDs at a time from this.
+CREATE SEQUENCE entity_ids START WITH 1 INCREMENT BY 50;
+
+CREATE TABLE team (
+    id              BIGINT       NOT NULL,
+    change_sequence BIGINT       NOT NULL,
+    version         BIGINT,
+    last_stand_up   TIMESTAMP,
+    name            VARCHAR(255),
+    team_focus      VARCHAR(255),
+    PRIMARY KEY (id)
+);
+
+CREATE TABLE programmer (
+    id              BIGINT       NOT NULL,
+    change_sequence BIGINT       NOT NULL,
+    version         BIGINT,
+    date_hired      DATE,
+    name            VARCHAR(255),
+    team_id         BIGINT,
+    PRIMARY KEY (id),
+    CONSTRAINT fk_programmer_team FOREIGN KEY (team_id) REFERENCES team (id)
+);
+
+CREATE INDEX idx_team_change_sequence ON team (change_sequence);
+CREATE INDEX idx_team_last_stand_up ON team (last_stand_up);
+CREATE INDEX idx_programmer_change_sequence ON programmer (change_sequence);
+CREATE INDEX idx_programmer_team_name ON programmer (team_id, name);
+CREATE INDEX idx_programmer_date_hired ON programmer (date_hired);
@@ -0,0 +1,4 @@
+-- Change sequence numbers come from here, ChangeSequenceAllocator.BLOCK_SIZE at a time, so that they carry on past a
+-- restart and never repeat between nodes.  The increment has to match BLOCK_SIZE; ChangeSequenceBlocks checks it at
+-- startup, and moves the sequence past any change_sequence already in the tables.
+CREATE SEQUENCE change_sequences START WITH 1 INCREMENT BY 1000;
@@ -0,0 +1,114 @@
+package ca.purpleowl.examples.swagger.jpa.changes;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ChangeSequenceAllocatorTest {
+    //Stands in for change_sequences: each call hands out the first number of the next block.
+    private final AtomicLong nextBlock = new AtomicLong(1);
+    private final LongSupplier sequence = () -> nextBlock.getAndAdd(ChangeSequenceAllocator.BLOCK_SIZE);
+    private final ChangeSequenceAllocator fixture = new ChangeSequenceAllocator(sequence);
+
+    @Test
+    public void testCarriesOnFromTheSeed() {
+        nextBlock.set(42);
+        fixture.seed(41);
+
+        assertEquals(42, fixture.allocate());
+    }
+
+    @Test
+    public void testHighWaterMarkStopsShortOfTheOldestChangeInFlight() {
+        long first = fixture.allocate();
+        long second = fixture.allocate();
+        assertEquals(0, fixture.safeHighWaterMark());
+
+        //The later change finishing first doesn't let readers past the earlier one...
+        fixture.release(second);
+        assertEquals(first - 1, fixture.safeHighWaterMark());
+
+        //...but once that's done too, everything's fair game.
+        fixture.release(first);
+        assertEquals(second, fixture.safeHighWaterMark());
+    }
+
+    @Test
+    public void testSeedNeverGoesBackwards() {
+        fixture.allocate();
+        fixture.allocate();
+        fixture.seed(1);
+
+        assertEquals(3, fixture.allocate());
+    }
+
+    @Test
+    public void testRangeIsInFlightUntilReleased() {
+        long first = fixture.allocateRange(10);
+        long after = fixture.allocate();
+        assertEquals(first + 10, after);
+
+        fixture.release(after);
+        assertEquals(first - 1, fixture.safeHighWaterMark());
+
+        fixture.release(first);
+        assertEquals(after, fixture.safeHighWaterMark());
+    }
+
+    @Test
+    public void testOnlyGoesToTheSequenceOncePerBlock() {
+        for(int i = 0; i < ChangeSequenceAllocator.BLOCK_SIZE + 1; i++) {
+            fixture.allocate();
+        }
+
+        assertEquals(1 + 2 * ChangeSequenceAllocator.BLOCK_SIZE, nextBlock.get());
+    }
+
+    @Test
+    public void testRangeCarriesOnIntoTheNextBlock() {
+        fixture.allocateRange(ChangeSequenceAllocator.BLOCK_SIZE - 5);
+        long first = fixture.allocateRange(10);
+
+        assertEquals(ChangeSequenceAllocator.BLOCK_SIZE - 4, first);
+        assertEquals(first + 10, fixture.allocate());
+    }
+
+    @Test
+    public void testTwoAllocatorsOnOneSequenceNeverHandOutTheSameNumber() {
+        ChangeSequenceAllocator other = new ChangeSequenceAllocator(sequence);
+        Set<Long> handedOut = new HashSet<>();
+
+        for(int i = 0; i < 3 * ChangeSequenceAllocator.BLOCK_SIZE; i++) {
+            assertTrue(handedOut.add(fixture.allocate()));
+            assertTrue(handedOut.add(other.allocate()));
+        }
+    }
+
+    @Test
+    public void testRangeSkipsWhatsLeftWhenAnotherAllocatorTookTheNextBlock() {
+        ChangeSequenceAllocator other = new ChangeSequenceAllocator(sequence);
+        fixture.allocateRange(ChangeSequenceAllocator.BLOCK_SIZE - 5);
+        other.allocate();
+
+        long first = fixture.allocateRange(10);
+
+        assertEquals(1 + 2 * ChangeSequenceAllocator.BLOCK_SIZE, first);
+        assertEquals(first + 10, fixture.allocate());
+    }
+
+    @Test
+    public void testRestartCarriesOnAboveEverythingHandedOutBefore() {
+        long before = fixture.allocate();
+        //Nothing from before the restart was committed, so there's nothing in the database to seed from.
+        ChangeSequenceAllocator restarted = new ChangeSequenceAllocator(sequence);
+        restarted.seed(0);
+
+        assertTrue(restarted.allocate() > before);
+    }
+}
@@ -0,0 +1,233 @@
+package ca.purpleowl.examples.swagger.jpa.datasource;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ReadWriteRoutingDataSourceTest {
+    private static final String PRIMARY_URL = "jdbc:h2:mem:routing-primary";
+    private static final String REPLICA_URL = "jdbc:h2:mem:routing-replica";
+    private static final String KEEP_ALIVE = ";DB_CLOSE_DELAY=-1";
+
+    private final MutableClock clock = new MutableClock();
+    private DataSource primary;
+    private DataSource replica;
+    private ReadWriteRoutingDataSource fixture;
+
+    @Before
+    public void setUp() {
+        primary = new DriverManagerDataSource(PRIMARY_URL + KEEP_ALIVE, "sa", "");
+        replica = new DriverManagerDataSource(REPLICA_URL + KEEP_ALIVE, "sa", "");
+
+        fixture = new ReadWriteRoutingDataSource(primary,
+                                                 Collections.singletonList(replica),
+                                                 new ReadYourWritesTracker(Duration.ofSeconds(5), clock));
+        fixture.afterPropertiesSet();
+    }
+
+    @After
+    public void tearDown() {
+        if(TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+        TransactionSynchronizationManager.setActualTransactionActive(false);
+        ReadYourWritesTracker.clearClient();
+    }
+
+    @Test
+    public void testReadOnlyTransactionGoesToReplica() throws SQLException {
+        beginTransaction(true);
+
+        assertEquals(REPLICA_URL, connectedTo());
+    }
+
+    @Test
+    public void testReadWriteTransactionGoesToPrimary() throws SQLException {
+        beginTransaction(false);
+
+        assertEquals(PRIMARY_URL, connectedTo());
+    }
+
+    @Test
+    public void testNoTransactionGoesToPrimary() throws SQLException {
+        assertEquals(PRIMARY_URL, connectedTo());
+    }
+
+    @Test
+    public void testReadsStickToPrimaryAfterAWrite() throws SQLException {
+        ReadYourWritesTracker.bindClient("writer");
+        beginTransaction(false);
+        connectedTo();
+        commit();
+
+        beginTransaction(true);
+        assertEquals(PRIMARY_URL, connectedTo());
+
+        //Someone else isn't affected by the writer's stickiness.
+        ReadYourWritesTracker.bindClient("someone-else");
+        assertEquals(REPLICA_URL, connectedTo());
+
+        //...and once the window has passed, the writer is back on the replica as well.
+        ReadYourWritesTracker.bindClient("writer");
+        clock.advance(Duration.ofSeconds(6));
+        assertEquals(REPLICA_URL, connectedTo());
+    }
+
+    @Test
+    public void testStickinessStartsWhenTheWriteCommits() throws SQLException {
+        ReadYourWritesTracker.bindClient("writer");
+        beginTransaction(false);
+        connectedTo();
+
+        //A slow transaction; the replicas can't have seen any of it before it commits.
+        clock.advance(Duration.ofSeconds(4));
+        commit();
+        clock.advance(Duration.ofSeconds(4));
+
+        beginTransaction(true);
+        assertEquals(PRIMARY_URL, connectedTo());
+    }
+
+    @Test
+    public void testRolledBackWritesDontMakeTheClientSticky() throws SQLException {
+        ReadYourWritesTracker.bindClient("writer");
+        beginTransaction(false);
+        connectedTo();
+        TransactionSynchronizationManager.clearSynchronization();
+
+        beginTransaction(true);
+        assertEquals(REPLICA_URL, connectedTo());
+    }
+
+    @Test
+    public void testReadsFromPrimaryDontMakeTheClientSticky() throws SQLException {
+        ReadYourWritesTracker.bindClient("syncer");
+        beginTransaction(true);
+
+        assertEquals(PRIMARY_URL, ReadWriteRoutingDataSource.readFromPrimary(this::connectedToUnchecked));
+
+        assertEquals(REPLICA_URL, connectedTo());
+    }
+
+    @Test
+    public void testReadsAreSpreadAcrossReplicas() throws SQLException {
+        DataSource otherReplica = new DriverManagerDataSource("jdbc:h2:mem:routing-replica-2" + KEEP_ALIVE, "sa", "");
+        fixture = new ReadWriteRoutingDataSource(primary,
+                                                 Arrays.asList(replica, otherReplica),
+                                                 new ReadYourWritesTracker(Duration.ofSeconds(5), clock));
+        fixture.afterPropertiesSet();
+        beginTransaction(true);
+
+        String first = connectedTo();
+        String second = connectedTo();
+
+        assertTrue(!first.equals(second));
+        assertEquals(first, connectedTo());
+    }
+
+    @Test
+    public void testStandInCopiesPrimaryToReplica() throws SQLException {
+        execute(primary, "CREATE TABLE IF NOT EXISTS PROGRAMMER (ID BIGINT PRIMARY KEY, NAME VARCHAR(255))");
+        execute(primary, "DELETE FROM PROGRAMMER");
+        execute(primary, "INSERT INTO PROGRAMMER VALUES (1, 'programmer1'), (2, 'programmer2')");
+
+        H2ReplicationStandIn standIn =
+                new H2ReplicationStandIn(primary, Collections.singletonList(replica), Duration.ofSeconds(1));
+        standIn.replicate();
+
+        assertEquals(2, count(replica));
+
+        execute(primary, "INSERT INTO PROGRAMMER VALUES (3, 'programmer3')");
+        assertEquals(2, count(replica));
+
+        standIn.replicate();
+        assertEquals(3, count(replica));
+    }
+
+    private String connectedTo() throws SQLException {
+        try(Connection connection = fixture.getConnection()) {
+            return connection.getMetaData().getURL();
+        }
+    }
+
+    private String connectedToUnchecked() {
+        try {
+            return connectedTo();
+        } catch(SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void beginTransaction(boolean readOnly) {
+        if(!TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.initSynchronization();
+        }
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(readOnly);
+    }
+
+    /**
+     * What the transaction manager would do on commit, as far as the routing is concerned.
+     */
+    private static void commit() {
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        synchronizations.forEach(TransactionSynchronization::afterCommit);
+    }
+
+    private static void execute(DataSource dataSource, String sql) throws SQLException {
+        try(Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+    private static int count(DataSource dataSource) throws SQLException {
+        try(Connection connection = dataSource.getConnection();
+            Statement statement = connection.createStatement()) {
+            return statement.executeQuery("SELECT COUNT(*) FROM PROGRAMMER").next() ?
+                   statement.getResultSet().getInt(1) : 0;
+        }
+    }
+
+    private static class MutableClock extends Clock {
+        private Instant now = Instant.now();
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneOffset getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(java.time.ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
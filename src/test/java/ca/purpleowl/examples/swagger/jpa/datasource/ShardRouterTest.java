@@ -0,0 +1,87 @@
+package ca.purpleowl.examples.swagger.jpa.datasource;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import org.junit.Test;
+import org.springframework.data.domain.Sort;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ShardRouterTest {
+    private final ShardRouter fixture = new ShardRouter(3, 50, 1, null);
+
+    @Test
+    public void testIdsSayWhichShardTheyWereMadeOn() {
+        //Each shard's sequence starts at its own block and skips the other shards' blocks.
+        assertEquals(0, fixture.shardOf(1));
+        assertEquals(0, fixture.shardOf(50));
+        assertEquals(1, fixture.shardOf(51));
+        assertEquals(2, fixture.shardOf(101));
+        assertEquals(2, fixture.shardOf(150));
+        assertEquals(0, fixture.shardOf(151));
+        assertEquals(1, fixture.shardOf(201));
+    }
+
+    @Test
+    public void testNewThingsAreDealtOutInTurn() {
+        assertEquals(Arrays.asList(0, 1, 2, 0),
+                     Arrays.asList(fixture.shardForNew(), fixture.shardForNew(), fixture.shardForNew(), fixture.shardForNew()));
+    }
+
+    @Test
+    public void testMergeKeepsOrder() {
+        List<Integer> merged = ShardRouter.merge(Arrays.asList(Arrays.asList(1, 4, 9),
+                                                               Collections.emptyList(),
+                                                               Arrays.asList(2, 3, 10, 11),
+                                                               Arrays.asList(5)),
+                                                 Integer::compare);
+
+        assertEquals(Arrays.asList(1, 2, 3, 4, 5, 9, 10, 11), merged);
+    }
+
+    @Test
+    public void testComparingFollowsTheSort() {
+        List<Row> rows = Arrays.asList(new Row("b", 1), new Row("a", 2), new Row(null, 3), new Row("A", 4), new Row("a", 1));
+
+        assertEquals(Arrays.asList(3, 4, 2, 1, 1),
+                     numbers(rows, ShardRouter.comparing(Sort.by("name").and(Sort.by(Sort.Direction.DESC, "number")))));
+        //Nulls are lowest, so they come last going down.
+        assertEquals(Arrays.asList(1, 2, 1, 4, 3), numbers(rows, ShardRouter.comparing(Sort.by(Sort.Direction.DESC, "name"))));
+        assertEquals(Arrays.asList(3, 4, 2, 1, 1),
+                     numbers(rows, ShardRouter.comparing(Sort.by(Sort.Order.asc("name").ignoreCase(), Sort.Order.desc("number")))));
+    }
+
+    @Test
+    public void testOneShardRunsWorkDirectly() {
+        //No transaction manager at all, and no shard picked: the work just runs.
+        ShardRouter single = new ShardRouter(1, 50, 1, null);
+
+        assertEquals(Collections.singletonList("ran"), single.onEveryShard(true, () -> "ran" + current()));
+        assertEquals("ran", single.onShard(0, false, () -> "ran" + current()));
+        assertEquals("ran", single.findOnAnyShard(1234, false, shard -> "ran" + current()));
+        assertEquals(0, single.shardOf(1234));
+    }
+
+    private static String current() {
+        assertNull(ShardContext.current());
+        return "";
+    }
+
+    private static List<Integer> numbers(List<Row> rows, Comparator<Row> order) {
+        return rows.stream().sorted(order).map(Row::getNumber).collect(Collectors.toList());
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class Row {
+        private String name;
+        private Integer number;
+    }
+}
@@ -0,0 +1,109 @@
+package ca.purpleowl.examples.swagger.jpa.ids;
+
+import org.hibernate.id.IdentifierGeneratorHelper;
+import org.hibernate.id.IntegralDataTypeHolder;
+import org.hibernate.id.enhanced.AccessCallback;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BlockIdOptimizerTest {
+    private static final int BLOCK_SIZE = 50;
+
+    /**
+     * Stands in for a database sequence starting at 1 and going up by BLOCK_SIZE.
+     */
+    private final FakeSequence sequence = new FakeSequence();
+
+    @Test
+    public void testHandsOutABlockBeforeGoingBackForMore() {
+        BlockIdOptimizer fixture = new BlockIdOptimizer(Long.class, BLOCK_SIZE);
+
+        for(long expected = 1; expected <= BLOCK_SIZE; expected++) {
+            assertEquals(expected, fixture.generate(sequence));
+        }
+        assertEquals(1, sequence.calls.get());
+
+        assertEquals((long) BLOCK_SIZE + 1, fixture.generate(sequence));
+        assertEquals(2, sequence.calls.get());
+    }
+
+    @Test
+    public void testTwoNodesNeverCollide() {
+        BlockIdOptimizer nodeA = new BlockIdOptimizer(Long.class, BLOCK_SIZE);
+        BlockIdOptimizer nodeB = new BlockIdOptimizer(Long.class, BLOCK_SIZE);
+        Set<Object> seen = ConcurrentHashMap.newKeySet();
+
+        for(int i = 0; i < BLOCK_SIZE * 3; i++) {
+            assertTrue(seen.add(nodeA.generate(sequence)));
+            assertTrue(seen.add(nodeB.generate(sequence)));
+        }
+        assertEquals(6, sequence.calls.get());
+    }
+
+    @Test
+    public void testConcurrentCallersGetEveryIdExactlyOnce() throws Exception {
+        BlockIdOptimizer fixture = new BlockIdOptimizer(Long.class, BLOCK_SIZE);
+        int threads = 8;
+        int perThread = 10_000;
+        Set<Object> seen = ConcurrentHashMap.newKeySet();
+        AtomicInteger duplicates = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+
+        List<Thread> workers = new ArrayList<>();
+        for(int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+
+                for(int i = 0; i < perThread; i++) {
+                    if(!seen.add(fixture.generate(sequence))) {
+                        duplicates.incrementAndGet();
+                    }
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+
+        start.countDown();
+        for(Thread worker : workers) {
+            worker.join();
+        }
+
+        assertEquals(0, duplicates.get());
+        assertEquals(threads * perThread, seen.size());
+        //No block was fetched twice, and none were wasted.
+        assertEquals(threads * perThread / BLOCK_SIZE, sequence.calls.get());
+    }
+
+    private static class FakeSequence implements AccessCallback {
+        private final AtomicLong next = new AtomicLong(1);
+        private final AtomicInteger calls = new AtomicInteger();
+
+        @Override
+        public IntegralDataTypeHolder getNextValue() {
+            calls.incrementAndGet();
+            return IdentifierGeneratorHelper.getIntegralDataTypeHolder(Long.class)
+                                            .initialize(next.getAndAdd(BLOCK_SIZE));
+        }
+
+        @Override
+        public String getTenantIdentifier() {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package ca.purpleowl.examples.swagger.jpa.pool;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+
+import java.sql.Connection;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+
+public class AdaptivePoolSizerTest {
+    private static final long TEN_SECONDS = TimeUnit.SECONDS.toNanos(10);
+
+    private PoolSizingProperties properties;
+    private AdaptivePoolSizer fixture;
+
+    @Before
+    public void setUp() {
+        properties = new PoolSizingProperties();
+        fixture = new AdaptivePoolSizer(Collections.emptyList(), null, properties);
+    }
+
+    @Test
+    public void testSizesToAverageDemandPlusHeadroom() {
+        //80 seconds of connection time over 10 seconds is 8 connections busy on average, plus 25% is 10.
+        assertEquals(10, fixture.targetSize(10, usage(1000, 0, 1000, 80_000), 0, TEN_SECONDS, "test"));
+    }
+
+    @Test
+    public void testShrinksAtMostOneStepAtATime() {
+        assertEquals(16, fixture.targetSize(20, usage(10, 0, 10, 100), 0, TEN_SECONDS, "test"));
+    }
+
+    @Test
+    public void testGrowsWhenThreadsAreWaiting() {
+        assertEquals(11, fixture.targetSize(10, usage(1000, 0, 1000, 40_000), 3, TEN_SECONDS, "test"));
+    }
+
+    @Test
+    public void testGrowsWhenAcquiresAreSlow() {
+        long slowAcquires = 1000 * TimeUnit.MILLISECONDS.toNanos(20);
+        assertEquals(11, fixture.targetSize(10, usage(1000, slowAcquires, 1000, 40_000), 0, TEN_SECONDS, "test"));
+    }
+
+    @Test
+    public void testStaysWithinBounds() {
+        properties.setMaximumPoolSize(12);
+        assertEquals(12, fixture.targetSize(10, usage(1000, 0, 1000, 500_000), 5, TEN_SECONDS, "test"));
+        assertEquals(4, fixture.targetSize(5, usage(0, 0, 0, 0), 0, TEN_SECONDS, "test"));
+    }
+
+    @Test
+    public void testResizesARunningPool() throws Exception {
+        AtomicLong nanoTime = new AtomicLong();
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        beanFactory.registerSingleton("meterRegistry", new SimpleMeterRegistry());
+        PoolUsageMetricsTrackerFactory usage =
+                new PoolUsageMetricsTrackerFactory(beanFactory.getBeanProvider(MeterRegistry.class));
+
+        try(HikariDataSource pool = new HikariDataSource()) {
+            pool.setJdbcUrl("jdbc:h2:mem:sizer");
+            pool.setPoolName("sizer");
+            pool.setMaximumPoolSize(10);
+            pool.setMetricsTrackerFactory(usage);
+            try(Connection ignored = pool.getConnection()) {
+                //Just getting the pool started.
+            }
+
+            properties.setMinimumPoolSize(2);
+            AdaptivePoolSizer sizer = new AdaptivePoolSizer(Collections.singletonList(pool), usage, properties, nanoTime::get);
+            sizer.resize();
+            nanoTime.addAndGet(TEN_SECONDS);
+            sizer.resize();
+
+            //Next to no use at all, so down by one step.
+            assertEquals(6, pool.getMaximumPoolSize());
+        }
+    }
+
+    private static PoolUsageMetricsTrackerFactory.PoolUsage.Snapshot usage(long acquires,
+                                                                            long acquireNanos,
+                                                                            long releases,
+                                                                            long holdMillis) {
+        return new PoolUsageMetricsTrackerFactory.PoolUsage.Snapshot(acquires, acquireNanos, releases, holdMillis);
+    }
+}
@@ -0,0 +1,39 @@
+package ca.purpleowl.examples.swagger.jpa.pool;
+
+import ca.purpleowl.examples.swagger.service.ProgrammerService;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+public class ConnectionHoldMetricsTest {
+    @Autowired
+    private ProgrammerService programmerService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    public void testHoldTimeIsAttributedToTheServiceMethod() {
+        programmerService.findAllProgrammers();
+
+        assertTrue(meterRegistry.get(PoolUsageMetricsTrackerFactory.HOLD_TIMER)
+                                .tags("pool", "primary", "operation", "ProgrammerService.findAllProgrammers")
+                                .timer()
+                                .count() > 0);
+    }
+
+    @Test
+    public void testHikariMetricsArePublished() {
+        assertNotNull(meterRegistry.get("hikaricp.connections.active").tag("pool", "primary").gauge());
+        assertNotNull(meterRegistry.get("hikaricp.connections.pending").tag("pool", "primary").gauge());
+        assertNotNull(meterRegistry.get("hikaricp.connections.acquire").tag("pool", "primary").timer());
+    }
+}
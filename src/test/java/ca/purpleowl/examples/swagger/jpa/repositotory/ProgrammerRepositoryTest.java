@@ -1,24 +1,34 @@
 package ca.purpleowl.examples.swagger.jpa.repositotory;
 
+import ca.purpleowl.examples.swagger.config.ChangeTrackingConfig;
 import ca.purpleowl.examples.swagger.jpa.entity.Programmer;
 import ca.purpleowl.examples.swagger.jpa.entity.Team;
 import ca.purpleowl.examples.swagger.jpa.repository.ProgrammerRepository;
+import ca.purpleowl.examples.swagger.jpa.repository.ProgrammerSpecifications;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.test.context.junit4.SpringRunner;
 
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
+import java.time.LocalDate;
+import java.util.Arrays;
 import java.util.List;
+import java.util.stream.Collectors;
 
+import static ca.purpleowl.examples.swagger.utils.TestModelInflater.buildMockProgrammer;
 import static ca.purpleowl.examples.swagger.utils.TestModelInflater.buildMockTeam;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 @RunWith(SpringRunner.class)
 @DataJpaTest
+@Import(ChangeTrackingConfig.class)
 public class ProgrammerRepositoryTest {
     @Autowired
     private ProgrammerRepository fixture;
@@ -54,4 +64,42 @@ public class ProgrammerRepositoryTest {
                 programmer -> assertTrue(team.getProgrammers().contains(programmer))
         );
     }
+
+    @Test
+    public void testFindAllFilteredAndSorted() {
+        Team team = buildMockTeam(null, "Team", "Java", null, "carol", "alice", "bob");
+        team.getProgrammers().get(0).setDateHired(LocalDate.of(2010, 1, 1));
+        team.getProgrammers().get(1).setDateHired(LocalDate.of(2012, 1, 1));
+        team.getProgrammers().get(2).setDateHired(LocalDate.of(2014, 1, 1));
+        entityManager.persist(team);
+
+        Programmer loner = buildMockProgrammer("dave", null);
+        loner.setDateHired(LocalDate.of(2012, 6, 1));
+        entityManager.persist(loner);
+        entityManager.flush();
+
+        Specification<Programmer> spec = Specification.where(ProgrammerSpecifications.onTeam(team.getId()))
+                                                      .and(ProgrammerSpecifications.hiredOnOrAfter(LocalDate.of(2011, 1, 1)))
+                                                      .and(ProgrammerSpecifications.hiredOnOrBefore(null));
+
+        List<Programmer> result = fixture.findAll(spec, Sort.by(Sort.Direction.DESC, "dateHired"));
+
+        assertEquals(Arrays.asList("bob", "alice"), result.stream().map(Programmer::getName).collect(Collectors.toList()));
+    }
+
+    /**
+     * The filters are only worth pushing down to the database if it can answer them from an index.
+     */
+    @Test
+    public void testFiltersAreAnsweredFromIndexes() {
+        String byTeam = explain("SELECT * FROM programmer WHERE team_id = 1 ORDER BY name");
+        String byHireDate = explain("SELECT * FROM programmer WHERE date_hired >= DATE '2011-01-01'");
+
+        assertTrue(byTeam, byTeam.contains("IDX_PROGRAMMER_TEAM_NAME"));
+        assertTrue(byHireDate, byHireDate.contains("IDX_PROGRAMMER_DATE_HIRED"));
+    }
+
+    private String explain(String sql) {
+        return entityManager.createNativeQuery("EXPLAIN " + sql).getSingleResult().toString().toUpperCase();
+    }
 }
@@ -0,0 +1,256 @@
+package ca.purpleowl.examples.swagger.rest.admission;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.FilterChain;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AdmissionControlFilterTest {
+    private final AtomicLong nanoTime = new AtomicLong();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private AdmissionControlProperties properties;
+
+    @Before
+    public void setUp() {
+        properties = new AdmissionControlProperties();
+    }
+
+    @Test
+    public void testEndpointClassification() {
+        assertEquals(EndpointClass.SINGLE_READ, EndpointClass.of(new MockHttpServletRequest("GET", "/programmer/1")));
+        assertEquals(EndpointClass.LIST_READ, EndpointClass.of(new MockHttpServletRequest("GET", "/programmer")));
+        assertEquals(EndpointClass.LIST_READ, EndpointClass.of(new MockHttpServletRequest("GET", "/team/1/programmers")));
+        assertEquals(EndpointClass.WRITE, EndpointClass.of(new MockHttpServletRequest("POST", "/team")));
+    }
+
+    @Test
+    public void testClientOverItsRateGets429WithRetryAfter() throws Exception {
+        properties.setClientRequestsPerSecond(1);
+        properties.setClientBurst(2);
+        AdmissionControlFilter fixture = new AdmissionControlFilter(properties, meterRegistry, nanoTime::get);
+
+        assertEquals(200, call(fixture, "client-a").getStatus());
+        assertEquals(200, call(fixture, "client-a").getStatus());
+
+        MockHttpServletResponse rejected = call(fixture, "client-a");
+        assertEquals(429, rejected.getStatus());
+        assertEquals("1", rejected.getHeader("Retry-After"));
+
+        //Somebody else's bucket is still full.
+        assertEquals(200, call(fixture, "client-b").getStatus());
+
+        //...and client-a gets its token back after a second.
+        nanoTime.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        assertEquals(200, call(fixture, "client-a").getStatus());
+
+        assertEquals(1.0, meterRegistry.get("purpleowl.admission.rejected")
+                                       .tag("reason", "rate_limited")
+                                       .counter()
+                                       .count(), 0.0);
+    }
+
+    @Test
+    public void testMadeUpClientIdsDontGetAroundTheSourceLimit() throws Exception {
+        properties.setSourceRequestsPerSecond(1);
+        properties.setSourceBurst(3);
+        AdmissionControlFilter fixture = new AdmissionControlFilter(properties, meterRegistry, nanoTime::get);
+
+        for(int i = 0; i < 3; i++) {
+            assertEquals(200, call(fixture, "client-" + i).getStatus());
+        }
+        assertEquals(429, call(fixture, "client-3").getStatus());
+        assertEquals(429, call(fixture, null).getStatus());
+
+        //Somewhere else entirely has its own limit.
+        assertEquals(200, call(fixture, "client-3", "10.0.0.2").getStatus());
+    }
+
+    @Test
+    public void testBatchesPayForEveryRequestInThem() throws Exception {
+        properties.setClientRequestsPerSecond(1);
+        properties.setClientBurst(10);
+        AdmissionControlFilter fixture = new AdmissionControlFilter(properties, meterRegistry, nanoTime::get);
+        MockHttpServletRequest batch = new MockHttpServletRequest("POST", "/batch");
+        batch.addHeader("X-Client-Id", "client-a");
+
+        //The filter takes one, then the BatchDispatcher takes one for each of the other requests in the batch.
+        fixture.doFilter(batch, new MockHttpServletResponse(), new MockFilterChain());
+        fixture.chargeExtra(batch, new MockHttpServletResponse(), 5);
+
+        MockHttpServletResponse rejected = new MockHttpServletResponse();
+        try {
+            fixture.chargeExtra(batch, rejected, 5);
+            fail("a batch of six got in with four tokens left");
+        } catch(RateLimitedException e) {
+            assertEquals("1", rejected.getHeader("Retry-After"));
+        }
+
+        //What's left is still there for smaller requests.
+        assertEquals(200, call(fixture, "client-a").getStatus());
+        assertEquals(1.0, meterRegistry.get("purpleowl.admission.rejected")
+                                       .tags("class", "write", "reason", "rate_limited")
+                                       .counter()
+                                       .count(), 0.0);
+    }
+
+    @Test
+    public void testTrackedBucketsAreBounded() throws Exception {
+        AdmissionControlFilter fixture = new AdmissionControlFilter(properties, meterRegistry, nanoTime::get);
+
+        //Two buckets each: the address's and the client's.
+        for(int i = 0; i < AdmissionControlFilter.MAX_TRACKED_BUCKETS; i++) {
+            assertEquals(200, call(fixture, "client-" + i, "10.0." + (i / 256) + "." + (i % 256)).getStatus());
+        }
+
+        assertEquals(AdmissionControlFilter.MAX_TRACKED_BUCKETS, fixture.trackedBuckets());
+    }
+
+    @Test
+    public void testRequestsPastTheQueueBudgetGet503() throws Exception {
+        AdmissionControlProperties.Limit limit = properties.getLimits().get(EndpointClass.WRITE);
+        limit.setMaxConcurrent(1);
+        limit.setMaxQueueWait(Duration.ofMillis(10));
+        AdmissionControlFilter fixture = new AdmissionControlFilter(properties, meterRegistry);
+
+        CountDownLatch inside = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        FilterChain slowChain = (request, response) -> {
+            inside.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> holder = executor.submit(() -> {
+                fixture.doFilter(new MockHttpServletRequest("POST", "/team"), new MockHttpServletResponse(), slowChain);
+                return null;
+            });
+            assertTrue(inside.await(5, TimeUnit.SECONDS));
+
+            MockHttpServletResponse rejected = new MockHttpServletResponse();
+            fixture.doFilter(new MockHttpServletRequest("POST", "/programmer"), rejected, new MockFilterChain());
+            assertEquals(503, rejected.getStatus());
+            assertEquals("1", rejected.getHeader("Retry-After"));
+
+            //Reads have their own slots, so they aren't held up by the writes.
+            MockHttpServletResponse read = new MockHttpServletResponse();
+            fixture.doFilter(new MockHttpServletRequest("GET", "/team/1"), read, new MockFilterChain());
+            assertEquals(200, read.getStatus());
+            assertNull(read.getHeader("Retry-After"));
+
+            release.countDown();
+            holder.get(5, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1.0, meterRegistry.get("purpleowl.admission.rejected")
+                                       .tags("class", "write", "reason", "overloaded")
+                                       .counter()
+                                       .count(), 0.0);
+        assertEquals(0.0, meterRegistry.get("purpleowl.admission.in.flight").tag("class", "write").gauge().value(), 0.0);
+    }
+
+    @Test
+    public void testBatchedRequestsTakeASlotOfTheirOwnClass() throws Exception {
+        AdmissionControlProperties.Limit limit = properties.getLimits().get(EndpointClass.LIST_READ);
+        limit.setMaxConcurrent(1);
+        limit.setMaxQueueWait(Duration.ofMillis(10));
+        AdmissionControlFilter fixture = new AdmissionControlFilter(properties, meterRegistry);
+        MockHttpServletRequest batch = new MockHttpServletRequest("POST", "/batch");
+
+        CountDownLatch inside = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AdmissionControlFilter.Admitted slowListRead = () -> {
+            inside.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> holder = executor.submit(() -> {
+                fixture.admitWithin(batch, new MockHttpServletRequest("GET", "/programmer"),
+                                    new MockHttpServletResponse(), slowListRead);
+                return null;
+            });
+            assertTrue(inside.await(5, TimeUnit.SECONDS));
+
+            //Another batch's list read has to wait for the one slot, the same as it would on its own.
+            AtomicBoolean ran = new AtomicBoolean();
+            MockHttpServletResponse rejected = new MockHttpServletResponse();
+            fixture.admitWithin(batch, new MockHttpServletRequest("GET", "/team"), rejected, () -> ran.set(true));
+            assertFalse(ran.get());
+            assertEquals(503, rejected.getStatus());
+            assertEquals("1", rejected.getHeader("Retry-After"));
+
+            //Writes are covered by the batch's own slot.
+            fixture.admitWithin(batch, new MockHttpServletRequest("POST", "/team"), new MockHttpServletResponse(),
+                                () -> ran.set(true));
+            assertTrue(ran.get());
+
+            release.countDown();
+            holder.get(5, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1.0, meterRegistry.get("purpleowl.admission.rejected")
+                                       .tags("class", "list_read", "reason", "overloaded")
+                                       .counter()
+                                       .count(), 0.0);
+        assertEquals(0.0, meterRegistry.get("purpleowl.admission.in.flight").tag("class", "list_read").gauge().value(), 0.0);
+    }
+
+    @Test
+    public void testDisabledLetsEverythingThrough() throws Exception {
+        properties.setEnabled(false);
+        properties.setClientBurst(1);
+        properties.setClientRequestsPerSecond(0.001);
+        AdmissionControlFilter fixture = new AdmissionControlFilter(properties, meterRegistry, nanoTime::get);
+
+        for(int i = 0; i < 5; i++) {
+            assertEquals(200, call(fixture, "client-a").getStatus());
+        }
+    }
+
+    private MockHttpServletResponse call(AdmissionControlFilter fixture, String clientId) throws Exception {
+        return call(fixture, clientId, "127.0.0.1");
+    }
+
+    private MockHttpServletResponse call(AdmissionControlFilter fixture, String clientId, String remoteAddress) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/programmer/1");
+        request.setRemoteAddr(remoteAddress);
+        if(clientId != null) {
+            request.addHeader("X-Client-Id", clientId);
+        }
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        fixture.doFilter(request, response, new MockFilterChain());
+        return response;
+    }
+}
@@ -0,0 +1,122 @@
+package ca.purpleowl.examples.swagger.rest.compression;
+
+import ca.purpleowl.examples.swagger.jpa.entity.Team;
+import ca.purpleowl.examples.swagger.jpa.repository.ProgrammerRepository;
+import ca.purpleowl.examples.swagger.jpa.repository.TeamRepository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.util.StreamUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static ca.purpleowl.examples.swagger.utils.TestModelInflater.buildMockTeam;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compression against the real server.  The JDK's HttpClient doesn't decompress anything for us, so we get to see
+ * exactly what went over the wire.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+                properties = "spring.datasource.url=jdbc:h2:mem:compression")
+public class CompressionFilterTest {
+    private static final String SWAGGER_UI_BUNDLE = "/webjars/springfox-swagger-ui/swagger-ui-bundle.js?v=2.9.2";
+
+    @LocalServerPort
+    private Integer localServerPort;
+
+    @Autowired
+    private TeamRepository teamRepository;
+
+    @Autowired
+    private ProgrammerRepository programmerRepository;
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    private Team team;
+
+    @Before
+    public void setUp() {
+        String[] names = new String[200];
+        for(int i = 0; i < names.length; i++) {
+            names[i] = "programmer" + i;
+        }
+        team = teamRepository.save(buildMockTeam(null, "team", "Java", null, names));
+    }
+
+    @After
+    public void tearDown() {
+        teamRepository.deleteAll();
+        programmerRepository.deleteAll();
+    }
+
+    @Test
+    public void testLargeResponsesAreCompressed() throws Exception {
+        HttpResponse<byte[]> plain = get("/programmer", null);
+        HttpResponse<byte[]> gzipped = get("/programmer", "gzip, deflate");
+
+        assertFalse(plain.headers().firstValue("Content-Encoding").isPresent());
+        assertEquals("gzip", gzipped.headers().firstValue("Content-Encoding").get());
+        assertTrue(gzipped.headers().allValues("Vary").contains("Accept-Encoding"));
+        assertEquals(gzipped.body().length, gzipped.headers().firstValueAsLong("Content-Length").getAsLong());
+        assertTrue(gzipped.body().length * 10 < plain.body().length);
+        assertArrayEquals(plain.body(), gunzip(gzipped.body()));
+    }
+
+    @Test
+    public void testSmallResponsesAreLeftAlone() throws Exception {
+        HttpResponse<byte[]> response = get("/team/" + team.getId(), "gzip");
+
+        assertEquals(200, response.statusCode());
+        assertFalse(response.headers().firstValue("Content-Encoding").isPresent());
+        assertTrue(response.headers().allValues("Vary").contains("Accept-Encoding"));
+        assertTrue(response.headers().firstValue("ETag").isPresent());
+    }
+
+    @Test
+    public void testSwaggerUiIsServedCompressedAndCached() throws Exception {
+        HttpResponse<byte[]> plain = get(SWAGGER_UI_BUNDLE, null);
+        HttpResponse<byte[]> gzipped = get(SWAGGER_UI_BUNDLE, "gzip");
+
+        assertEquals("gzip", gzipped.headers().firstValue("Content-Encoding").get());
+        assertArrayEquals(plain.body(), gunzip(gzipped.body()));
+        assertTrue(gzipped.headers().firstValue("Content-Type").get().contains("javascript"));
+        for(HttpResponse<byte[]> response : List.of(plain, gzipped)) {
+            assertEquals("public, max-age=31536000, immutable", response.headers().firstValue("Cache-Control").get());
+        }
+
+        HttpResponse<byte[]> page = get("/swagger-ui.html", "gzip");
+        assertEquals(200, page.statusCode());
+        assertEquals("gzip", page.headers().firstValue("Content-Encoding").get());
+        assertEquals("no-cache", page.headers().firstValue("Cache-Control").get());
+    }
+
+    private HttpResponse<byte[]> get(String path, String acceptEncoding) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create("http://localhost:" + localServerPort + path));
+        if(acceptEncoding != null) {
+            request.header("Accept-Encoding", acceptEncoding);
+        }
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    private static byte[] gunzip(byte[] gzipped) throws IOException {
+        try(GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(gzipped))) {
+            return StreamUtils.copyToByteArray(in);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package ca.purpleowl.examples.swagger.rest.compression;
+
+import org.junit.Test;
+import org.springframework.util.StreamUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class GzipCompressorTest {
+    private final GzipCompressor compressor = new GzipCompressor(new CompressionProperties());
+
+    @Test
+    public void testRoundTripsThroughGzip() throws IOException {
+        StringBuilder json = new StringBuilder();
+        for(int i = 0; i < 5000; i++) {
+            json.append("{\"programmerId\":").append(i).append(",\"name\":\"programmer").append(i).append("\"},");
+        }
+        byte[] random = new byte[100_000];
+        new Random(42).nextBytes(random);
+
+        //The same pooled compressor gets used for each of these in turn, so they also check that it's reset properly.
+        for(byte[] original : new byte[][]{json.toString().getBytes(StandardCharsets.UTF_8), new byte[0], random, "x".getBytes()}) {
+            assertArrayEquals(original, gunzip(compressor.compress(new ByteArrayInputStream(original), original.length)));
+        }
+    }
+
+    @Test
+    public void testAcceptEncoding() {
+        assertTrue(GzipCompressor.acceptsGzip("gzip"));
+        assertTrue(GzipCompressor.acceptsGzip("deflate, gzip;q=0.5, br"));
+        assertTrue(GzipCompressor.acceptsGzip("*"));
+        assertTrue(GzipCompressor.acceptsGzip("GZIP"));
+
+        assertFalse(GzipCompressor.acceptsGzip(null));
+        assertFalse(GzipCompressor.acceptsGzip("identity"));
+        assertFalse(GzipCompressor.acceptsGzip("gzip;q=0"));
+        assertFalse(GzipCompressor.acceptsGzip("*, gzip;q=0"));
+        assertFalse(GzipCompressor.acceptsGzip("gzip;q=0.0, *"));
+    }
+
+    private static byte[] gunzip(byte[] gzipped) throws IOException {
+        try(GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(gzipped))) {
+            return StreamUtils.copyToByteArray(in);
+        }
+    }
+}
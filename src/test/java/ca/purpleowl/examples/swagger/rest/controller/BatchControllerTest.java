@@ -0,0 +1,119 @@
+package ca.purpleowl.examples.swagger.rest.controller;
+
+import ca.purpleowl.examples.swagger.jpa.repository.ProgrammerRepository;
+import ca.purpleowl.examples.swagger.jpa.repository.TeamRepository;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Batches against the real controllers and database.  Requests are written out as JSON, as a client would send them.
+ */
+@RunWith(SpringRunner.class)
+@ActiveProfiles("query-count")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class BatchControllerTest {
+    @Autowired
+    private TestRestTemplate testRestTemplate;
+
+    @Autowired
+    private TeamRepository teamRepository;
+
+    @Autowired
+    private ProgrammerRepository programmerRepository;
+
+    @After
+    public void tearDown() {
+        teamRepository.deleteAll();
+        programmerRepository.deleteAll();
+    }
+
+    @Test
+    public void testChainOfCallsInOneRoundTrip() {
+        JsonNode result = batch("{\"atomic\":true,\"requests\":[" +
+                                "{\"method\":\"POST\",\"path\":\"/programmer\",\"body\":{\"name\":\"alice\",\"dateHired\":\"2015-03-02\"}}," +
+                                "{\"method\":\"POST\",\"path\":\"/team\",\"body\":{\"name\":\"mobile\",\"teamFocus\":\"Kotlin\",\"lastStandUp\":\"2018-12-03T09:30:00\"}}," +
+                                "{\"method\":\"POST\",\"path\":\"/team/{{1.teamId}}/add-programmer/{{0.programmerId}}\"}," +
+                                "{\"method\":\"GET\",\"path\":\"/programmer?teamId={{1.teamId}}\"}]}").getBody();
+
+        assertFalse(result.get("rolledBack").asBoolean());
+        JsonNode responses = result.get("responses");
+        assertEquals(4, responses.size());
+        responses.forEach(response -> assertEquals(response.toString(), 200, response.get("status").asInt()));
+        assertTrue(responses.get(0).get("headers").has("ETag"));
+
+        long teamId = responses.get(1).get("body").get("teamId").asLong();
+        JsonNode listed = responses.get(3).get("body").get("_embedded").get("programmerAssetList");
+        assertEquals(1, listed.size());
+        assertEquals("alice", listed.get(0).get("name").asText());
+        assertEquals("mobile", listed.get(0).get("teamName").asText());
+        //Links are built against the batch request's host, the same as they'd be for the request on its own.
+        assertTrue(listed.get(0).get("_links").get("team").get("href").asText().endsWith("/team/" + teamId));
+        assertEquals(1, programmerRepository.findAllByTeamId(teamId).size());
+    }
+
+    @Test
+    public void testAtomicBatchRollsBackOnFailure() {
+        JsonNode result = batch("{\"atomic\":true,\"requests\":[" +
+                                "{\"method\":\"POST\",\"path\":\"/programmer\",\"body\":{\"name\":\"bob\",\"dateHired\":\"2015-03-02\"}}," +
+                                "{\"method\":\"POST\",\"path\":\"/team/999999/add-programmer/{{0.programmerId}}\"}," +
+                                "{\"method\":\"GET\",\"path\":\"/programmer/{{0.programmerId}}\"}]}").getBody();
+
+        assertTrue(result.get("rolledBack").asBoolean());
+        JsonNode responses = result.get("responses");
+        assertEquals(200, responses.get(0).get("status").asInt());
+        assertEquals(404, responses.get(1).get("status").asInt());
+        assertEquals(424, responses.get(2).get("status").asInt());
+        assertEquals(0, programmerRepository.count());
+    }
+
+    @Test
+    public void testRequestsStandAloneWhenNotAtomic() {
+        JsonNode result = batch("{\"requests\":[" +
+                                "{\"method\":\"GET\",\"path\":\"/team/999999\"}," +
+                                "{\"method\":\"POST\",\"path\":\"/programmer\",\"body\":{\"name\":\"carol\",\"dateHired\":\"2015-03-02\"}}," +
+                                "{\"method\":\"PATCH\",\"path\":\"/team/{{0.teamId}}\",\"body\":{\"name\":\"renamed\"}}," +
+                                "{\"method\":\"PATCH\",\"path\":\"/programmer/{{1.programmerId}}\",\"headers\":{\"If-Match\":\"\\\"12345\\\"\"},\"body\":{\"name\":\"carol\"}}]}")
+                .getBody();
+
+        assertFalse(result.has("rolledBack"));
+        JsonNode responses = result.get("responses");
+        assertEquals(404, responses.get(0).get("status").asInt());
+        assertEquals(200, responses.get(1).get("status").asInt());
+        //It needed the Team from the first request, which wasn't found.
+        assertEquals(424, responses.get(2).get("status").asInt());
+        //Sub-requests get their own headers.
+        assertEquals(412, responses.get(3).get("status").asInt());
+        assertEquals(1, programmerRepository.count());
+    }
+
+    @Test
+    public void testInvalidBatchesAreRefused() {
+        assertEquals(HttpStatus.BAD_REQUEST,
+                     batch("{\"requests\":[{\"method\":\"GET\",\"path\":\"/events\"}]}").getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST,
+                     batch("{\"requests\":[{\"method\":\"TRACE\",\"path\":\"/team\"}]}").getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST, batch("{\"requests\":[]}").getStatusCode());
+    }
+
+    private ResponseEntity<JsonNode> batch(String json) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        return testRestTemplate.postForEntity("/batch", new HttpEntity<>(json, headers), JsonNode.class);
+    }
+}
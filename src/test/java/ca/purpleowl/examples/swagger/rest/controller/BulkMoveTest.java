@@ -0,0 +1,221 @@
+package ca.purpleowl.examples.swagger.rest.controller;
+
+import ca.purpleowl.examples.swagger.jpa.changes.ChangeSequenceAllocator;
+import ca.purpleowl.examples.swagger.jpa.entity.Programmer;
+import ca.purpleowl.examples.swagger.jpa.entity.Team;
+import ca.purpleowl.examples.swagger.jpa.repository.ProgrammerRepository;
+import ca.purpleowl.examples.swagger.jpa.repository.TeamRepository;
+import ca.purpleowl.examples.swagger.service.stats.TeamStatistics;
+import ca.purpleowl.examples.swagger.utils.QueryCountHarness;
+import ca.purpleowl.examples.swagger.utils.QueryCountHarness.QueryCount;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+import static ca.purpleowl.examples.swagger.utils.TestModelInflater.buildMockProgrammer;
+import static ca.purpleowl.examples.swagger.utils.TestModelInflater.buildMockTeam;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Moving and removing Programmers in bulk, against the real database.
+ *
+ * This one gets a database to itself.  It saves more Programmers in one go than fit in a block of IDs, and if another
+ * test's context has recreated the shared in-memory schema in the meantime, the sequence starts over underneath the
+ * block we're part way through and hands out IDs we've already used.
+ */
+@RunWith(SpringRunner.class)
+@ActiveProfiles("query-count")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+                properties = "spring.datasource.url=jdbc:h2:mem:bulk-move")
+public class BulkMoveTest {
+    @Autowired
+    private TestRestTemplate testRestTemplate;
+
+    @Autowired
+    private TeamRepository teamRepository;
+
+    @Autowired
+    private ProgrammerRepository programmerRepository;
+
+    @Autowired
+    private TeamStatistics teamStatistics;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private ChangeSequenceAllocator changeSequenceAllocator;
+
+    @After
+    public void tearDown() {
+        teamRepository.deleteAll();
+        programmerRepository.deleteAll();
+    }
+
+    @Test
+    public void testMovingAWholeTeamCostsTheSameWhateverItsSize() {
+        Team smallFrom = teamWith("small", 5);
+        Team largeFrom = teamWith("large", 200);
+        Team to = teamWith("to", 0);
+        QueryCountHarness harness = new QueryCountHarness(entityManagerFactory);
+
+        QueryCount small = harness.measure(() -> assertEquals(5, move(smallFrom, to, "").get("moved").asInt()));
+        QueryCount large = harness.measure(() -> assertEquals(200, move(largeFrom, to, "").get("moved").asInt()));
+
+        large.assertStatementsMatch(small).assertNoCollectionFetches();
+        assertTrue(programmerRepository.findAllByTeamId(largeFrom.getId()).isEmpty());
+        assertEquals(205, programmerRepository.findAllByTeamId(to.getId()).size());
+        assertEquals(205, teamStatistics.findTeamStats(to.getId()).getHeadcount());
+    }
+
+    @Test
+    public void testOnlyTheListedProgrammersMove() {
+        Team from = teamWith("from", 4);
+        Team to = teamWith("to", 0);
+        Team elsewhere = teamWith("elsewhere", 1);
+        List<Programmer> programmers = programmerRepository.findAllByTeamId(from.getId());
+        Programmer notOnTheTeam = programmerRepository.findAllByTeamId(elsewhere.getId()).get(0);
+
+        JsonNode result = move(from, to, "?programmerIds=" + programmers.get(0).getId() + "," + programmers.get(2).getId() +
+                                         "," + notOnTheTeam.getId());
+
+        assertEquals(2, result.get("moved").asInt());
+        assertEquals(2, programmerRepository.findAllByTeamId(from.getId()).size());
+        assertEquals(1, programmerRepository.findAllByTeamId(elsewhere.getId()).size());
+    }
+
+    /**
+     * The IDs come straight from the client, so they can be anything.  Only the Programmers that actually move should
+     * use up change sequences, however far apart the listed IDs are.
+     */
+    @Test
+    public void testSparseAndExtremeIdsOnlyUseUpSequencesForWhatMoves() {
+        Team from = teamWith("from", 3);
+        Team to = teamWith("to", 0);
+        List<Programmer> programmers = programmerRepository.findAllByTeamId(from.getId());
+        long before = changeSequenceAllocator.safeHighWaterMark();
+
+        JsonNode result = move(from, to, "?programmerIds=" + programmers.get(0).getId() + "," +
+                                         (programmers.get(2).getId() + 1_000_000) + "," + Long.MAX_VALUE);
+
+        assertEquals(1, result.get("moved").asInt());
+        assertEquals(before + 1, changeSequenceAllocator.safeHighWaterMark());
+        assertEquals(to.getId(), programmerRepository.findWithTeamById(programmers.get(0).getId()).get().getTeam().getId());
+        assertEquals(2, programmerRepository.findAllByTeamId(from.getId()).size());
+
+        result = move(from, to, "?programmerIds=" + programmers.get(1).getId() + "," + programmers.get(2).getId());
+
+        assertEquals(2, result.get("moved").asInt());
+        assertEquals(before + 3, changeSequenceAllocator.safeHighWaterMark());
+    }
+
+    @Test
+    public void testIdsThatCannotExistAreRejected() {
+        Team from = teamWith("from", 1);
+        Team to = teamWith("to", 0);
+        String tooMany = LongStream.rangeClosed(1, 1001).mapToObj(Long::toString).collect(Collectors.joining(","));
+
+        for(String programmerIds : new String[]{"0", "-1", "1,-9223372036854775808", tooMany}) {
+            ResponseEntity<String> response = testRestTemplate.postForEntity("/team/" + from.getId() + "/move-to/" +
+                                                                              to.getId() + "?programmerIds=" + programmerIds,
+                                                                              null,
+                                                                              String.class);
+            assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        }
+        ResponseEntity<String> response = testRestTemplate.postForEntity("/team/" + from.getId() +
+                                                                          "/remove-programmers?programmerIds=0",
+                                                                          null,
+                                                                          String.class);
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        assertEquals(1, programmerRepository.findAllByTeamId(from.getId()).size());
+    }
+
+    @Test
+    public void testRemovingProgrammers() {
+        Team team = teamWith("team", 3);
+        Programmer programmer = programmerRepository.findAllByTeamId(team.getId()).get(0);
+
+        JsonNode result = testRestTemplate.postForObject("/team/" + team.getId() + "/remove-programmers", null, JsonNode.class);
+
+        assertEquals(3, result.get("moved").asInt());
+        assertFalse(result.has("toTeamId"));
+        assertNull(programmerRepository.findWithTeamById(programmer.getId()).get().getTeam());
+        assertEquals(programmer.getVersion() + 1, (long) programmerRepository.findById(programmer.getId()).get().getVersion());
+    }
+
+    /**
+     * The bulk UPDATE numbers the changes itself, so make sure a client syncing changes a page at a time still sees
+     * every moved Programmer exactly once.
+     */
+    @Test
+    public void testMovedProgrammersShowUpInTheChangeFeed() {
+        Team from = teamWith("from", 5);
+        Team to = teamWith("to", 0);
+        String token = testRestTemplate.getForObject("/programmer/changes", JsonNode.class).get("nextToken").asText();
+
+        move(from, to, "");
+
+        Set<String> seen = new HashSet<>();
+        boolean more = true;
+        while(more) {
+            JsonNode page = testRestTemplate.getForObject("/programmer/changes?limit=2&since=" + token, JsonNode.class);
+            page.get("_embedded").get("programmerAssetList").forEach(programmer -> {
+                assertEquals(to.getId().longValue(), programmer.get("teamId").asLong());
+                assertTrue(seen.add(programmer.get("name").asText()));
+            });
+            token = page.get("nextToken").asText();
+            more = page.get("moreAvailable").asBoolean();
+        }
+
+        assertEquals(5, seen.size());
+    }
+
+    @Test
+    public void testMissingTeamsAreNotFound() {
+        Team team = teamWith("team", 1);
+
+        ResponseEntity<String> response = testRestTemplate.postForEntity("/team/" + team.getId() + "/move-to/" +
+                                                                          (team.getId() + 1000),
+                                                                          null,
+                                                                          String.class);
+
+        assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
+        assertEquals(1, programmerRepository.findAllByTeamId(team.getId()).size());
+    }
+
+    private JsonNode move(Team from, Team to, String query) {
+        return testRestTemplate.postForObject("/team/" + from.getId() + "/move-to/" + to.getId() + query,
+                                              null,
+                                              JsonNode.class);
+    }
+
+    private Team teamWith(String name, int programmers) {
+        Team team = teamRepository.save(buildMockTeam(null, name, "Java", null));
+        List<Programmer> members = IntStream.range(0, programmers)
+                                            .mapToObj(i -> buildMockProgrammer(name + i, null))
+                                            .peek(programmer -> programmer.setTeam(team))
+                                            .collect(Collectors.toList());
+        programmerRepository.saveAll(members);
+        teamStatistics.rebuild();
+        return team;
+    }
+}
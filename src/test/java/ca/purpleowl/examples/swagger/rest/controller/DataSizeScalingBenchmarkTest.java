@@ -0,0 +1,336 @@
+package ca.purpleowl.examples.swagger.rest.controller;
+
+import ca.purpleowl.examples.swagger.SwaggerAndHateoasApplication;
+import ca.purpleowl.examples.swagger.jpa.changes.ChangeSequenceAllocator;
+import ca.purpleowl.examples.swagger.utils.Benchmark;
+import ca.purpleowl.examples.swagger.utils.SyntheticDataset;
+import lombok.extern.java.Log;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * How each endpoint's latency and memory grow with the amount of data behind it.
+ *
+ * For each size, a fresh copy of the application is started on its own in-memory database, a SyntheticDataset of that
+ * many Programmers is loaded into it, and then every endpoint is called over HTTP, one request at a time.  Per-Team
+ * endpoints are pointed at the biggest Team, since that's the one that hurts.  For each endpoint we log:
+ *
+ *   - p50 and p95 latency,
+ *   - bytes allocated per request, across every thread in the JVM (the server's workers as well as our client), and
+ *   - the size of the response.
+ *
+ * Along with how much more heap is in use once the data is loaded (which is mostly H2's copy of it), that gives a
+ * curve per endpoint.  The last table sums it up as the exponent of each curve between the smallest and largest size: about
+ * 0 doesn't care how much data there is, about 1 grows in step with it, and anything much above 1 is a problem.
+ *
+ * The sizes default to 1k, 10k and 100k Programmers so the whole run fits in a default-sized heap in a few minutes.
+ * Bigger runs are a matter of heap:
+ *
+ *   mvn test -Pbenchmark -Dtest=DataSizeScalingBenchmarkTest -Dpurpleowl.benchmark.sizes=10000,1000000 \
+ *            -DargLine=-Xmx8g
+ *
+ * The Team size skew (the Zipf exponent; see SyntheticDataset) can be set with -Dpurpleowl.benchmark.skew.  The event
+ * stream isn't included; it never finishes, so there's nothing to time.
+ */
+@Log
+@Category(Benchmark.class)
+public class DataSizeScalingBenchmarkTest {
+    private static final String SIZES = System.getProperty("purpleowl.benchmark.sizes", "1000,10000,100000");
+    private static final double SKEW = Double.parseDouble(System.getProperty("purpleowl.benchmark.skew", "1.0"));
+    private static final int WARM_UP = 50;
+    private static final int MIN_ITERATIONS = 5;
+    private static final int MAX_ITERATIONS = 100;
+    private static final long TIME_BUDGET_NANOS = 3_000_000_000L;
+    //Everything but /batch only answers in HAL.
+    private static final String ACCEPT = "application/hal+json, application/json;q=0.9";
+
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @Test
+    public void testScaling() throws Exception {
+        List<Integer> sizes = Arrays.stream(SIZES.split(","))
+                                    .map(String::trim)
+                                    .map(Integer::valueOf)
+                                    .sorted()
+                                    .collect(Collectors.toList());
+        //Endpoint, then size, in the order they were run.
+        Map<String, Map<Integer, Result>> results = new LinkedHashMap<>();
+        Map<Integer, Long> heap = new LinkedHashMap<>();
+
+        for(int size : sizes) {
+            try(ConfigurableApplicationContext context = start(size)) {
+                long heapBefore = heapAfterGc();
+                SyntheticDataset dataset = SyntheticDataset.ofProgrammers(size, SKEW).load(context.getBean(DataSource.class));
+                context.getBean(ChangeSequenceAllocator.class).seed(dataset.getHighestChangeSequence());
+
+                JdbcTemplate jdbc = new JdbcTemplate(context.getBean(DataSource.class));
+                assertEquals(Integer.valueOf(size), jdbc.queryForObject("SELECT COUNT(*) FROM programmer", Integer.class));
+                assertEquals(Integer.valueOf(dataset.sizeOfTeam(dataset.getLargestTeamId())),
+                             jdbc.queryForObject("SELECT COUNT(*) FROM programmer WHERE team_id = ?",
+                                                 Integer.class,
+                                                 dataset.getLargestTeamId()));
+
+                heap.put(size, heapAfterGc() - heapBefore);
+                String base = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+
+                log.info(String.format("%,d programmers in %,d teams; largest team %,d, median %,d; %,d KB of heap",
+                                       size,
+                                       dataset.getTeams(),
+                                       dataset.sizeOfTeam(dataset.getLargestTeamId()),
+                                       dataset.sizeOfTeam(dataset.getMedianTeamId()),
+                                       heap.get(size) / 1024));
+
+                for(Map.Entry<String, BiFunction<SyntheticDataset, Long, Call>> endpoint : endpoints().entrySet()) {
+                    Result result = measure(endpoint.getValue(), dataset, base);
+                    results.computeIfAbsent(endpoint.getKey(), name -> new LinkedHashMap<>()).put(size, result);
+                    log.info(String.format("%,11d  %-42s %s", size, endpoint.getKey(), result));
+                }
+
+                //Closing the application takes logging down with it, so this has to happen before the last one goes.
+                if(size == sizes.get(sizes.size() - 1)) {
+                    report(sizes, results, heap);
+                }
+            }
+        }
+    }
+
+    /**
+     * Every endpoint, as a call to make against the given dataset.  The Long is how many times it's been called, for the
+     * writes that need something different each time.
+     */
+    private static Map<String, BiFunction<SyntheticDataset, Long, Call>> endpoints() {
+        Map<String, BiFunction<SyntheticDataset, Long, Call>> endpoints = new LinkedHashMap<>();
+
+        endpoints.put("GET /team", (data, n) -> get("/team"));
+        endpoints.put("GET /team?sort=name", (data, n) -> get("/team?sort=name"));
+        endpoints.put("GET /team/{largest}", (data, n) -> get("/team/" + data.getLargestTeamId()));
+        endpoints.put("GET /team/changes", (data, n) -> get("/team/changes?limit=1000"));
+        endpoints.put("GET /team/stats", (data, n) -> get("/team/stats"));
+        endpoints.put("GET /team/{largest}/stats", (data, n) -> get("/team/" + data.getLargestTeamId() + "/stats"));
+        endpoints.put("GET /programmer", (data, n) -> get("/programmer"));
+        endpoints.put("GET /programmer?dateHiredFrom&sort", (data, n) -> get("/programmer?dateHiredFrom=2018-01-01&sort=name"));
+        endpoints.put("GET /programmer?teamId={largest}", (data, n) -> get("/programmer?teamId=" + data.getLargestTeamId()));
+        endpoints.put("GET /programmer?teamId={median}", (data, n) -> get("/programmer?teamId=" + data.getMedianTeamId()));
+        endpoints.put("GET /programmer/{id}", (data, n) -> get("/programmer/" + (data.getHighestId() - n % data.getProgrammers())));
+        endpoints.put("GET /programmer/changes", (data, n) -> get("/programmer/changes?limit=1000"));
+        endpoints.put("POST /programmer", (data, n) -> post("/programmer",
+                                                            "{\"name\":\"Benchmark " + n + "\",\"dateHired\":\"2018-12-01\"}"));
+        endpoints.put("POST /team", (data, n) -> post("/team",
+                                                      "{\"name\":\"Benchmark " + n + "\",\"teamFocus\":\"Java\"," +
+                                                      "\"lastStandUp\":\"2018-12-01T09:00:00\"}"));
+        //The same Programmer, back and forth between the biggest Team and a median one.
+        endpoints.put("POST /team/{id}/add-programmer/{id}",
+                      (data, n) -> post("/team/" + (n % 2 == 0 ? data.getLargestTeamId() : data.getMedianTeamId()) +
+                                        "/add-programmer/" + data.getHighestId(), null));
+        endpoints.put("POST /batch", (data, n) -> post("/batch",
+                                                       "{\"requests\":[{\"method\":\"GET\",\"path\":\"/team/" + data.getMedianTeamId() + "\"}," +
+                                                       "{\"method\":\"GET\",\"path\":\"/programmer?teamId=" + data.getMedianTeamId() + "\"}]}"));
+        return endpoints;
+    }
+
+    private Result measure(BiFunction<SyntheticDataset, Long, Call> endpoint,
+                           SyntheticDataset dataset,
+                           String base) throws Exception {
+        AtomicLong calls = new AtomicLong();
+
+        //The first size gets the JIT's first go at everything, so it needs warming up the most.  The lists at the
+        //biggest sizes take long enough that the same number of calls there would take minutes, hence the time limit.
+        long warmUpStart = System.nanoTime();
+        while(calls.get() < MIN_ITERATIONS
+                || (calls.get() < WARM_UP && System.nanoTime() - warmUpStart < TIME_BUDGET_NANOS)) {
+            send(endpoint, dataset, base, calls.getAndIncrement());
+        }
+
+        List<Long> latencies = new ArrayList<>();
+        long bytes = 0;
+        Map<Long, Long> startAllocated = allocatedByThread();
+        long start = System.nanoTime();
+
+        while(latencies.size() < MIN_ITERATIONS
+                || (latencies.size() < MAX_ITERATIONS && System.nanoTime() - start < TIME_BUDGET_NANOS)) {
+            long sent = System.nanoTime();
+            bytes = send(endpoint, dataset, base, calls.getAndIncrement());
+            latencies.add(System.nanoTime() - sent);
+        }
+
+        long perRequest = allocatedSince(startAllocated) / latencies.size();
+        latencies.sort(Long::compare);
+        return new Result(latencies.get(latencies.size() / 2),
+                          latencies.get((int) Math.ceil(latencies.size() * 0.95) - 1),
+                          perRequest,
+                          bytes);
+    }
+
+    private long send(BiFunction<SyntheticDataset, Long, Call> endpoint,
+                      SyntheticDataset dataset,
+                      String base,
+                      long call) throws Exception {
+        Call toMake = endpoint.apply(dataset, call);
+        HttpRequest request = HttpRequest.newBuilder(URI.create(base + toMake.path))
+                                         .header("Accept", ACCEPT)
+                                         .header("Content-Type", "application/json")
+                                         .method(toMake.method, toMake.json == null
+                                                 ? HttpRequest.BodyPublishers.noBody()
+                                                 : HttpRequest.BodyPublishers.ofString(toMake.json))
+                                         .build();
+        HttpResponse<byte[]> response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+
+        assertTrue(request.method() + " " + request.uri() + " gave " + response.statusCode(),
+                   response.statusCode() / 100 == 2);
+        return response.body().length;
+    }
+
+    private static Call get(String path) {
+        return new Call("GET", path, null);
+    }
+
+    private static Call post(String path, String json) {
+        return new Call("POST", path, json);
+    }
+
+    private void report(List<Integer> sizes, Map<String, Map<Integer, Result>> results, Map<Integer, Long> heap) {
+        int first = sizes.get(0);
+        int last = sizes.get(sizes.size() - 1);
+
+        StringBuilder table = new StringBuilder(String.format("%n%-42s", "p50 ms (allocated KB) per request"));
+        sizes.forEach(size -> table.append(String.format("%22s", String.format("%,d", size))));
+        table.append(String.format("%12s%12s%n", "time exp", "alloc exp"));
+
+        for(Map.Entry<String, Map<Integer, Result>> endpoint : results.entrySet()) {
+            Map<Integer, Result> curve = endpoint.getValue();
+            table.append(String.format("%-42s", endpoint.getKey()));
+            sizes.forEach(size -> table.append(String.format("%22s", String.format("%.2f (%,d)",
+                                                                                  curve.get(size).p50 / 1_000_000.0,
+                                                                                  curve.get(size).allocated / 1024))));
+            table.append(String.format("%12.2f%12.2f%n",
+                                       exponent(curve.get(first).p50, curve.get(last).p50, first, last),
+                                       exponent(curve.get(first).allocated, curve.get(last).allocated, first, last)));
+        }
+
+        table.append(String.format("%-42s", "heap used by the data (KB)"));
+        sizes.forEach(size -> table.append(String.format("%22s", String.format("%,d", heap.get(size) / 1024))));
+        table.append(String.format("%12s%12.2f", "", exponent(heap.get(first), heap.get(last), first, last)));
+
+        log.info(table.toString());
+    }
+
+    /**
+     * The slope of the curve on a log-log plot: how the measurement grows as a power of the data size.
+     */
+    private static double exponent(long from, long to, int fromSize, int toSize) {
+        if(fromSize == toSize || from <= 0 || to <= 0) {
+            return Double.NaN;
+        }
+        return Math.log((double) to / from) / Math.log((double) toSize / fromSize);
+    }
+
+    private ConfigurableApplicationContext start(int size) {
+        //As arguments, so that they win over anything in application.yml.
+        return new SpringApplicationBuilder(SwaggerAndHateoasApplication.class)
+                .run("--server.port=0",
+                     "--spring.datasource.url=jdbc:h2:mem:scaling-" + size,
+                     //We're measuring the endpoints, not our rate limits, or our trace logging.
+                     "--purpleowl.admission.enabled=false",
+                     "--logging.level.ca.purpleowl.examples=INFO");
+    }
+
+    private Map<Long, Long> allocatedByThread() {
+        long[] ids = threads.getAllThreadIds();
+        long[] allocated = threads.getThreadAllocatedBytes(ids);
+
+        Map<Long, Long> returnMe = new HashMap<>();
+        for(int i = 0; i < ids.length; i++) {
+            if(allocated[i] >= 0) {
+                returnMe.put(ids[i], allocated[i]);
+            }
+        }
+        return returnMe;
+    }
+
+    /**
+     * Thread by thread, since a thread that finished in the meantime takes its count with it.  What it allocated
+     * before it went is lost either way, but at least it doesn't get taken off everybody else's.
+     */
+    private long allocatedSince(Map<Long, Long> start) {
+        long total = 0;
+        for(Map.Entry<Long, Long> now : allocatedByThread().entrySet()) {
+            total += now.getValue() - start.getOrDefault(now.getKey(), 0L);
+        }
+        return total;
+    }
+
+    /**
+     * One System.gc() doesn't always get everything, so we keep going until the heap stops shrinking.
+     */
+    private long heapAfterGc() throws InterruptedException {
+        long used = Long.MAX_VALUE;
+        for(int i = 0; i < 10; i++) {
+            System.gc();
+            Thread.sleep(50);
+            long now = memory.getHeapMemoryUsage().getUsed();
+            if(now >= used) {
+                break;
+            }
+            used = now;
+        }
+        return used;
+    }
+
+    private static final class Call {
+        private final String method;
+        private final String path;
+        private final String json;
+
+        private Call(String method, String path, String json) {
+            this.method = method;
+            this.path = path;
+            this.json = json;
+        }
+    }
+
+    private static final class Result {
+        private final long p50;
+        private final long p95;
+        private final long allocated;
+        private final long responseBytes;
+
+        private Result(long p50, long p95, long allocated, long responseBytes) {
+            this.p50 = p50;
+            this.p95 = p95;
+            this.allocated = allocated;
+            this.responseBytes = responseBytes;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("p50 %9.2f ms  p95 %9.2f ms  %,12d bytes allocated  %,12d bytes returned",
+                                 p50 / 1_000_000.0, p95 / 1_000_000.0, allocated, responseBytes);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package ca.purpleowl.examples.swagger.rest.controller;
+
+import ca.purpleowl.examples.swagger.jpa.entity.Programmer;
+import ca.purpleowl.examples.swagger.jpa.entity.Team;
+import ca.purpleowl.examples.swagger.jpa.repository.ProgrammerRepository;
+import ca.purpleowl.examples.swagger.jpa.repository.TeamRepository;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static ca.purpleowl.examples.swagger.utils.TestModelInflater.buildMockProgrammer;
+import static ca.purpleowl.examples.swagger.utils.TestModelInflater.buildMockTeam;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Walks the /changes endpoints the way a downstream cache would, against the real database.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class DeltaSyncTest {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Autowired
+    private TestRestTemplate testRestTemplate;
+
+    @Autowired
+    private TeamRepository teamRepository;
+
+    @Autowired
+    private ProgrammerRepository programmerRepository;
+
+    @After
+    public void tearDown() {
+        teamRepository.deleteAll();
+        programmerRepository.deleteAll();
+    }
+
+    @Test
+    public void testPagesThroughChangesAndThenOnlySeesNewOnes() throws Exception {
+        JsonNode start = get("/programmer/changes");
+        String token = start.get("nextToken").asText();
+
+        Programmer first = programmerRepository.save(buildMockProgrammer("programmer1", null));
+        Programmer second = programmerRepository.save(buildMockProgrammer("programmer2", null));
+        Programmer third = programmerRepository.save(buildMockProgrammer("programmer3", null));
+
+        JsonNode page = get("/programmer/changes?limit=2&since=" + token);
+        assertEquals(names(first, second), names(page));
+        assertTrue(page.get("moreAvailable").asBoolean());
+
+        page = get(page.get("_links").get("next").get("href").asText());
+        assertEquals(names(third), names(page));
+        assertFalse(page.get("moreAvailable").asBoolean());
+        token = page.get("nextToken").asText();
+
+        //Nothing's happened since, so nothing comes back (and the token stays put).
+        page = get("/programmer/changes?since=" + token);
+        assertEquals(new ArrayList<>(), names(page));
+        assertEquals(token, page.get("nextToken").asText());
+
+        //Joining a team is a change to the Programmer.
+        Team team = teamRepository.save(buildMockTeam(null, "team1", "Java", null));
+        testRestTemplate.postForEntity("/team/" + team.getId() + "/add-programmer/" + first.getId(), null, String.class);
+
+        page = get("/programmer/changes?since=" + token);
+        assertEquals(names(first), names(page));
+        assertEquals("team1", page.get("_embedded").get("programmerAssetList").get(0).get("teamName").asText());
+
+        JsonNode teams = get("/team/changes?since=" + token);
+        assertEquals(1, teams.get("_embedded").get("teamAssetList").size());
+    }
+
+    @Test
+    public void testUnrecognizedTokenIsRejected() {
+        ResponseEntity<String> response = testRestTemplate.getForEntity("/team/changes?since=nonsense", String.class);
+
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+    }
+
+    private JsonNode get(String url) throws Exception {
+        ResponseEntity<String> response = testRestTemplate.getForEntity(url, String.class);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        return objectMapper.readTree(response.getBody());
+    }
+
+    private static List<String> names(Programmer... programmers) {
+        List<String> names = new ArrayList<>();
+        for(Programmer programmer : programmers) {
+            names.add(programmer.getName());
+        }
+        return names;
+    }
+
+    private static List<String> names(JsonNode page) {
+        List<String> names = new ArrayList<>();
+        page.get("_embedded").get("programmerAssetList").forEach(programmer -> names.add(programmer.get("name").asText()));
+        return names;
+    }
+}
@@ -0,0 +1,202 @@
+package ca.purpleowl.examples.swagger.rest.controller;
+
+import ca.purpleowl.examples.swagger.jpa.entity.Programmer;
+import ca.purpleowl.examples.swagger.jpa.entity.Team;
+import ca.purpleowl.examples.swagger.jpa.repository.ProgrammerRepository;
+import ca.purpleowl.examples.swagger.jpa.repository.TeamRepository;
+import ca.purpleowl.examples.swagger.rest.asset.TeamAsset;
+import ca.purpleowl.examples.swagger.rest.events.ChangeFeed;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static ca.purpleowl.examples.swagger.utils.TestModelInflater.buildMockProgrammer;
+import static ca.purpleowl.examples.swagger.utils.TestModelInflater.buildMockTeam;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Subscribes to the feed over a real connection and checks that changes made through the other endpoints turn up.
+ *
+ * There's only the one dispatcher thread, so that a subscriber holding it up holds up everybody.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+                properties = {
+                        "purpleowl.events.dispatcher-threads=1",
+                        "purpleowl.events.subscriber-buffer-size=1000",
+                        "purpleowl.events.write-timeout=500ms"
+                })
+public class EventControllerTest {
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private TestRestTemplate testRestTemplate;
+
+    @Autowired
+    private ChangeFeed changeFeed;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private TeamRepository teamRepository;
+
+    @Autowired
+    private ProgrammerRepository programmerRepository;
+
+    private HttpURLConnection connection;
+
+    @After
+    public void tearDown() {
+        if(connection != null) {
+            //disconnect() waits for the reader thread to let go of the stream, which it won't do until its read times
+            //out.  There's no reason for the test to sit around for that.
+            Thread disconnect = new Thread(connection::disconnect);
+            disconnect.setDaemon(true);
+            disconnect.start();
+        }
+
+        teamRepository.deleteAll();
+        programmerRepository.deleteAll();
+    }
+
+    @Test
+    public void testSavedTeamIsPublishedWithItsBody() throws Exception {
+        BlockingQueue<String> lines = subscribe("/events?includeBody=true");
+
+        TeamAsset asset = new TeamAsset();
+        asset.setName("Team Event");
+        asset.setTeamFocus("Streams");
+        asset.setLastStandUp("2018-12-01T09:00:00");
+        assertEquals(HttpStatus.OK, testRestTemplate.postForEntity("/team", asset, String.class).getStatusCode());
+
+        assertEquals("event:team", nextEvent(lines));
+        String data = lines.poll(5, TimeUnit.SECONDS);
+        assertTrue(data, data.startsWith("data:{\"type\":\"team\",\"id\":"));
+        assertTrue(data, data.contains("\"name\":\"Team Event\""));
+        assertTrue(data, data.contains("\"_links\""));
+    }
+
+    @Test
+    public void testAddingAProgrammerToATeamIsPublishedWithoutABody() throws Exception {
+        Team team = teamRepository.save(buildMockTeam(null, "team1", "Java", null));
+        Programmer programmer = programmerRepository.save(buildMockProgrammer("programmer1", null));
+
+        BlockingQueue<String> lines = subscribe("/events");
+
+        assertEquals(HttpStatus.OK,
+                     testRestTemplate.postForEntity("/team/" + team.getId() + "/add-programmer/" + programmer.getId(),
+                                                    null,
+                                                    String.class).getStatusCode());
+
+        assertEquals("event:programmer", nextEvent(lines));
+        assertEquals("data:{\"type\":\"programmer\",\"id\":" + programmer.getId() + ",\"version\":1}",
+                     lines.poll(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * A client that connects and then never reads a thing.  Once the buffers between us fill up, writing to it blocks,
+     * and that mustn't keep the dispatcher thread from everybody else for longer than the write timeout.  Its queue is
+     * big enough that it's the timeout that gets it evicted, not the queue filling up.
+     */
+    @Test
+    public void testAClientThatNeverReadsDoesNotHoldUpEveryoneElse() throws Exception {
+        double evictedBefore = meterRegistry.get("purpleowl.events.evicted").counter().count();
+
+        try(Socket stalled = new Socket()) {
+            stalled.setReceiveBufferSize(1024);
+            stalled.connect(new InetSocketAddress("localhost", port));
+            stalled.getOutputStream().write(("GET /events?includeBody=true HTTP/1.1\r\n" +
+                                             "Host: localhost\r\n" +
+                                             "Accept: text/event-stream\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+            long deadline = System.currentTimeMillis() + 5_000;
+            while(changeFeed.subscriberCount() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+
+            BlockingQueue<String> lines = subscribe("/events");
+            assertEquals(2, changeFeed.subscriberCount());
+
+            //Far more than the socket buffers on both ends can hold.
+            String body = "{\"body\":\"" + String.join("", Collections.nCopies(64 * 1024, "x")) + "\"}";
+            for(int i = 0; i < 200; i++) {
+                changeFeed.publish("team", "{\"n\":" + i + "}", body);
+            }
+
+            assertEquals("data:{\"n\":199}", nextData(lines, "data:{\"n\":199}"));
+
+            //Whichever drain ran first, the dispatcher thread is stuck writing to the stalled client by now.
+            changeFeed.publish("team", "{\"n\":\"last\"}", body);
+            assertEquals("data:{\"n\":\"last\"}", nextData(lines, "data:{\"n\":\"last\"}"));
+            assertEquals(1, changeFeed.subscriberCount());
+            assertEquals(evictedBefore + 1, meterRegistry.get("purpleowl.events.evicted").counter().count(), 0.0);
+        }
+    }
+
+    private BlockingQueue<String> subscribe(String path) throws Exception {
+        int before = changeFeed.subscriberCount();
+        connection = (HttpURLConnection) new URL("http://localhost:" + port + path).openConnection();
+        connection.setReadTimeout(10_000);
+        BlockingQueue<String> lines = new LinkedBlockingQueue<>();
+
+        Thread reader = new Thread(() -> {
+            try(BufferedReader in = new BufferedReader(new InputStreamReader(connection.getInputStream(),
+                                                                             StandardCharsets.UTF_8))) {
+                String line;
+                while((line = in.readLine()) != null) {
+                    lines.add(line);
+                }
+            } catch (Exception e) {
+                //The connection is closed at the end of every test.
+            }
+        });
+        reader.setDaemon(true);
+        reader.start();
+
+        long deadline = System.currentTimeMillis() + 5_000;
+        while(changeFeed.subscriberCount() == before && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        return lines;
+    }
+
+    private static String nextData(BlockingQueue<String> lines, String data) throws InterruptedException {
+        String line;
+        do {
+            line = lines.poll(10, TimeUnit.SECONDS);
+        } while(line != null && !line.equals(data));
+
+        return line;
+    }
+
+    private static String nextEvent(BlockingQueue<String> lines) throws InterruptedException {
+        String line;
+        do {
+            line = lines.poll(5, TimeUnit.SECONDS);
+        } while(line != null && !line.startsWith("event:"));
+
+        return line;
+    }
+}
@@ -0,0 +1,167 @@
+package ca.purpleowl.examples.swagger.rest.controller;
+
+import ca.purpleowl.examples.swagger.jpa.entity.Programmer;
+import ca.purpleowl.examples.swagger.jpa.entity.Team;
+import ca.purpleowl.examples.swagger.jpa.repository.ProgrammerRepository;
+import ca.purpleowl.examples.swagger.jpa.repository.TeamRepository;
+import ca.purpleowl.examples.swagger.rest.asset.ProgrammerAsset;
+import ca.purpleowl.examples.swagger.rest.hal.HalWriter;
+import ca.purpleowl.examples.swagger.service.ProgrammerService;
+import ca.purpleowl.examples.swagger.utils.Benchmark;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.java.Log;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.MessageSource;
+import org.springframework.context.support.MessageSourceAccessor;
+import org.springframework.hateoas.Link;
+import org.springframework.hateoas.Resource;
+import org.springframework.hateoas.Resources;
+import org.springframework.hateoas.core.DefaultRelProvider;
+import org.springframework.hateoas.hal.Jackson2HalModule;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static ca.purpleowl.examples.swagger.utils.TestModelInflater.buildMockProgrammer;
+import static ca.purpleowl.examples.swagger.utils.TestModelInflater.buildMockTeam;
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * What it costs to turn a big list of Programmers into HAL, the old way (Assets, then Resources, then Jackson walking
+ * all of it) against the HalWriter.  Both are measured from the database through to the finished bytes, and then
+ * again for the writing alone, since loading the entities is the same either way and can drown out the difference.
+ */
+@Log
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE,
+                properties = "spring.datasource.url=jdbc:h2:mem:hal-benchmark")
+@Category(Benchmark.class)
+public class HalListBenchmarkTest {
+    private static final int TEAMS = 50;
+    private static final int PROGRAMMERS = 5000;
+    private static final int WARM_UP = 20;
+    private static final int ITERATIONS = 50;
+    private static final String SELF = "http://localhost/programmer";
+
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    @Autowired
+    private ProgrammerService programmerService;
+
+    @Autowired
+    private ProgrammerRepository programmerRepository;
+
+    @Autowired
+    private TeamRepository teamRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MessageSource messageSource;
+
+    private ObjectMapper halObjectMapper;
+
+    @Before
+    public void setUp() {
+        //The same HAL ObjectMapper Spring HATEOAS would use; see EventController.
+        halObjectMapper = objectMapper.copy().registerModule(new Jackson2HalModule());
+        halObjectMapper.setHandlerInstantiator(new Jackson2HalModule.HalHandlerInstantiator(
+                new DefaultRelProvider(), null, new MessageSourceAccessor(messageSource)));
+
+        //Links are built against the current request, so we need one.
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest("GET", "/programmer")));
+
+        List<Team> teams = new ArrayList<>();
+        for(int i = 0; i < TEAMS; i++) {
+            teams.add(buildMockTeam(null, "team" + i, "Java", null));
+        }
+        teams = teamRepository.saveAll(teams);
+
+        List<Programmer> programmers = new ArrayList<>();
+        for(int i = 0; i < PROGRAMMERS; i++) {
+            Programmer programmer = buildMockProgrammer("programmer" + i, null);
+            programmer.setTeam(teams.get(i % TEAMS));
+            programmers.add(programmer);
+        }
+        programmerRepository.saveAll(programmers);
+    }
+
+    @After
+    public void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+        teamRepository.deleteAll();
+        programmerRepository.deleteAll();
+    }
+
+    @Test
+    public void testFromTheDatabase() {
+        assertArrayEquals(resources(programmerService.findAllProgrammers()),
+                          programmerService.renderAllProgrammers(HalWriter.forCurrentRequest(SELF)));
+
+        run("database, resources", () -> resources(programmerService.findAllProgrammers()));
+        run("database, halwriter", () -> programmerService.renderAllProgrammers(HalWriter.forCurrentRequest(SELF)));
+    }
+
+    @Test
+    public void testWritingAlone() {
+        //Both of these have the Team fetched along with them, so nothing more is loaded while writing.
+        List<ProgrammerAsset> assets = programmerService.findAllProgrammers();
+        List<Programmer> entities = programmerRepository.findAll();
+        assertArrayEquals(resources(assets), HalWriter.forCurrentRequest(SELF).programmers(entities));
+
+        run("writing, resources", () -> resources(assets));
+        run("writing, halwriter", () -> HalWriter.forCurrentRequest(SELF).programmers(entities));
+    }
+
+    /**
+     * Everything the controller used to do for a list, short of the message converter writing to the response.
+     */
+    private byte[] resources(List<ProgrammerAsset> assets) {
+        List<Resource> wrapped = assets.stream().map(ProgrammerController::wrapAsset).collect(Collectors.toList());
+        Resources<Resource> resources = new Resources<>(wrapped, Collections.singletonList(new Link(SELF)));
+
+        try {
+            return halObjectMapper.writeValueAsBytes(resources);
+        } catch(Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void run(String name, Supplier<byte[]> operation) {
+        for(int i = 0; i < WARM_UP; i++) {
+            operation.get();
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long startBytes = threads.getThreadAllocatedBytes(threadId);
+        long startNanos = System.nanoTime();
+
+        for(int i = 0; i < ITERATIONS; i++) {
+            operation.get();
+        }
+
+        long elapsed = System.nanoTime() - startNanos;
+        long allocated = threads.getThreadAllocatedBytes(threadId) - startBytes;
+
+        log.info(String.format("%-20s %8d bytes per item  %8.1f ms per list",
+                               name,
+                               allocated / ITERATIONS / PROGRAMMERS,
+                               elapsed / 1_000_000.0 / ITERATIONS));
+    }
+}
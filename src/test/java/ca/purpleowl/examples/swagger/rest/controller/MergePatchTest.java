@@ -0,0 +1,142 @@
+package ca.purpleowl.examples.swagger.rest.controller;
+
+import ca.purpleowl.examples.swagger.jpa.entity.Programmer;
+import ca.purpleowl.examples.swagger.jpa.entity.Team;
+import ca.purpleowl.examples.swagger.jpa.repository.ProgrammerRepository;
+import ca.purpleowl.examples.swagger.jpa.repository.TeamRepository;
+import ca.purpleowl.examples.swagger.utils.QueryCountHarness;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import javax.persistence.EntityManagerFactory;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+import static ca.purpleowl.examples.swagger.utils.TestModelInflater.buildMockProgrammer;
+import static ca.purpleowl.examples.swagger.utils.TestModelInflater.buildMockTeam;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * PATCH against the real database, watching the SQL it runs.  RestTemplate's default client can't send PATCH, so this
+ * uses the JDK's.
+ */
+@RunWith(SpringRunner.class)
+@ActiveProfiles("query-count")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class MergePatchTest {
+    private final HttpClient httpClient = HttpClient.newHttpClient();
+
+    @LocalServerPort
+    private Integer localServerPort;
+
+    @Autowired
+    private TeamRepository teamRepository;
+
+    @Autowired
+    private ProgrammerRepository programmerRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @After
+    public void tearDown() {
+        teamRepository.deleteAll();
+        programmerRepository.deleteAll();
+    }
+
+    @Test
+    public void testPatchOnlyWritesWhatChanged() {
+        Team team = teamRepository.save(buildMockTeam(null, "team1", "Java", null));
+        AtomicReference<HttpResponse<String>> response = new AtomicReference<>();
+
+        List<String> statements = new QueryCountHarness(entityManagerFactory)
+                .measure(() -> response.set(patch("/team/" + team.getId(), "{\"name\":\"renamed\"}", null)))
+                .getStatements();
+
+        assertEquals(200, response.get().statusCode());
+        assertTrue(response.get().body().contains("\"teamFocus\":\"Java\""));
+        assertNotEquals("\"" + team.getVersion() + "\"", response.get().headers().firstValue("ETag").orElse(null));
+
+        List<String> updates = statements.stream()
+                                         .map(String::toLowerCase)
+                                         .filter(sql -> sql.startsWith("update"))
+                                         .collect(Collectors.toList());
+        assertEquals(1, updates.size());
+        assertTrue(updates.get(0), updates.get(0).contains("name=?"));
+        assertFalse(updates.get(0), updates.get(0).contains("team_focus"));
+        assertFalse(updates.get(0), updates.get(0).contains("last_stand_up"));
+
+        Team saved = teamRepository.findById(team.getId()).get();
+        assertEquals("renamed", saved.getName());
+        assertEquals("Java", saved.getTeamFocus());
+    }
+
+    @Test
+    public void testPatchingAProgrammer() {
+        Programmer programmer = programmerRepository.save(buildMockProgrammer("programmer1", null));
+
+        HttpResponse<String> response = patch("/programmer/" + programmer.getId(),
+                                              "{\"dateHired\":\"2015-03-02\"}",
+                                              "\"" + programmer.getVersion() + "\"");
+
+        assertEquals(200, response.statusCode());
+        Programmer saved = programmerRepository.findById(programmer.getId()).get();
+        assertEquals(LocalDate.of(2015, 3, 2), saved.getDateHired());
+        assertEquals("programmer1", saved.getName());
+        assertEquals(404, patch("/programmer/" + (programmer.getId() + 1000), "{}", null).statusCode());
+    }
+
+    @Test
+    public void testStaleIfMatchIsRefused() {
+        Team team = teamRepository.save(buildMockTeam(null, "team1", "Java", null));
+
+        HttpResponse<String> response = patch("/team/" + team.getId(),
+                                              "{\"name\":\"renamed\"}",
+                                              "\"" + (team.getVersion() + 1) + "\"");
+
+        assertEquals(412, response.statusCode());
+        assertEquals("team1", teamRepository.findById(team.getId()).get().getName());
+    }
+
+    @Test
+    public void testInvalidPatchesAreRefused() {
+        Team team = teamRepository.save(buildMockTeam(null, "team1", "Java", null));
+        String path = "/team/" + team.getId();
+
+        assertEquals(400, patch(path, "{\"teamId\":5}", null).statusCode());
+        assertEquals(400, patch(path, "{\"lastStandUp\":\"yesterday\"}", null).statusCode());
+        assertEquals(400, patch(path, "{\"lastStandUp\":null}", null).statusCode());
+        assertEquals(400, patch(path, "[\"name\"]", null).statusCode());
+        assertEquals("team1", teamRepository.findById(team.getId()).get().getName());
+    }
+
+    private HttpResponse<String> patch(String path, String body, String ifMatch) {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create("http://localhost:" + localServerPort + path))
+                                                 .header("Content-Type", "application/merge-patch+json")
+                                                 .method("PATCH", HttpRequest.BodyPublishers.ofString(body));
+        if(ifMatch != null) {
+            request.header("If-Match", ifMatch);
+        }
+
+        try {
+            return httpClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+        } catch(Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package ca.purpleowl.examples.swagger.rest.controller;
+
+import ca.purpleowl.examples.swagger.jpa.entity.Programmer;
+import ca.purpleowl.examples.swagger.jpa.entity.Team;
+import ca.purpleowl.examples.swagger.jpa.repository.ProgrammerRepository;
+import ca.purpleowl.examples.swagger.jpa.repository.TeamRepository;
+import ca.purpleowl.examples.swagger.rest.asset.TeamAsset;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import static ca.purpleowl.examples.swagger.utils.TestModelInflater.buildMockProgrammer;
+import static ca.purpleowl.examples.swagger.utils.TestModelInflater.buildMockTeam;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+/**
+ * ETags and If-Match, against the real database so that the @Version column is doing the work.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class OptimisticConcurrencyTest {
+    @Autowired
+    private TestRestTemplate testRestTemplate;
+
+    @Autowired
+    private TeamRepository teamRepository;
+
+    @Autowired
+    private ProgrammerRepository programmerRepository;
+
+    @After
+    public void tearDown() {
+        teamRepository.deleteAll();
+        programmerRepository.deleteAll();
+    }
+
+    @Test
+    public void testStaleIfMatchIsRefused() {
+        Team team = teamRepository.save(buildMockTeam(null, "team1", "Java", null));
+        String etag = testRestTemplate.getForEntity("/team/" + team.getId(), String.class).getHeaders().getETag();
+
+        ResponseEntity<String> first = postTeam(rename(team, "renamed once"), etag);
+        assertEquals(HttpStatus.OK, first.getStatusCode());
+        assertNotEquals(etag, first.getHeaders().getETag());
+
+        //Same ETag again: somebody else got there first.
+        ResponseEntity<String> second = postTeam(rename(team, "renamed twice"), etag);
+        assertEquals(HttpStatus.PRECONDITION_FAILED, second.getStatusCode());
+        assertEquals("renamed once", teamRepository.findById(team.getId()).get().getName());
+
+        //...but the fresh one works.
+        ResponseEntity<String> third = postTeam(rename(team, "renamed twice"), first.getHeaders().getETag());
+        assertEquals(HttpStatus.OK, third.getStatusCode());
+    }
+
+    @Test
+    public void testAddProgrammerHonoursIfMatch() {
+        Team team = teamRepository.save(buildMockTeam(null, "team1", "Java", null));
+        Programmer programmer = programmerRepository.save(buildMockProgrammer("programmer1", null));
+        String stale = "\"" + (team.getVersion() + 1) + "\"";
+
+        assertEquals(HttpStatus.PRECONDITION_FAILED, addProgrammer(team, programmer, stale).getStatusCode());
+        assertEquals(HttpStatus.OK, addProgrammer(team, programmer, "\"" + team.getVersion() + "\"").getStatusCode());
+    }
+
+    @Test
+    public void testUpdatingATeamKeepsItsProgrammers() {
+        Team team = teamRepository.save(buildMockTeam(null, "team1", "Java", null));
+        Programmer programmer = programmerRepository.save(buildMockProgrammer("programmer1", null));
+        assertEquals(HttpStatus.OK, addProgrammer(team, programmer, null).getStatusCode());
+
+        assertEquals(HttpStatus.OK, postTeam(rename(team, "renamed"), null).getStatusCode());
+
+        assertEquals("renamed", programmerRepository.findWithTeamById(programmer.getId()).get().getTeam().getName());
+    }
+
+    private ResponseEntity<String> postTeam(TeamAsset asset, String ifMatch) {
+        HttpHeaders headers = new HttpHeaders();
+        if(ifMatch != null) {
+            headers.setIfMatch(ifMatch);
+        }
+
+        return testRestTemplate.postForEntity("/team", new HttpEntity<>(asset, headers), String.class);
+    }
+
+    private ResponseEntity<String> addProgrammer(Team team, Programmer programmer, String ifMatch) {
+        HttpHeaders headers = new HttpHeaders();
+        if(ifMatch != null) {
+            headers.setIfMatch(ifMatch);
+        }
+
+        return testRestTemplate.postForEntity("/team/" + team.getId() + "/add-programmer/" + programmer.getId(),
+                                              new HttpEntity<>(headers),
+                                              String.class);
+    }
+
+    private static TeamAsset rename(Team team, String name) {
+        TeamAsset asset = new TeamAsset();
+        asset.setTeamId(team.getId());
+        asset.setName(name);
+        asset.setTeamFocus(team.getTeamFocus());
+        asset.setLastStandUp(team.getLastStandUp().toString());
+        return asset;
+    }
+}
@@ -0,0 +1,172 @@
+package ca.purpleowl.examples.swagger.rest.controller;
+
+import ca.purpleowl.examples.swagger.jpa.entity.Team;
+import ca.purpleowl.examples.swagger.jpa.repository.ProgrammerRepository;
+import ca.purpleowl.examples.swagger.jpa.repository.TeamRepository;
+import ca.purpleowl.examples.swagger.rest.asset.ProgrammerAsset;
+import ca.purpleowl.examples.swagger.utils.QueryCountHarness;
+import ca.purpleowl.examples.swagger.utils.QueryCountHarness.QueryCount;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import javax.persistence.EntityManagerFactory;
+
+import static ca.purpleowl.examples.swagger.utils.TestModelInflater.buildMockTeam;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * ProgrammerControllerTest checks what comes back; this checks what it cost.  Everything here runs against the real
+ * embedded database so that we can count the SQL each endpoint causes and catch N+1 style regressions at build time.
+ */
+@RunWith(SpringRunner.class)
+@ActiveProfiles("query-count")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class ProgrammerControllerQueryCountTest {
+    @Autowired
+    private TestRestTemplate testRestTemplate;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private TeamRepository teamRepository;
+
+    @Autowired
+    private ProgrammerRepository programmerRepository;
+
+    private QueryCountHarness harness;
+
+    @Before
+    public void setUp() {
+        harness = new QueryCountHarness(entityManagerFactory);
+    }
+
+    @After
+    public void tearDown() {
+        teamRepository.deleteAll();
+        programmerRepository.deleteAll();
+    }
+
+    @Test
+    public void testReadAllProgrammersDoesNotScaleWithTeamCount() {
+        teamRepository.save(buildMockTeam(null, "team1", "Java", null, "programmer1", "programmer2"));
+
+        QueryCount oneTeam = harness.measure(() -> get("/programmer"))
+                                    .assertStatementsAtMost(1);
+
+        teamRepository.save(buildMockTeam(null, "team2", "Java", null, "programmer3", "programmer4"));
+        teamRepository.save(buildMockTeam(null, "team3", "Kotlin", null, "programmer5"));
+        teamRepository.save(buildMockTeam(null, "team4", "Go", null, "programmer6", "programmer7", "programmer8"));
+
+        harness.measure(() -> get("/programmer"))
+               .assertStatementsMatch(oneTeam)
+               .assertNoCollectionFetches();
+    }
+
+    @Test
+    public void testReadProgrammersByTeamDoesNotScaleWithTeamSize() {
+        Team small = teamRepository.save(buildMockTeam(null, "small", "Java", null, "programmer1"));
+        Team large = teamRepository.save(buildMockTeam(null, "large", "Java", null,
+                                                       "programmer2", "programmer3", "programmer4", "programmer5",
+                                                       "programmer6", "programmer7", "programmer8", "programmer9"));
+
+        QueryCount smallTeam = harness.measure(() -> get("/programmer?teamId=" + small.getId()))
+                                      .assertStatementsAtMost(1);
+
+        harness.measure(() -> get("/programmer?teamId=" + large.getId()))
+               .assertStatementsMatch(smallTeam)
+               .assertNoCollectionFetches();
+    }
+
+    @Test
+    public void testReadProgrammerById() {
+        Team team = teamRepository.save(buildMockTeam(null, "team1", "Java", null, "programmer1"));
+        Long programmerId = team.getProgrammers().get(0).getId();
+
+        harness.measure(() -> get("/programmer/" + programmerId))
+               .assertStatementsAtMost(1)
+               .assertNoCollectionFetches();
+    }
+
+    @Test
+    public void testReadMissingProgrammerById() {
+        harness.measure(() -> testRestTemplate.getForEntity("/programmer/420", String.class))
+               .assertStatementsAtMost(1);
+    }
+
+    @Test
+    public void testSaveProgrammer() {
+        ProgrammerAsset asset = new ProgrammerAsset();
+        asset.setName("Name");
+        asset.setDateHired("2014-12-14");
+
+        harness.measure(() -> {
+                    ResponseEntity<String> response = testRestTemplate.postForEntity("/programmer", asset, String.class);
+                    assertEquals(HttpStatus.OK, response.getStatusCode());
+               })
+               //The increment generator may need a max(id) lookup before the insert.
+               .assertStatementsAtMost(2);
+    }
+
+    @Test
+    public void testChangeFeedDoesNotScaleWithPageSize() {
+        teamRepository.save(buildMockTeam(null, "team1", "Java", null, "programmer1"));
+
+        QueryCount oneChange = harness.measure(() -> get("/programmer/changes"))
+                                      .assertStatementsAtMost(1);
+
+        teamRepository.save(buildMockTeam(null, "team2", "Java", null, "programmer2", "programmer3", "programmer4"));
+        teamRepository.save(buildMockTeam(null, "team3", "Kotlin", null, "programmer5", "programmer6"));
+
+        harness.measure(() -> get("/programmer/changes"))
+               .assertStatementsMatch(oneChange)
+               .assertNoCollectionFetches();
+    }
+
+    /**
+     * A batch costs what its requests would have on their own; running them through the one request adds nothing.
+     */
+    @Test
+    public void testBatchCostsNoMoreThanItsRequests() {
+        Team team = teamRepository.save(buildMockTeam(null, "team1", "Java", null, "programmer1", "programmer2"));
+        Long programmerId = team.getProgrammers().get(0).getId();
+
+        harness.measure(() -> {
+                    HttpHeaders headers = new HttpHeaders();
+                    headers.setContentType(MediaType.APPLICATION_JSON);
+                    String json = "{\"requests\":["
+                                  + "{\"method\":\"GET\",\"path\":\"/programmer/" + programmerId + "\"},"
+                                  + "{\"method\":\"GET\",\"path\":\"/programmer?teamId=" + team.getId() + "\"},"
+                                  + "{\"method\":\"POST\",\"path\":\"/programmer\","
+                                  + "\"body\":{\"name\":\"Name\",\"dateHired\":\"2014-12-14\"}}]}";
+
+                    ResponseEntity<JsonNode> response =
+                            testRestTemplate.postForEntity("/batch", new HttpEntity<>(json, headers), JsonNode.class);
+                    assertEquals(HttpStatus.OK, response.getStatusCode());
+                    for(JsonNode result : response.getBody().get("responses")) {
+                        assertEquals(200, result.get("status").asInt());
+                    }
+               })
+               //One each for the reads, and the save's two (see testSaveProgrammer).
+               .assertStatementsAtMost(4)
+               .assertNoCollectionFetches();
+    }
+
+    private void get(String path) {
+        ResponseEntity<String> response = testRestTemplate.getForEntity(path, String.class);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+    }
+}
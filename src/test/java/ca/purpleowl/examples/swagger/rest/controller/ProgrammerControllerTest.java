@@ -11,6 +11,10 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.boot.test.web.client.TestRestTemplate;
 import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.test.context.junit4.SpringRunner;
@@ -28,8 +32,13 @@ import static ca.purpleowl.examples.swagger.rest.controller.ControllerTestUtil.l
 import static ca.purpleowl.examples.swagger.utils.TestModelInflater.buildMockProgrammer;
 import static ca.purpleowl.examples.swagger.utils.TestModelInflater.buildMockTeam;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @RunWith(SpringRunner.class)
@@ -99,7 +108,7 @@ public class ProgrammerControllerTest {
     public void testReadProgrammerById() {
         Team team = buildMockTeam(1L, "name1", "Java", 420L, "programmer1");
 
-        when(mockRepository.findById(eq(420L))).thenReturn(Optional.of(team.getProgrammers().get(0)));
+        when(mockRepository.findWithTeamById(eq(420L))).thenReturn(Optional.of(team.getProgrammers().get(0)));
 
         Map<String, String> params = Collections.singletonMap("programmerId", "420");
 
@@ -114,7 +123,7 @@ public class ProgrammerControllerTest {
 
     @Test
     public void testProgrammerNotFoundById() {
-        when(mockRepository.findById(eq(420L))).thenReturn(Optional.empty());
+        when(mockRepository.findWithTeamById(eq(420L))).thenReturn(Optional.empty());
 
         Map<String, String> params = Collections.singletonMap("programmerId", "420");
 
@@ -142,4 +151,82 @@ public class ProgrammerControllerTest {
         assertEquals(HttpStatus.OK, response.getStatusCode());
         assertEquals(expectedJson, response.getBody());
     }
+
+    @Test
+    public void testRetriedSaveWithIdempotencyKeyIsNotSavedTwice() {
+        ProgrammerAsset asset = new ProgrammerAsset();
+        asset.setName("Name");
+        asset.setDateHired(DateTimeFormatter.ISO_LOCAL_DATE.format(LocalDate.of(2014,12,14)));
+
+        Programmer entity = buildMockProgrammer("Name", 1L);
+        entity.setDateHired(LocalDate.of(2014,12,14));
+
+        when(mockRepository.save(any(Programmer.class))).thenReturn(entity);
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("Idempotency-Key", "testRetriedSaveWithIdempotencyKeyIsNotSavedTwice");
+        HttpEntity<ProgrammerAsset> request = new HttpEntity<>(asset, headers);
+
+        ResponseEntity<String> first = testRestTemplate.postForEntity("/programmer", request, String.class);
+        ResponseEntity<String> retry = testRestTemplate.postForEntity("/programmer", request, String.class);
+
+        String expectedJson = loadFromFile(String.format(JSON_PATH_TEMPLATE, "saved-programmer.json"))
+                .replaceAll("localServerPort", localServerPort.toString());
+
+        assertEquals(HttpStatus.OK, retry.getStatusCode());
+        assertEquals(expectedJson, first.getBody());
+        assertEquals(expectedJson, retry.getBody());
+        assertEquals("true", retry.getHeaders().getFirst("Idempotent-Replayed"));
+        verify(mockRepository, times(1)).save(any(Programmer.class));
+    }
+
+    @Test
+    public void testIdempotencyKeysAreScopedToTheClient() {
+        ProgrammerAsset asset = new ProgrammerAsset();
+        asset.setName("Name");
+        asset.setDateHired(DateTimeFormatter.ISO_LOCAL_DATE.format(LocalDate.of(2014,12,14)));
+
+        when(mockRepository.save(any(Programmer.class))).thenReturn(buildMockProgrammer("Name", 1L));
+
+        for(String clientId : new String[]{"client-a", "client-b"}) {
+            HttpHeaders headers = new HttpHeaders();
+            headers.set("Idempotency-Key", "testIdempotencyKeysAreScopedToTheClient");
+            headers.set("X-Client-Id", clientId);
+
+            ResponseEntity<String> response =
+                    testRestTemplate.postForEntity("/programmer", new HttpEntity<>(asset, headers), String.class);
+
+            assertEquals(HttpStatus.OK, response.getStatusCode());
+            assertNull(response.getHeaders().getFirst("Idempotent-Replayed"));
+        }
+        verify(mockRepository, times(2)).save(any(Programmer.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testFilteredAndSortedReadIsPushedDownToTheRepository() {
+        Team team = buildMockTeam(1L, "name1", "Java", 1L, "programmer1", "programmer2", "programer3");
+
+        when(mockRepository.findAll(any(Specification.class), any(Sort.class))).thenReturn(team.getProgrammers());
+
+        ResponseEntity<String> response =
+                testRestTemplate.getForEntity("/programmer?teamId=420&dateHiredFrom=2000-01-01&sort=dateHired&direction=desc",
+                                              String.class);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        verify(mockRepository).findAll(any(Specification.class),
+                                       eq(Sort.by(Sort.Direction.DESC, "dateHired").and(Sort.by(Sort.Direction.DESC, "id"))));
+        verify(mockRepository, never()).findAllByTeamId(anyLong());
+    }
+
+    @Test
+    public void testUnsupportedSortIsRejected() {
+        ResponseEntity<String> badSort = testRestTemplate.getForEntity("/programmer?sort=salary", String.class);
+        ResponseEntity<String> badDirection = testRestTemplate.getForEntity("/programmer?sort=name&direction=up", String.class);
+        ResponseEntity<String> badDate = testRestTemplate.getForEntity("/programmer?dateHiredFrom=yesterday", String.class);
+
+        assertEquals(HttpStatus.BAD_REQUEST, badSort.getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST, badDirection.getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST, badDate.getStatusCode());
+    }
 }
@@ -0,0 +1,171 @@
+package ca.purpleowl.examples.swagger.rest.controller;
+
+import ca.purpleowl.examples.swagger.jpa.entity.Programmer;
+import ca.purpleowl.examples.swagger.jpa.entity.Team;
+import ca.purpleowl.examples.swagger.jpa.repository.ProgrammerRepository;
+import ca.purpleowl.examples.swagger.jpa.repository.TeamRepository;
+import ca.purpleowl.examples.swagger.rest.asset.TeamAsset;
+import ca.purpleowl.examples.swagger.utils.QueryCountHarness;
+import ca.purpleowl.examples.swagger.utils.QueryCountHarness.QueryCount;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import javax.persistence.EntityManagerFactory;
+
+import static ca.purpleowl.examples.swagger.utils.TestModelInflater.buildMockProgrammer;
+import static ca.purpleowl.examples.swagger.utils.TestModelInflater.buildMockTeam;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * The Team flavour of ProgrammerControllerQueryCountTest.  Same idea: real database, count the SQL per request.
+ */
+@RunWith(SpringRunner.class)
+@ActiveProfiles("query-count")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class TeamControllerQueryCountTest {
+    @Autowired
+    private TestRestTemplate testRestTemplate;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private TeamRepository teamRepository;
+
+    @Autowired
+    private ProgrammerRepository programmerRepository;
+
+    private QueryCountHarness harness;
+
+    @Before
+    public void setUp() {
+        harness = new QueryCountHarness(entityManagerFactory);
+    }
+
+    @After
+    public void tearDown() {
+        teamRepository.deleteAll();
+        programmerRepository.deleteAll();
+    }
+
+    @Test
+    public void testReadAllTeamsDoesNotScaleWithTeamCount() {
+        teamRepository.save(buildMockTeam(null, "team1", "Java", null, "programmer1", "programmer2"));
+
+        QueryCount oneTeam = harness.measure(() -> get("/team"))
+                                    .assertStatementsAtMost(2);
+
+        teamRepository.save(buildMockTeam(null, "team2", "Java", null, "programmer3", "programmer4"));
+        teamRepository.save(buildMockTeam(null, "team3", "Kotlin", null, "programmer5"));
+        teamRepository.save(buildMockTeam(null, "team4", "Go", null));
+
+        harness.measure(() -> get("/team"))
+               .assertStatementsMatch(oneTeam)
+               .assertNoCollectionFetches();
+    }
+
+    @Test
+    public void testReadTeamById() {
+        Team team = teamRepository.save(buildMockTeam(null, "team1", "Java", null, "programmer1", "programmer2"));
+
+        harness.measure(() -> get("/team/" + team.getId()))
+               .assertStatementsAtMost(1)
+               .assertNoCollectionFetches();
+    }
+
+    @Test
+    public void testReadMissingTeamById() {
+        harness.measure(() -> testRestTemplate.getForEntity("/team/420", String.class))
+               .assertStatementsAtMost(1);
+    }
+
+    @Test
+    public void testSaveTeam() {
+        TeamAsset asset = new TeamAsset();
+        asset.setName("name");
+        asset.setTeamFocus("Java");
+        asset.setLastStandUp("2001-01-01T00:00:00");
+
+        harness.measure(() -> {
+                    ResponseEntity<String> response = testRestTemplate.postForEntity("/team", asset, String.class);
+                    assertEquals(HttpStatus.OK, response.getStatusCode());
+               })
+               .assertStatementsAtMost(2);
+    }
+
+    /**
+     * Adding a Programmer only ever writes that Programmer's row, so it costs the same whatever the size of the Team.
+     */
+    @Test
+    public void testAddProgrammerToTeam() {
+        Team small = teamRepository.save(buildMockTeam(null, "small", "Java", null));
+        Team large = teamRepository.save(buildMockTeam(null, "large", "Java", null,
+                                                       "programmer1", "programmer2", "programmer3", "programmer4",
+                                                       "programmer5", "programmer6", "programmer7", "programmer8"));
+        Programmer first = programmerRepository.save(buildMockProgrammer("first", null));
+        Programmer second = programmerRepository.save(buildMockProgrammer("second", null));
+
+        QueryCount emptyTeam = harness.measure(() -> addProgrammer(small.getId(), first.getId()))
+                                      .assertStatementsAtMost(3)
+                                      .assertNoCollectionFetches();
+
+        harness.measure(() -> addProgrammer(large.getId(), second.getId()))
+               .assertStatementsMatch(emptyTeam)
+               .assertNoCollectionFetches();
+    }
+
+    @Test
+    public void testChangeFeedDoesNotScaleWithPageSize() {
+        teamRepository.save(buildMockTeam(null, "team1", "Java", null, "programmer1"));
+
+        QueryCount oneChange = harness.measure(() -> get("/team/changes"))
+                                      .assertStatementsAtMost(1);
+
+        teamRepository.save(buildMockTeam(null, "team2", "Java", null, "programmer2", "programmer3"));
+        teamRepository.save(buildMockTeam(null, "team3", "Kotlin", null));
+        teamRepository.save(buildMockTeam(null, "team4", "Go", null, "programmer4"));
+
+        harness.measure(() -> get("/team/changes"))
+               .assertStatementsMatch(oneChange)
+               .assertNoCollectionFetches();
+    }
+
+    @Test
+    public void testAllTeamStatsDoNotScaleWithTeamCount() {
+        teamRepository.save(buildMockTeam(null, "team1", "Java", null, "programmer1", "programmer2"));
+
+        //The first read rolls up everyone's hires in one grouped count, which is then kept in memory.
+        harness.measure(() -> get("/team/stats"))
+               .assertStatementsAtMost(2);
+
+        QueryCount oneTeam = harness.measure(() -> get("/team/stats"))
+                                    .assertStatementsAtMost(1);
+
+        teamRepository.save(buildMockTeam(null, "team2", "Java", null, "programmer3", "programmer4", "programmer5"));
+        teamRepository.save(buildMockTeam(null, "team3", "Kotlin", null));
+
+        harness.measure(() -> get("/team/stats"))
+               .assertStatementsMatch(oneTeam)
+               .assertNoCollectionFetches();
+    }
+
+    private void addProgrammer(Long teamId, Long programmerId) {
+        ResponseEntity<String> response = testRestTemplate.postForEntity("/team/{teamId}/add-programmer/{programmerId}",
+                                                                         null, String.class, teamId, programmerId);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+    }
+
+    private void get(String path) {
+        ResponseEntity<String> response = testRestTemplate.getForEntity(path, String.class);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+    }
+}
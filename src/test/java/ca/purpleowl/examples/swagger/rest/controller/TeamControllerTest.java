@@ -12,6 +12,10 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.boot.test.web.client.TestRestTemplate;
 import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.test.context.junit4.SpringRunner;
@@ -31,6 +35,8 @@ import static ca.purpleowl.examples.swagger.utils.TestModelInflater.buildMockTea
 import static org.junit.Assert.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @RunWith(SpringRunner.class)
@@ -168,4 +174,42 @@ public class TeamControllerTest  {
         assertEquals(HttpStatus.OK, response.getStatusCode());
         assertEquals(expectedJson, response.getBody());
     }
+
+    @Test
+    public void testRetriedAddProgrammerToTeamWithIdempotencyKey() {
+        Optional<Team> mockTeamResult = Optional.of(buildMockTeam(421L, "teamId", "Java", null));
+        Optional<Programmer> mockProgrammerResult = Optional.of(buildMockProgrammer("name", 421L));
+
+        when(mockTeamRepo.findById(eq(421L))).thenReturn(mockTeamResult);
+        when(mockProgrammerRepo.findById(eq(421L))).thenReturn(mockProgrammerResult);
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("Idempotency-Key", "testRetriedAddProgrammerToTeamWithIdempotencyKey");
+
+        Map<String, String> params = new HashMap<>();
+        params.put("teamId", "421");
+        params.put("programmerId", "421");
+
+        ResponseEntity<String> first = testRestTemplate.postForEntity("/team/{teamId}/add-programmer/{programmerId}", new HttpEntity<>(headers), String.class, params);
+        ResponseEntity<String> retry = testRestTemplate.postForEntity("/team/{teamId}/add-programmer/{programmerId}", new HttpEntity<>(headers), String.class, params);
+
+        assertEquals(HttpStatus.OK, first.getStatusCode());
+        assertEquals(HttpStatus.OK, retry.getStatusCode());
+        verify(mockTeamRepo, times(1)).findById(eq(421L));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testFilteredAndSortedReadIsPushedDownToTheRepository() {
+        Team team = buildMockTeam(1L, "name1", "Java", 1L);
+
+        when(mockTeamRepo.findAll(any(Specification.class), any(Sort.class))).thenReturn(Collections.singletonList(team));
+
+        ResponseEntity<String> response =
+                testRestTemplate.getForEntity("/team?lastStandUpFrom=2000-01-01T00:00:00&sort=lastStandUp", String.class);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        verify(mockTeamRepo).findAll(any(Specification.class),
+                                     eq(Sort.by("lastStandUp").and(Sort.by("id"))));
+    }
 }
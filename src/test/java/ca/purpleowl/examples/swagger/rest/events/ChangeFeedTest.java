@@ -0,0 +1,83 @@
+package ca.purpleowl.examples.swagger.rest.events;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ChangeFeedTest {
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<Runnable> pendingDrains = new ArrayList<>();
+    private EventFeedProperties properties;
+    private ChangeFeed fixture;
+
+    @Before
+    public void setUp() {
+        properties = new EventFeedProperties();
+        properties.setSubscriberBufferSize(2);
+        properties.setMaxSubscribers(2);
+        //Drains are held back until we say so, which makes every subscriber look like a slow one.
+        fixture = new ChangeFeed(properties, pendingDrains::add, meterRegistry);
+    }
+
+    @Test
+    public void testSlowSubscribersAreEvictedWhenTheirBufferFills() {
+        fixture.subscribe(false, () -> {});
+
+        fixture.publish("team", "{}", null);
+        fixture.publish("team", "{}", null);
+        assertEquals(1, fixture.subscriberCount());
+
+        fixture.publish("team", "{}", null);
+        assertEquals(0, fixture.subscriberCount());
+        assertEquals(1.0, meterRegistry.get("purpleowl.events.evicted").counter().count(), 0.0);
+        assertEquals(3.0, meterRegistry.get("purpleowl.events.published").counter().count(), 0.0);
+    }
+
+    @Test
+    public void testOnlyOneDrainPerSubscriberAtATime() {
+        fixture.subscribe(false, () -> {});
+
+        fixture.publish("team", "{}", null);
+        fixture.publish("programmer", "{}", null);
+
+        assertEquals(1, pendingDrains.size());
+    }
+
+    @Test
+    public void testDrainedSubscribersKeepUp() {
+        fixture.subscribe(false, () -> {});
+
+        for(int i = 0; i < 10; i++) {
+            fixture.publish("team", "{}", null);
+            pendingDrains.remove(0).run();
+        }
+
+        assertEquals(1, fixture.subscriberCount());
+    }
+
+    @Test
+    public void testSubscriberLimit() {
+        assertNotNull(fixture.subscribe(false, () -> {}));
+        assertNotNull(fixture.subscribe(false, () -> {}));
+        assertNull(fixture.subscribe(false, () -> {}));
+        assertEquals(2.0, meterRegistry.get("purpleowl.events.subscribers").gauge().value(), 0.0);
+    }
+
+    @Test
+    public void testWantsBodiesOnlyWhenSomebodyAskedForThem() {
+        fixture.subscribe(false, () -> {});
+        assertFalse(fixture.wantsBodies());
+
+        fixture.subscribe(true, () -> {});
+        assertTrue(fixture.wantsBodies());
+    }
+}
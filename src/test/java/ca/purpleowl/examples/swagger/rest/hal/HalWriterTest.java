@@ -0,0 +1,112 @@
+package ca.purpleowl.examples.swagger.rest.hal;
+
+import ca.purpleowl.examples.swagger.jpa.entity.Programmer;
+import ca.purpleowl.examples.swagger.jpa.entity.Team;
+import ca.purpleowl.examples.swagger.jpa.repository.ProgrammerRepository;
+import ca.purpleowl.examples.swagger.jpa.repository.TeamRepository;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+import static ca.purpleowl.examples.swagger.utils.TestModelInflater.buildMockProgrammer;
+import static ca.purpleowl.examples.swagger.utils.TestModelInflater.buildMockTeam;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Lists written by the HalWriter, checked item by item against the same Programmer or Team fetched on its own, which
+ * still goes the long way round through an Asset and a Resource.  The expected-json files cover the exact bytes for
+ * the simple cases; this covers the awkward ones: no Team, characters that need escaping, and fractions of a second.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+                properties = "spring.datasource.url=jdbc:h2:mem:hal-writer")
+public class HalWriterTest {
+    @Autowired
+    private TestRestTemplate testRestTemplate;
+
+    @Autowired
+    private TeamRepository teamRepository;
+
+    @Autowired
+    private ProgrammerRepository programmerRepository;
+
+    @Before
+    public void setUp() {
+        Team team = buildMockTeam(null, "Équipe \"Ñ\"", "Kotlin\\Java </script>", null);
+        team.setLastStandUp(LocalDateTime.of(2018, 12, 3, 9, 30, 5, 120_000_000));
+        team = teamRepository.save(team);
+
+        Programmer onTeam = buildMockProgrammer("Zoë ☃", null);
+        onTeam.setTeam(team);
+        programmerRepository.save(onTeam);
+        Programmer loner = buildMockProgrammer("loner\t\u0001", null);
+        loner.setDateHired(LocalDate.of(1999, 12, 31));
+        programmerRepository.save(loner);
+        teamRepository.save(buildMockTeam(null, "plain", "Java", null));
+    }
+
+    @After
+    public void tearDown() {
+        teamRepository.deleteAll();
+        programmerRepository.deleteAll();
+    }
+
+    @Test
+    public void testProgrammerListMatchesProgrammersOnTheirOwn() {
+        JsonNode listed = list("/programmer", "programmerAssetList");
+
+        assertEquals(2, listed.size());
+        boolean sawNoTeam = false;
+        for(JsonNode programmer : listed) {
+            sawNoTeam |= !programmer.has("teamId");
+            assertEquals(one("/programmer/" + programmer.get("programmerId").asLong()), programmer);
+        }
+        assertTrue(sawNoTeam);
+    }
+
+    @Test
+    public void testTeamListMatchesTeamsOnTheirOwn() {
+        JsonNode listed = list("/team?sort=name&direction=desc", "teamAssetList");
+
+        assertEquals(2, listed.size());
+        //É sorts after p.
+        assertEquals("2018-12-03T09:30:05.12", listed.get(0).get("lastStandUp").asText());
+        for(JsonNode team : listed) {
+            assertEquals(one("/team/" + team.get("teamId").asLong()), team);
+        }
+    }
+
+    @Test
+    public void testListGoesOutAsHal() {
+        ResponseEntity<JsonNode> response = testRestTemplate.getForEntity("/programmer?dateHiredFrom=2000-01-01",
+                                                                          JsonNode.class);
+
+        assertEquals("application/hal+json;charset=UTF-8", response.getHeaders().getContentType().toString());
+        assertTrue(response.getBody().get("_links").get("self").get("href").asText().contains("/programmer"));
+        //The loner was hired the day before, so only the one on the Team is left.
+        JsonNode listed = response.getBody().get("_embedded").get("programmerAssetList");
+        assertEquals(1, listed.size());
+        assertEquals("Zoë ☃", listed.get(0).get("name").asText());
+        assertFalse(listed.get(0).has("version"));
+    }
+
+    private JsonNode list(String path, String rel) {
+        return testRestTemplate.getForObject(path, JsonNode.class).get("_embedded").get(rel);
+    }
+
+    private JsonNode one(String path) {
+        return testRestTemplate.getForObject(path, JsonNode.class);
+    }
+}
@@ -0,0 +1,283 @@
+package ca.purpleowl.examples.swagger.rest.idempotency;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.ResponseEntity;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class IdempotencyStoreTest {
+    private static final String CLIENT = "127.0.0.1 client-a";
+
+    private final MutableClock clock = new MutableClock();
+    private final AtomicInteger executions = new AtomicInteger();
+    private IdempotencyProperties properties;
+    private IdempotencyStore fixture;
+
+    @Before
+    public void setUp() {
+        properties = new IdempotencyProperties();
+        fixture = new IdempotencyStore(properties, clock);
+    }
+
+    @Test
+    public void testReplayDoesNotRunTheActionAgain() {
+        ResponseEntity<String> first = fixture.execute(CLIENT, "key", "create", "body", this::succeed);
+        ResponseEntity<String> second = fixture.execute(CLIENT, "key", "create", "body", this::succeed);
+
+        assertEquals(1, executions.get());
+        assertEquals(first.getBody(), second.getBody());
+        assertEquals("true", second.getHeaders().getFirst(IdempotencyStore.REPLAYED_HEADER));
+        assertNull(first.getHeaders().getFirst(IdempotencyStore.REPLAYED_HEADER));
+    }
+
+    @Test
+    public void testNoKeyAlwaysRuns() {
+        fixture.execute(CLIENT, null, "create", "body", this::succeed);
+        fixture.execute(CLIENT, null, "create", "body", this::succeed);
+
+        assertEquals(2, executions.get());
+    }
+
+    @Test
+    public void testKeysAreScopedToTheOperation() {
+        fixture.execute(CLIENT, "key", "create", "body", this::succeed);
+        fixture.execute(CLIENT, "key", "update", "body", this::succeed);
+
+        assertEquals(2, executions.get());
+    }
+
+    @Test
+    public void testKeysAreScopedToTheClient() {
+        fixture.execute(CLIENT, "key", "create", "body", this::succeed);
+        ResponseEntity<String> other = fixture.execute("10.0.0.2 client-a", "key", "create", "body", this::succeed);
+
+        assertEquals(2, executions.get());
+        assertNull(other.getHeaders().getFirst(IdempotencyStore.REPLAYED_HEADER));
+    }
+
+    @Test(expected = IdempotencyKeyReusedException.class)
+    public void testReusingAKeyForADifferentRequestIsRejected() {
+        fixture.execute(CLIENT, "key", "create", "body", this::succeed);
+        fixture.execute(CLIENT, "key", "create", "some other body", this::succeed);
+    }
+
+    @Test
+    public void testFailuresAreNotRemembered() {
+        fixture.execute(CLIENT, "key", "create", "body", () -> {
+            executions.incrementAndGet();
+            return ResponseEntity.notFound().build();
+        });
+        fixture.execute(CLIENT, "key", "create", "body", this::succeed);
+
+        assertEquals(2, executions.get());
+    }
+
+    @Test
+    public void testExceptionsAreNotRemembered() {
+        try {
+            fixture.execute(CLIENT, "key", "create", "body", () -> {
+                throw new IllegalStateException("boom");
+            });
+        } catch (IllegalStateException e) {
+            //expected
+        }
+
+        fixture.execute(CLIENT, "key", "create", "body", this::succeed);
+
+        assertEquals(1, executions.get());
+    }
+
+    @Test
+    public void testAKeyThatFailedAndWasRetriedIsOnlyEvictedOnce() {
+        properties.setMaxEntries(2);
+
+        fixture.execute(CLIENT, "first", "create", "body", this::succeed);
+        try {
+            fixture.execute(CLIENT, "retried", "create", "body", () -> {
+                throw new IllegalStateException("boom");
+            });
+        } catch (IllegalStateException e) {
+            //expected
+        }
+        fixture.execute(CLIENT, "older", "create", "body", this::succeed);
+        fixture.execute(CLIENT, "retried", "create", "body", this::succeed);
+        fixture.execute(CLIENT, "newest", "create", "body", this::succeed);
+
+        //The failed attempt mustn't count as the oldest entry; "older" is.
+        fixture.execute(CLIENT, "retried", "create", "body", this::succeed);
+        assertEquals(4, executions.get());
+        fixture.execute(CLIENT, "older", "create", "body", this::succeed);
+        assertEquals(5, executions.get());
+    }
+
+    @Test
+    public void testResponsesExpire() {
+        fixture.execute(CLIENT, "key", "create", "body", this::succeed);
+
+        clock.advance(properties.getRetention().plusSeconds(1));
+        fixture.execute(CLIENT, "key", "create", "body", this::succeed);
+
+        assertEquals(2, executions.get());
+    }
+
+    @Test
+    public void testStoreIsBounded() {
+        properties.setMaxEntries(10);
+
+        for(int i = 0; i < 100; i++) {
+            fixture.execute(CLIENT, "key" + i, "create", "body", this::succeed);
+        }
+
+        assertTrue(fixture.size() <= 10);
+
+        //The most recent request is still remembered.
+        fixture.execute(CLIENT, "key99", "create", "body", this::succeed);
+        assertEquals(100, executions.get());
+    }
+
+    @Test
+    public void testConcurrentDuplicatesAreCollapsed() throws Exception {
+        int duplicates = 8;
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(duplicates);
+
+        try {
+            Future<ResponseEntity<String>> original = executor.submit(() ->
+                    fixture.execute(CLIENT, "key", "create", "body", () -> {
+                        started.countDown();
+                        await(release);
+                        return succeed();
+                    }));
+
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+
+            Future<?>[] retries = new Future<?>[duplicates - 1];
+            for(int i = 0; i < retries.length; i++) {
+                retries[i] = executor.submit(() -> fixture.execute(CLIENT, "key", "create", "body", this::succeed));
+            }
+
+            release.countDown();
+
+            assertEquals("response-1", original.get(5, TimeUnit.SECONDS).getBody());
+            for(Future<?> retry : retries) {
+                assertEquals("response-1", ((ResponseEntity<?>) retry.get(5, TimeUnit.SECONDS)).getBody());
+            }
+            assertEquals(1, executions.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testDuplicateRunsItselfIfTheOriginalThrows() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        try {
+            Future<?> original = executor.submit(() -> fixture.execute(CLIENT, "key", "create", "body", () -> {
+                started.countDown();
+                await(release);
+                throw new IllegalStateException("boom");
+            }));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+
+            AtomicReference<ResponseEntity<String>> duplicate = new AtomicReference<>();
+            Thread retry = new Thread(() -> duplicate.set(fixture.execute(CLIENT, "key", "create", "body", this::succeed)));
+            retry.start();
+
+            //Make sure it's waiting on the original before letting the original fail.
+            while(retry.getState() != Thread.State.TIMED_WAITING && retry.isAlive()) {
+                Thread.sleep(1);
+            }
+            release.countDown();
+            retry.join(5_000);
+
+            assertEquals("response-1", duplicate.get().getBody());
+            assertNull(duplicate.get().getHeaders().getFirst(IdempotencyStore.REPLAYED_HEADER));
+            try {
+                original.get(5, TimeUnit.SECONDS);
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IllegalStateException);
+            }
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(expected = IdempotentRequestInProgressException.class)
+    public void testDuplicateGivesUpWaitingEventually() throws Exception {
+        properties.setInFlightTimeout(Duration.ofMillis(50));
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        try {
+            executor.submit(() -> fixture.execute(CLIENT, "key", "create", "body", () -> {
+                started.countDown();
+                await(release);
+                return succeed();
+            }));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+
+            fixture.execute(CLIENT, "key", "create", "body", this::succeed);
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    private ResponseEntity<String> succeed() {
+        return ResponseEntity.ok("response-" + executions.incrementAndGet());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class MutableClock extends Clock {
+        private Instant now = Instant.now();
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
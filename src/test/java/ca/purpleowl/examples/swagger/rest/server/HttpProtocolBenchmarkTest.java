@@ -0,0 +1,143 @@
+package ca.purpleowl.examples.swagger.rest.server;
+
+import ca.purpleowl.examples.swagger.jpa.entity.Team;
+import ca.purpleowl.examples.swagger.jpa.repository.ProgrammerRepository;
+import ca.purpleowl.examples.swagger.jpa.repository.TeamRepository;
+import ca.purpleowl.examples.swagger.utils.Benchmark;
+import lombok.extern.java.Log;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+import java.util.stream.Collectors;
+
+import static ca.purpleowl.examples.swagger.utils.TestModelInflater.buildMockTeam;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Throughput of the Programmer endpoints over HTTP/1.1 and over HTTP/2 (h2c), the way our API gateway calls them:
+ * lots of small requests, many at once.  Over HTTP/1.1 every request in flight needs a connection of its own; over
+ * HTTP/2 they all share one.
+ *
+ * Admission control is off, since it's the server we're measuring rather than our rate limits.
+ */
+@Log
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+                properties = {"spring.datasource.url=jdbc:h2:mem:http-protocol-benchmark",
+                              "purpleowl.admission.enabled=false"})
+@Category(Benchmark.class)
+public class HttpProtocolBenchmarkTest {
+    private static final int PROGRAMMERS = 100;
+    private static final int IN_FLIGHT = 64;
+    private static final int WARM_UP = 2_000;
+    private static final int REQUESTS = 20_000;
+
+    @LocalServerPort
+    private Integer localServerPort;
+
+    @Autowired
+    private TeamRepository teamRepository;
+
+    @Autowired
+    private ProgrammerRepository programmerRepository;
+
+    private Team team;
+    private List<Long> programmerIds;
+
+    @Before
+    public void setUp() {
+        String[] names = new String[PROGRAMMERS];
+        for(int i = 0; i < PROGRAMMERS; i++) {
+            names[i] = "programmer" + i;
+        }
+        team = teamRepository.save(buildMockTeam(null, "team", "Java", null, names));
+        programmerIds = programmerRepository.findAllByTeamId(team.getId())
+                                            .stream()
+                                            .map(programmer -> programmer.getId())
+                                            .collect(Collectors.toList());
+    }
+
+    @After
+    public void tearDown() {
+        teamRepository.deleteAll();
+        programmerRepository.deleteAll();
+    }
+
+    @Test
+    public void testSingleProgrammer() throws Exception {
+        IntFunction<String> path = i -> "/programmer/" + programmerIds.get(i % PROGRAMMERS);
+
+        run("single, HTTP/1.1", HttpClient.Version.HTTP_1_1, path);
+        run("single, HTTP/2", HttpClient.Version.HTTP_2, path);
+    }
+
+    @Test
+    public void testProgrammersOnTeam() throws Exception {
+        IntFunction<String> path = i -> "/programmer?teamId=" + team.getId();
+
+        run("team list, HTTP/1.1", HttpClient.Version.HTTP_1_1, path);
+        run("team list, HTTP/2", HttpClient.Version.HTTP_2, path);
+    }
+
+    private void run(String name, HttpClient.Version version, IntFunction<String> path) throws Exception {
+        HttpClient client = HttpClient.newBuilder().version(version).build();
+
+        //The first request on its own, so that an HTTP/2 client upgrades one connection rather than racing to open many.
+        assertEquals(version, client.send(request(path.apply(0)), HttpResponse.BodyHandlers.discarding()).version());
+
+        send(client, path, WARM_UP);
+        long startNanos = System.nanoTime();
+        int failures = send(client, path, REQUESTS);
+        long elapsed = System.nanoTime() - startNanos;
+
+        assertEquals(0, failures);
+        log.info(String.format("%-20s %8.0f requests/s  %6.2f ms per request with %d in flight",
+                               name,
+                               REQUESTS / (elapsed / 1_000_000_000.0),
+                               elapsed / 1_000_000.0 / REQUESTS * IN_FLIGHT,
+                               IN_FLIGHT));
+    }
+
+    /**
+     * @return How many of the requests didn't come back with a 200.
+     */
+    private int send(HttpClient client, IntFunction<String> path, int requests) throws Exception {
+        Semaphore inFlight = new Semaphore(IN_FLIGHT);
+        AtomicInteger failures = new AtomicInteger();
+        CompletableFuture<?>[] responses = new CompletableFuture<?>[requests];
+
+        for(int i = 0; i < requests; i++) {
+            inFlight.acquire();
+            responses[i] = client.sendAsync(request(path.apply(i)), HttpResponse.BodyHandlers.ofByteArray())
+                                 .whenComplete((response, failure) -> {
+                                     if(failure != null || response.statusCode() != 200) {
+                                         failures.incrementAndGet();
+                                     }
+                                     inFlight.release();
+                                 });
+        }
+
+        CompletableFuture.allOf(responses).join();
+        return failures.get();
+    }
+
+    private HttpRequest request(String path) {
+        return HttpRequest.newBuilder(URI.create("http://localhost:" + localServerPort + path)).build();
+    }
+}
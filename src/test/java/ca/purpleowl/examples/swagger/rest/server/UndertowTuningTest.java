@@ -0,0 +1,86 @@
+package ca.purpleowl.examples.swagger.rest.server;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+                properties = "purpleowl.undertow.keep-alive.max-requests-per-connection=3")
+public class UndertowTuningTest {
+    @LocalServerPort
+    private Integer localServerPort;
+
+    @Test
+    public void testHttp2OverPlainText() throws Exception {
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_2).build();
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + localServerPort + "/programmer")).build();
+
+        //The first request is upgraded from HTTP/1.1, and the second goes over the HTTP/2 connection that leaves behind.
+        for(int i = 0; i < 2; i++) {
+            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            assertEquals(200, response.statusCode());
+            assertEquals(HttpClient.Version.HTTP_2, response.version());
+        }
+    }
+
+    @Test
+    public void testHttp11ConnectionsAreClosedAfterTheLimit() throws Exception {
+        try(Socket socket = new Socket("localhost", localServerPort)) {
+            socket.setSoTimeout(5000);
+            OutputStream out = socket.getOutputStream();
+            InputStream in = socket.getInputStream();
+
+            assertEquals("keep-alive", get(out, in));
+            assertEquals("keep-alive", get(out, in));
+            assertEquals("close", get(out, in));
+            //The server hung up after the third.
+            assertEquals(-1, in.read());
+        }
+    }
+
+    /**
+     * Sends a GET /programmer and reads the response to it, leaving the connection ready for the next one.
+     *
+     * @return The response's Connection header.
+     */
+    private static String get(OutputStream out, InputStream in) throws IOException {
+        out.write("GET /programmer HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+
+        StringBuilder head = new StringBuilder();
+        while(head.indexOf("\r\n\r\n") < 0) {
+            head.append((char) in.read());
+        }
+
+        String connection = null;
+        int contentLength = 0;
+        for(String line : head.toString().split("\r\n")) {
+            String[] header = line.split(":\\s*", 2);
+            if(header[0].equalsIgnoreCase("Connection")) {
+                connection = header[1];
+            } else if(header[0].equalsIgnoreCase("Content-Length")) {
+                contentLength = Integer.parseInt(header[1]);
+            }
+        }
+
+        assertTrue(head.toString(), head.toString().startsWith("HTTP/1.1 200"));
+        assertEquals(contentLength, in.readNBytes(contentLength).length);
+        return connection;
+    }
+}
@@ -0,0 +1,186 @@
+package ca.purpleowl.examples.swagger.service;
+
+import ca.purpleowl.examples.swagger.jpa.entity.Programmer;
+import ca.purpleowl.examples.swagger.jpa.entity.Team;
+import ca.purpleowl.examples.swagger.jpa.repository.ProgrammerRepository;
+import ca.purpleowl.examples.swagger.jpa.repository.TeamRepository;
+import ca.purpleowl.examples.swagger.rest.asset.ProgrammerAsset;
+import ca.purpleowl.examples.swagger.rest.asset.TeamAsset;
+import ca.purpleowl.examples.swagger.utils.Benchmark;
+import ca.purpleowl.examples.swagger.utils.QueryCountHarness;
+import ca.purpleowl.examples.swagger.utils.QueryCountHarness.QueryCount;
+import lombok.extern.java.Log;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManagerFactory;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.IntConsumer;
+
+import static ca.purpleowl.examples.swagger.utils.TestModelInflater.buildMockProgrammer;
+import static ca.purpleowl.examples.swagger.utils.TestModelInflater.buildMockTeam;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * How much work the common service paths do per call: statements, entities loaded, and bytes allocated on the calling
+ * thread.  Everything runs against a Team of TEAM_SIZE Programmers, since that's where entity graphs get expensive.
+ *
+ * The numbers are logged for people to compare between changes; only a couple of things that should never regress are
+ * asserted.
+ */
+@Log
+@RunWith(SpringRunner.class)
+@ActiveProfiles("query-count")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+@Category(Benchmark.class)
+public class EntityLoadBenchmarkTest {
+    private static final int TEAM_SIZE = 50;
+    private static final int WARM_UP = 200;
+    private static final int ITERATIONS = 500;
+
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    @Autowired
+    private ProgrammerService programmerService;
+
+    @Autowired
+    private TeamService teamService;
+
+    @Autowired
+    private TeamRepository teamRepository;
+
+    @Autowired
+    private ProgrammerRepository programmerRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private QueryCountHarness harness;
+    private Team team;
+
+    @Before
+    public void setUp() {
+        harness = new QueryCountHarness(entityManagerFactory);
+
+        String[] names = new String[TEAM_SIZE];
+        for(int i = 0; i < TEAM_SIZE; i++) {
+            names[i] = "programmer" + i;
+        }
+        team = teamRepository.save(buildMockTeam(null, "team", "Java", null, names));
+    }
+
+    @After
+    public void tearDown() {
+        teamRepository.deleteAll();
+        programmerRepository.deleteAll();
+    }
+
+    @Test
+    public void testReadProgrammer() {
+        long programmerId = team.getProgrammers().get(0).getId();
+
+        run("read programmer", i -> programmerService.findProgrammer(programmerId));
+    }
+
+    @Test
+    public void testReadTeam() {
+        run("read team", i -> teamService.findTeam(team.getId()));
+    }
+
+    @Test
+    public void testSaveTeam() {
+        run("save team", i -> {
+            TeamAsset asset = new TeamAsset();
+            asset.setTeamId(team.getId());
+            asset.setName("team" + i);
+            asset.setTeamFocus("Java");
+            asset.setLastStandUp("2001-01-01T00:00:00");
+            teamService.saveTeam(asset, null);
+        });
+    }
+
+    @Test
+    public void testSaveProgrammer() {
+        run("save programmer", i -> {
+            ProgrammerAsset asset = new ProgrammerAsset();
+            asset.setName("new" + i);
+            asset.setDateHired("2001-01-01");
+            programmerService.saveProgrammer(asset);
+        });
+    }
+
+    @Test
+    public void testAddProgrammerToTeam() {
+        List<Long> newcomers = new ArrayList<>();
+        for(int i = 0; i < WARM_UP + ITERATIONS; i++) {
+            newcomers.add(programmerRepository.save(buildMockProgrammer("newcomer" + i, null)).getId());
+        }
+
+        //The Team grows as we go, so this one is per-Programmer-on-the-Team as much as anything.
+        run("add programmer", i -> teamService.addProgrammerToTeam(newcomers.get(i), team.getId(), null));
+    }
+
+    /**
+     * Putting a Team's Programmers in a HashSet should cost nothing beyond loading them.
+     */
+    @Test
+    public void testHashTeamMembers() {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+
+        QueryCount cost = run("hash team members", i -> transaction.execute(status -> {
+            Team loaded = teamRepository.findById(team.getId()).get();
+            Set<Programmer> members = new HashSet<>(loaded.getProgrammers());
+            return members.size();
+        }));
+
+        assertEquals(1, cost.getCollectionFetches() / ITERATIONS);
+    }
+
+    private QueryCount run(String name, IntConsumer operation) {
+        for(int i = 0; i < WARM_UP; i++) {
+            operation.accept(i);
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long[] allocated = new long[1];
+        long[] elapsed = new long[1];
+
+        QueryCount cost = harness.measure(() -> {
+            long startBytes = threads.getThreadAllocatedBytes(threadId);
+            long startNanos = System.nanoTime();
+
+            for(int i = WARM_UP; i < WARM_UP + ITERATIONS; i++) {
+                operation.accept(i);
+            }
+
+            elapsed[0] = System.nanoTime() - startNanos;
+            allocated[0] = threads.getThreadAllocatedBytes(threadId) - startBytes;
+        });
+
+        log.info(String.format("%-18s %6.1f statements  %6.1f entity loads  %6.1f collection fetches  %9d bytes  %7.1f us  (per call)",
+                               name,
+                               (double) cost.getStatementCount() / ITERATIONS,
+                               (double) cost.getEntityLoads() / ITERATIONS,
+                               (double) cost.getCollectionFetches() / ITERATIONS,
+                               allocated[0] / ITERATIONS,
+                               elapsed[0] / 1000.0 / ITERATIONS));
+        return cost;
+    }
+}
@@ -0,0 +1,267 @@
+package ca.purpleowl.examples.swagger.service;
+
+import ca.purpleowl.examples.swagger.jpa.datasource.ShardRouter;
+import ca.purpleowl.examples.swagger.jpa.pool.PoolUsageMetricsTrackerFactory;
+import ca.purpleowl.examples.swagger.rest.asset.BatchOperationAsset;
+import ca.purpleowl.examples.swagger.rest.asset.BatchRequestAsset;
+import ca.purpleowl.examples.swagger.rest.asset.ProgrammerAsset;
+import ca.purpleowl.examples.swagger.rest.asset.TeamAsset;
+import ca.purpleowl.examples.swagger.rest.batch.BatchDispatcher;
+import ca.purpleowl.examples.swagger.rest.batch.InvalidBatchException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Sort;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Three shards, each its own H2 database.  The databases are looked at directly (not through the application) to see
+ * where things actually ended up.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:sharding-0;DB_CLOSE_DELAY=-1",
+        "purpleowl.datasource.sharding.enabled=true",
+        "purpleowl.datasource.sharding.shards[0].url=jdbc:h2:mem:sharding-1;DB_CLOSE_DELAY=-1",
+        "purpleowl.datasource.sharding.shards[1].url=jdbc:h2:mem:sharding-2;DB_CLOSE_DELAY=-1"
+})
+public class ShardingTest {
+    private static final int SHARDS = 3;
+
+    @Autowired
+    private TeamService teamService;
+
+    @Autowired
+    private ProgrammerService programmerService;
+
+    @Autowired
+    private ShardRouter shardRouter;
+
+    @Autowired
+    private PoolUsageMetricsTrackerFactory poolUsage;
+
+    @Autowired
+    private BatchDispatcher batchDispatcher;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private final List<TeamAsset> teams = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        //New Teams are dealt out in turn, so three in a row land on three different shards.
+        for(String name : new String[]{"Alpha", "Bravo", "Charlie"}) {
+            TeamAsset team = teamService.saveTeam(team(name), null);
+            teams.add(team);
+
+            for(int i = 0; i < 4; i++) {
+                ProgrammerAsset programmer = programmerService.saveProgrammer(programmer(name.toLowerCase() + i));
+                assertTrue(teamService.addProgrammerToTeam(programmer.getProgrammerId(), team.getTeamId(), null));
+            }
+        }
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        for(int shard = 0; shard < SHARDS; shard++) {
+            try(Connection connection = connect(shard); Statement statement = connection.createStatement()) {
+                statement.execute("DELETE FROM programmer");
+                statement.execute("DELETE FROM team");
+            }
+        }
+    }
+
+    @Test
+    public void testEachTeamLivesWithItsProgrammersOnItsOwnShard() throws SQLException {
+        Set<Integer> shardsUsed = new HashSet<>();
+
+        for(TeamAsset team : teams) {
+            int shard = shardRouter.shardOf(team.getTeamId());
+            shardsUsed.add(shard);
+
+            assertEquals(Arrays.asList(team.getTeamId()), ids(shard, "SELECT id FROM team"));
+            assertEquals(4, ids(shard, "SELECT id FROM programmer WHERE team_id = " + team.getTeamId()).size());
+            //Nobody else is on this shard; the Programmers were moved here when they joined.
+            assertEquals(4, ids(shard, "SELECT id FROM programmer").size());
+        }
+
+        assertEquals(SHARDS, shardsUsed.size());
+    }
+
+    @Test
+    public void testOneTeamOnlyGoesToOneShard() {
+        TeamAsset team = teams.get(1);
+        int home = shardRouter.shardOf(team.getTeamId());
+        long[] before = acquires();
+
+        assertEquals(4, programmerService.findAllProgrammersOnTeam(team.getTeamId()).size());
+        assertEquals("Bravo", teamService.findTeam(team.getTeamId()).getName());
+
+        long[] after = acquires();
+        for(int shard = 0; shard < SHARDS; shard++) {
+            assertEquals("shard " + shard, shard == home ? 2 : 0, after[shard] - before[shard]);
+        }
+    }
+
+    @Test
+    public void testEverythingIsGatheredFromEveryShardInOrder() {
+        List<ProgrammerAsset> all = programmerService.findAllProgrammers();
+        assertEquals(12, all.size());
+        assertSorted(all, Comparator.comparing(ProgrammerAsset::getProgrammerId));
+
+        List<ProgrammerAsset> byName = programmerService.findProgrammers(null, null, null, Sort.by(Sort.Direction.DESC, "name"));
+        assertEquals(12, byName.size());
+        assertEquals("charlie3", byName.get(0).getName());
+        assertSorted(byName, Comparator.comparing(ProgrammerAsset::getName).reversed());
+
+        List<TeamAsset> allTeams = teamService.findTeams(null, null, Sort.by("name"));
+        assertEquals(Arrays.asList("Alpha", "Bravo", "Charlie"),
+                     allTeams.stream().map(TeamAsset::getName).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testChangesArePagedAcrossShards() {
+        List<Long> sequences = new ArrayList<>();
+        Set<Long> seen = new HashSet<>();
+        long since = 0;
+        ChangeSet<ProgrammerAsset> page;
+
+        do {
+            page = programmerService.findProgrammerChanges(since, 5);
+            page.getChanges().forEach(programmer -> seen.add(programmer.getProgrammerId()));
+            sequences.add(page.getLastSequence());
+            since = page.getLastSequence();
+        } while(page.isMore());
+
+        assertEquals(12, seen.size());
+        assertSorted(sequences, Comparator.naturalOrder());
+    }
+
+    @Test
+    public void testMovingProgrammersToAnotherShardMovesTheirRows() throws SQLException {
+        TeamAsset from = teams.get(0);
+        TeamAsset to = teams.get(2);
+        int fromShard = shardRouter.shardOf(from.getTeamId());
+        int toShard = shardRouter.shardOf(to.getTeamId());
+
+        assertEquals(Integer.valueOf(4), teamService.moveProgrammers(from.getTeamId(), to.getTeamId(), null));
+
+        assertEquals(0, ids(fromShard, "SELECT id FROM programmer").size());
+        List<Long> moved = ids(toShard, "SELECT id FROM programmer");
+        assertEquals(8, moved.size());
+        assertEquals(8, programmerService.findAllProgrammersOnTeam(to.getTeamId()).size());
+
+        //They're still found by ID, even though their IDs point at the shard they came from.
+        for(Long programmerId : moved) {
+            ProgrammerAsset programmer = programmerService.findProgrammer(programmerId);
+            assertNotNull(programmer);
+            assertEquals(to.getTeamId(), programmer.getTeamId());
+        }
+    }
+
+    /**
+     * Each request would commit on its shard by itself, so a failure further on couldn't roll back the ones before it.
+     * The batch is refused instead, and nothing in it runs.
+     */
+    @Test
+    public void testAtomicBatchesAreRefusedRatherThanHalfCommitted() throws SQLException {
+        BatchRequestAsset batch = new BatchRequestAsset();
+        batch.setAtomic(true);
+        batch.getRequests().add(operation("POST", "/programmer", objectMapper.valueToTree(programmer("delta0"))));
+        batch.getRequests().add(operation("POST", "/team/" + teams.get(0).getTeamId() + "/add-programmer/{{0.programmerId}}", null));
+        batch.getRequests().add(operation("GET", "/programmer/" + Long.MAX_VALUE, null));
+
+        try {
+            batchDispatcher.dispatch(new MockHttpServletRequest(), new MockHttpServletResponse(), batch);
+            fail("an atomic batch ran across shards");
+        } catch(InvalidBatchException e) {
+            //Expected.
+        }
+
+        for(int shard = 0; shard < SHARDS; shard++) {
+            assertEquals(0, ids(shard, "SELECT id FROM programmer WHERE name = 'delta0'").size());
+        }
+        assertEquals(4, programmerService.findAllProgrammersOnTeam(teams.get(0).getTeamId()).size());
+    }
+
+    private long[] acquires() {
+        long[] acquires = new long[SHARDS];
+        for(int shard = 0; shard < SHARDS; shard++) {
+            acquires[shard] = poolUsage.snapshot("shard-" + shard).getAcquires();
+        }
+        return acquires;
+    }
+
+    private static <T> void assertSorted(List<T> list, Comparator<? super T> order) {
+        List<T> sorted = new ArrayList<>(list);
+        sorted.sort(order);
+        assertEquals(sorted, list);
+    }
+
+    private static List<Long> ids(int shard, String sql) throws SQLException {
+        List<Long> ids = new ArrayList<>();
+
+        try(Connection connection = connect(shard);
+            Statement statement = connection.createStatement();
+            ResultSet resultSet = statement.executeQuery(sql)) {
+            while(resultSet.next()) {
+                ids.add(resultSet.getLong(1));
+            }
+        }
+
+        return ids;
+    }
+
+    private static Connection connect(int shard) throws SQLException {
+        return DriverManager.getConnection("jdbc:h2:mem:sharding-" + shard, "sa", "");
+    }
+
+    private static BatchOperationAsset operation(String method, String path, JsonNode body) {
+        BatchOperationAsset operation = new BatchOperationAsset();
+        operation.setMethod(method);
+        operation.setPath(path);
+        operation.setBody(body);
+        return operation;
+    }
+
+    private static TeamAsset team(String name) {
+        TeamAsset team = new TeamAsset();
+        team.setName(name);
+        team.setTeamFocus("Java");
+        team.setLastStandUp("2018-11-05T09:00:00");
+        return team;
+    }
+
+    private static ProgrammerAsset programmer(String name) {
+        ProgrammerAsset programmer = new ProgrammerAsset();
+        programmer.setName(name);
+        programmer.setDateHired("2018-06-01");
+        return programmer;
+    }
+}
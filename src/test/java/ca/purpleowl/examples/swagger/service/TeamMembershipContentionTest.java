@@ -0,0 +1,139 @@
+package ca.purpleowl.examples.swagger.service;
+
+import ca.purpleowl.examples.swagger.jpa.entity.Team;
+import ca.purpleowl.examples.swagger.jpa.repository.ProgrammerRepository;
+import ca.purpleowl.examples.swagger.jpa.repository.TeamRepository;
+import ca.purpleowl.examples.swagger.utils.Benchmark;
+import lombok.extern.java.Log;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static ca.purpleowl.examples.swagger.utils.TestModelInflater.buildMockProgrammer;
+import static ca.purpleowl.examples.swagger.utils.TestModelInflater.buildMockTeam;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Lots of threads adding Programmers to the same Team at once.  Since each add only writes its own Programmer, they
+ * shouldn't conflict with each other, and none of them should go missing.
+ */
+@Log
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+public class TeamMembershipContentionTest {
+    @Autowired
+    private TeamService teamService;
+
+    @Autowired
+    private TeamRepository teamRepository;
+
+    @Autowired
+    private ProgrammerRepository programmerRepository;
+
+    @After
+    public void tearDown() {
+        teamRepository.deleteAll();
+        programmerRepository.deleteAll();
+    }
+
+    @Test
+    public void testConcurrentAddsToOneTeamLoseNothing() throws Exception {
+        Team team = teamRepository.save(buildMockTeam(null, "popular", "Java", null));
+
+        Queue<Throwable> failures = addConcurrently(team, 8, 25);
+
+        assertTrue("Adds failed under contention: " + failures, failures.isEmpty());
+        assertEquals(8 * 25, programmerRepository.findAllByTeamId(team.getId()).size());
+        //Nobody touched the Team itself.
+        assertEquals(team.getVersion(), teamRepository.findById(team.getId()).get().getVersion());
+    }
+
+    /**
+     * Same thing, more of it, with the throughput at each thread count logged.  With no shared row to fight over,
+     * adding threads shouldn't make things slower.
+     */
+    @Test
+    @Category(Benchmark.class)
+    public void testThroughputScalesWithThreads() throws Exception {
+        int perRun = 800;
+        double singleThreaded = 0;
+
+        for(int threads : new int[]{1, 2, 4, 8}) {
+            Team team = teamRepository.save(buildMockTeam(null, "popular" + threads, "Java", null));
+
+            long start = System.nanoTime();
+            Queue<Throwable> failures = addConcurrently(team, threads, perRun / threads);
+            double perSecond = perRun / ((System.nanoTime() - start) / 1e9);
+
+            log.info(String.format("%d thread(s): %8.1f adds/s", threads, perSecond));
+            assertTrue("Adds failed under contention: " + failures, failures.isEmpty());
+            assertEquals(perRun, programmerRepository.findAllByTeamId(team.getId()).size());
+
+            if(threads == 1) {
+                singleThreaded = perSecond;
+            } else {
+                assertTrue(threads + " threads managed " + perSecond + " adds/s against " + singleThreaded + " for one",
+                           perSecond >= singleThreaded * 0.9);
+            }
+        }
+    }
+
+    /**
+     * Creates threads * perThread Programmers up front, then has each thread add its share to the Team, all starting at
+     * the same moment.
+     *
+     * @return anything that went wrong, including adds that reported they couldn't find the Team or Programmer.
+     */
+    private Queue<Throwable> addConcurrently(Team team, int threads, int perThread) throws InterruptedException {
+        List<List<Long>> shares = new ArrayList<>();
+        AtomicInteger names = new AtomicInteger();
+        for(int t = 0; t < threads; t++) {
+            List<Long> share = new ArrayList<>();
+            for(int i = 0; i < perThread; i++) {
+                share.add(programmerRepository.save(buildMockProgrammer("programmer" + names.incrementAndGet(), null))
+                                              .getId());
+            }
+            shares.add(share);
+        }
+
+        Queue<Throwable> failures = new ConcurrentLinkedQueue<>();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+
+        for(List<Long> share : shares) {
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                    for(Long programmerId : share) {
+                        if(!teamService.addProgrammerToTeam(programmerId, team.getId(), team.getVersion())) {
+                            failures.add(new AssertionError("Programmer " + programmerId + " wasn't added"));
+                        }
+                    }
+                } catch (Throwable e) {
+                    failures.add(e);
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+
+        start.countDown();
+        for(Thread worker : workers) {
+            worker.join();
+        }
+
+        return failures;
+    }
+}
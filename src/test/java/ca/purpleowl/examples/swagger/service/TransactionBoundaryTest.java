@@ -0,0 +1,114 @@
+package ca.purpleowl.examples.swagger.service;
+
+import ca.purpleowl.examples.swagger.jpa.entity.Programmer;
+import ca.purpleowl.examples.swagger.jpa.entity.Team;
+import ca.purpleowl.examples.swagger.jpa.repository.ProgrammerRepository;
+import ca.purpleowl.examples.swagger.jpa.repository.TeamRepository;
+import ca.purpleowl.examples.swagger.rest.asset.ProgrammerAsset;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import static ca.purpleowl.examples.swagger.utils.TestModelInflater.buildMockProgrammer;
+import static ca.purpleowl.examples.swagger.utils.TestModelInflater.buildMockTeam;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Checks that the services draw their transaction boundaries where we think they do.  The repositories are mocked,
+ * and each mock records what the transaction looked like at the moment it was called.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+public class TransactionBoundaryTest {
+    @Autowired
+    private TeamService teamService;
+
+    @Autowired
+    private ProgrammerService programmerService;
+
+    @MockBean
+    private TeamRepository mockTeamRepo;
+
+    @MockBean
+    private ProgrammerRepository mockProgrammerRepo;
+
+    @Test
+    public void testReadsAreReadOnly() {
+        List<Boolean> readOnly = new ArrayList<>();
+
+        when(mockTeamRepo.findById(anyLong())).thenAnswer(invocation -> {
+            readOnly.add(TransactionSynchronizationManager.isCurrentTransactionReadOnly());
+            return Optional.of(buildMockTeam(1L, "team", "Java", null));
+        });
+        when(mockProgrammerRepo.findAll()).thenAnswer(invocation -> {
+            readOnly.add(TransactionSynchronizationManager.isCurrentTransactionReadOnly());
+            return Collections.emptyList();
+        });
+
+        teamService.findTeam(1L);
+        programmerService.findAllProgrammers();
+
+        assertEquals(2, readOnly.size());
+        assertTrue(readOnly.stream().allMatch(Boolean::booleanValue));
+    }
+
+    @Test
+    public void testAddProgrammerToTeamRunsInOneReadWriteTransaction() {
+        Team team = buildMockTeam(1L, "team", "Java", null);
+        Programmer programmer = buildMockProgrammer("programmer", 2L);
+        List<String> transactions = new ArrayList<>();
+
+        when(mockTeamRepo.findById(1L)).thenAnswer(invocation -> {
+            assertFalse(TransactionSynchronizationManager.isCurrentTransactionReadOnly());
+            transactions.add(TransactionSynchronizationManager.getCurrentTransactionName());
+            return Optional.of(team);
+        });
+        when(mockProgrammerRepo.findById(2L)).thenAnswer(invocation -> {
+            transactions.add(TransactionSynchronizationManager.getCurrentTransactionName());
+            return Optional.of(programmer);
+        });
+
+        assertTrue(teamService.addProgrammerToTeam(2L, 1L, null));
+
+        assertEquals(2, transactions.size());
+        assertTrue(transactions.get(0).endsWith("TeamService.addProgrammerToTeam"));
+        assertEquals(transactions.get(0), transactions.get(1));
+        assertEquals(team, programmer.getTeam());
+        verify(mockTeamRepo, never()).save(any(Team.class));
+    }
+
+    @Test
+    public void testSaveProgrammerIsReadWrite() {
+        List<Boolean> readOnly = new ArrayList<>();
+
+        when(mockProgrammerRepo.save(any(Programmer.class))).thenAnswer(invocation -> {
+            readOnly.add(TransactionSynchronizationManager.isCurrentTransactionReadOnly());
+            Programmer saved = invocation.getArgument(0);
+            saved.setId(1L);
+            return saved;
+        });
+
+        ProgrammerAsset asset = new ProgrammerAsset();
+        asset.setName("name");
+        asset.setDateHired("2001-01-01");
+        programmerService.saveProgrammer(asset);
+
+        assertEquals(Collections.singletonList(false), readOnly);
+    }
+}
@@ -0,0 +1,87 @@
+package ca.purpleowl.examples.swagger.service.coalescing;
+
+import ca.purpleowl.examples.swagger.jpa.repository.ProgrammerRepository;
+import ca.purpleowl.examples.swagger.jpa.repository.TeamRepository;
+import ca.purpleowl.examples.swagger.rest.asset.TeamAsset;
+import ca.purpleowl.examples.swagger.service.TeamService;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static ca.purpleowl.examples.swagger.utils.TestModelInflater.buildMockTeam;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Checks that @Coalesced is actually wired up in front of the services: concurrent lookups of one Team make one
+ * repository call between them.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+public class CoalescingAspectTest {
+    private static final int CALLERS = 20;
+
+    @Autowired
+    private TeamService teamService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @MockBean
+    private TeamRepository mockTeamRepo;
+
+    @MockBean
+    private ProgrammerRepository mockProgrammerRepo;
+
+    @Test
+    public void testConcurrentFindTeamsShareOneLoad() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        when(mockTeamRepo.findById(420L)).thenAnswer(invocation -> {
+            release.await();
+            return Optional.of(buildMockTeam(420L, "team", "Java", null));
+        });
+
+        List<CompletableFuture<TeamAsset>> calls = new ArrayList<>();
+        for(int i = 0; i < CALLERS; i++) {
+            calls.add(CompletableFuture.supplyAsync(() -> teamService.findTeam(420L),
+                                                    runnable -> new Thread(runnable).start()));
+        }
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while(followers() < CALLERS - 1) {
+            assertTrue("Callers never coalesced", System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+        release.countDown();
+
+        for(CompletableFuture<TeamAsset> call : calls) {
+            assertEquals("team", call.get(5, TimeUnit.SECONDS).getName());
+        }
+        verify(mockTeamRepo, times(1)).findById(420L);
+    }
+
+    private double followers() {
+        //find() rather than get(), since the counter doesn't exist until the first call gets through.
+        return meterRegistry.find(SingleFlight.CALLS_METRIC)
+                            .tag("operation", "TeamService.findTeam")
+                            .tag("role", "follower")
+                            .counters()
+                            .stream()
+                            .mapToDouble(counter -> counter.count())
+                            .sum();
+    }
+}
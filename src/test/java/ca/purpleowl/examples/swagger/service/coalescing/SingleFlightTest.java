@@ -0,0 +1,115 @@
+package ca.purpleowl.examples.swagger.service.coalescing;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SingleFlightTest {
+    private static final int FOLLOWERS = 9;
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final SingleFlight fixture = new SingleFlight("test", meterRegistry);
+    private final AtomicInteger loads = new AtomicInteger();
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @Test
+    public void testConcurrentCallsShareOneLoad() throws Exception {
+        Object result = new Object();
+        List<CompletableFuture<Object>> calls = startCalls(() -> result);
+
+        release.countDown();
+        for(CompletableFuture<Object> call : calls) {
+            assertSame(result, call.get(5, TimeUnit.SECONDS));
+        }
+
+        assertEquals(1, loads.get());
+        assertEquals(0.9, fixture.coalescingRatio(), 0.0001);
+        assertEquals(0.9, meterRegistry.get(SingleFlight.RATIO_METRIC).gauge().value(), 0.0001);
+    }
+
+    @Test
+    public void testFollowersGetTheLeadersException() throws Exception {
+        IllegalStateException failure = new IllegalStateException("database's gone");
+        List<CompletableFuture<Object>> calls = startCalls(() -> {
+            throw failure;
+        });
+
+        release.countDown();
+        for(CompletableFuture<Object> call : calls) {
+            try {
+                call.get(5, TimeUnit.SECONDS);
+                fail("Expected the leader's exception");
+            } catch (ExecutionException e) {
+                assertSame(failure, e.getCause());
+            }
+        }
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void testNothingIsKeptOnceTheLoadFinishes() throws Throwable {
+        release.countDown();
+
+        fixture.execute("key", this::load);
+        fixture.execute("key", this::load);
+
+        assertEquals(2, loads.get());
+        assertEquals(0, fixture.inFlight());
+    }
+
+    @Test
+    public void testDifferentKeysDontShare() throws Throwable {
+        release.countDown();
+
+        assertEquals("a", fixture.execute("a", () -> "a"));
+        assertEquals("b", fixture.execute("b", () -> "b"));
+    }
+
+    /**
+     * Starts a leader (which blocks until release is counted down) and FOLLOWERS more calls for the same key, and waits
+     * until every one of the followers has found the leader's load in flight.
+     */
+    private List<CompletableFuture<Object>> startCalls(SingleFlight.Load result) throws InterruptedException {
+        List<CompletableFuture<Object>> calls = new ArrayList<>();
+        for(int i = 0; i <= FOLLOWERS; i++) {
+            calls.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return fixture.execute("key", () -> {
+                        load();
+                        return result.run();
+                    });
+                } catch (Throwable e) {
+                    throw new CompletionException(e);
+                }
+            }, runnable -> new Thread(runnable).start()));
+        }
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while(meterRegistry.get(SingleFlight.CALLS_METRIC).tag("role", "follower").counter().count() < FOLLOWERS) {
+            assertTrue("Followers never showed up", System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+
+        return calls;
+    }
+
+    private Object load() throws InterruptedException {
+        loads.incrementAndGet();
+        release.await();
+        return null;
+    }
+}
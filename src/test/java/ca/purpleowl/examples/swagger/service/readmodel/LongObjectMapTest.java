@@ -0,0 +1,52 @@
+package ca.purpleowl.examples.swagger.service.readmodel;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class LongObjectMapTest {
+    private final LongObjectMap<String> fixture = new LongObjectMap<>();
+
+    @Test
+    public void testBehavesLikeAHashMap() {
+        Map<Long, String> expected = new HashMap<>();
+        Random random = new Random(42);
+
+        //A small key range so that there are plenty of collisions, overwrites and removals of keys that are there.
+        for(int i = 0; i < 100_000; i++) {
+            long key = 1 + random.nextInt(2_000);
+            if(random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), fixture.remove(key));
+            } else {
+                String value = "value" + i;
+                assertEquals(expected.put(key, value), fixture.put(key, value));
+            }
+        }
+
+        assertEquals(expected.size(), fixture.size());
+        for(long key = 1; key <= 2_000; key++) {
+            assertEquals(expected.get(key), fixture.get(key));
+        }
+        assertArrayEquals(expected.keySet().stream().mapToLong(Long::longValue).sorted().toArray(), fixture.keys());
+    }
+
+    @Test
+    public void testMissingAndNonPositiveKeysFindNothing() {
+        fixture.put(1, "one");
+
+        assertNull(fixture.get(2));
+        assertNull(fixture.get(0));
+        assertNull(fixture.remove(-1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testZeroCantBeAKey() {
+        fixture.put(0, "zero");
+    }
+}
@@ -0,0 +1,94 @@
+package ca.purpleowl.examples.swagger.service.readmodel;
+
+import ca.purpleowl.examples.swagger.rest.asset.ProgrammerAsset;
+import ca.purpleowl.examples.swagger.rest.asset.TeamAsset;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ReadModelSnapshotTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("nested/read-model.snapshot");
+        ReadModelSnapshot snapshot = new ReadModelSnapshot(path);
+
+        TeamAsset team = team(7L, 3L, "Ørsted's Crew", null, "2018-12-01T09:00:00");
+        ProgrammerAsset onTeam = programmer(8L, 0L, "Zoë", "2018-01-15", 7L);
+        ProgrammerAsset free = programmer(9L, 2L, null, null, null);
+
+        snapshot.write(42L, Collections.singletonList(team), Arrays.asList(onTeam, free));
+        ReadModelSnapshot.Contents contents = snapshot.read();
+
+        assertEquals(42L, contents.getLastSequence());
+        assertEquals(Collections.singletonList(team), contents.getTeams());
+        assertEquals(Arrays.asList(onTeam, free), contents.getProgrammers());
+        //Nothing left behind from writing it.
+        assertEquals(1, Files.list(path.getParent()).count());
+    }
+
+    @Test
+    public void testDelete() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("read-model.snapshot");
+        ReadModelSnapshot snapshot = new ReadModelSnapshot(path);
+        snapshot.write(1L, Collections.emptyList(), Collections.emptyList());
+
+        snapshot.delete();
+        assertNull(snapshot.read());
+        //Nothing there to delete is fine too.
+        snapshot.delete();
+    }
+
+    @Test
+    public void testMissingSnapshot() {
+        assertNull(new ReadModelSnapshot(folder.getRoot().toPath().resolve("nothing-here")).read());
+    }
+
+    @Test
+    public void testUnreadableSnapshotsAreIgnored() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("read-model.snapshot");
+        ReadModelSnapshot snapshot = new ReadModelSnapshot(path);
+
+        Files.write(path, "not a snapshot at all".getBytes());
+        assertNull(snapshot.read());
+
+        //Cut off part way through.
+        snapshot.write(1L, Collections.singletonList(team(1L, 0L, "team", "Java", null)), Collections.emptyList());
+        byte[] whole = Files.readAllBytes(path);
+        Files.write(path, Arrays.copyOf(whole, whole.length - 10));
+        assertNull(snapshot.read());
+
+        Files.write(path, new byte[0]);
+        assertNull(snapshot.read());
+    }
+
+    private static TeamAsset team(Long id, Long version, String name, String focus, String lastStandUp) {
+        TeamAsset team = new TeamAsset();
+        team.setTeamId(id);
+        team.setVersion(version);
+        team.setName(name);
+        team.setTeamFocus(focus);
+        team.setLastStandUp(lastStandUp);
+        return team;
+    }
+
+    private static ProgrammerAsset programmer(Long id, Long version, String name, String dateHired, Long teamId) {
+        ProgrammerAsset programmer = new ProgrammerAsset();
+        programmer.setProgrammerId(id);
+        programmer.setVersion(version);
+        programmer.setName(name);
+        programmer.setDateHired(dateHired);
+        programmer.setTeamId(teamId);
+        return programmer;
+    }
+}
@@ -0,0 +1,190 @@
+package ca.purpleowl.examples.swagger.service.readmodel;
+
+import ca.purpleowl.examples.swagger.jpa.entity.Programmer;
+import ca.purpleowl.examples.swagger.jpa.entity.Team;
+import ca.purpleowl.examples.swagger.jpa.repository.ProgrammerRepository;
+import ca.purpleowl.examples.swagger.jpa.repository.TeamRepository;
+import ca.purpleowl.examples.swagger.rest.asset.ProgrammerAsset;
+import ca.purpleowl.examples.swagger.rest.asset.TeamAsset;
+import ca.purpleowl.examples.swagger.utils.QueryCountHarness;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static ca.purpleowl.examples.swagger.utils.TestModelInflater.buildMockProgrammer;
+import static ca.purpleowl.examples.swagger.utils.TestModelInflater.buildMockTeam;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The read model, switched on, against the real database.
+ */
+@RunWith(SpringRunner.class)
+@ActiveProfiles("query-count")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+                properties = "purpleowl.read-model.enabled=true")
+public class ReadModelTest {
+    @Autowired
+    private TestRestTemplate testRestTemplate;
+
+    @Autowired
+    private ReadModel readModel;
+
+    @Autowired
+    private TeamRepository teamRepository;
+
+    @Autowired
+    private ProgrammerRepository programmerRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @After
+    public void tearDown() {
+        teamRepository.deleteAll();
+        programmerRepository.deleteAll();
+        //Those went around the services, so the read model has to be told.
+        readModel.checkConsistency();
+    }
+
+    @Test
+    public void testGetsAreServedWithoutTheDatabase() {
+        TeamAsset team = postTeam("team1");
+        ProgrammerAsset programmer = postProgrammer("programmer1");
+        assertEquals(HttpStatus.OK, testRestTemplate.postForEntity("/team/" + team.getTeamId() + "/add-programmer/" +
+                                                                   programmer.getProgrammerId(),
+                                                                   null,
+                                                                   String.class).getStatusCode());
+
+        QueryCountHarness harness = new QueryCountHarness(entityManagerFactory);
+        harness.measure(() -> {
+            JsonNode onTeam = testRestTemplate.getForObject("/programmer?teamId=" + team.getTeamId(), JsonNode.class);
+            assertEquals("team1", onTeam.get("_embedded").get("programmerAssetList").get(0).get("teamName").asText());
+
+            assertEquals(HttpStatus.OK,
+                         testRestTemplate.getForEntity("/team/" + team.getTeamId(), String.class).getStatusCode());
+            assertEquals(HttpStatus.OK,
+                         testRestTemplate.getForEntity("/programmer/" + programmer.getProgrammerId(), String.class)
+                                         .getStatusCode());
+            assertEquals(HttpStatus.NOT_FOUND,
+                         testRestTemplate.getForEntity("/team/" + (team.getTeamId() + 1000), String.class)
+                                         .getStatusCode());
+            testRestTemplate.getForObject("/team", String.class);
+            testRestTemplate.getForObject("/programmer", String.class);
+        }).assertStatementsAtMost(0);
+    }
+
+    @Test
+    public void testRenamingATeamShowsUpOnItsProgrammers() {
+        TeamAsset team = postTeam("before");
+        ProgrammerAsset programmer = postProgrammer("programmer1");
+        testRestTemplate.postForEntity("/team/" + team.getTeamId() + "/add-programmer/" + programmer.getProgrammerId(),
+                                       null,
+                                       String.class);
+
+        team.setName("after");
+        testRestTemplate.postForEntity("/team", team, String.class);
+
+        assertEquals("after", readModel.findProgrammer(programmer.getProgrammerId()).getTeamName());
+    }
+
+    @Test
+    public void testTeamMembersStayInNameOrder() {
+        TeamAsset team = postTeam("team1");
+        for(String name : new String[]{"carol", "alice", "bob"}) {
+            ProgrammerAsset programmer = postProgrammer(name);
+            testRestTemplate.postForEntity("/team/" + team.getTeamId() + "/add-programmer/" +
+                                           programmer.getProgrammerId(),
+                                           null,
+                                           String.class);
+        }
+        assertEquals(List.of("alice", "bob", "carol"), names(readModel.findAllProgrammersOnTeam(team.getTeamId())));
+
+        //Renaming moves them, and a rename to someone else's name still leaves both there.
+        ProgrammerAsset alice = readModel.findAllProgrammersOnTeam(team.getTeamId()).get(0);
+        alice.setName("dave");
+        assertTrue(readModel.applyProgrammer(withNextVersion(alice)));
+        assertEquals(List.of("bob", "carol", "dave"), names(readModel.findAllProgrammersOnTeam(team.getTeamId())));
+
+        ProgrammerAsset carol = readModel.findAllProgrammersOnTeam(team.getTeamId()).get(1);
+        carol.setName("bob");
+        assertTrue(readModel.applyProgrammer(withNextVersion(carol)));
+        assertEquals(List.of("bob", "bob", "dave"), names(readModel.findAllProgrammersOnTeam(team.getTeamId())));
+
+        //Leaving the Team finds it by its new name.
+        carol.setTeamId(null);
+        assertTrue(readModel.applyProgrammer(withNextVersion(carol)));
+        assertEquals(List.of("bob", "dave"), names(readModel.findAllProgrammersOnTeam(team.getTeamId())));
+    }
+
+    @Test
+    public void testConsistencyCheckPicksUpWritesMadeAroundTheServices() {
+        Team team = teamRepository.save(buildMockTeam(null, "sneaky", "Java", null));
+        Programmer programmer = buildMockProgrammer("sneaky programmer", null);
+        programmer.setTeam(team);
+        programmer = programmerRepository.save(programmer);
+        assertNull(readModel.findTeam(team.getId()));
+
+        assertEquals(2, readModel.checkConsistency());
+        assertEquals("sneaky", readModel.findTeam(team.getId()).getName());
+        assertEquals(1, readModel.findAllProgrammersOnTeam(team.getId()).size());
+
+        programmerRepository.deleteById(programmer.getId());
+        assertEquals(1, readModel.checkConsistency());
+        assertTrue(readModel.findAllProgrammersOnTeam(team.getId()).isEmpty());
+        assertEquals(0, readModel.checkConsistency());
+    }
+
+    @Test
+    public void testOlderVersionsAreIgnored() {
+        TeamAsset team = postTeam("team1");
+        team.setName("renamed");
+        TeamAsset renamed = testRestTemplate.postForObject("/team", team, TeamAsset.class);
+
+        //The create's event, turning up late.
+        TeamAsset stale = new TeamAsset();
+        stale.setTeamId(team.getTeamId());
+        stale.setName("team1");
+        stale.setVersion(0L);
+        assertFalse(readModel.applyTeam(stale));
+
+        assertEquals("renamed", readModel.findTeam(renamed.getTeamId()).getName());
+    }
+
+    private static ProgrammerAsset withNextVersion(ProgrammerAsset programmer) {
+        programmer.setVersion(programmer.getVersion() + 1);
+        return programmer;
+    }
+
+    private static List<String> names(List<ProgrammerAsset> programmers) {
+        return programmers.stream().map(ProgrammerAsset::getName).collect(Collectors.toList());
+    }
+
+    private TeamAsset postTeam(String name) {
+        TeamAsset asset = new TeamAsset();
+        asset.setName(name);
+        asset.setTeamFocus("Java");
+        asset.setLastStandUp("2001-01-01T00:00:00");
+        return testRestTemplate.postForObject("/team", asset, TeamAsset.class);
+    }
+
+    private ProgrammerAsset postProgrammer(String name) {
+        ProgrammerAsset asset = new ProgrammerAsset();
+        asset.setName(name);
+        asset.setDateHired("2001-01-01");
+        return testRestTemplate.postForObject("/programmer", asset, ProgrammerAsset.class);
+    }
+}
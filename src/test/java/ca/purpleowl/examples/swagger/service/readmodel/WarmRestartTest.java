@@ -0,0 +1,109 @@
+package ca.purpleowl.examples.swagger.service.readmodel;
+
+import ca.purpleowl.examples.swagger.SwaggerAndHateoasApplication;
+import ca.purpleowl.examples.swagger.jpa.changes.ChangeSequenceAllocator;
+import ca.purpleowl.examples.swagger.jpa.repository.ProgrammerRepository;
+import ca.purpleowl.examples.swagger.rest.asset.ProgrammerAsset;
+import ca.purpleowl.examples.swagger.rest.asset.TeamAsset;
+import ca.purpleowl.examples.swagger.service.ProgrammerService;
+import ca.purpleowl.examples.swagger.service.TeamService;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The persistent profile, started and stopped a few times over the same database file and snapshot.
+ */
+public class WarmRestartTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testRestartsFromTheSnapshot() {
+        Path snapshot = folder.getRoot().toPath().resolve("read-model.snapshot");
+        TeamAsset team;
+        ProgrammerAsset stays;
+        ProgrammerAsset deleted;
+
+        try(ConfigurableApplicationContext context = start(true)) {
+            team = context.getBean(TeamService.class).saveTeam(team("team1"), null);
+            stays = context.getBean(ProgrammerService.class).saveProgrammer(programmer("stays"));
+            context.getBean(TeamService.class).addProgrammerToTeam(stays.getProgrammerId(), team.getTeamId(), null);
+            deleted = context.getBean(ProgrammerService.class).saveProgrammer(programmer("deleted"));
+
+            //The last change numbered before shutdown was rolled back, so the database never gets as far as it.
+            ChangeSequenceAllocator allocator = context.getBean(ChangeSequenceAllocator.class);
+            allocator.release(allocator.allocate());
+        }
+        assertTrue(Files.isRegularFile(snapshot));
+
+        //Changes made while nothing was keeping a read model; the next start has to catch up on these.
+        ProgrammerAsset added;
+        try(ConfigurableApplicationContext context = start(false)) {
+            added = context.getBean(ProgrammerService.class).saveProgrammer(programmer("added"));
+            context.getBean(TeamService.class).addProgrammerToTeam(added.getProgrammerId(), team.getTeamId(), null);
+            context.getBean(ProgrammerRepository.class).deleteById(deleted.getProgrammerId());
+        }
+
+        try(ConfigurableApplicationContext context = start(true)) {
+            ReadModel readModel = context.getBean(ReadModel.class);
+
+            assertTrue(readModel.isReady());
+            //Used up; a crash from here on mustn't leave it to be restored from again.
+            assertFalse(Files.exists(snapshot));
+            assertEquals("team1", readModel.findTeam(team.getTeamId()).getName());
+            assertEquals(List.of("added", "stays"), names(readModel.findAllProgrammersOnTeam(team.getTeamId())));
+            assertEquals("team1", readModel.findProgrammer(added.getProgrammerId()).getTeamName());
+
+            //The change feeds don't carry deletes, so that one comes back with the snapshot until the first check.
+            assertNotNull(readModel.findProgrammer(deleted.getProgrammerId()));
+            assertEquals(1, readModel.checkConsistency());
+            assertNull(readModel.findProgrammer(deleted.getProgrammerId()));
+            assertEquals(context.getBean(ProgrammerService.class).findProgrammer(stays.getProgrammerId()),
+                         readModel.findProgrammer(stays.getProgrammerId()));
+        }
+    }
+
+    private ConfigurableApplicationContext start(boolean readModel) {
+        Path root = folder.getRoot().toPath();
+        return new SpringApplicationBuilder(SwaggerAndHateoasApplication.class)
+                .profiles("persistent")
+                //As arguments, so that they win over application-persistent.yml.
+                .run("--server.port=0",
+                     "--spring.datasource.url=jdbc:h2:file:" + root.resolve("db") + ";DB_CLOSE_ON_EXIT=FALSE",
+                     "--purpleowl.read-model.enabled=" + readModel,
+                     "--purpleowl.read-model.snapshot.path=" + root.resolve("read-model.snapshot"));
+    }
+
+    private static List<String> names(List<ProgrammerAsset> programmers) {
+        return programmers.stream().map(ProgrammerAsset::getName).collect(Collectors.toList());
+    }
+
+    private static TeamAsset team(String name) {
+        TeamAsset team = new TeamAsset();
+        team.setName(name);
+        team.setTeamFocus("Java");
+        team.setLastStandUp("2018-12-01T09:00:00");
+        return team;
+    }
+
+    private static ProgrammerAsset programmer(String name) {
+        ProgrammerAsset programmer = new ProgrammerAsset();
+        programmer.setName(name);
+        programmer.setDateHired("2018-12-01");
+        return programmer;
+    }
+}
@@ -0,0 +1,165 @@
+package ca.purpleowl.examples.swagger.service.stats;
+
+import ca.purpleowl.examples.swagger.jpa.entity.Programmer;
+import ca.purpleowl.examples.swagger.jpa.entity.Team;
+import ca.purpleowl.examples.swagger.jpa.repository.ProgrammerRepository;
+import ca.purpleowl.examples.swagger.jpa.repository.TeamRepository;
+import ca.purpleowl.examples.swagger.rest.asset.TeamStatsAsset;
+import ca.purpleowl.examples.swagger.service.TeamService;
+import ca.purpleowl.examples.swagger.utils.QueryCountHarness;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManagerFactory;
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static ca.purpleowl.examples.swagger.utils.TestModelInflater.buildMockProgrammer;
+import static ca.purpleowl.examples.swagger.utils.TestModelInflater.buildMockTeam;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(SpringRunner.class)
+@ActiveProfiles("query-count")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class TeamStatisticsTest {
+    @Autowired
+    private TeamStatistics fixture;
+
+    @Autowired
+    private TeamService teamService;
+
+    @Autowired
+    private TeamRepository teamRepository;
+
+    @Autowired
+    private ProgrammerRepository programmerRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private TestRestTemplate testRestTemplate;
+
+    private Team java;
+    private Team javaScript;
+
+    @Before
+    public void setUp() {
+        java = teamRepository.save(buildMockTeam(null, "java", "Java", null));
+        javaScript = teamRepository.save(buildMockTeam(null, "javascript", "JavaScript", null));
+        hire("alice", java, LocalDate.of(2014, 12, 1));
+        hire("bob", java, LocalDate.of(2014, 12, 14));
+        hire("carol", java, LocalDate.of(2015, 3, 2));
+        //Those went straight through the repositories.
+        assertTrue(fixture.rebuild());
+    }
+
+    @After
+    public void tearDown() {
+        teamRepository.deleteAll();
+        programmerRepository.deleteAll();
+    }
+
+    @Test
+    public void testCountsComeFromTheDatabase() {
+        TeamStatsAsset stats = fixture.findTeamStats(java.getId());
+
+        assertEquals(3, stats.getHeadcount());
+        assertEquals(months("2014-12", 2L, "2015-03", 1L), stats.getHiresPerMonth());
+        assertEquals(0, fixture.findTeamStats(javaScript.getId()).getHeadcount());
+    }
+
+    @Test
+    public void testMovesAreCountedWithoutRecounting() {
+        Programmer dave = hire("dave", null, LocalDate.of(2015, 3, 20));
+        Programmer alice = programmerRepository.findAllByTeamId(java.getId()).get(0);
+
+        teamService.addProgrammerToTeam(dave.getId(), java.getId(), null);
+        teamService.addProgrammerToTeam(alice.getId(), javaScript.getId(), null);
+
+        QueryCountHarness harness = new QueryCountHarness(entityManagerFactory);
+        harness.measure(() -> {
+            Map<Long, TeamStatsAsset> stats = new LinkedHashMap<>();
+            fixture.findAllTeamStats().forEach(team -> stats.put(team.getTeamId(), team));
+
+            assertEquals(3, stats.get(java.getId()).getHeadcount());
+            assertEquals(months("2014-12", 1L, "2015-03", 2L), stats.get(java.getId()).getHiresPerMonth());
+            assertEquals(1, stats.get(javaScript.getId()).getHeadcount());
+            assertEquals(months("2014-12", 1L), stats.get(javaScript.getId()).getHiresPerMonth());
+        }).assertStatementsAtMost(1);
+
+        //...and the running totals agree with counting from scratch.
+        assertTrue(fixture.rebuild());
+        assertEquals(3, fixture.findTeamStats(java.getId()).getHeadcount());
+    }
+
+    @Test
+    public void testRolledBackChangesAreNotCounted() {
+        new TransactionTemplate(transactionManager).execute(status -> {
+            fixture.recordChange(null, null, java.getId(), LocalDate.of(2016, 1, 1));
+            status.setRollbackOnly();
+            return null;
+        });
+
+        assertEquals(3, fixture.findTeamStats(java.getId()).getHeadcount());
+    }
+
+    @Test
+    public void testRecountIsNotKeptWhileWritesAreInFlight() {
+        boolean kept = new TransactionTemplate(transactionManager).execute(status -> {
+            fixture.recordChange(null, null, java.getId(), LocalDate.of(2016, 1, 1));
+            return fixture.rebuild();
+        });
+
+        assertFalse(kept);
+        //The change committed, and was counted once.
+        assertEquals(4, fixture.findTeamStats(java.getId()).getHeadcount());
+    }
+
+    @Test
+    public void testStatsEndpoints() {
+        JsonNode one = testRestTemplate.getForObject("/team/" + java.getId() + "/stats", JsonNode.class);
+        JsonNode all = testRestTemplate.getForObject("/team/stats", JsonNode.class);
+
+        assertEquals(3, one.get("headcount").asInt());
+        assertEquals(2, one.get("hiresPerMonth").get("2014-12").asInt());
+        assertTrue(one.get("minutesSinceLastStandUp").asLong() > 0);
+        assertTrue(one.get("_links").has("team"));
+        assertEquals(2, all.get("_embedded").get("teamStatsAssetList").size());
+        assertEquals(HttpStatus.NOT_FOUND,
+                     testRestTemplate.getForEntity("/team/" + (javaScript.getId() + 1000) + "/stats", String.class)
+                                     .getStatusCode());
+    }
+
+    private Programmer hire(String name, Team team, LocalDate dateHired) {
+        Programmer programmer = buildMockProgrammer(name, null);
+        programmer.setDateHired(dateHired);
+        programmer.setTeam(team);
+        return programmerRepository.save(programmer);
+    }
+
+    private static Map<String, Long> months(Object... monthsAndHires) {
+        Map<String, Long> returnMe = new LinkedHashMap<>();
+        for(int i = 0; i < monthsAndHires.length; i += 2) {
+            returnMe.put((String) monthsAndHires[i], (Long) monthsAndHires[i + 1]);
+        }
+        return returnMe;
+    }
+}
@@ -0,0 +1,8 @@
+package ca.purpleowl.examples.swagger.utils;
+
+/**
+ * JUnit category for tests that measure rather than check.  They're slow and their numbers are for people to read, so
+ * they're left out of the normal build; run them with "mvn test -Pbenchmark".
+ */
+public interface Benchmark {
+}
@@ -0,0 +1,97 @@
+package ca.purpleowl.examples.swagger.utils;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Wraps up the bookkeeping needed to answer "how much database work did that just do?"  Call measure() with whatever
+ * should be observed (usually a single REST call) and you get back a QueryCount describing the SQL that Hibernate
+ * prepared along with a few of the more interesting Hibernate statistics.
+ *
+ * Requires the "query-count" profile so that statistics are enabled and SqlStatementCaptor is registered.
+ */
+public class QueryCountHarness {
+    private final Statistics statistics;
+
+    public QueryCountHarness(EntityManagerFactory entityManagerFactory) {
+        this.statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        if(!statistics.isStatisticsEnabled()) {
+            throw new IllegalStateException("Hibernate statistics are disabled.  Did you forget the query-count profile?");
+        }
+    }
+
+    public QueryCount measure(Runnable work) {
+        statistics.clear();
+        SqlStatementCaptor.clear();
+
+        work.run();
+
+        return new QueryCount(SqlStatementCaptor.statements(),
+                              statistics.getPrepareStatementCount(),
+                              statistics.getEntityLoadCount(),
+                              statistics.getCollectionFetchCount());
+    }
+
+    /**
+     * A snapshot of the database activity observed during a single call to measure().
+     */
+    public static class QueryCount {
+        private final List<String> statements;
+        private final long preparedStatements;
+        private final long entityLoads;
+        private final long collectionFetches;
+
+        QueryCount(List<String> statements, long preparedStatements, long entityLoads, long collectionFetches) {
+            this.statements = statements;
+            this.preparedStatements = preparedStatements;
+            this.entityLoads = entityLoads;
+            this.collectionFetches = collectionFetches;
+        }
+
+        public List<String> getStatements() {
+            return statements;
+        }
+
+        public int getStatementCount() {
+            return statements.size();
+        }
+
+        public long getPreparedStatements() {
+            return preparedStatements;
+        }
+
+        public long getEntityLoads() {
+            return entityLoads;
+        }
+
+        public long getCollectionFetches() {
+            return collectionFetches;
+        }
+
+        public QueryCount assertStatementsAtMost(int maximum) {
+            assertTrue(String.format("Expected at most %d statements but %d were executed:%n%s",
+                                     maximum, getStatementCount(), String.join("\n", statements)),
+                       getStatementCount() <= maximum);
+            return this;
+        }
+
+        public QueryCount assertStatementsMatch(QueryCount other) {
+            assertEquals(String.format("Statement count changed with the size of the data set:%n%s%n---%n%s",
+                                       String.join("\n", statements), String.join("\n", other.statements)),
+                         getStatementCount(), other.getStatementCount());
+            return this;
+        }
+
+        public QueryCount assertNoCollectionFetches() {
+            assertEquals("Unexpected lazy collection initialization", 0, collectionFetches);
+            return this;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package ca.purpleowl.examples.swagger.utils;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Hibernate hands every SQL statement it is about to prepare to a StatementInspector, so this is about the cheapest
+ * place we can hook in to see what a request actually did to the database.  Hibernate instantiates this class itself
+ * (see application-query-count.yml), which is why the captured statements live in a static list rather than on a bean.
+ *
+ * The requests under test are served on an Undertow worker thread, not the test thread, so the list has to be shared
+ * between threads.  Tests run one at a time, so a single synchronized list is plenty.
+ */
+public class SqlStatementCaptor implements StatementInspector {
+    private static final List<String> STATEMENTS = Collections.synchronizedList(new ArrayList<>());
+
+    @Override
+    public String inspect(String sql) {
+        STATEMENTS.add(sql);
+        return sql;
+    }
+
+    public static void clear() {
+        STATEMENTS.clear();
+    }
+
+    public static List<String> statements() {
+        synchronized (STATEMENTS) {
+            return new ArrayList<>(STATEMENTS);
+        }
+    }
+}
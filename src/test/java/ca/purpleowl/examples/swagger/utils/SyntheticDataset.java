@@ -0,0 +1,273 @@
+package ca.purpleowl.examples.swagger.utils;
+
+import lombok.extern.java.Log;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A made-up but plausible set of Teams and Programmers, as big as we like, written straight into the database with
+ * batched JDBC inserts.  Going through JPA would take minutes for a million rows; this takes seconds.
+ *
+ * Everything comes from a seeded Random, so the same arguments always give the same rows with the same IDs.
+ *
+ * Real teams aren't all the same size, and the big ones are where the per-Team endpoints hurt, so Programmers are
+ * dealt out to Teams by a Zipf distribution: the Team ranked k gets a share proportional to 1/k^skew.  A skew of 0
+ * makes every Team about the same size; with a skew of 1 the biggest Team is twice the size of the second and ten
+ * times the size of the tenth, and the long tail has Teams of one or two (or none).  A few Programmers
+ * (UNASSIGNED_PERCENT) are left without a Team at all.
+ *
+ * The database has to be empty, and nothing should have been saved through JPA yet: IDs are handed out here from 1
+ * upwards, and the entity_ids sequence is moved on past them afterwards.  The same goes for change sequences and the
+ * change_sequences sequence, but the ChangeSequenceAllocator needs to be told about them too; see
+ * getHighestChangeSequence().
+ */
+@Log
+public class SyntheticDataset {
+    public static final int DEFAULT_TEAM_SIZE = 20;
+    private static final int UNASSIGNED_PERCENT = 5;
+    private static final int BATCH_SIZE = 5_000;
+
+    private static final String[] FIRST_NAMES = {
+            "Ada", "Alan", "Barbara", "Bjarne", "Brian", "Dennis", "Donald", "Edsger", "Frances", "Grace", "Guido",
+            "James", "Jean", "John", "Ken", "Linus", "Margaret", "Niklaus", "Radia", "Shafi", "Sophie", "Tim", "Yukihiro",
+            "Zoë", "Ørjan", "José", "Aarav", "Mei", "Kwame", "Fatima"
+    };
+    private static final String[] LAST_NAMES = {
+            "Lovelace", "Turing", "Liskov", "Stroustrup", "Kernighan", "Ritchie", "Knuth", "Dijkstra", "Allen", "Hopper",
+            "van Rossum", "Gosling", "Sammet", "McCarthy", "Thompson", "Torvalds", "Hamilton", "Wirth", "Perlman",
+            "Goldwasser", "Wilson", "Berners-Lee", "Matsumoto", "Nakamura", "Okafor", "García", "Müller", "Singh", "Chen"
+    };
+    private static final String[] TEAM_ADJECTIVES = {
+            "Purple", "Silent", "Rapid", "Crimson", "Lucky", "Iron", "Golden", "Quiet", "Brave", "Clever", "Midnight"
+    };
+    private static final String[] TEAM_NOUNS = {
+            "Owls", "Foxes", "Badgers", "Otters", "Falcons", "Herons", "Wolves", "Lynxes", "Ravens", "Beavers"
+    };
+    private static final String[] TEAM_FOCUSES = {
+            "Java", "Kotlin", "Platform", "Payments", "Search", "Mobile", "Data", "Security", "Frontend", "Infrastructure"
+    };
+    private static final LocalDate FIRST_HIRE = LocalDate.of(2000, 1, 1);
+    private static final LocalDateTime FIRST_STAND_UP = LocalDateTime.of(2018, 1, 1, 9, 0);
+
+    private final long seed;
+    private final int teams;
+    private final int programmers;
+    private final double skew;
+
+    //Filled in by load().
+    private int[] teamSizes;
+
+    /**
+     * @param seed - Seeds everything; the same seed gives the same data.
+     * @param teams - How many Teams.
+     * @param programmers - How many Programmers, spread across the Teams.
+     * @param skew - The Zipf exponent for Team sizes; 0 for even Teams.
+     */
+    public SyntheticDataset(long seed, int teams, int programmers, double skew) {
+        if(teams < 1 || programmers < 0 || skew < 0) {
+            throw new IllegalArgumentException("need at least one Team, and no negative sizes or skew");
+        }
+        this.seed = seed;
+        this.teams = teams;
+        this.programmers = programmers;
+        this.skew = skew;
+    }
+
+    /**
+     * A dataset of the given number of Programmers, in Teams of DEFAULT_TEAM_SIZE on average.
+     */
+    public static SyntheticDataset ofProgrammers(int programmers, double skew) {
+        return new SyntheticDataset(42L, Math.max(1, programmers / DEFAULT_TEAM_SIZE), programmers, skew);
+    }
+
+    /**
+     * Writes the whole thing to the database.  Teams get IDs 1 to teams, and Programmers the IDs after that.
+     */
+    public SyntheticDataset load(DataSource dataSource) throws SQLException {
+        long start = System.nanoTime();
+        Random random = new Random(seed);
+        teamSizes = new int[teams];
+
+        try(Connection connection = dataSource.getConnection()) {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+
+            try {
+                insertTeams(connection, random);
+                insertProgrammers(connection, random, teamPicker(random));
+
+                try(Statement statement = connection.createStatement()) {
+                    statement.execute("ALTER SEQUENCE entity_ids RESTART WITH " + (getHighestId() + 1));
+                    statement.execute("ALTER SEQUENCE change_sequences RESTART WITH " + (getHighestChangeSequence() + 1));
+                }
+                connection.commit();
+            } catch(SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        }
+
+        log.info(String.format("loaded %d teams and %d programmers (largest team %d) in %d ms",
+                               teams, programmers, teamSizes[(int) getLargestTeamId() - 1],
+                               (System.nanoTime() - start) / 1_000_000));
+        return this;
+    }
+
+    public int getTeams() {
+        return teams;
+    }
+
+    public int getProgrammers() {
+        return programmers;
+    }
+
+    public long getHighestId() {
+        return (long) teams + programmers;
+    }
+
+    /**
+     * Every row gets its own change sequence, in ID order, so this is the same as the highest ID.
+     */
+    public long getHighestChangeSequence() {
+        return getHighestId();
+    }
+
+    /**
+     * @return How many Programmers the Team with that ID got.
+     */
+    public int sizeOfTeam(long teamId) {
+        return loaded()[(int) teamId - 1];
+    }
+
+    public long getLargestTeamId() {
+        int[] sizes = loaded();
+        int largest = 0;
+        for(int i = 1; i < sizes.length; i++) {
+            if(sizes[i] > sizes[largest]) {
+                largest = i;
+            }
+        }
+        return largest + 1;
+    }
+
+    /**
+     * @return A Team of the median size, to stand for the usual case.
+     */
+    public long getMedianTeamId() {
+        int[] sizes = loaded();
+        int[] sorted = sizes.clone();
+        Arrays.sort(sorted);
+        int median = sorted[sorted.length / 2];
+
+        for(int i = 0; i < sizes.length; i++) {
+            if(sizes[i] == median) {
+                return i + 1;
+            }
+        }
+        throw new IllegalStateException("no team of the median size");
+    }
+
+    private void insertTeams(Connection connection, Random random) throws SQLException {
+        try(PreparedStatement insert = connection.prepareStatement(
+                "INSERT INTO team (id, change_sequence, version, last_stand_up, name, team_focus) VALUES (?, ?, 0, ?, ?, ?)")) {
+            for(int i = 1; i <= teams; i++) {
+                insert.setLong(1, i);
+                insert.setLong(2, i);
+                insert.setTimestamp(3, Timestamp.valueOf(FIRST_STAND_UP.plusMinutes(random.nextInt(365 * 24 * 60))));
+                insert.setString(4, pick(random, TEAM_ADJECTIVES) + " " + pick(random, TEAM_NOUNS) + " " + i);
+                insert.setString(5, pick(random, TEAM_FOCUSES));
+                addToBatch(insert, i);
+            }
+            insert.executeBatch();
+        }
+    }
+
+    private void insertProgrammers(Connection connection, Random random, TeamPicker teamPicker) throws SQLException {
+        try(PreparedStatement insert = connection.prepareStatement(
+                "INSERT INTO programmer (id, change_sequence, version, date_hired, name, team_id) VALUES (?, ?, 0, ?, ?, ?)")) {
+            for(int i = 1; i <= programmers; i++) {
+                long id = (long) teams + i;
+                insert.setLong(1, id);
+                insert.setLong(2, id);
+                insert.setDate(3, Date.valueOf(FIRST_HIRE.plusDays(random.nextInt(19 * 365))));
+                insert.setString(4, pick(random, FIRST_NAMES) + " " + pick(random, LAST_NAMES));
+
+                if(random.nextInt(100) < UNASSIGNED_PERCENT) {
+                    insert.setNull(5, Types.BIGINT);
+                } else {
+                    int team = teamPicker.pick(random);
+                    teamSizes[team]++;
+                    insert.setLong(5, team + 1);
+                }
+                addToBatch(insert, i);
+            }
+            insert.executeBatch();
+        }
+    }
+
+    /**
+     * Zipf ranks are shuffled onto Team IDs, so that the biggest Teams aren't all at the start.
+     */
+    private TeamPicker teamPicker(Random random) {
+        double[] cumulative = new double[teams];
+        double total = 0;
+        for(int rank = 0; rank < teams; rank++) {
+            total += 1 / Math.pow(rank + 1, skew);
+            cumulative[rank] = total;
+        }
+
+        int[] teamOfRank = new int[teams];
+        for(int i = 0; i < teams; i++) {
+            teamOfRank[i] = i;
+        }
+        for(int i = teams - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = teamOfRank[i];
+            teamOfRank[i] = teamOfRank[j];
+            teamOfRank[j] = swap;
+        }
+
+        double sum = total;
+        return r -> {
+            int rank = Arrays.binarySearch(cumulative, r.nextDouble() * sum);
+            return teamOfRank[Math.min(teams - 1, rank < 0 ? -rank - 1 : rank)];
+        };
+    }
+
+    private int[] loaded() {
+        if(teamSizes == null) {
+            throw new IllegalStateException("load() hasn't been called");
+        }
+        return teamSizes;
+    }
+
+    private static void addToBatch(PreparedStatement insert, int count) throws SQLException {
+        insert.addBatch();
+        if(count % BATCH_SIZE == 0) {
+            insert.executeBatch();
+        }
+    }
+
+    private static String pick(Random random, String[] from) {
+        return from[random.nextInt(from.length)];
+    }
+
+    @FunctionalInterface
+    private interface TeamPicker {
+        //Index of the Team, from 0.
+        int pick(Random random);
+    }
+}